@@ -0,0 +1,513 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppendOnlyFile is a DbFile for tables that are written by appending, such
+ * as logs of events, and whose tuples are rarely deleted.
+ * <p>
+ * The file has the layout of a HeapFile, so that a HeapFile can read it,
+ * but its pages are written once. Inserts go to a tail page held in memory
+ * rather than in the BufferPool; when the tail page is full it is written
+ * to the end of the file, one sequential write per page, and a new empty
+ * tail page takes its place. A partly filled tail page reaches the disk
+ * when {@link #flush} is called, as {@link BufferPool#flushAllPages} does.
+ * <p>
+ * Deleting a tuple does not rewrite its page; the tuple is marked in a
+ * bitmap, kept in memory and in a sidecar file next to the table file, and
+ * scans skip it. Once deleted tuples make up a large enough fraction of the
+ * table, a background compactor rewrites the file with only the live
+ * tuples and clears the bitmap. Compaction moves tuples, so RecordIds taken
+ * before it are no longer valid after it; it waits for open scans of the
+ * file to close before it starts.
+ * <p>
+ * Full pages are read through the BufferPool like those of a HeapFile; the
+ * tuples of the tail page are read from memory.
+ *
+ * @see HeapFile
+ * @see Catalog#loadSchema
+ */
+public class AppendOnlyFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The extension of the file holding the delete bitmap, next to the table file */
+    public static final String DELETES_EXTENSION = ".del";
+
+    /** Default fraction of deleted tuples that triggers compaction */
+    public static final double DEFAULT_COMPACT_THRESHOLD = 0.25;
+
+    /** Delay before a compaction blocked by open scans is tried again, in ms */
+    private static final long COMPACT_RETRY_DELAY = 100;
+
+    /** One daemon thread compacts the append-only files that need it */
+    private static ScheduledExecutorService compactor;
+
+    private final File f;
+    private final TupleDesc td;
+    private final File deletesFile;
+    private transient FileChannel channel;
+    private FileHeader header;
+    private final int slotsPerPage;
+
+    /** pages before this one are full and on disk */
+    private int fullPages;
+    /** the page appended to, which is not in the BufferPool */
+    private HeapPage tail;
+    /** bit page * slotsPerPage + slot is set if that tuple is deleted */
+    private final BitSet deleted = new BitSet();
+    private int liveTuples;
+    private int openScans;
+    private boolean compactionScheduled;
+    private double compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+
+    /**
+     * Opens an append-only file backed by the specified file, creating it
+     * if it does not exist.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param td the schema of the tuples of the file
+     */
+    public AppendOnlyFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.deletesFile = Utility.sidecar(f, DELETES_EXTENSION);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("unable to open " + f.getAbsolutePath(), e);
+        }
+        int pageSize = header.getPageSize();
+        this.slotsPerPage = (pageSize * 8) / (td.getSize() * 8 + 1);
+        try {
+            loadPages();
+        } catch (IOException e) {
+            throw new RuntimeException("unable to read " + f.getAbsolutePath(), e);
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        if (channel.size() == 0) {
+            header = new FileHeader(BufferPool.getPageSize(), 0);
+            header.write(channel);
+        } else {
+            header = FileHeader.read(channel);
+        }
+    }
+
+    /** Read the delete bitmap and the tail page, and count the live tuples. */
+    private void loadPages() throws IOException {
+        int pages = (int) (Math.max(0, channel.size() - header.getDataOffset()) / getPageSize());
+        deleted.clear();
+        if (deletesFile.exists()) {
+            deleted.or(BitSet.valueOf(Files.readAllBytes(deletesFile.toPath())));
+        }
+        // a last page with room is the tail page
+        HeapPage last = pages > 0 ? readHeapPage(pages - 1) : null;
+        if (last != null && last.getNumEmptySlots() > 0) {
+            fullPages = pages - 1;
+            tail = last;
+        } else {
+            fullPages = pages;
+            tail = emptyTail();
+        }
+        // pages before the tail are taken to be full, as this class writes them
+        int used = slotsPerPage * (fullPages + 1) - tail.getNumEmptySlots();
+        liveTuples = used - deleted.cardinality();
+    }
+
+    private HeapPage emptyTail() throws IOException {
+        return new HeapPage(new HeapPageId(getId(), fullPages), td,
+                ByteBuffer.wrap(HeapPage.createEmptyPageData(getPageSize())));
+    }
+
+    /** @return the size in bytes of the pages of this file */
+    public int getPageSize() {
+        return header.getPageSize();
+    }
+
+    private long pageOffset(int pageNumber) {
+        return header.getDataOffset() + (long) pageNumber * getPageSize();
+    }
+
+    /**
+     * Returns the File backing this file on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of pages of this file, including the tail page if
+     *     it holds any tuples
+     */
+    public synchronized int numPages() {
+        return fullPages + (tail.getNumEmptySlots() < slotsPerPage ? 1 : 0);
+    }
+
+    /** @return the number of tuples in the file that are not deleted */
+    public synchronized int numTuples() {
+        return liveTuples;
+    }
+
+    /** @return the number of deleted tuples not yet reclaimed by compaction */
+    public synchronized int numDeleted() {
+        return deleted.cardinality();
+    }
+
+    /**
+     * Set the fraction of the tuples of the file that must be deleted
+     * before the background compactor rewrites it.
+     */
+    public synchronized void setCompactThreshold(double compactThreshold) {
+        this.compactThreshold = compactThreshold;
+    }
+
+    private HeapPage readHeapPage(int pageNumber) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(getPageSize());
+        long offset = pageOffset(pageNumber);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                break;
+            }
+        }
+        buf.clear();
+        return new HeapPage(new HeapPageId(getId(), pageNumber), td, buf);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof HeapPageId) || pid.getTableId() != getId()) {
+            return null;
+        }
+        synchronized (this) {
+            if (pid.pageNumber() == fullPages) {
+                // a copy of the tail page as it is now
+                try {
+                    return new HeapPage(tail.getId(), td, ByteBuffer.wrap(tail.getPageData()));
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        }
+        try {
+            return readHeapPage(pid.pageNumber());
+        } catch (IOException e) {
+            Debug.log(f.getAbsolutePath() + " page is invalid: " + pid.pageNumber());
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+        long offset = pageOffset(page.getId().pageNumber());
+        while (buf.hasRemaining()) {
+            channel.write(buf, offset + buf.position());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return insertTuples(tid, Collections.singletonList(t));
+    }
+
+    /**
+     * Append the tuples to the tail page, writing out each tail page that
+     * fills up. No page of the BufferPool changes, so the returned list is
+     * empty.
+     */
+    @Override
+    public synchronized ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        for (Tuple t : tuples) {
+            if (!td.equals(t.getTupleDesc())) {
+                throw new DbException("tupledesc is mismatch");
+            }
+        }
+        int inserted = 0;
+        while (inserted < tuples.size()) {
+            inserted += tail.insertTuples(tuples, inserted);
+            if (tail.getNumEmptySlots() == 0) {
+                writePage(tail);
+                fullPages++;
+                tail = emptyTail();
+            }
+        }
+        liveTuples += tuples.size();
+        return new ArrayList<Page>();
+    }
+
+    /**
+     * Mark the tuple deleted in the delete bitmap. No page of the
+     * BufferPool changes, so this returns null.
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not in this table");
+        }
+        int pageNo = rid.getPageId().pageNumber();
+        int slot = rid.tupleno();
+        boolean used;
+        synchronized (this) {
+            if (pageNo > fullPages || slot < 0 || slot >= slotsPerPage) {
+                throw new DbException("tuple is not in this table");
+            }
+            used = pageNo == fullPages ? tail.isSlotUsed(slot) : true;
+        }
+        if (used && pageNo < fullPages) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                    rid.getPageId(), Permissions.READ_ONLY);
+            used = page.isSlotUsed(slot);
+        }
+        synchronized (this) {
+            int bit = pageNo * slotsPerPage + slot;
+            if (!used || deleted.get(bit)) {
+                throw new DbException("tuple slot is already empty");
+            }
+            deleted.set(bit);
+            liveTuples--;
+            t.setRecordId(null);
+            if (needsCompaction() && !compactionScheduled) {
+                compactionScheduled = true;
+                scheduleCompaction(0);
+            }
+        }
+        return null;
+    }
+
+    private synchronized boolean isDeleted(int pageNo, int slot) {
+        return deleted.get(pageNo * slotsPerPage + slot);
+    }
+
+    private boolean needsCompaction() {
+        int dead = deleted.cardinality();
+        return dead > 0 && dead >= compactThreshold * (dead + liveTuples);
+    }
+
+    private void scheduleCompaction(long delay) {
+        synchronized (AppendOnlyFile.class) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "append-only compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            compactor.schedule(this::backgroundCompact, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void backgroundCompact() {
+        try {
+            synchronized (this) {
+                if (openScans > 0) {
+                    scheduleCompaction(COMPACT_RETRY_DELAY);
+                    return;
+                }
+                compactionScheduled = false;
+                if (!needsCompaction()) {
+                    return;
+                }
+            }
+            compact();
+        } catch (IOException | DbException e) {
+            Debug.log("compaction of " + f.getAbsolutePath() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the tail page and the delete bitmap to disk, so that the file
+     * holds every tuple appended so far.
+     */
+    public synchronized void flush() throws IOException {
+        if (tail.getNumEmptySlots() < slotsPerPage) {
+            writePage(tail);
+        }
+        writeDeletes();
+        channel.force(false);
+    }
+
+    private void writeDeletes() throws IOException {
+        if (deleted.isEmpty()) {
+            Files.deleteIfExists(deletesFile.toPath());
+        } else {
+            File tmp = new File(deletesFile.getPath() + ".tmp");
+            Files.write(tmp.toPath(), deleted.toByteArray());
+            Files.move(tmp.toPath(), deletesFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Rewrite the file with only the tuples that are not deleted, and clear
+     * the delete bitmap. Any pages of the file cached in the BufferPool are
+     * discarded, as the tuples on them have moved.
+     *
+     * @return the number of deleted tuples reclaimed
+     * @throws DbException if scans of the file are open
+     */
+    public synchronized int compact() throws IOException, DbException {
+        if (openScans > 0) {
+            throw new DbException("cannot compact while " + openScans + " scans are open");
+        }
+        int reclaimed = deleted.cardinality();
+        int oldPages = fullPages + 1;
+        File tmp = new File(f.getPath() + ".compact");
+        int newFull = 0;
+        HeapPage out;
+        try (FileChannel dst = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            header.write(dst);
+            out = new HeapPage(new HeapPageId(getId(), 0), td,
+                    ByteBuffer.wrap(HeapPage.createEmptyPageData(getPageSize())));
+            List<Tuple> live = new ArrayList<Tuple>(slotsPerPage);
+            for (int i = 0; i <= fullPages; i++) {
+                HeapPage page = i < fullPages ? readHeapPage(i) : tail;
+                live.clear();
+                Iterator<Tuple> it = page.iterator();
+                while (it.hasNext()) {
+                    Tuple t = it.next();
+                    if (!deleted.get(i * slotsPerPage + t.getRecordId().tupleno())) {
+                        live.add(t);
+                    }
+                }
+                int copied = 0;
+                while (copied < live.size()) {
+                    copied += out.insertTuples(live, copied);
+                    if (out.getNumEmptySlots() == 0) {
+                        ByteBuffer buf = ByteBuffer.wrap(out.getPageData());
+                        long offset = header.getDataOffset() + (long) newFull * getPageSize();
+                        while (buf.hasRemaining()) {
+                            dst.write(buf, offset + buf.position());
+                        }
+                        newFull++;
+                        out = new HeapPage(new HeapPageId(getId(), newFull), td,
+                                ByteBuffer.wrap(HeapPage.createEmptyPageData(getPageSize())));
+                    }
+                }
+            }
+            if (out.getNumEmptySlots() < slotsPerPage) {
+                ByteBuffer buf = ByteBuffer.wrap(out.getPageData());
+                long offset = header.getDataOffset() + (long) newFull * getPageSize();
+                while (buf.hasRemaining()) {
+                    dst.write(buf, offset + buf.position());
+                }
+            }
+            dst.force(false);
+        }
+
+        // drop the bitmap first: if the move then fails, the deletes are
+        // lost, as unflushed deletes are, rather than applied to the
+        // compacted file
+        deleted.clear();
+        writeDeletes();
+        channel.close();
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open();
+        fullPages = newFull;
+        tail = out;
+        BufferPool pool = Database.getBufferPool();
+        for (int i = 0; i < oldPages; i++) {
+            pool.discardPage(new HeapPageId(getId(), i));
+        }
+        return reclaimed;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new DbFileIterator() {
+            private boolean open;
+            private int pages;
+            private HeapPage tailCopy;
+            private int pageNo;
+            private Iterator<Tuple> tuples = Collections.emptyIterator();
+            private Tuple next;
+
+            public void open() throws DbException, TransactionAbortedException {
+                close();
+                synchronized (AppendOnlyFile.this) {
+                    openScans++;
+                    open = true;
+                    pages = fullPages;
+                    try {
+                        tailCopy = new HeapPage(tail.getId(), td, ByteBuffer.wrap(tail.getPageData()));
+                    } catch (IOException e) {
+                        throw new DbException("unable to copy the tail page");
+                    }
+                }
+                pageNo = -1;
+            }
+
+            public boolean hasNext() throws DbException, TransactionAbortedException {
+                if (!open) {
+                    return false;
+                }
+                while (next == null) {
+                    while (!tuples.hasNext()) {
+                        if (++pageNo > pages) {
+                            return false;
+                        }
+                        HeapPage page = pageNo == pages ? tailCopy
+                                : (HeapPage) Database.getBufferPool().getPage(tid,
+                                        new HeapPageId(getId(), pageNo), Permissions.READ_ONLY);
+                        tuples = page.iterator();
+                    }
+                    Tuple t = tuples.next();
+                    if (!isDeleted(pageNo, t.getRecordId().tupleno())) {
+                        next = t;
+                    }
+                }
+                return true;
+            }
+
+            public Tuple next() throws DbException, TransactionAbortedException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = next;
+                next = null;
+                return t;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                open();
+            }
+
+            public void close() {
+                tuples = Collections.emptyIterator();
+                next = null;
+                tailCopy = null;
+                if (open) {
+                    open = false;
+                    synchronized (AppendOnlyFile.this) {
+                        openScans--;
+                    }
+                }
+            }
+        };
+    }
+}
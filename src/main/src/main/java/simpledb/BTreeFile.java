@@ -0,0 +1,657 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFile is a DbFile that stores the tuples of a table in a B+ tree
+ * ordered by one of its fields, the key. Lookups of a key or a range of
+ * keys read one page per level of the tree and then only the leaves
+ * holding the matching tuples, rather than the whole table.
+ * <p>
+ * Page 0 of the file is a {@link BTreeRootPtrPage} saying where the root
+ * is. The tuples themselves are on {@link BTreeLeafPage}s, linked to their
+ * siblings in key order; {@link BTreeInternalPage}s above them route a key
+ * to its leaf. Keys need not be unique. Freed pages are tracked on
+ * {@link BTreeHeaderPage}s and reused before the file grows.
+ * <p>
+ * Full pages are split in two on insert. Deletes do not merge or
+ * redistribute half-empty pages; a leaf is only freed, together with any
+ * internal page left without children, once it is empty. Pages are read
+ * and cached through the BufferPool like those of any other DbFile.
+ *
+ * @see IndexScan
+ * @see Catalog#loadSchema
+ */
+public class BTreeFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How full {@link #bulkLoad} packs the pages, leaving room for some
+     * inserts before they split
+     */
+    public static final double BULK_LOAD_FILL = 0.9;
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    /** Reads and writes the pages of the file */
+    private final transient PagedFile pages;
+
+    /**
+     * Constructs a B+ tree file backed by the specified file. A new file
+     * gets an empty tree: the root pointer page and a single empty leaf.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples of the file
+     * @param keyField the index of the field the tree is ordered by
+     */
+    public BTreeFile(File f, TupleDesc td, int keyField) {
+        this.f = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.pages = new PagedFile(f, file -> {
+            file.writePageData(0, BTreeRootPtrPage.createPageData(file.getPageSize(), 1));
+            file.writePageData(1, BTreeLeafPage.createEmptyPageData(file.getPageSize()));
+        });
+    }
+
+    /** @return the size in bytes of the pages of this file */
+    public int getPageSize() {
+        return pages.getPageSize();
+    }
+
+    /** @return the index of the field the tree is ordered by */
+    public int keyField() {
+        return keyField;
+    }
+
+    /**
+     * Returns the File backing this file on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages in this file, including the root pointer
+     * page and any free pages.
+     */
+    public int numPages() {
+        return pages.numPages();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof BTreePageId) || pid.getTableId() != getId()) {
+            return null;
+        }
+        BTreePageId id = (BTreePageId) pid;
+        return pages.readPage(id.pageNumber(), data -> {
+            switch (id.pgcateg()) {
+            case BTreePageId.ROOT_PTR:
+                return new BTreeRootPtrPage(id, data);
+            case BTreePageId.INTERNAL:
+                return new BTreeInternalPage(id, data, td, keyField);
+            case BTreePageId.LEAF:
+                return new BTreeLeafPage(id, data, td, keyField);
+            case BTreePageId.HEADER:
+                return new BTreeHeaderPage(id, data);
+            default:
+                throw new IllegalArgumentException("unknown category of " + id);
+            }
+        });
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        pages.writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    /**
+     * Fill this tree, which must be new and empty, with the given tuples,
+     * building it bottom up: the leaves are written in key order, then each
+     * level of internal pages over the one below, up to the root. This is
+     * much faster than inserting the tuples one at a time, and packs the
+     * pages as tightly as {@link #BULK_LOAD_FILL} says instead of leaving
+     * them half full after splits.
+     * <p>
+     * The pages are written straight to the file, so none of the tree may
+     * be cached in the BufferPool while it is loaded.
+     *
+     * @param sorted the tuples, sorted by key
+     * @throws DbException if the tree is not empty or the tuples are not
+     *     sorted or do not match the schema of the tree
+     */
+    public synchronized void bulkLoad(Iterator<Tuple> sorted) throws DbException, IOException {
+        BTreePageId firstLeaf = new BTreePageId(getId(), 1, BTreePageId.LEAF);
+        if (numPages() != 2 || ((BTreeLeafPage) readPage(firstLeaf)).getNumTuples() != 0) {
+            throw new DbException("bulk load needs an empty tree");
+        }
+        int pageSize = getPageSize();
+        int perLeaf = Math.max(1,
+                (int) (BTreeLeafPage.maxTuples(pageSize, td) * BULK_LOAD_FILL));
+        int perInternal = Math.max(2, (int) ((BTreeInternalPage.maxKeys(pageSize,
+                td.getFieldType(keyField)) + 1) * BULK_LOAD_FILL));
+
+        // the pages of the level being built, with the smallest key under each
+        List<BTreePage> level = new ArrayList<BTreePage>();
+        List<Field> lowKeys = new ArrayList<Field>();
+        int pgNo = 1;
+        BTreeLeafPage leaf = null;
+        Field last = null;
+        while (sorted.hasNext()) {
+            Tuple t = sorted.next();
+            Field key = t.getField(keyField);
+            if (last != null && key.compare(Predicate.Op.LESS_THAN, last)) {
+                throw new DbException("tuples are not sorted by key: " + key + " after " + last);
+            }
+            last = key;
+            if (leaf == null || leaf.getNumTuples() == perLeaf) {
+                BTreeLeafPage next = new BTreeLeafPage(
+                        new BTreePageId(getId(), pgNo++, BTreePageId.LEAF),
+                        BTreeLeafPage.createEmptyPageData(pageSize), td, keyField);
+                if (leaf != null) {
+                    leaf.setRightSiblingId(next.getId());
+                    next.setLeftSiblingId(leaf.getId());
+                }
+                level.add(next);
+                lowKeys.add(key);
+                leaf = next;
+            }
+            leaf.insertTuple(t);
+        }
+        if (level.isEmpty()) {
+            return;
+        }
+
+        while (level.size() > 1) {
+            List<BTreePage> parents = new ArrayList<BTreePage>();
+            List<Field> parentLowKeys = new ArrayList<Field>();
+            BTreeInternalPage parent = null;
+            for (int i = 0; i < level.size(); i++) {
+                BTreePage child = level.get(i);
+                if (parent == null || parent.getNumChildren() == perInternal) {
+                    parent = new BTreeInternalPage(
+                            new BTreePageId(getId(), pgNo++, BTreePageId.INTERNAL),
+                            BTreeLeafPage.createEmptyPageData(pageSize), td, keyField);
+                    parent.setOnlyChild(child.getId());
+                    parents.add(parent);
+                    parentLowKeys.add(lowKeys.get(i));
+                } else {
+                    parent.insertEntry(parent.getNumKeys(), lowKeys.get(i), child.getId());
+                }
+                child.setParentId(parent.getId());
+                writePage(child);
+            }
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+        writePage(level.get(0));
+
+        BTreeRootPtrPage rootPtr = new BTreeRootPtrPage(rootPtrId(),
+                BTreeRootPtrPage.createPageData(pageSize, 1));
+        rootPtr.setRootId(level.get(0).getId());
+        writePage(rootPtr);
+    }
+
+    /** @return the id of the root pointer page of this file */
+    private BTreePageId rootPtrId() {
+        return BTreeRootPtrPage.getId(getId());
+    }
+
+    /**
+     * Find the leftmost leaf that may hold the given key, descending from
+     * the given page.
+     *
+     * @param pid the page to start from, the root for a whole search
+     * @param perm the permissions to get the leaf with; the internal pages
+     *     on the way are read only
+     * @param key the key to look for, or null for the leftmost leaf
+     */
+    BTreeLeafPage findLeafPage(TransactionId tid, Map<PageId, Page> dirtypages,
+                               BTreePageId pid, Permissions perm, Field key)
+            throws DbException, TransactionAbortedException {
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) PagedFile.getPage(tid, dirtypages, pid,
+                    Permissions.READ_ONLY);
+            pid = page.getChildId(page.findChild(key));
+        }
+        return (BTreeLeafPage) PagedFile.getPage(tid, dirtypages, pid, perm);
+    }
+
+    /** @return the id of the root of the tree */
+    private BTreePageId rootId(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, TransactionAbortedException {
+        return ((BTreeRootPtrPage) PagedFile.getPage(tid, dirtypages, rootPtrId(),
+                Permissions.READ_ONLY)).getRootId();
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        Map<PageId, Page> dirtypages = new LinkedHashMap<PageId, Page>();
+        Field key = t.getField(keyField);
+        BTreeLeafPage leaf = findLeafPage(tid, dirtypages, rootId(tid, dirtypages),
+                Permissions.READ_WRITE, key);
+        if (leaf.isFull()) {
+            leaf = splitLeafPage(tid, dirtypages, leaf, key);
+        }
+        leaf.insertTuple(t);
+        return new ArrayList<Page>(dirtypages.values());
+    }
+
+    /**
+     * Split a full leaf, moving the upper half of its tuples to a new leaf
+     * to its right, and add the new leaf to the parent, splitting the
+     * parent in turn if it is full.
+     *
+     * @param key the key of the tuple being inserted
+     * @return the half the tuple belongs on
+     */
+    private BTreeLeafPage splitLeafPage(TransactionId tid, Map<PageId, Page> dirtypages,
+                                        BTreeLeafPage page, Field key)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeLeafPage right = (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+        page.moveUpperHalfTo(right);
+
+        BTreePageId oldRight = page.getRightSiblingId();
+        if (oldRight != null) {
+            BTreeLeafPage next = (BTreeLeafPage) PagedFile.getPage(tid, dirtypages, oldRight,
+                    Permissions.READ_WRITE);
+            next.setLeftSiblingId(right.getId());
+        }
+        right.setRightSiblingId(oldRight);
+        right.setLeftSiblingId(page.getId());
+        page.setRightSiblingId(right.getId());
+
+        Field separator = right.getKey(0);
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages,
+                page.getParentId(), page.getId());
+        parent.insertEntry(parent.indexOfChild(page.getId()), separator, right.getId());
+        page.setParentId(parent.getId());
+        right.setParentId(parent.getId());
+
+        return key.compare(Predicate.Op.GREATER_THAN, separator) ? right : page;
+    }
+
+    /**
+     * Split a full internal page, moving the upper half of its entries to a
+     * new page to its right and the middle key up into the parent.
+     *
+     * @param child the child of the page an entry is about to be added for
+     * @return the half that child is on after the split
+     */
+    private BTreeInternalPage splitInternalPage(TransactionId tid, Map<PageId, Page> dirtypages,
+                                                BTreeInternalPage page, BTreePageId child)
+            throws DbException, IOException, TransactionAbortedException {
+        boolean childMoves = page.indexOfChild(child) > page.getNumKeys() / 2;
+        BTreeInternalPage right = (BTreeInternalPage) getEmptyPage(tid, dirtypages,
+                BTreePageId.INTERNAL);
+        Field up = page.moveUpperHalfTo(right);
+        for (int i = 0; i < right.getNumChildren(); i++) {
+            BTreePage moved = (BTreePage) PagedFile.getPage(tid, dirtypages, right.getChildId(i),
+                    Permissions.READ_WRITE);
+            moved.setParentId(right.getId());
+        }
+
+        BTreeInternalPage parent = getParentWithEmptySlots(tid, dirtypages,
+                page.getParentId(), page.getId());
+        parent.insertEntry(parent.indexOfChild(page.getId()), up, right.getId());
+        page.setParentId(parent.getId());
+        right.setParentId(parent.getId());
+        return childMoves ? right : page;
+    }
+
+    /**
+     * Get the parent of a page that is about to be split, ready to take one
+     * more entry: a full parent is split, and the root gets a new parent,
+     * which becomes the root, with the page as its only child so far.
+     *
+     * @param parentId the id of the parent, the root pointer page for the root
+     * @param child the page that is about to be split
+     */
+    private BTreeInternalPage getParentWithEmptySlots(TransactionId tid,
+                                                      Map<PageId, Page> dirtypages,
+                                                      BTreePageId parentId, BTreePageId child)
+            throws DbException, IOException, TransactionAbortedException {
+        if (parentId.pgcateg() == BTreePageId.ROOT_PTR) {
+            BTreeInternalPage root = (BTreeInternalPage) getEmptyPage(tid, dirtypages,
+                    BTreePageId.INTERNAL);
+            root.setOnlyChild(child);
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) PagedFile.getPage(tid, dirtypages,
+                    parentId, Permissions.READ_WRITE);
+            rootPtr.setRootId(root.getId());
+            return root;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) PagedFile.getPage(tid, dirtypages, parentId,
+                Permissions.READ_WRITE);
+        if (parent.isFull()) {
+            parent = splitInternalPage(tid, dirtypages, parent, child);
+        }
+        return parent;
+    }
+
+    /**
+     * Removes the specified tuple from its leaf. An emptied leaf is left in
+     * place: freeing it modifies more pages than the one this method
+     * returns, so only {@link #deleteTuples}, which BufferPool uses, does.
+     */
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        return removeTuple(tid, new LinkedHashMap<PageId, Page>(), t);
+    }
+
+    /**
+     * Removes the specified tuples from the tree, freeing the leaves they
+     * leave empty and any internal pages that lose their last child.
+     */
+    public synchronized ArrayList<Page> deleteTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, TransactionAbortedException {
+        Map<PageId, Page> dirtypages = new LinkedHashMap<PageId, Page>();
+        try {
+            for (Tuple t : tuples) {
+                BTreeLeafPage leaf = removeTuple(tid, dirtypages, t);
+                // the only leaf of the tree stays, even when empty
+                if (leaf.getNumTuples() == 0 && (leaf.getLeftSiblingId() != null
+                        || leaf.getRightSiblingId() != null)) {
+                    removeLeaf(tid, dirtypages, leaf);
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("unable to free a page of " + f.getAbsolutePath() + ": "
+                    + e.getMessage());
+        }
+        return new ArrayList<Page>(dirtypages.values());
+    }
+
+    /**
+     * Find the tuple among those with its key and remove it from its leaf.
+     *
+     * @return the leaf the tuple was on
+     * @throws DbException if the tuple is not in the tree
+     */
+    private BTreeLeafPage removeTuple(TransactionId tid, Map<PageId, Page> dirtypages, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not in this table");
+        }
+        Field key = t.getField(keyField);
+        BTreeLeafPage leaf = findLeafPage(tid, dirtypages, rootId(tid, dirtypages),
+                Permissions.READ_WRITE, key);
+        int i = leaf.lowerBound(key);
+        while (true) {
+            if (i == leaf.getNumTuples()) {
+                BTreePageId next = leaf.getRightSiblingId();
+                if (next == null) {
+                    break;
+                }
+                leaf = (BTreeLeafPage) PagedFile.getPage(tid, dirtypages, next,
+                        Permissions.READ_WRITE);
+                i = 0;
+                continue;
+            }
+            if (!leaf.getKey(i).equals(key)) {
+                break;
+            }
+            if (PagedFile.sameFields(leaf.getTuple(i), t)) {
+                leaf.deleteTuple(i);
+                return leaf;
+            }
+            i++;
+        }
+        throw new DbException("tuple is not in this table");
+    }
+
+    /** Unlink an empty leaf from its siblings and free it. */
+    private void removeLeaf(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leaf)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreePageId left = leaf.getLeftSiblingId();
+        BTreePageId right = leaf.getRightSiblingId();
+        if (left != null) {
+            ((BTreeLeafPage) PagedFile.getPage(tid, dirtypages, left, Permissions.READ_WRITE))
+                    .setRightSiblingId(right);
+        }
+        if (right != null) {
+            ((BTreeLeafPage) PagedFile.getPage(tid, dirtypages, right, Permissions.READ_WRITE))
+                    .setLeftSiblingId(left);
+        }
+        removeFromParent(tid, dirtypages, leaf);
+    }
+
+    /**
+     * Free a page and remove it from its parent. A parent left without
+     * children is freed in turn, and a root left with one child hands the
+     * root over to that child. The page is never the last leaf of the tree,
+     * so some ancestor keeps a child.
+     */
+    private void removeFromParent(TransactionId tid, Map<PageId, Page> dirtypages, BTreePage page)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage parent = (BTreeInternalPage) PagedFile.getPage(tid, dirtypages,
+                page.getParentId(), Permissions.READ_WRITE);
+        freePage(tid, dirtypages, page.getId());
+        if (parent.getNumKeys() == 0) {
+            removeFromParent(tid, dirtypages, parent);
+            return;
+        }
+        parent.removeChild(parent.indexOfChild(page.getId()));
+        BTreeInternalPage root = parent;
+        while (root.getNumKeys() == 0
+                && root.getParentId().pgcateg() == BTreePageId.ROOT_PTR) {
+            BTreePage child = (BTreePage) PagedFile.getPage(tid, dirtypages, root.getChildId(0),
+                    Permissions.READ_WRITE);
+            child.setParentId(rootPtrId());
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) PagedFile.getPage(tid, dirtypages,
+                    rootPtrId(), Permissions.READ_WRITE);
+            rootPtr.setRootId(child.getId());
+            freePage(tid, dirtypages, root.getId());
+            if (!(child instanceof BTreeInternalPage)) {
+                break;
+            }
+            root = (BTreeInternalPage) child;
+        }
+    }
+
+    /**
+     * Get a new, empty page of the given category for the operation: a
+     * page freed earlier if there is one, else one appended to the file.
+     * The page is added to the pages the operation dirtied.
+     */
+    private BTreePage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int category)
+            throws DbException, IOException, TransactionAbortedException {
+        int pgNo = takeFreePage(tid, dirtypages);
+        if (pgNo < 0) {
+            pgNo = pages.appendPage();
+        }
+        BTreePageId pid = new BTreePageId(getId(), pgNo, category);
+        // a freed page may still be cached with its old contents and category
+        Database.getBufferPool().discardPage(pid);
+        dirtypages.remove(pid);
+        byte[] data = BTreeLeafPage.createEmptyPageData(getPageSize());
+        BTreePage page = category == BTreePageId.LEAF
+                ? new BTreeLeafPage(pid, data, td, keyField)
+                : new BTreeInternalPage(pid, data, td, keyField);
+        dirtypages.put(pid, page);
+        return page;
+    }
+
+    /**
+     * Find a free page on the header pages and mark it in use.
+     *
+     * @return its page number, or -1 if no page is free
+     */
+    private int takeFreePage(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, TransactionAbortedException {
+        int slots = BTreeHeaderPage.slotsPerPage(getPageSize());
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) PagedFile.getPage(tid, dirtypages,
+                rootPtrId(), Permissions.READ_ONLY);
+        BTreePageId headerId = rootPtr.getHeaderId();
+        for (int base = 0; headerId != null; base += slots) {
+            BTreeHeaderPage headerPage = (BTreeHeaderPage) PagedFile.getPage(tid, dirtypages,
+                    headerId, Permissions.READ_ONLY);
+            int slot = headerPage.getEmptySlot();
+            if (slot >= 0) {
+                headerPage = (BTreeHeaderPage) PagedFile.getPage(tid, dirtypages, headerId,
+                        Permissions.READ_WRITE);
+                headerPage.markSlotUsed(slot, true);
+                return base + slot;
+            }
+            headerId = headerPage.getNextPageId();
+        }
+        return -1;
+    }
+
+    /**
+     * Free a page: drop it from the BufferPool and the operation, and mark
+     * it free on its header page, creating header pages as far as needed.
+     */
+    private void freePage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid)
+            throws DbException, IOException, TransactionAbortedException {
+        Database.getBufferPool().discardPage(pid);
+        dirtypages.remove(pid);
+
+        int slots = BTreeHeaderPage.slotsPerPage(getPageSize());
+        Page previous = PagedFile.getPage(tid, dirtypages, rootPtrId(), Permissions.READ_ONLY);
+        BTreePageId headerId = ((BTreeRootPtrPage) previous).getHeaderId();
+        for (int base = 0; ; base += slots) {
+            BTreeHeaderPage headerPage;
+            if (headerId == null) {
+                headerId = new BTreePageId(getId(), pages.appendPage(), BTreePageId.HEADER);
+                headerPage = new BTreeHeaderPage(headerId, new byte[getPageSize()]);
+                headerPage.init();
+                Database.getBufferPool().discardPage(headerId);
+                dirtypages.put(headerId, headerPage);
+                previous = PagedFile.getPage(tid, dirtypages, (BTreePageId) previous.getId(),
+                        Permissions.READ_WRITE);
+                if (previous instanceof BTreeRootPtrPage) {
+                    ((BTreeRootPtrPage) previous).setHeaderId(headerId);
+                } else {
+                    ((BTreeHeaderPage) previous).setNextPageId(headerId);
+                }
+            } else {
+                headerPage = (BTreeHeaderPage) PagedFile.getPage(tid, dirtypages, headerId,
+                        Permissions.READ_ONLY);
+            }
+            if (pid.pageNumber() < base + slots) {
+                headerPage = (BTreeHeaderPage) PagedFile.getPage(tid, dirtypages, headerId,
+                        Permissions.READ_WRITE);
+                headerPage.markSlotUsed(pid.pageNumber() - base, false);
+                return;
+            }
+            previous = headerPage;
+            headerId = headerPage.getNextPageId();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the file whose keys satisfy the
+     * given predicate, in key order. Only the leaves that may hold such
+     * tuples are read.
+     *
+     * @param ipred the predicate on the key field; its operator must be one
+     *     of those {@link IndexPredicate#isRangeOp} accepts
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        if (!IndexPredicate.isRangeOp(ipred.getOp())) {
+            throw new IllegalArgumentException("a B+ tree cannot answer " + ipred);
+        }
+        return new BTreeFileIterator(tid, ipred);
+    }
+
+    /**
+     * Walks the leaves from left to right, from the first that may hold a
+     * match to the last.
+     */
+    private class BTreeFileIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+        private BTreeLeafPage leaf;
+        private int pos;
+        private Tuple next;
+
+        BTreeFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            Field start = null;
+            if (ipred != null && (ipred.getOp() == Predicate.Op.EQUALS
+                    || ipred.getOp() == Predicate.Op.GREATER_THAN
+                    || ipred.getOp() == Predicate.Op.GREATER_THAN_OR_EQ)) {
+                start = ipred.getField();
+            }
+            Map<PageId, Page> none = Collections.emptyMap();
+            leaf = findLeafPage(tid, none, rootId(tid, none), Permissions.READ_ONLY, start);
+            pos = start == null ? 0 : leaf.lowerBound(start);
+            next = null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null && leaf != null) {
+                if (pos == leaf.getNumTuples()) {
+                    BTreePageId right = leaf.getRightSiblingId();
+                    leaf = right == null ? null : (BTreeLeafPage) Database.getBufferPool()
+                            .getPage(tid, right, Permissions.READ_ONLY);
+                    pos = 0;
+                    continue;
+                }
+                Tuple t = leaf.getTuple(pos++);
+                if (ipred == null || ipred.matches(t.getField(keyField))) {
+                    next = t;
+                } else if (pastLastMatch()) {
+                    leaf = null;
+                }
+            }
+            return next != null;
+        }
+
+        /** @return true if no tuple after a non-matching one can match */
+        private boolean pastLastMatch() {
+            Predicate.Op op = ipred.getOp();
+            return op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN
+                    || op == Predicate.Op.LESS_THAN_OR_EQ;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            leaf = null;
+            next = null;
+        }
+    }
+}
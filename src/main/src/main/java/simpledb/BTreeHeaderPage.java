@@ -0,0 +1,118 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A header page of a BTreeFile. Header pages form a chain from the root
+ * pointer page, and together hold one bit per page of the file, set if the
+ * page is in use: the k-th header page of the chain covers the
+ * {@link #slotsPerPage} pages from k times that number on. Pages freed by
+ * deletes are found here when the tree needs a new page, so that the file
+ * does not only grow.
+ * <p>
+ * Header pages are only created once a page is first freed. A page no
+ * header page covers is in use.
+ * <p>
+ * The page holds the page number of the next header page, 0 for none,
+ * followed by the bitmap.
+ */
+public class BTreeHeaderPage implements Page {
+
+    private static final int HEADER_SIZE = 4;
+
+    private final BTreePageId pid;
+    private final byte[] data;
+
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    /** Create a header page from its image. */
+    public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.data = data.clone();
+        this.oldData = data.clone();
+    }
+
+    /** @return the number of pages a header page of the given size covers */
+    public static int slotsPerPage(int pageSize) {
+        return (pageSize - HEADER_SIZE) * 8;
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /** @return the id of the next header page, or null if this is the last */
+    public BTreePageId getNextPageId() {
+        int next = ByteBuffer.wrap(data).getInt(0);
+        return next == 0 ? null : new BTreePageId(pid.getTableId(), next, BTreePageId.HEADER);
+    }
+
+    public void setNextPageId(BTreePageId id) {
+        ByteBuffer.wrap(data).putInt(0, id == null ? 0 : id.pageNumber());
+    }
+
+    /** @return true if the i-th page this header covers is in use */
+    public boolean isSlotUsed(int i) {
+        return (data[HEADER_SIZE + i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    public void markSlotUsed(int i, boolean used) {
+        if (used) {
+            data[HEADER_SIZE + i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            data[HEADER_SIZE + i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * Mark all pages this header covers as in use, as they are before any of
+     * them is freed. Pages past the end of the file count as in use too:
+     * the file grows by appending, not by taking them from a header page.
+     */
+    void init() {
+        for (int b = HEADER_SIZE; b < data.length; b++) {
+            data[b] = (byte) 0xff;
+        }
+    }
+
+    /** @return the index of the first free page this header covers, or -1 */
+    public int getEmptySlot() {
+        for (int b = HEADER_SIZE; b < data.length; b++) {
+            if (data[b] != (byte) 0xff) {
+                for (int i = 0; i < 8; i++) {
+                    if ((data[b] & (1 << i)) == 0) {
+                        return (b - HEADER_SIZE) * 8 + i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public BTreeHeaderPage getBeforeImage() {
+        try {
+            return new BTreeHeaderPage(pid, oldData);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        oldData = data.clone();
+    }
+}
@@ -0,0 +1,246 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.NoSuchElementException;
+
+/**
+ * An internal page of a BTreeFile. It holds n sorted keys and n + 1 child
+ * pointers; all children of a page are of the same kind, either leaves or
+ * internal pages. Child i holds the keys from key i - 1 to key i, both
+ * inclusive since keys need not be unique, so a search for a key goes to
+ * the leftmost child that may hold it.
+ * <p>
+ * The page starts with three ints: the parent page number, 0 for the root,
+ * the number of keys and the category of the children. The keys follow,
+ * then the child page numbers.
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private static final int HEADER_SIZE = PARENT_SIZE + 8;
+
+    private int numKeys;
+    private int childCategory;
+    private final Field[] keys;
+    private final int[] children;
+
+    /**
+     * Create an internal page from its image, for a tree registered in the
+     * catalog. Used by the log to rebuild before images.
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, fileOf(id).getTupleDesc(), fileOf(id).keyField());
+    }
+
+    /**
+     * Create an internal page from its image.
+     *
+     * @param data the page image, which is as long as a page of the tree
+     * @throws IOException if the image is not a valid internal page
+     */
+    BTreeInternalPage(BTreePageId id, byte[] data, TupleDesc td, int keyField)
+            throws IOException {
+        super(id, td, keyField, data.length);
+        Type keyType = td.getFieldType(keyField);
+        int maxKeys = maxKeys(data.length, keyType);
+        this.keys = new Field[maxKeys];
+        this.children = new int[maxKeys + 1];
+        PageReader r = reader(data);
+        parent = r.getInt(0);
+        numKeys = r.getInt(4);
+        childCategory = r.getInt(8);
+        if (numKeys < 0 || numKeys > maxKeys) {
+            throw new IOException(id + " has an invalid key count " + numKeys);
+        }
+        if (childCategory == 0) {
+            // a new, all-zero page
+            childCategory = BTreePageId.LEAF;
+        }
+        try {
+            for (int i = 0; i < numKeys; i++) {
+                keys[i] = r.readField(keyType, HEADER_SIZE + i * keyType.getLen());
+            }
+        } catch (ParseException e) {
+            throw new IOException(id + " is corrupt: " + e.getMessage());
+        }
+        int childOffset = HEADER_SIZE + maxKeys * keyType.getLen();
+        for (int i = 0; i <= numKeys; i++) {
+            children[i] = r.getInt(childOffset + 4 * i);
+        }
+        setBeforeImageData(data);
+    }
+
+    /** @return the number of keys an internal page of the given size holds */
+    static int maxKeys(int pageSize, Type keyType) {
+        return (pageSize - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+    }
+
+    public byte[] getPageData() {
+        PageWriter w = new PageWriter(ByteBuffer.allocate(pageSize));
+        w.putInt(0, parent);
+        w.putInt(4, numKeys);
+        w.putInt(8, childCategory);
+        int keyLen = getKeyType().getLen();
+        for (int i = 0; i < numKeys; i++) {
+            w.writeField(keys[i], HEADER_SIZE + i * keyLen);
+        }
+        int childOffset = HEADER_SIZE + keys.length * keyLen;
+        for (int i = 0; i <= numKeys; i++) {
+            w.putInt(childOffset + 4 * i, children[i]);
+        }
+        return w.getBuffer().array();
+    }
+
+    public BTreeInternalPage getBeforeImage() {
+        try {
+            return new BTreeInternalPage(pid, getBeforeImageData(), td, keyField);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return the number of keys on this page; it has one more child */
+    public int getNumKeys() {
+        return numKeys;
+    }
+
+    /** @return the number of keys this page has room for */
+    public int getMaxKeys() {
+        return keys.length;
+    }
+
+    public boolean isFull() {
+        return numKeys == keys.length;
+    }
+
+    /** @return the i-th key of the page */
+    public Field getKey(int i) {
+        if (i < 0 || i >= numKeys) {
+            throw new NoSuchElementException("no key " + i + " on " + pid);
+        }
+        return keys[i];
+    }
+
+    /** @return the id of the i-th child of the page */
+    public BTreePageId getChildId(int i) {
+        if (i < 0 || i > numKeys) {
+            throw new NoSuchElementException("no child " + i + " on " + pid);
+        }
+        return new BTreePageId(pid.getTableId(), children[i], childCategory);
+    }
+
+    /** @return the category of the children of this page, LEAF or INTERNAL */
+    public int getChildCategory() {
+        return childCategory;
+    }
+
+    /**
+     * Make this page, which must have no keys, the parent of a single child.
+     * Used for a new root.
+     */
+    void setOnlyChild(BTreePageId child) {
+        numKeys = 0;
+        children[0] = child.pageNumber();
+        childCategory = child.pgcateg();
+    }
+
+    /**
+     * @return the index of the leftmost child that may hold the given key,
+     *     or of the leftmost child if the key is null
+     */
+    public int findChild(Field key) {
+        if (key == null) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = numKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the given child page
+     * @throws NoSuchElementException if it is not a child of this page
+     */
+    public int indexOfChild(BTreePageId child) {
+        for (int i = 0; i <= numKeys; i++) {
+            if (children[i] == child.pageNumber()) {
+                return i;
+            }
+        }
+        throw new NoSuchElementException(child + " is not a child of " + pid);
+    }
+
+    /**
+     * Insert a key and a child to its right just after the given child,
+     * which was split in two at the key.
+     *
+     * @param index the index of the child that was split
+     * @throws DbException if the page is full
+     */
+    public void insertEntry(int index, Field key, BTreePageId rightChild) throws DbException {
+        if (isFull()) {
+            throw new DbException(pid + " is full");
+        }
+        System.arraycopy(keys, index, keys, index + 1, numKeys - index);
+        System.arraycopy(children, index + 1, children, index + 2, numKeys - index);
+        keys[index] = key;
+        children[index + 1] = rightChild.pageNumber();
+        numKeys++;
+    }
+
+    /**
+     * Remove the i-th child together with the key separating it from a
+     * neighbour, its left one if it has one.
+     *
+     * @throws DbException if the child is the only one of this page
+     */
+    public void removeChild(int i) throws DbException {
+        if (i < 0 || i > numKeys) {
+            throw new NoSuchElementException("no child " + i + " on " + pid);
+        }
+        if (numKeys == 0) {
+            throw new DbException("cannot remove the only child of " + pid);
+        }
+        int key = i > 0 ? i - 1 : 0;
+        System.arraycopy(keys, key + 1, keys, key, numKeys - key - 1);
+        keys[numKeys - 1] = null;
+        System.arraycopy(children, i + 1, children, i, numKeys - i);
+        numKeys--;
+    }
+
+    /** @return the number of children of this page */
+    public int getNumChildren() {
+        return numKeys + 1;
+    }
+
+    /**
+     * Move the upper half of the entries of this full page to an empty page,
+     * which becomes its right sibling. The middle key moves up: it is
+     * returned for the caller to insert into the parent and kept on neither
+     * page.
+     */
+    Field moveUpperHalfTo(BTreeInternalPage right) {
+        int mid = numKeys / 2;
+        Field up = keys[mid];
+        int moved = numKeys - mid - 1;
+        System.arraycopy(keys, mid + 1, right.keys, 0, moved);
+        System.arraycopy(children, mid + 1, right.children, 0, moved + 1);
+        right.numKeys = moved;
+        right.childCategory = childCategory;
+        for (int i = mid; i < numKeys; i++) {
+            keys[i] = null;
+        }
+        numKeys = mid;
+        return up;
+    }
+}
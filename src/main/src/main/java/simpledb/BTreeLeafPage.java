@@ -0,0 +1,238 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A leaf page of a BTreeFile. It holds tuples sorted by the key field of the
+ * tree, tuples with equal keys in the order they were inserted, and links
+ * to its left and right siblings so that range scans can walk the leaves in
+ * key order.
+ * <p>
+ * The page starts with four ints: the parent, left sibling and right
+ * sibling page numbers, 0 for none, and the number of tuples. The tuples
+ * follow, packed, in key order.
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private static final int HEADER_SIZE = PARENT_SIZE + 12;
+
+    private int leftSibling;
+    private int rightSibling;
+    private int numTuples;
+    private final Tuple[] tuples;
+
+    /**
+     * Create a leaf page from its image, for a tree registered in the
+     * catalog. Used by the log to rebuild before images.
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, fileOf(id).getTupleDesc(), fileOf(id).keyField());
+    }
+
+    /**
+     * Create a leaf page from its image.
+     *
+     * @param data the page image, which is as long as a page of the tree
+     * @throws IOException if the image is not a valid leaf page
+     */
+    BTreeLeafPage(BTreePageId id, byte[] data, TupleDesc td, int keyField) throws IOException {
+        super(id, td, keyField, data.length);
+        this.tuples = new Tuple[maxTuples(data.length, td)];
+        PageReader r = reader(data);
+        parent = r.getInt(0);
+        leftSibling = r.getInt(4);
+        rightSibling = r.getInt(8);
+        numTuples = r.getInt(12);
+        if (numTuples < 0 || numTuples > tuples.length) {
+            throw new IOException(id + " has an invalid tuple count " + numTuples);
+        }
+        try {
+            for (int i = 0; i < numTuples; i++) {
+                tuples[i] = r.readTuple(td, HEADER_SIZE + i * td.getSize());
+            }
+        } catch (ParseException e) {
+            throw new IOException(id + " is corrupt: " + e.getMessage());
+        }
+        setBeforeImageData(data);
+    }
+
+    /** @return the number of tuples a leaf page of the given size holds */
+    static int maxTuples(int pageSize, TupleDesc td) {
+        return (pageSize - HEADER_SIZE) / td.getSize();
+    }
+
+    /** @return an empty leaf page image of the given size */
+    static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize];
+    }
+
+    public byte[] getPageData() {
+        PageWriter w = new PageWriter(ByteBuffer.allocate(pageSize));
+        w.putInt(0, parent);
+        w.putInt(4, leftSibling);
+        w.putInt(8, rightSibling);
+        w.putInt(12, numTuples);
+        for (int i = 0; i < numTuples; i++) {
+            w.writeTuple(tuples[i], td, HEADER_SIZE + i * td.getSize());
+        }
+        return w.getBuffer().array();
+    }
+
+    public BTreeLeafPage getBeforeImage() {
+        try {
+            return new BTreeLeafPage(pid, getBeforeImageData(), td, keyField);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    /** @return the number of tuples this page has room for */
+    public int getMaxTuples() {
+        return tuples.length;
+    }
+
+    public boolean isFull() {
+        return numTuples == tuples.length;
+    }
+
+    /** @return the i-th tuple of the page in key order */
+    public Tuple getTuple(int i) {
+        if (i < 0 || i >= numTuples) {
+            throw new NoSuchElementException("no tuple " + i + " on " + pid);
+        }
+        Tuple t = tuples[i];
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    /** @return the key of the i-th tuple of the page */
+    public Field getKey(int i) {
+        return tuples[i].getField(keyField);
+    }
+
+    /** @return the id of the left sibling, or null if this is the leftmost leaf */
+    public BTreePageId getLeftSiblingId() {
+        return leftSibling == 0 ? null
+                : new BTreePageId(pid.getTableId(), leftSibling, BTreePageId.LEAF);
+    }
+
+    /** @return the id of the right sibling, or null if this is the rightmost leaf */
+    public BTreePageId getRightSiblingId() {
+        return rightSibling == 0 ? null
+                : new BTreePageId(pid.getTableId(), rightSibling, BTreePageId.LEAF);
+    }
+
+    public void setLeftSiblingId(BTreePageId id) {
+        leftSibling = id == null ? 0 : id.pageNumber();
+    }
+
+    public void setRightSiblingId(BTreePageId id) {
+        rightSibling = id == null ? 0 : id.pageNumber();
+    }
+
+    /**
+     * @return the index of the first tuple whose key is greater than the
+     *     given key, i.e. where a tuple with that key is inserted
+     */
+    int upperBound(Field key) {
+        int lo = 0;
+        int hi = numTuples;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.GREATER_THAN, key)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /** @return the index of the first tuple whose key is not less than the given key */
+    int lowerBound(Field key) {
+        int lo = 0;
+        int hi = numTuples;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Insert a tuple after the tuples with keys less than or equal to its own.
+     *
+     * @throws DbException if the page is full or the tuple does not match
+     *     the schema of the tree
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        if (isFull()) {
+            throw new DbException(pid + " is full");
+        }
+        int pos = upperBound(t.getField(keyField));
+        System.arraycopy(tuples, pos, tuples, pos + 1, numTuples - pos);
+        tuples[pos] = t;
+        numTuples++;
+        t.setRecordId(new RecordId(pid, pos));
+    }
+
+    /** Remove the i-th tuple of the page. */
+    public void deleteTuple(int i) {
+        if (i < 0 || i >= numTuples) {
+            throw new NoSuchElementException("no tuple " + i + " on " + pid);
+        }
+        System.arraycopy(tuples, i + 1, tuples, i, numTuples - i - 1);
+        tuples[--numTuples] = null;
+    }
+
+    /**
+     * Move the upper half of the tuples of this full page to an empty page,
+     * which becomes its right sibling in key order; the caller links the
+     * sibling pointers.
+     */
+    void moveUpperHalfTo(BTreeLeafPage right) {
+        int keep = numTuples / 2;
+        int moved = numTuples - keep;
+        System.arraycopy(tuples, keep, right.tuples, 0, moved);
+        right.numTuples = moved;
+        for (int i = keep; i < numTuples; i++) {
+            tuples[i] = null;
+        }
+        numTuples = keep;
+    }
+
+    /** @return an iterator over the tuples of this page in key order */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < numTuples;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getTuple(next++);
+            }
+        };
+    }
+}
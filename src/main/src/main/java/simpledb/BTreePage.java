@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreePage holds what the internal and leaf pages of a BTreeFile have in
+ * common: the schema and key field of the tree, the parent pointer that
+ * every node page starts with, and the dirty flag and before image every
+ * Page keeps.
+ * <p>
+ * Node pages are decoded into plain arrays when they are read and encoded
+ * again by {@link #getPageData}, so lookups and updates work on decoded
+ * fields rather than on the page image.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+    /** Bytes taken by the parent pointer at the start of every node page */
+    static final int PARENT_SIZE = 4;
+
+    protected final BTreePageId pid;
+    protected final TupleDesc td;
+    protected final int keyField;
+    protected final int pageSize;
+    /** Page number of the parent, or 0 if this page is the root */
+    protected int parent;
+
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    BTreePage(BTreePageId pid, TupleDesc td, int keyField, int pageSize) {
+        this.pid = pid;
+        this.td = td;
+        this.keyField = keyField;
+        this.pageSize = pageSize;
+    }
+
+    /** @return the BTreeFile a page of the given id belongs to, from the catalog */
+    static BTreeFile fileOf(BTreePageId pid) throws IOException {
+        DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+        if (!(file instanceof BTreeFile)) {
+            throw new IOException("table " + pid.getTableId() + " is not a B+ tree");
+        }
+        return (BTreeFile) file;
+    }
+
+    /** @return the reader over a page image, checking its size */
+    PageReader reader(byte[] data) throws IOException {
+        if (data.length != pageSize) {
+            throw new IOException(pid + " has " + data.length + " bytes, not " + pageSize);
+        }
+        return new PageReader(ByteBuffer.wrap(data));
+    }
+
+    /** @return the type of the key field of the tree */
+    public Type getKeyType() {
+        return td.getFieldType(keyField);
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the id of the parent of this page: an internal page, or the
+     *     root pointer page if this page is the root
+     */
+    public BTreePageId getParentId() {
+        if (parent == 0) {
+            return BTreeRootPtrPage.getId(pid.getTableId());
+        }
+        return new BTreePageId(pid.getTableId(), parent, BTreePageId.INTERNAL);
+    }
+
+    /** @param id the new parent, or the root pointer page to make this page the root */
+    public void setParentId(BTreePageId id) {
+        parent = id.pgcateg() == BTreePageId.ROOT_PTR ? 0 : id.pageNumber();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /** @return the image of this page as of the last {@link #setBeforeImage} */
+    protected byte[] getBeforeImageData() {
+        return oldData != null ? oldData.clone() : getPageData();
+    }
+
+    /** Make the given image the before image, as it was read from disk. */
+    protected void setBeforeImageData(byte[] data) {
+        oldData = data.clone();
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
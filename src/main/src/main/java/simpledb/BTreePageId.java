@@ -0,0 +1,82 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a BTreeFile. Besides the table and the
+ * page number, the id says what kind of page it names, so that the page can
+ * be decoded without reading it first.
+ * <p>
+ * Two ids are equal if they name the same page of the same table, whatever
+ * their category: a page number is never in use as two kinds of page at
+ * once.
+ */
+public class BTreePageId implements PageId {
+
+    /** The root pointer page, always page 0 of the file */
+    public static final int ROOT_PTR = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+    public static final int HEADER = 3;
+
+    private final int tableId;
+    private final int pgNo;
+    private final int category;
+
+    /**
+     * @param tableId the table the page belongs to
+     * @param pgNo the page number in that table
+     * @param category one of ROOT_PTR, INTERNAL, LEAF and HEADER
+     */
+    public BTreePageId(int tableId, int pgNo, int category) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.category = category;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the page number in the table getTableId() associated with this PageId */
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /** @return the kind of page this id names */
+    public int pgcateg() {
+        return category;
+    }
+
+    public int hashCode() {
+        return 37 * tableId + pgNo;
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof BTreePageId) {
+            BTreePageId target = (BTreePageId) o;
+            return target.tableId == tableId && target.pgNo == pgNo;
+        }
+        return false;
+    }
+
+    public String toString() {
+        String[] names = { "root pointer", "internal", "leaf", "header" };
+        return names[category] + " page " + pgNo + " of table " + tableId;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.  Size of returned array must contain
+     *  number of integers that corresponds to number of args to one of the
+     *  constructors.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+
+        data[0] = tableId;
+        data[1] = pgNo;
+        data[2] = category;
+
+        return data;
+    }
+}
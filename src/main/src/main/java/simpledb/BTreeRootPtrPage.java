@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The root pointer page of a BTreeFile, always its page 0. It records the
+ * page number and category of the root, which changes as the tree grows and
+ * shrinks, and the first of the header pages that track free pages.
+ * <p>
+ * The page holds three ints: the root page number, the root category and
+ * the first header page number, 0 if there is none yet. The rest of the
+ * page is unused.
+ */
+public class BTreeRootPtrPage implements Page {
+
+    private final BTreePageId pid;
+    private final int pageSize;
+    private int root;
+    private int rootCategory;
+    private int header;
+
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    /** Create the root pointer page from its image. */
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.pageSize = data.length;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        root = buf.getInt(0);
+        rootCategory = buf.getInt(4);
+        header = buf.getInt(8);
+        oldData = data.clone();
+    }
+
+    /** @return the id of the root pointer page of the given table */
+    public static BTreePageId getId(int tableId) {
+        return new BTreePageId(tableId, 0, BTreePageId.ROOT_PTR);
+    }
+
+    /** @return the image of the root pointer page of a new tree whose root is the given leaf */
+    static byte[] createPageData(int pageSize, int rootLeaf) {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.putInt(0, rootLeaf);
+        buf.putInt(4, BTreePageId.LEAF);
+        return buf.array();
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /** @return the id of the root page of the tree */
+    public BTreePageId getRootId() {
+        return new BTreePageId(pid.getTableId(), root, rootCategory);
+    }
+
+    public void setRootId(BTreePageId id) {
+        root = id.pageNumber();
+        rootCategory = id.pgcateg();
+    }
+
+    /** @return the id of the first header page, or null if there is none */
+    public BTreePageId getHeaderId() {
+        return header == 0 ? null : new BTreePageId(pid.getTableId(), header, BTreePageId.HEADER);
+    }
+
+    public void setHeaderId(BTreePageId id) {
+        header = id == null ? 0 : id.pageNumber();
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.putInt(0, root);
+        buf.putInt(4, rootCategory);
+        buf.putInt(8, header);
+        return buf.array();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public BTreeRootPtrPage getBeforeImage() {
+        try {
+            return new BTreeRootPtrPage(pid, oldData);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,249 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BackgroundWriter trickles dirty pages of the BufferPool to disk on a
+ * background thread, so that eviction and commit mostly find pages that are
+ * already clean instead of writing them on the query path.
+ * <p>
+ * The writer keeps the fraction of dirty pages in the pool near a target.
+ * Once the pool holds more dirty pages than that, the writer takes the pages
+ * that were dirtied longest ago, until the pool is down to half the target,
+ * and writes them out in batches. Within a batch, pages of the same heap
+ * file with adjacent page numbers are written together in a single write.
+ * The pool wakes the writer when it crosses the target, and the writer also
+ * looks on its own every interval.
+ * <p>
+ * Writing a page before its transaction commits is only safe if the log
+ * holds the change first. The writer therefore appends an update record
+ * with the before and after image of each page of a batch to the
+ * {@link LogFile}, and forces the log, before it writes any of the pages.
+ * Pages are written from the copy taken when they were marked clean, so a
+ * change made while the write is under way dirties the page again rather
+ * than being lost, and a page that leaves the pool during the write is not
+ * read back until the write has finished.
+ * <p>
+ * Attach an instance to a pool with {@link BufferPool#setBackgroundWriter}.
+ */
+public class BackgroundWriter {
+
+    /** Default fraction of the pool that may be dirty before the writer acts. */
+    public static final double DEFAULT_DIRTY_TARGET = 0.1;
+    /** Default time between two looks at the pool, in milliseconds. */
+    public static final long DEFAULT_INTERVAL = 50;
+    /** Default largest number of pages written between two log forces. */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    /** A dirty page taken from the pool, with the images the log needs. */
+    static class PageWrite {
+        final HeapFile file;
+        final TransactionId tid;
+        final Page before;
+        /** The image to write, copied when the page was marked clean */
+        final Page after;
+
+        PageWrite(HeapFile file, TransactionId tid, Page before, Page after) {
+            this.file = file;
+            this.tid = tid;
+            this.before = before;
+            this.after = after;
+        }
+
+        int pageNumber() {
+            return after.getId().pageNumber();
+        }
+    }
+
+    private final BufferPool pool;
+    private final double dirtyTarget;
+    private final long interval;
+    private final int maxBatch;
+    private final Thread thread;
+
+    private boolean wakeUp;
+    private boolean stopped;
+
+    private long pagesWritten;
+    private long writes;
+    private long failures;
+
+    /**
+     * Creates a writer that keeps at most {@link #DEFAULT_DIRTY_TARGET} of
+     * the pool dirty.
+     *
+     * @param pool the buffer pool to write pages from
+     */
+    public BackgroundWriter(BufferPool pool) {
+        this(pool, DEFAULT_DIRTY_TARGET, DEFAULT_INTERVAL, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param pool the buffer pool to write pages from
+     * @param dirtyTarget the fraction of the pool that may be dirty before
+     *     the writer starts writing pages
+     * @param interval the time between two looks at the pool when nobody
+     *     wakes the writer, in milliseconds
+     * @param maxBatch the largest number of pages written per log force
+     */
+    public BackgroundWriter(BufferPool pool, double dirtyTarget, long interval, int maxBatch) {
+        this.pool = pool;
+        this.dirtyTarget = dirtyTarget;
+        this.interval = interval;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.thread = new Thread(this::run, "simpledb-bgwriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** @return the number of dirty pages above which the writer acts */
+    public int getTargetPages() {
+        return (int) (dirtyTarget * pool.getNumPages());
+    }
+
+    /** Called by the buffer pool when it holds more dirty pages than the target. */
+    synchronized void wakeUp() {
+        wakeUp = true;
+        notifyAll();
+    }
+
+    private void run() {
+        try {
+            while (awaitRound()) {
+                try {
+                    writeDirtyPages();
+                } catch (DbException e) {
+                    // the failed batch is counted; its pages are still in the pool
+                    Debug.log("background writer round failed: %s", e.getMessage());
+                } catch (RuntimeException e) {
+                    // keep the thread alive; the pages are still dirty in the pool
+                    synchronized (this) {
+                        failures++;
+                    }
+                    Debug.log("background writer round failed: %s", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // shut down
+        }
+    }
+
+    /** @return false once the writer is shut down */
+    private synchronized boolean awaitRound() throws InterruptedException {
+        if (!wakeUp && !stopped) {
+            wait(interval);
+        }
+        wakeUp = false;
+        return !stopped;
+    }
+
+    /**
+     * If the pool holds more dirty pages than the target, write the pages
+     * that were dirtied longest ago until it is down to half the target.
+     * The writer thread calls this whenever it wakes up.
+     *
+     * @return the number of pages written
+     * @throws DbException if a batch could not be written and some of its
+     *     pages had to be kept beyond the capacity of the pool
+     */
+    public int writeDirtyPages() throws DbException {
+        int low = getTargetPages() / 2;
+        int dirty = pool.getDirtyPageCount();
+        if (dirty <= getTargetPages()) {
+            return 0;
+        }
+        int written = 0;
+        while (dirty > low) {
+            List<PageWrite> batch = pool.takeDirtyPages(Math.min(maxBatch, dirty - low));
+            if (batch.isEmpty() || !write(batch)) {
+                break;
+            }
+            written += batch.size();
+            dirty = pool.getDirtyPageCount();
+        }
+        return written;
+    }
+
+    /**
+     * Log and write a batch of pages, sorted by table and page number, and
+     * hand them back to the pool.
+     *
+     * @return true if every page was written
+     * @throws DbException if the pool had to keep pages of a failed batch
+     *     beyond its capacity
+     */
+    private boolean write(List<PageWrite> batch) throws DbException {
+        boolean ok = false;
+        try {
+            LogFile log = Database.getLogFile();
+            if (log != null) {
+                for (PageWrite w : batch) {
+                    log.logWrite(w.tid, w.before, w.after);
+                }
+                log.force();
+            }
+            int start = 0;
+            while (start < batch.size()) {
+                PageWrite first = batch.get(start);
+                int end = start + 1;
+                while (end < batch.size() && batch.get(end).file == first.file
+                        && batch.get(end).pageNumber() == first.pageNumber() + end - start) {
+                    end++;
+                }
+                List<Page> run = new ArrayList<Page>(end - start);
+                for (PageWrite w : batch.subList(start, end)) {
+                    run.add(w.after);
+                }
+                first.file.writePages(run);
+                synchronized (this) {
+                    writes++;
+                    pagesWritten += run.size();
+                }
+                start = end;
+            }
+            ok = true;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failures++;
+            }
+            Debug.log("background write of %d pages failed: %s", batch.size(), e.getMessage());
+        } finally {
+            pool.writesDone(batch, ok);
+        }
+        return ok;
+    }
+
+    /** @return the number of pages the writer wrote */
+    public synchronized long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    /**
+     * @return the number of writes the pages were written with; less than
+     *     the number of pages when adjacent pages were written together
+     */
+    public synchronized long getWriteCount() {
+        return writes;
+    }
+
+    /** @return the number of batches that could not be written, or rounds that failed */
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    /** Stop the writer thread, waiting briefly for a batch under way. */
+    public void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BloomFilters keeps a Bloom filter of the values of some STRING_TYPE
+ * columns of a HeapFile on each of its pages, so that a scan for tuples
+ * whose column equals a given string can skip the pages whose filter says
+ * the string is not there, without reading them. A filter can wrongly say
+ * a string is on a page, at a rate set when the filters are created, but
+ * never wrongly say it is not.
+ * <p>
+ * Filters are optional: a table has them once they are created, by
+ * {@link BulkLoader#setBloomFilters} as the table is loaded or by
+ * {@link HeapFile#createBloomFilters} for an existing table, and keeps
+ * them in a sidecar file next to the table file. Like the bounds of a
+ * {@link ZoneMap}, the filters only ever take in values: inserts add to
+ * them in memory as tuples are placed on a page, and a page written to
+ * disk adds its contents before its filters are written to the sidecar.
+ * <p>
+ * Opening the filters of a table reads only the header of the sidecar;
+ * the filters themselves are loaded the first time a scan needs them.
+ * Until then, pages written are added in memory only, and the first one
+ * marks the sidecar as describing no pages, so that it is not trusted
+ * should the filters never be loaded. Loading merges what is in memory
+ * into what it reads.
+ * <p>
+ * The sidecar starts with ints giving the number of filtered columns, the
+ * columns, the bits per filter, the number of hash functions and the
+ * number of pages of the table it describes. Then, for each page in order,
+ * come the bits of the filter of each column, as longs. A sidecar that does
+ * not describe the table file is rebuilt from the table file, with the same
+ * columns and sizes, as it is loaded; one whose header makes no sense is
+ * deleted, and the table has no filters.
+ * <p>
+ * Counters of the pages probed, the pages skipped and the pages read that
+ * turned out to hold no match, the false positives, show how well the
+ * filters are sized.
+ *
+ * @see HeapFile#iterator(TransactionId, boolean, List)
+ */
+public class BloomFilters {
+
+    /** The extension of the sidecar file, next to the table file */
+    public static final String EXTENSION = ".bloom";
+
+    /** The false positive rate filters are sized for unless told otherwise */
+    public static final double DEFAULT_FPP = 0.01;
+
+    private final File file;
+    /** the table of filters opened from a sidecar, null for new ones */
+    private final HeapFile heapFile;
+    /** null until the filters are saved or opened */
+    private FileChannel channel;
+    /** the filtered columns */
+    private final int[] fields;
+    private final int bitsPerFilter;
+    private final int numHashes;
+    /** longs of the filters of one page, for all filtered columns */
+    private final int pageWords;
+    private int numPages;
+    private long[] bits;
+    /** the number of pages the sidecar describes, as it was opened */
+    private int storedPages;
+
+    /** whether the filters were loaded, and pages written go to the sidecar */
+    private volatile boolean loaded;
+    /** whether a page written before loading marked the sidecar stale */
+    private boolean staleMarked;
+    private final Object loadLock = new Object();
+
+    private final AtomicLong probedPages = new AtomicLong();
+    private final AtomicLong skippedPages = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * Create empty filters, in memory only until {@link #save} is called.
+     *
+     * @param file the sidecar file
+     * @param fields the STRING_TYPE columns to filter
+     * @param tuplesPerPage the number of tuples a page holds
+     * @param fpp the false positive rate to size the filters for
+     */
+    BloomFilters(File file, int[] fields, int tuplesPerPage, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("false positive rate must be in (0, 1): " + fpp);
+        }
+        int n = Math.max(1, tuplesPerPage);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (ln2 * ln2));
+        this.file = file;
+        this.heapFile = null;
+        this.fields = fields.clone();
+        this.bitsPerFilter = (int) Math.max(64, (m + 63) / 64 * 64);
+        this.numHashes = (int) Math.max(1, Math.round((double) bitsPerFilter / n * ln2));
+        this.pageWords = fields.length * bitsPerFilter / 64;
+        this.bits = new long[16 * pageWords];
+        this.loaded = true;
+    }
+
+    private BloomFilters(File file, HeapFile heapFile, int[] fields, int bitsPerFilter,
+                         int numHashes) {
+        this.file = file;
+        this.heapFile = heapFile;
+        this.fields = fields;
+        this.bitsPerFilter = bitsPerFilter;
+        this.numHashes = numHashes;
+        this.pageWords = fields.length * bitsPerFilter / 64;
+        this.bits = new long[16 * pageWords];
+    }
+
+    /**
+     * Open the filters of a heap file from the header of its sidecar. The
+     * filters are empty until {@link #load} is called. A sidecar whose
+     * header makes no sense is deleted.
+     *
+     * @return the filters, or null if the table has none
+     */
+    static BloomFilters open(File file, HeapFile heapFile) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        FileChannel channel = heapFile.isReadOnly()
+                ? FileChannel.open(file.toPath(), StandardOpenOption.READ)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer head = ByteBuffer.allocate(4);
+        readFully(channel, head, 0);
+        int numFields = head.getInt(0);
+        if (numFields > 0 && numFields <= heapFile.getTupleDesc().numFields()) {
+            head = ByteBuffer.allocate(headerSize(numFields));
+            readFully(channel, head, 0);
+            int[] fields = new int[numFields];
+            for (int i = 0; i < numFields; i++) {
+                fields[i] = head.getInt(4 + 4 * i);
+            }
+            int bitsPerFilter = head.getInt(4 + 4 * numFields);
+            int numHashes = head.getInt(8 + 4 * numFields);
+            if (bitsPerFilter > 0 && bitsPerFilter % 64 == 0 && numHashes > 0
+                    && validFields(heapFile, fields)) {
+                BloomFilters filters = new BloomFilters(file, heapFile, fields, bitsPerFilter,
+                        numHashes);
+                filters.channel = channel;
+                filters.storedPages = head.getInt(12 + 4 * numFields);
+                return filters;
+            }
+        }
+        channel.close();
+        Debug.log(file.getName() + " is not a Bloom filter file, deleting it");
+        if (!heapFile.isReadOnly()) {
+            file.delete();
+        }
+        return null;
+    }
+
+    private static boolean validFields(HeapFile heapFile, int[] fields) {
+        try {
+            HeapFile.checkBloomFields(heapFile.getTupleDesc(), fields);
+            return true;
+        } catch (DbException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load the filters from the sidecar, rebuilding them from the table file
+     * if the sidecar does not describe it, unless they are loaded already.
+     */
+    void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            int pages = heapFile.numPages();
+            long[] stored;
+            boolean stale;
+            synchronized (this) {
+                stale = staleMarked;
+            }
+            if (!stale && storedPages == pages && channel.size() == pageOffset(pages)) {
+                ByteBuffer buf = ByteBuffer.allocate(pages * pageWords * 8);
+                readFully(channel, buf, pageOffset(0));
+                buf.flip();
+                stored = new long[pages * pageWords];
+                buf.asLongBuffer().get(stored);
+            } else {
+                Debug.log("rebuilding Bloom filters " + file.getName());
+                BloomFilters rebuilt = new BloomFilters(file, heapFile, fields, bitsPerFilter,
+                        numHashes);
+                for (int pg = 0; pg < pages; pg++) {
+                    try {
+                        rebuilt.addPage(pg,
+                                heapFile.readHeapPage(new HeapPageId(heapFile.getId(), pg)).iterator());
+                    } catch (DbException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+                stored = Arrays.copyOf(rebuilt.bits, pages * pageWords);
+            }
+
+            synchronized (this) {
+                setNumPages(pages);
+                for (int i = 0; i < stored.length; i++) {
+                    bits[i] |= stored[i];
+                }
+                if (!heapFile.isReadOnly()) {
+                    save();
+                }
+                loaded = true;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long offset)
+            throws IOException {
+        while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) >= 0) {
+        }
+    }
+
+    private static int headerSize(int numFields) {
+        return 16 + 4 * numFields;
+    }
+
+    /** @return the offset in the sidecar of the filters of the given page */
+    private long pageOffset(int page) {
+        return headerSize(fields.length) + (long) page * pageWords * 8;
+    }
+
+    /** @return the sidecar file */
+    public File getFile() {
+        return file;
+    }
+
+    /** @return the filtered columns */
+    public int[] getFields() {
+        return fields.clone();
+    }
+
+    /** @return the number of bits of the filter of a column of a page */
+    public int getBitsPerFilter() {
+        return bitsPerFilter;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    /** @return the number of pages whose filters scans consulted */
+    public long getProbedPages() {
+        return probedPages.get();
+    }
+
+    /** @return the number of pages scans skipped because of the filters */
+    public long getSkippedPages() {
+        return skippedPages.get();
+    }
+
+    /**
+     * @return the number of pages scans read because of the filters that
+     *     held no match; over probed pages that held no match, skipped or
+     *     not, this estimates the actual false positive rate
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /** Count a page read on the word of the filters that held no match. */
+    void falsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    /** Make room for the filters of the given page. */
+    private void cover(int page) {
+        if (page < numPages) {
+            return;
+        }
+        numPages = page + 1;
+        if (numPages * pageWords > bits.length) {
+            bits = Arrays.copyOf(bits, Math.max(numPages * pageWords, bits.length * 2));
+        }
+    }
+
+    /**
+     * @return the string a value reads back as once it is stored on a page:
+     *     at most STRING_LEN characters, one byte each
+     * @see PageWriter#putString
+     */
+    private static String stored(String value) {
+        int len = Math.min(value.length(), Type.STRING_LEN);
+        byte[] bs = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bs[i] = (byte) value.charAt(i);
+        }
+        return new String(bs);
+    }
+
+    /**
+     * @return a 64-bit FNV-1a hash of a string, finished with the fmix64
+     *     mixer so that both halves, which seed the probes, depend on every
+     *     character
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Add a value of the i-th filtered column to the filter of a page. */
+    void add(int page, int i, String value) {
+        cover(page);
+        long h = hash(value);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        int base = page * pageWords + i * bitsPerFilter / 64;
+        for (int k = 0; k < numHashes; k++) {
+            int bit = Math.floorMod(h1 + k * h2, bitsPerFilter);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(int page, int i, String value) {
+        long h = hash(value);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        int base = page * pageWords + i * bitsPerFilter / 64;
+        for (int k = 0; k < numHashes; k++) {
+            int bit = Math.floorMod(h1 + k * h2, bitsPerFilter);
+            if ((bits[base + (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add the filtered columns of the given tuples to the filters of a page,
+     * both as they are and as they will read back from disk.
+     */
+    void addPage(int page, Iterator<Tuple> tuples) {
+        cover(page);
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            for (int i = 0; i < fields.length; i++) {
+                String value = ((StringField) t.getField(fields[i])).getValue();
+                add(page, i, value);
+                String readBack = stored(value);
+                if (!readBack.equals(value)) {
+                    add(page, i, readBack);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record tuples placed on a page in memory.
+     *
+     * @param tuples the tuples, from first to last
+     */
+    public synchronized void inserted(int page, List<Tuple> tuples, int first, int last) {
+        addPage(page, tuples.subList(first, last).iterator());
+    }
+
+    /**
+     * Record the contents of a page as it is written to disk, both in memory
+     * and, once the filters are loaded, in the sidecar.
+     */
+    void pageWritten(HeapPage page) throws IOException {
+        int pgNo = page.getId().pageNumber();
+        ByteBuffer filters = ByteBuffer.allocate(pageWords * 8);
+        ByteBuffer count = ByteBuffer.allocate(4);
+        synchronized (this) {
+            addPage(pgNo, page.iterator());
+            if (!loaded) {
+                // the sidecar no longer describes the table; the filters
+                // in memory are merged into what loading reads
+                if (!staleMarked && !heapFile.isReadOnly()) {
+                    count.putInt(0, -1);
+                    while (count.hasRemaining()) {
+                        channel.write(count, 12 + 4 * fields.length + count.position());
+                    }
+                    staleMarked = true;
+                }
+                return;
+            }
+            filters.asLongBuffer().put(bits, pgNo * pageWords, pageWords);
+            count.putInt(0, numPages);
+        }
+        if (channel == null) {
+            return;
+        }
+        while (filters.hasRemaining()) {
+            channel.write(filters, pageOffset(pgNo) + filters.position());
+        }
+        while (count.hasRemaining()) {
+            channel.write(count, 12 + 4 * fields.length + count.position());
+        }
+    }
+
+    /** Write all of the filters to the sidecar, replacing what it held. */
+    synchronized void save() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) pageOffset(numPages));
+        buf.putInt(fields.length);
+        for (int field : fields) {
+            buf.putInt(field);
+        }
+        buf.putInt(bitsPerFilter).putInt(numHashes).putInt(numPages);
+        buf.asLongBuffer().put(bits, 0, numPages * pageWords);
+        buf.clear();
+        channel.truncate(0);
+        while (buf.hasRemaining()) {
+            channel.write(buf, buf.position());
+        }
+    }
+
+    /** Close the sidecar, for filters built by a loader. */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /** Set the number of pages of the table, for filters built by a loader. */
+    void setNumPages(int pages) {
+        if (pages > 0) {
+            cover(pages - 1);
+        }
+    }
+
+    /**
+     * @return false if the filters say no tuple on the given page can
+     *     satisfy all of the given predicates; only EQUALS predicates on
+     *     filtered columns are considered
+     */
+    public boolean mightMatch(int page, List<Predicate> predicates) {
+        boolean probed = false;
+        synchronized (this) {
+            if (page >= numPages) {
+                return true;
+            }
+            for (Predicate p : predicates) {
+                int i = filterOf(p);
+                if (i < 0) {
+                    continue;
+                }
+                probed = true;
+                if (!mightContain(page, i, ((StringField) p.getOperand()).getValue())) {
+                    probedPages.incrementAndGet();
+                    skippedPages.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+        if (probed) {
+            probedPages.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @return the filter that can answer a predicate, as an index into the
+     *     filtered columns, or -1 if there is none
+     */
+    int filterOf(Predicate p) {
+        if (p.getOp() != Predicate.Op.EQUALS || !(p.getOperand() instanceof StringField)) {
+            return -1;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == p.getField()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,8 +1,17 @@
 package simpledb;
 
 import java.io.*;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -14,28 +23,468 @@ import java.util.List;
  * locks to read/write the page.
  */
 public class BufferPool {
-    /** Bytes per page, including header. */
+    /**
+     * Bytes per page, including header, of files without a file header;
+     * also the default page size.
+     *
+     * @see #getPageSize
+     */
     public static final int PAGE_SIZE = 4096;
 
+    /** Smallest page size the database can be configured with. */
+    public static final int MIN_PAGE_SIZE = 4096;
+
+    /** Largest page size the database can be configured with. */
+    public static final int MAX_PAGE_SIZE = 65536;
+
+    /**
+     * Page size of files created from now on. Set with
+     * {@link #setPageSize}, or at startup with the system property
+     * simpledb.pageSize.
+     */
+    private static volatile int pageSize = Integer.getInteger("simpledb.pageSize", PAGE_SIZE);
+
+    static {
+        checkPageSize(pageSize);
+    }
+
     /** Default number of pages passed to the constructor. This is used by
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Upper bound on the number of frames a single scan ring may use. */
+    public static final int DEFAULT_RING_PAGES = 32;
+
+    private final int numPages;
+    /** Resident pages, keyed by page id. */
+    private final Map<PageId, Page> frames;
+    /** Decides which resident page to give up when the pool is full. */
+    private final EvictionPolicy policy;
+    /**
+     * Resident pages that were read through a scan ring and are owned by
+     * that ring rather than by the eviction policy.
+     */
+    private final Map<PageId, BufferRing> ringPages;
+    /** Scans of tables larger than this fraction of the pool use a ring. */
+    private double scanRingThreshold = 1.0;
+    /** Background read-ahead, or null if disabled. */
+    private ReadAhead readAhead;
+    /** Pages read by the read-ahead that nobody has requested yet. */
+    private final Set<PageId> prefetched;
+    /** Off-heap frames, or null if pages are cached on the Java heap. */
+    private final FrameArena arena;
+    /** The arena frame backing each resident page that has one. */
+    private final Map<PageId, ByteBuffer> frameOf;
+    /** Background writer of dirty pages, or null if disabled. */
+    private BackgroundWriter backgroundWriter;
+    /**
+     * Pages marked dirty through the pool, oldest first. A page may have
+     * been cleaned or dropped since; such entries are skipped and removed.
+     */
+    private final LinkedHashSet<PageId> dirtied;
+    /** Pages the background writer has taken and not finished writing. */
+    private final Set<PageId> writing;
+    /**
+     * Resident pages the eviction policy had no room for: pages taken back
+     * from a failed background write when nothing could be evicted. They
+     * keep the pool over its capacity until space frees up.
+     */
+    private final Set<PageId> overCapacity;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long dirtyEvictions;
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
-    private int numPages = DEFAULT_PAGES;
-    private int size = 0;
-    private List<Page> pageList;
-
     public BufferPool(int numPages) {
+        this(numPages, new LruEvictionPolicy(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts
+     * according to the given policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy; it must be sized for numPages and
+     *     must not be shared with another buffer pool.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
+        this(numPages, policy, false);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, optionally in
+     * off-heap frames.
+     * <p>
+     * In off-heap mode the pool allocates numPages frames of
+     * {@link #getPageSize} bytes from a {@link FrameArena} up front, and
+     * pages of heap files with that page size are read straight into them.
+     * Cached HeapPages then hold no tuple objects and
+     * decode tuples from their frame as they are read, so the Java heap
+     * footprint of the pool no longer grows with its size. When a page
+     * leaves the pool its frame is recycled; the page object itself is
+     * given a private copy of its image first, so that iterators and tuples
+     * still referring to it remain valid.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy; it must be sized for numPages and
+     *     must not be shared with another buffer pool.
+     * @param offHeap true to cache heap file pages in off-heap frames
+     */
+    public BufferPool(int numPages, EvictionPolicy policy, boolean offHeap) {
         // some code goes here
         this.numPages = numPages;
-        this.size = 0;
-        this.pageList = new LinkedList<>();
+        this.frames = new HashMap<>(numPages * 4 / 3 + 1);
+        this.policy = policy;
+        this.ringPages = new HashMap<>();
+        this.prefetched = new HashSet<>();
+        this.arena = offHeap ? new FrameArena(numPages, getPageSize()) : null;
+        this.frameOf = new HashMap<>();
+        this.dirtied = new LinkedHashSet<>();
+        this.writing = new HashSet<>();
+        this.overCapacity = new LinkedHashSet<>();
+    }
+
+    /**
+     * @return the page size, in bytes, of table files created from now on.
+     *     Existing files keep the page size recorded in their header.
+     */
+    public static int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Set the page size of table files created from now on. Call this
+     * before creating tables and buffer pools; a buffer pool sizes its
+     * off-heap frames when it is created.
+     *
+     * @param pageSize a power of two between MIN_PAGE_SIZE and MAX_PAGE_SIZE
+     * @throws IllegalArgumentException if pageSize is not such a value
+     */
+    public static void setPageSize(int pageSize) {
+        checkPageSize(pageSize);
+        BufferPool.pageSize = pageSize;
+    }
+
+    /** Restore the default page size, PAGE_SIZE. */
+    public static void resetPageSize() {
+        pageSize = PAGE_SIZE;
+    }
+
+    /** @throws IllegalArgumentException if pageSize is not a valid page size */
+    static void checkPageSize(int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE
+                || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("invalid page size " + pageSize
+                    + ": must be a power of two from " + MIN_PAGE_SIZE
+                    + " to " + MAX_PAGE_SIZE);
+        }
+    }
+
+    /** @return the maximum number of pages this buffer pool caches */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** @return true if this pool caches pages in off-heap frames */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /** @return the eviction policy of this buffer pool */
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /** @return the number of getPage calls served from the pool */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** @return the number of getPage calls that had to read from disk */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /** @return the number of pages evicted to make room for others */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of evicted pages that were dirty, and so had to be
+     *     written before they could leave the pool
+     */
+    public synchronized long getDirtyEvictionCount() {
+        return dirtyEvictions;
+    }
+
+    /** Reset the hit, miss and eviction counters to zero. */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        dirtyEvictions = 0;
+    }
+
+    /** @return a one-line summary of the counters, labelled with the policy */
+    public synchronized String statisticsString() {
+        long accesses = hits + misses;
+        double ratio = accesses == 0 ? 0.0 : (double) hits / accesses;
+        return String.format("%s: hits=%d misses=%d evictions=%d hit-ratio=%.4f",
+                policy.getName(), hits, misses, evictions, ratio);
+    }
+
+    /**
+     * Set the fraction of the pool a table must exceed before sequential
+     * scans over it read through a {@link BufferRing} instead of through the
+     * shared pool. The default is 1.0: scans of tables that cannot fit in
+     * the pool anyway are confined to a ring.
+     *
+     * @param fraction the threshold as a fraction of numPages; a negative
+     *     value makes every scan use a ring, infinity disables rings.
+     */
+    public synchronized void setScanRingThreshold(double fraction) {
+        this.scanRingThreshold = fraction;
+    }
+
+    /**
+     * @param tablePages the number of pages of the table about to be scanned
+     * @return true if a sequential scan of the table should use a ring
+     */
+    public synchronized boolean useScanRing(int tablePages) {
+        return tablePages > scanRingThreshold * numPages;
+    }
+
+    /**
+     * Create a ring for a new sequential scan. The ring is sized to at most
+     * an eighth of the pool, and never more than {@link #DEFAULT_RING_PAGES}.
+     */
+    public BufferRing newScanRing() {
+        return new BufferRing(Math.max(1, Math.min(DEFAULT_RING_PAGES, numPages / 8)));
+    }
+
+    /**
+     * Hand the pages still owned by a ring over to the eviction policy. Must
+     * be called when the scan that owns the ring is closed.
+     *
+     * @param ring the ring to release; may be null
+     */
+    public synchronized void releaseScanRing(BufferRing ring) {
+        if (ring == null) {
+            return;
+        }
+        for (PageId pid : ring.pages()) {
+            if (pid != null && ringPages.get(pid) == ring) {
+                ringPages.remove(pid);
+                policy.pageAdmitted(pid);
+            }
+        }
+    }
+
+    /**
+     * Enable or disable background read-ahead for sequential page access.
+     * A previously attached read-ahead is shut down.
+     *
+     * @param readAhead the read-ahead to use, or null to disable it
+     */
+    public synchronized void setReadAhead(ReadAhead readAhead) {
+        if (this.readAhead != null && this.readAhead != readAhead) {
+            this.readAhead.shutdown();
+        }
+        this.readAhead = readAhead;
+        prefetched.clear();
+    }
+
+    /** @return the read-ahead attached to this pool, or null */
+    public synchronized ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Enable or disable the background writing of dirty pages. A previously
+     * attached writer is shut down.
+     *
+     * @param writer the writer to use, or null to disable it
+     */
+    public void setBackgroundWriter(BackgroundWriter writer) {
+        BackgroundWriter old;
+        synchronized (this) {
+            old = backgroundWriter;
+            backgroundWriter = writer;
+        }
+        // outside the pool, which the old writer may be waiting for
+        if (old != null && old != writer) {
+            old.shutdown();
+        }
+    }
+
+    /** @return the background writer attached to this pool, or null */
+    public synchronized BackgroundWriter getBackgroundWriter() {
+        return backgroundWriter;
+    }
+
+    /** @return the number of dirty pages in the pool */
+    public synchronized int getDirtyPageCount() {
+        for (Iterator<PageId> it = dirtied.iterator(); it.hasNext();) {
+            Page page = frames.get(it.next());
+            if (page == null || page.isDirty() == null) {
+                it.remove();
+            }
+        }
+        return dirtied.size();
+    }
+
+    /**
+     * Hand dirty pages of heap files to the background writer, those dirtied
+     * longest ago first. Each page is marked clean and its current image
+     * becomes its before image; the writer gets a copy of that image to
+     * write, and the page may not be read back from disk until the writer
+     * calls {@link #writesDone}.
+     *
+     * @param max the largest number of pages to take
+     * @return the pages, sorted by table and page number
+     */
+    synchronized List<BackgroundWriter.PageWrite> takeDirtyPages(int max) {
+        List<BackgroundWriter.PageWrite> batch = new ArrayList<>();
+        for (Iterator<PageId> it = dirtied.iterator(); it.hasNext() && batch.size() < max;) {
+            PageId pid = it.next();
+            Page page = frames.get(pid);
+            if (page == null || page.isDirty() == null) {
+                it.remove();
+                continue;
+            }
+            DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+            if (!(file instanceof HeapFile) || ((HeapFile) file).isReadOnly()) {
+                // left for eviction to write
+                continue;
+            }
+            it.remove();
+            TransactionId tid = page.isDirty();
+            Page before = page.getBeforeImage();
+            page.setBeforeImage();
+            batch.add(new BackgroundWriter.PageWrite((HeapFile) file, tid, before,
+                    page.getBeforeImage()));
+            page.markDirty(false, null);
+            writing.add(pid);
+        }
+        batch.sort(Comparator.comparingInt((BackgroundWriter.PageWrite w) -> w.file.getId())
+                .thenComparingInt(BackgroundWriter.PageWrite::pageNumber));
+        return batch;
+    }
+
+    /**
+     * Called by the background writer once it is done with pages it took.
+     * Pages it could not write are marked dirty again, unless they were
+     * changed in the meantime; one that was evicted in the meantime comes
+     * back, as the only up-to-date copy, after another page has made room
+     * for it. If no page can be evicted, it is kept anyway, beyond the
+     * capacity of the pool, since it has not been written.
+     *
+     * @param batch the pages, as returned by {@link #takeDirtyPages}
+     * @param written true if the pages are on disk
+     * @throws DbException if pages had to be kept beyond the capacity of
+     *     the pool
+     */
+    synchronized void writesDone(List<BackgroundWriter.PageWrite> batch, boolean written)
+            throws DbException {
+        DbException noRoom = null;
+        try {
+            for (BackgroundWriter.PageWrite w : batch) {
+                writing.remove(w.after.getId());
+            }
+            if (written) {
+                return;
+            }
+            for (BackgroundWriter.PageWrite w : batch) {
+                PageId pid = w.after.getId();
+                Page page = frames.get(pid);
+                if (page == null) {
+                    try {
+                        while (frames.size() >= numPages) {
+                            evictPage();
+                        }
+                    } catch (DbException e) {
+                        noRoom = e;
+                    }
+                    page = w.after;
+                    frames.put(pid, page);
+                    admit(pid);
+                }
+                if (page.isDirty() == null) {
+                    page.markDirty(true, w.tid);
+                    dirtied.add(pid);
+                }
+            }
+        } finally {
+            notifyAll();
+        }
+        if (noRoom != null) {
+            throw new DbException("pages of a failed write were kept beyond the capacity of"
+                    + " the pool: " + noRoom.getMessage());
+        }
+    }
+
+    /**
+     * Hand a page just put in frames to the eviction policy, or keep it
+     * over capacity if the policy holds as many pages as the pool may.
+     */
+    private void admit(PageId pid) {
+        if (frames.size() - ringPages.size() - overCapacity.size() > numPages) {
+            overCapacity.add(pid);
+        } else {
+            policy.pageAdmitted(pid);
+        }
+    }
+
+    /** Wait until the background writer has finished the pages it took. */
+    private synchronized void awaitBackgroundWrites() throws IOException {
+        try {
+            while (!writing.isEmpty()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for background writes");
+        }
+    }
+
+    /**
+     * Read a page into the pool on behalf of the read-ahead. The disk read
+     * happens without holding the pool's monitor so that foreground requests
+     * are not blocked behind it.
+     *
+     * @param pid the page to read
+     * @return true if the page was read in, false if it was already resident
+     */
+    boolean prefetchPage(PageId pid) throws DbException {
+        synchronized (this) {
+            if (frames.containsKey(pid) || writing.contains(pid)) {
+                return false;
+            }
+        }
+        Page page = readPage(Database.getCatalog().getDbFile(pid.getTableId()), pid);
+        if (page == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (readAhead == null || frames.containsKey(pid) || writing.contains(pid)) {
+                return false;
+            }
+            while (frames.size() >= numPages) {
+                evictPage();
+            }
+            frames.put(pid, page);
+            policy.pageAdmitted(pid);
+            prefetched.add(pid);
+            return true;
+        }
     }
 
     /**
@@ -56,23 +505,118 @@ public class BufferPool {
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes here
-        var target = pageList.stream().filter(p -> p.getId().equals(pid)).findFirst();
-        Page page = null;
-        if (target.isPresent()) {
-            page = target.get();
-            pageList.remove(page);
-        } else {
-            var table = Database.getCatalog().getDbFile(pid.getTableId());
-            page = table.readPage(pid);
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page like {@link #getPage(TransactionId, PageId,
+     * Permissions)}, reading it through the given ring if it is not resident.
+     * A page read through a ring does not enter the eviction policy; it is
+     * recycled by the ring once the scan has moved on, unless some access
+     * without a ring claims it first.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the scan ring to read through, or null to use the pool
+     */
+    public synchronized Page getPage(TransactionId tid, PageId pid, Permissions perm,
+                                     BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        if (readAhead != null) {
+            readAhead.recordAccess(tid, pid);
+        }
+        try {
+            // the disk image is stale until the background writer is done
+            while (writing.contains(pid) && !frames.containsKey(pid)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted waiting for page " + pid.pageNumber()
+                    + " of table " + pid.getTableId());
+        }
+        Page page = frames.get(pid);
+        if (page != null) {
+            hits++;
+            if (prefetched.remove(pid)) {
+                readAhead.prefetchHit();
+                if (ring != null) {
+                    // a prefetched page belongs to the scan that asked for it
+                    policy.pageRemoved(pid);
+                    PageId recycled = ring.add(pid);
+                    if (recycled != null && ringPages.get(recycled) == ring) {
+                        evictPage(recycled);
+                    }
+                    ringPages.put(pid, ring);
+                    return page;
+                }
+            }
+            if (ring == null && ringPages.remove(pid) != null) {
+                // a regular access claims the page from the scan that read it
+                policy.pageAdmitted(pid);
+            } else if (!ringPages.containsKey(pid)) {
+                policy.pageAccessed(pid);
+            }
+            return page;
         }
 
-        while (pageList.size() < size) {
-            pageList.remove(pageList.size() - 1);
+        misses++;
+        DbFile table = Database.getCatalog().getDbFile(pid.getTableId());
+        if (ring != null) {
+            PageId recycled = ring.add(pid);
+            if (recycled != null && ringPages.get(recycled) == ring) {
+                evictPage(recycled);
+            }
+        }
+        while (frames.size() >= numPages) {
+            evictPage();
+        }
+        ByteBuffer frame = null;
+        if (arena != null && table instanceof HeapFile && !((HeapFile) table).isMapped()
+                && ((HeapFile) table).getPageSize() == arena.getFrameSize()) {
+            frame = arena.acquire();
+        }
+        if (frame != null) {
+            try {
+                page = ((HeapFile) table).readPage(pid, frame);
+            } catch (DbException e) {
+                arena.release(frame);
+                throw e;
+            }
+            if (page == null) {
+                arena.release(frame);
+            } else {
+                frameOf.put(pid, frame);
+            }
+        } else {
+            page = readPage(table, pid);
+        }
+        if (page == null) {
+            throw new DbException("unable to read page " + pid.pageNumber()
+                    + " of table " + pid.getTableId());
+        }
+        frames.put(pid, page);
+        if (ring != null) {
+            ringPages.put(pid, ring);
+        } else {
+            policy.pageAdmitted(pid);
         }
-        pageList.add(0, page);
         return page;
     }
 
+    /**
+     * Read a page from its file, turning a page the file can't read, e.g.
+     * one that fails its checksum, into a DbException saying why.
+     */
+    private static Page readPage(DbFile table, PageId pid) throws DbException {
+        try {
+            return table.readPage(pid);
+        } catch (IllegalArgumentException e) {
+            throw new DbException(e.getMessage());
+        }
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -126,6 +670,7 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
      * been dirtied so that future requests see up-to-date pages. 
+     * The tuple is then added to each secondary index of the table.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -134,7 +679,44 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        // not necessary for proj1
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        for (Page page : file.insertTuple(tid, t)) {
+            cacheDirtied(tid, page);
+        }
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId)) {
+            index.insertEntry(tid, t);
+        }
+    }
+
+    /**
+     * Add tuples to the specified table on behalf of transaction tid, like
+     * {@link #insertTuple} does for each of them, but a page at a time:
+     * each page is filled with as many of the tuples as fit and is marked
+     * dirty once, however many of them it received.  Once the batch is in,
+     * one update record per modified page goes to the log.
+     *
+     * @param tid the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        List<Page> pages = file.insertTuples(tid, tuples);
+        for (Page page : pages) {
+            cacheDirtied(tid, page);
+        }
+        LogFile log = Database.getLogFile();
+        if (log != null) {
+            for (Page page : pages) {
+                log.logWrite(tid, page.getBeforeImage(), page);
+            }
+        }
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId)) {
+            for (Tuple t : tuples) {
+                index.insertEntry(tid, t);
+            }
+        }
     }
 
     /**
@@ -146,6 +728,7 @@ public class BufferPool {
      * their markDirty bit.  Does not need to update cached versions of any pages that have 
      * been dirtied, as it is not possible that a new page was created during the deletion
      * (note difference from addTuple).
+     * The tuple is then removed from each secondary index of the table.
      *
      * @param tid the transaction adding the tuple.
      * @param t the tuple to add
@@ -153,7 +736,44 @@ public class BufferPool {
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, TransactionAbortedException {
         // some code goes here
-        // not necessary for proj1
+        RecordId rid = t.getRecordId();
+        if (rid == null) {
+            throw new DbException("tuple is not stored in any table");
+        }
+        int tableId = rid.getPageId().getTableId();
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        for (Page page : file.deleteTuples(tid, Collections.singletonList(t))) {
+            cacheDirtied(tid, page);
+        }
+        // the delete clears the RecordId of the tuple, so use the one it had
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId)) {
+            index.deleteEntry(tid, t, rid);
+        }
+    }
+
+    /**
+     * Mark a page as dirtied by tid and make sure the pool caches this
+     * version of it, in case the page was evicted while it was modified.
+     */
+    private synchronized void cacheDirtied(TransactionId tid, Page page) throws DbException {
+        page.markDirty(true, tid);
+        PageId pid = page.getId();
+        dirtied.add(pid);
+        if (backgroundWriter != null && dirtied.size() > backgroundWriter.getTargetPages()) {
+            backgroundWriter.wakeUp();
+        }
+        Page cached = frames.get(pid);
+        if (cached == page) {
+            return;
+        }
+        if (cached != null) {
+            discardPage(pid);
+        }
+        while (frames.size() >= numPages) {
+            evictPage();
+        }
+        frames.put(pid, page);
+        policy.pageAdmitted(pid);
     }
 
     /**
@@ -161,10 +781,24 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
-        // not necessary for proj1
-
+        synchronized (this) {
+            awaitBackgroundWrites();
+            for (PageId pid : frames.keySet()) {
+                flushPage(pid);
+            }
+        }
+        // append-only tables keep their tail page outside the pool; they are
+        // flushed without holding the pool, which compaction takes while
+        // holding the file
+        Iterator<Integer> tableIds = Database.getCatalog().tableIdIterator();
+        while (tableIds.hasNext()) {
+            DbFile file = Database.getCatalog().getDbFile(tableIds.next());
+            if (file instanceof AppendOnlyFile) {
+                ((AppendOnlyFile) file).flush();
+            }
+        }
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -174,7 +808,36 @@ public class BufferPool {
     */
     public synchronized void discardPage(PageId pid) {
         // some code goes here
-	// not necessary for proj1
+        removePage(pid, false);
+    }
+
+    /**
+     * Drop a page from the pool, telling the policy whether it was evicted
+     * or discarded.
+     */
+    private void removePage(PageId pid, boolean evicted) {
+        Page page = frames.remove(pid);
+        if (page != null && ringPages.remove(pid) == null && !overCapacity.remove(pid)) {
+            if (evicted) {
+                policy.pageEvicted(pid);
+            } else {
+                policy.pageRemoved(pid);
+            }
+        }
+        if (!overCapacity.isEmpty()
+                && frames.size() - ringPages.size() - overCapacity.size() < numPages) {
+            // a page kept over capacity takes the place that was freed
+            Iterator<PageId> it = overCapacity.iterator();
+            policy.pageAdmitted(it.next());
+            it.remove();
+        }
+        dirtied.remove(pid);
+        prefetched.remove(pid);
+        ByteBuffer frame = frameOf.remove(pid);
+        if (frame != null) {
+            ((HeapPage) page).detach();
+            arena.release(frame);
+        }
     }
 
     /**
@@ -183,14 +846,24 @@ public class BufferPool {
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
         // some code goes here
-        // not necessary for proj1
+        Page page = frames.get(pid);
+        if (page != null && page.isDirty() != null) {
+            Database.getCatalog().getDbFile(pid.getTableId()).writePage(page);
+            page.markDirty(false, null);
+            dirtied.remove(pid);
+        }
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
-        // not necessary for proj1
+        awaitBackgroundWrites();
+        for (Page page : frames.values()) {
+            if (tid.equals(page.isDirty())) {
+                flushPage(page.getId());
+            }
+        }
     }
 
     /**
@@ -199,7 +872,38 @@ public class BufferPool {
      */
     private synchronized  void evictPage() throws DbException {
         // some code goes here
-        // not necessary for proj1
+        PageId pid = policy.chooseVictim();
+        if (pid == null && !ringPages.isEmpty()) {
+            pid = ringPages.keySet().iterator().next();
+        }
+        if (pid == null && !overCapacity.isEmpty()) {
+            pid = overCapacity.iterator().next();
+        }
+        if (pid == null) {
+            throw new DbException("no page available for eviction");
+        }
+        evictPage(pid);
+    }
+
+    /**
+     * Flushes the specified page if it is dirty and drops it from the pool.
+     */
+    private synchronized void evictPage(PageId pid) throws DbException {
+        Page page = frames.get(pid);
+        if (page != null && page.isDirty() != null) {
+            dirtyEvictions++;
+        }
+        try {
+            flushPage(pid);
+        } catch (IOException e) {
+            throw new DbException("failed to flush page " + pid.pageNumber()
+                    + " of table " + pid.getTableId() + " on eviction: " + e.getMessage());
+        }
+        if (prefetched.contains(pid) && readAhead != null) {
+            readAhead.prefetchWasted(pid);
+        }
+        removePage(pid, true);
+        evictions++;
     }
 
 }
@@ -0,0 +1,53 @@
+package simpledb;
+
+/**
+ * A BufferRing bounds the number of buffer pool frames a single large scan
+ * may occupy, in the spirit of PostgreSQL's buffer access strategies. Pages
+ * that the scan reads into the pool are remembered in a small ring of slots;
+ * once the ring is full, the page read longest ago by the same scan is
+ * recycled to make room for the next one instead of asking the pool's
+ * eviction policy for a victim. A full-table scan therefore only ever
+ * displaces as many pages of the shared working set as the ring has slots.
+ * <p>
+ * Rings are created by {@link BufferPool#newScanRing} and must be handed
+ * back with {@link BufferPool#releaseScanRing} when the scan is closed.
+ */
+public class BufferRing {
+
+    private final PageId[] slots;
+    private int next;
+
+    /**
+     * @param size the number of frames this ring may occupy; at least 1
+     */
+    BufferRing(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("a buffer ring needs at least one slot");
+        }
+        this.slots = new PageId[size];
+        this.next = 0;
+    }
+
+    /** @return the number of slots of this ring */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * Record that pid was read into the pool through this ring.
+     *
+     * @return the page that previously occupied the slot now taken by pid,
+     *     which the caller should recycle, or null if the slot was free
+     */
+    PageId add(PageId pid) {
+        PageId old = slots[next];
+        slots[next] = pid;
+        next = (next + 1) % slots.length;
+        return old;
+    }
+
+    /** @return the slots of this ring; free slots are null */
+    PageId[] pages() {
+        return slots;
+    }
+}
@@ -0,0 +1,525 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * BulkLoader converts a delimited text file into a file of HeapPages, as
+ * HeapFileEncoder does, but is built for inputs of many gigabytes.
+ * <p>
+ * The input is read with large sequential reads and cut into chunks at line
+ * boundaries. The chunks are parsed in parallel on a fork-join pool, each
+ * into a buffer of encoded records in the on-disk tuple format, while the
+ * calling thread packs the records of finished chunks, in input order, into
+ * pages and writes many pages at a time to the output file. Only a bounded
+ * number of chunks is in flight at once, so memory use does not grow with
+ * the size of the input.
+ * <p>
+ * Input bytes are copied into string fields as they are, so a string is
+ * truncated to Type.STRING_LEN bytes rather than characters. Blank lines
+ * are skipped. A line with the wrong number of fields or an int field that
+ * does not parse stops the load with an IOException naming the line, unless
+ * a {@link RejectHandler} is set, which then receives the line instead.
+ * <p>
+ * The loader can also build {@link BloomFilters} of some string columns of
+ * each page as it packs the pages, see {@link #setBloomFilters}.
+ *
+ * @see HeapFileEncoder
+ * @see HeapPage
+ */
+public class BulkLoader {
+
+    /** Default number of input bytes parsed by one task */
+    public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+    /** Bytes of pages gathered in memory before each write to the output */
+    private static final int WRITE_SIZE = 4 << 20;
+
+    private final Type[] typeAr;
+    private final byte fieldSeparator;
+    private final int pageSize;
+    private final int threads;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private long skipBytes;
+    private RejectHandler rejects;
+    private LongConsumer progress;
+    /** the string columns to build Bloom filters of, or null */
+    private int[] bloomFields;
+    private double bloomFpp;
+
+    /** the header of the files written, with checksums or not */
+    private final FileHeader fileHeader;
+    private final int recordSize;
+    private final int recordsPerPage;
+    private final int headerSize;
+
+    /**
+     * Create a loader for files whose lines hold fields of the given types.
+     *
+     * @param typeAr the types of the fields of each line
+     * @param fieldSeparator the character separating fields
+     * @param pageSize the number of bytes per page in the output file; a
+     *   page size other than BufferPool.PAGE_SIZE is recorded in a
+     *   FileHeader at the start of the file
+     * @param threads the number of threads parsing the input
+     * @see HeapFile#setChecksumNewFiles
+     */
+    public BulkLoader(Type[] typeAr, char fieldSeparator, int pageSize, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (fieldSeparator > 0x7F) {
+            throw new IllegalArgumentException("field separator must be ASCII: " + fieldSeparator);
+        }
+        this.typeAr = typeAr.clone();
+        this.fieldSeparator = (byte) fieldSeparator;
+        this.pageSize = pageSize;
+        this.threads = threads;
+        this.fileHeader = FileHeader.forNewHeapFile(pageSize);
+
+        int nrecbytes = 0;
+        for (Type type : typeAr) {
+            nrecbytes += type.getLen();
+        }
+        this.recordSize = nrecbytes;
+        // one header bit per record, as in HeapPage, in the page less its checksum
+        this.recordsPerPage = (fileHeader.getPageDataSize() * 8) / (nrecbytes * 8 + 1);
+        this.headerSize = (recordsPerPage + 7) / 8;
+        if (recordsPerPage == 0) {
+            throw new IllegalArgumentException("a " + nrecbytes
+                    + " byte tuple does not fit on a " + pageSize + " byte page");
+        }
+    }
+
+    /** @return the number of threads used by default, one per processor */
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Set the number of input bytes parsed by one task. */
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Receives the malformed lines of the input, in input order, so that a
+     * load can skip them instead of failing.
+     */
+    public interface RejectHandler {
+        /**
+         * @param line the malformed line, without its line terminator
+         */
+        void reject(String line) throws IOException;
+    }
+
+    /** Pass malformed lines to the given handler rather than failing the load. */
+    public void setRejectHandler(RejectHandler rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Report progress to the given consumer, which is called on the loading
+     * thread with the number of tuples written so far each time a chunk has
+     * been written.
+     */
+    public void setProgress(LongConsumer progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Build Bloom filters of the given string columns of each page, sized
+     * for the given false positive rate, and save them next to the output
+     * file, so that scans of the table for a string equal to a constant can
+     * skip the pages that cannot hold it.
+     *
+     * @param fields the STRING_TYPE columns to filter, or null for none
+     * @param fpp the false positive rate, e.g. {@link BloomFilters#DEFAULT_FPP}
+     * @see HeapFile#createBloomFilters
+     */
+    public void setBloomFilters(int[] fields, double fpp) {
+        if (fields != null) {
+            try {
+                HeapFile.checkBloomFields(new TupleDesc(typeAr), fields);
+            } catch (DbException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            if (fpp <= 0 || fpp >= 1) {
+                throw new IllegalArgumentException("false positive rate must be in (0, 1): " + fpp);
+            }
+        }
+        this.bloomFields = fields == null ? null : fields.clone();
+        this.bloomFpp = fpp;
+    }
+
+    /**
+     * Start reading the input after its first bytes, such as a header line.
+     */
+    public void setSkipBytes(long skipBytes) {
+        this.skipBytes = skipBytes;
+    }
+
+    /**
+     * Convert the input file into a heap file, replacing any existing
+     * output file and the sidecar files kept next to it.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The output file to write data to
+     * @return the number of tuples written
+     * @throws IOException if the input/output file can't be opened or a
+     *   malformed input line is encountered
+     */
+    public long load(File inFile, File outFile) throws IOException {
+        HeapFile.removeSidecars(outFile);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try (FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+             PageSink out = new PageSink(outFile)) {
+            in.position(skipBytes);
+            ArrayDeque<Future<Records>> pending = new ArrayDeque<Future<Records>>();
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            while (!eof) {
+                // fill a new chunk, starting with the partial line left over
+                // from the last one
+                byte[] chunk = new byte[Math.max(chunkSize, carry.length * 2)];
+                System.arraycopy(carry, 0, chunk, 0, carry.length);
+                int len = carry.length;
+                ByteBuffer buf = ByteBuffer.wrap(chunk, len, chunk.length - len);
+                while (buf.hasRemaining()) {
+                    if (in.read(buf) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                len = buf.position();
+
+                int end = len;
+                if (!eof) {
+                    while (end > 0 && chunk[end - 1] != '\n') {
+                        end--;
+                    }
+                }
+                carry = Arrays.copyOfRange(chunk, end, len);
+                if (end == 0) {
+                    // a line longer than the chunk; read on with a larger one
+                    continue;
+                }
+
+                final int chunkEnd = end;
+                if (pool == null) {
+                    out.write(parse(chunk, chunkEnd));
+                    continue;
+                }
+                pending.add(pool.submit(() -> parse(chunk, chunkEnd)));
+                if (pending.size() >= 2 * threads) {
+                    out.write(join(pending.remove()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(join(pending.remove()));
+            }
+            return out.finish();
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static Records join(Future<Records> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** The encoded records of one chunk */
+    private static class Records {
+        final byte[] data;
+        final int count;
+        /** malformed lines, if they are being passed to a RejectHandler */
+        final List<String> rejected;
+
+        Records(byte[] data, int count, List<String> rejected) {
+            this.data = data;
+            this.count = count;
+            this.rejected = rejected;
+        }
+    }
+
+    /**
+     * Encode the lines in chunk[0, len) into records.
+     */
+    private Records parse(byte[] chunk, int len) throws IOException {
+        int lines = 0;
+        for (int i = 0; i < len; i++) {
+            if (chunk[i] == '\n') {
+                lines++;
+            }
+        }
+        ByteBuffer records = ByteBuffer.allocate((lines + 1) * recordSize);
+        List<String> rejected = Collections.emptyList();
+        int count = 0;
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len && chunk[end] != '\n') {
+                end++;
+            }
+            int mark = records.position();
+            try {
+                if (parseLine(chunk, start, end, records)) {
+                    count++;
+                }
+            } catch (IOException e) {
+                if (rejects == null) {
+                    throw e;
+                }
+                records.position(mark);
+                if (rejected.isEmpty()) {
+                    rejected = new ArrayList<String>();
+                }
+                int lineEnd = end > start && chunk[end - 1] == '\r' ? end - 1 : end;
+                rejected.add(new String(chunk, start, lineEnd - start));
+            }
+            start = end + 1;
+        }
+        return new Records(records.array(), count, rejected);
+    }
+
+    /**
+     * Encode the line in chunk[start, end) onto records.
+     *
+     * @return false if the line is blank and was skipped
+     */
+    private boolean parseLine(byte[] chunk, int start, int end, ByteBuffer records)
+            throws IOException {
+        if (end > start && chunk[end - 1] == '\r') {
+            end--;
+        }
+        if (trimStart(chunk, start, end) == end) {
+            return false;
+        }
+        int pos = start;
+        for (int field = 0; field < typeAr.length; field++) {
+            int fieldEnd = pos;
+            while (fieldEnd < end && chunk[fieldEnd] != fieldSeparator) {
+                fieldEnd++;
+            }
+            if (fieldEnd == end && field < typeAr.length - 1) {
+                throw badLine(chunk, start, end);
+            }
+            int s = trimStart(chunk, pos, fieldEnd);
+            int e = trimEnd(chunk, s, fieldEnd);
+            if (typeAr[field] == Type.INT_TYPE) {
+                records.putInt(parseInt(chunk, s, e, start, end));
+            } else {
+                int n = Math.min(e - s, Type.STRING_LEN);
+                records.putInt(n);
+                records.put(chunk, s, n);
+                records.position(records.position() + Type.STRING_LEN - n);
+            }
+            pos = fieldEnd + 1;
+        }
+        if (pos <= end) {
+            // more fields than types
+            throw badLine(chunk, start, end);
+        }
+        return true;
+    }
+
+    private int parseInt(byte[] chunk, int s, int e, int lineStart, int lineEnd)
+            throws IOException {
+        boolean negative = false;
+        int i = s;
+        if (i < e && (chunk[i] == '-' || chunk[i] == '+')) {
+            negative = chunk[i] == '-';
+            i++;
+        }
+        if (i == e || e - i > 9) {
+            // empty, or possibly too large for the fast path
+            try {
+                return Integer.parseInt(new String(chunk, s, e - s, StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException ex) {
+                throw badLine(chunk, lineStart, lineEnd);
+            }
+        }
+        int value = 0;
+        for (; i < e; i++) {
+            int digit = chunk[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw badLine(chunk, lineStart, lineEnd);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /** @return the first index in [s, e) not holding whitespace, as String.trim sees it */
+    private static int trimStart(byte[] chunk, int s, int e) {
+        while (s < e && (chunk[s] & 0xFF) <= ' ') {
+            s++;
+        }
+        return s;
+    }
+
+    private static int trimEnd(byte[] chunk, int s, int e) {
+        while (e > s && (chunk[e - 1] & 0xFF) <= ' ') {
+            e--;
+        }
+        return e;
+    }
+
+    private static IOException badLine(byte[] chunk, int start, int end) {
+        return new IOException("BAD LINE : " + new String(chunk, start, end - start));
+    }
+
+    /**
+     * Packs records into pages, in the order they are given, and writes the
+     * pages to the output file WRITE_SIZE bytes at a time.
+     */
+    private class PageSink implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer pages;
+        private final PageWriter writer;
+        /** the filters being built, or null */
+        private final BloomFilters filters;
+        /** offset in a record of each filtered column */
+        private final int[] bloomOffsets;
+        /** records on the page currently being filled */
+        private int onPage;
+        private int npages;
+        private long tuples;
+
+        PageSink(File outFile) throws IOException {
+            this.channel = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (fileHeader.isStored()) {
+                fileHeader.write(channel);
+                channel.position(fileHeader.getDataOffset());
+            }
+            this.pages = ByteBuffer.allocateDirect(Math.max(1, WRITE_SIZE / pageSize) * pageSize);
+            this.writer = new PageWriter(pages);
+            if (bloomFields == null) {
+                this.filters = null;
+                this.bloomOffsets = null;
+            } else {
+                this.filters = new BloomFilters(Utility.sidecar(outFile, BloomFilters.EXTENSION),
+                        bloomFields, recordsPerPage, bloomFpp);
+                this.bloomOffsets = new int[bloomFields.length];
+                for (int i = 0; i < bloomFields.length; i++) {
+                    for (int field = 0; field < bloomFields[i]; field++) {
+                        bloomOffsets[i] += typeAr[field].getLen();
+                    }
+                }
+            }
+        }
+
+        void write(Records records) throws IOException {
+            for (String line : records.rejected) {
+                rejects.reject(line);
+            }
+            int off = 0;
+            int remaining = records.count;
+            while (remaining > 0) {
+                // the records for the rest of this page are copied in one go
+                int n = Math.min(remaining, recordsPerPage - onPage);
+                int page = pages.position();
+                for (int slot = onPage; slot < onPage + n; slot++) {
+                    writer.setBit(page, slot);
+                }
+                writer.put(page + headerSize + onPage * recordSize, records.data, off, n * recordSize);
+                if (filters != null) {
+                    addToFilters(records.data, off, n);
+                }
+                off += n * recordSize;
+                remaining -= n;
+                onPage += n;
+                tuples += n;
+                if (onPage == recordsPerPage) {
+                    endPage();
+                }
+            }
+            if (progress != null) {
+                progress.accept(tuples);
+            }
+        }
+
+        /** Add the filtered columns of n records at data[off] to the page being filled. */
+        private void addToFilters(byte[] data, int off, int n) {
+            ByteBuffer records = ByteBuffer.wrap(data);
+            for (int r = 0; r < n; r++) {
+                int record = off + r * recordSize;
+                for (int i = 0; i < bloomOffsets.length; i++) {
+                    int at = record + bloomOffsets[i];
+                    // as PageReader decodes the string
+                    filters.add(npages, i, new String(data, at + 4, records.getInt(at)));
+                }
+            }
+        }
+
+        private void endPage() throws IOException {
+            fileHeader.putChecksum(pages, pages.position());
+            pages.position(pages.position() + pageSize);
+            onPage = 0;
+            npages++;
+            if (!pages.hasRemaining()) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            pages.flip();
+            while (pages.hasRemaining()) {
+                channel.write(pages);
+            }
+            // pages are assembled with absolute puts, so start from zeroes
+            pages.clear();
+            writer.clear();
+        }
+
+        /**
+         * Write out the last, partly filled page, or an empty page if the
+         * file has no tuples.
+         *
+         * @return the number of tuples written
+         */
+        long finish() throws IOException {
+            if (onPage > 0 || npages == 0) {
+                endPage();
+            }
+            flush();
+            if (filters != null) {
+                filters.setNumPages(npages);
+                filters.save();
+            }
+            return tuples;
+        }
+
+        public void close() throws IOException {
+            channel.close();
+            if (filters != null) {
+                filters.close();
+            }
+        }
+    }
+}
@@ -3,8 +3,11 @@ package simpledb;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The Catalog keeps track of all available tables in the database and their
@@ -24,6 +27,7 @@ public class Catalog {
         public DbFile dbFile;
         public String pkField;
         public String tableName;
+        public List<SecondaryIndex> indexes = new ArrayList<>();
 
         public DBitem(DbFile dbFile, String pkField, String tableName) {
             this.dbFile = dbFile;
@@ -36,6 +40,8 @@ public class Catalog {
         // some code goes here
         dBitemMap_Name = new HashMap<>();
         dBitemMap_Id = new HashMap<>();
+        indexMap_Name = new HashMap<>();
+        indexMap_FileId = new HashMap<>();
     }
 
     /**
@@ -49,6 +55,11 @@ public class Catalog {
      */
     private Map<String, DBitem> dBitemMap_Name;
     private Map<Integer, DBitem> dBitemMap_Id;
+    /** Secondary indexes by name, and by the id of the file holding them */
+    private Map<String, SecondaryIndex> indexMap_Name;
+    private Map<Integer, SecondaryIndex> indexMap_FileId;
+    /** The schema file the catalog was loaded from, where new indexes are recorded */
+    private File schemaFile;
 
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
@@ -105,6 +116,10 @@ public class Catalog {
      */
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         // some code goes here
+        if (indexMap_FileId.containsKey(tableid)) {
+            // the pages of an index are read through the buffer pool too
+            return indexMap_FileId.get(tableid).getFile();
+        }
         if (!dBitemMap_Id.containsKey(tableid)) {
             throw new NoSuchElementException("Don't have the talbeid:" + tableid);
         }
@@ -126,18 +141,128 @@ public class Catalog {
 
     public String getTableName(int id) {
         // some code goes here
+        if (!dBitemMap_Id.containsKey(id)) {
+            throw new NoSuchElementException("Don't have the talbeid:" + id);
+        }
         return dBitemMap_Id.get(id).tableName;
     }
     
+    /**
+     * Add a secondary index to the catalog. From then on BufferPool keeps it
+     * up to date as tuples are inserted into and deleted from its table, and
+     * {@link #getDbFile} finds its file by id like that of a table.
+     *
+     * @throws NoSuchElementException if the table of the index doesn't exist
+     */
+    public void addIndex(SecondaryIndex index) throws NoSuchElementException {
+        if (!dBitemMap_Id.containsKey(index.getTableId())) {
+            throw new NoSuchElementException("Don't have the talbeid:" + index.getTableId());
+        }
+        SecondaryIndex old = indexMap_Name.put(index.getName(), index);
+        if (old != null) {
+            indexMap_FileId.remove(old.getFile().getId());
+            if (dBitemMap_Id.containsKey(old.getTableId())) {
+                dBitemMap_Id.get(old.getTableId()).indexes.remove(old);
+            }
+        }
+        indexMap_FileId.put(index.getFile().getId(), index);
+        dBitemMap_Id.get(index.getTableId()).indexes.add(index);
+    }
+
+    /**
+     * @return the secondary indexes of the specified table, none if it has
+     *     none or is not a table
+     */
+    public List<SecondaryIndex> getIndexes(int tableid) {
+        DBitem item = dBitemMap_Id.get(tableid);
+        if (item == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(item.indexes);
+    }
+
+    /**
+     * @return an index on the given field of the specified table that can
+     *     find the tuples satisfying a predicate with the given operator, a
+     *     hash index if there is one, or null if there is none
+     */
+    public SecondaryIndex getIndex(int tableid, int field, Predicate.Op op) {
+        SecondaryIndex found = null;
+        for (SecondaryIndex index : getIndexes(tableid)) {
+            if (index.getKeyField() == field && index.supports(op)
+                    && (found == null || index.getKind() == SecondaryIndex.Kind.HASH)) {
+                found = index;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Build a secondary index on a field of a table and add it to the
+     * catalog. The index file goes next to the schema file the catalog was
+     * loaded from, where the index is also recorded so that it is loaded
+     * again with the schema; without a schema file, it goes next to the
+     * file of the table.
+     *
+     * @param tid the transaction to scan the table as
+     * @param name the name of the index, unique among indexes
+     * @throws NoSuchElementException if the table or field doesn't exist
+     * @throws DbException if an index of that name exists or the table
+     *     cannot be indexed
+     * @see SecondaryIndex#build
+     */
+    public SecondaryIndex createIndex(TransactionId tid, String name, String tableName,
+                                      String fieldName, SecondaryIndex.Kind kind)
+            throws DbException, IOException, TransactionAbortedException {
+        if (indexMap_Name.containsKey(name)) {
+            throw new DbException("index " + name + " already exists");
+        }
+        int tableId = getTableId(tableName);
+        int field = getTupleDesc(tableId).fieldNameToIndex(fieldName);
+        File dir;
+        if (schemaFile != null) {
+            dir = schemaFile.getAbsoluteFile().getParentFile();
+        } else {
+            DbFile table = getDbFile(tableId);
+            dir = table instanceof HeapFile ? ((HeapFile) table).getFile().getAbsoluteFile().getParentFile()
+                    : table instanceof SlottedHeapFile
+                    ? ((SlottedHeapFile) table).getFile().getAbsoluteFile().getParentFile()
+                    : new File(".");
+        }
+        SecondaryIndex index = SecondaryIndex.build(tid, name, tableId, field, kind,
+                new File(dir, name + ".idx"));
+        addIndex(index);
+        if (schemaFile != null) {
+            try (FileWriter w = new FileWriter(schemaFile, true)) {
+                w.write("index " + name + " on " + tableName + " (" + fieldName + ") "
+                        + kind.name().toLowerCase() + "\n");
+            }
+        }
+        return index;
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
         dBitemMap_Id.clear();
         dBitemMap_Name.clear();
+        indexMap_Name.clear();
+        indexMap_FileId.clear();
+        schemaFile = null;
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table, as
+     * <pre>name (field type [pk], field type, ...) [heap|slotted|append|btree|hash]</pre>
+     * where the optional last word picks the page format of the table:
+     * a HeapFile (the default), a SlottedHeapFile, an AppendOnlyFile, or a
+     * BTreeFile or HashFile keyed on the pk field, or on the first field if
+     * there is none.
+     * A line
+     * <pre>index name on table (field) btree|hash</pre>
+     * describes a secondary index on a table listed before it; its file is
+     * name.idx, and is built from the table if it does not exist.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -147,6 +272,12 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
+                Matcher index = INDEX_LINE.matcher(line);
+                if (index.matches()) {
+                    loadIndex(baseFolder, index.group(1), index.group(2), index.group(3),
+                            SecondaryIndex.Kind.parse(index.group(4)));
+                    continue;
+                }
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
@@ -178,17 +309,59 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                // an optional storage keyword after the field list picks
+                // the page format: heap (the default), slotted, append, btree or hash
+                String storage = line.substring(line.indexOf(")") + 1).trim().toLowerCase();
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                DbFile tabHf;
+                if (storage.isEmpty() || storage.equals("heap"))
+                    tabHf = new HeapFile(dataFile, t);
+                else if (storage.equals("slotted"))
+                    tabHf = new SlottedHeapFile(dataFile, t);
+                else if (storage.equals("append"))
+                    tabHf = new AppendOnlyFile(dataFile, t);
+                else if (storage.equals("btree"))
+                    tabHf = new BTreeFile(dataFile, t,
+                            primaryKey.isEmpty() ? 0 : names.indexOf(primaryKey));
+                else if (storage.equals("hash"))
+                    tabHf = new HashFile(dataFile, t,
+                            primaryKey.isEmpty() ? 0 : names.indexOf(primaryKey));
+                else {
+                    System.out.println("Unknown storage " + storage);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
+            schemaFile = new File(catalogFile);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
+        } catch (NoSuchElementException | DbException | TransactionAbortedException e) {
+            System.out.println ("Invalid index entry : " + line + ": " + e.getMessage());
+            System.exit(0);
         }
     }
+
+    private static final Pattern INDEX_LINE = Pattern.compile(
+            "\\s*index\\s+(\\w+)\\s+on\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s*\\)\\s*(\\w+)\\s*");
+
+    /** Open an index listed in a schema file, building it if its file is missing. */
+    private void loadIndex(String baseFolder, String name, String tableName, String fieldName,
+                           SecondaryIndex.Kind kind)
+            throws IOException, DbException, TransactionAbortedException {
+        int tableId = getTableId(tableName);
+        int field = getTupleDesc(tableId).fieldNameToIndex(fieldName);
+        File f = new File(baseFolder + "/" + name + ".idx");
+        SecondaryIndex index = f.exists()
+                ? new SecondaryIndex(name, tableId, field, kind, f)
+                : SecondaryIndex.build(new TransactionId(), name, tableId, field, kind, f);
+        addIndex(index);
+        System.out.println("Added index : " + index);
+    }
 }
 
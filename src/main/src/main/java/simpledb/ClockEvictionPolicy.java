@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLOCK (second chance) eviction. Every frame carries a reference bit that is
+ * set on each hit; the clock hand sweeps the frames, clearing set bits and
+ * stopping at the first frame whose bit is already clear. This approximates
+ * LRU without having to reorder anything on a hit.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private final PageId[] slots;
+    private final boolean[] referenced;
+    private final Map<PageId, Integer> slotOf;
+    private final ArrayDeque<Integer> freeSlots;
+    private int hand;
+
+    /**
+     * @param numPages the capacity of the buffer pool using this policy
+     */
+    public ClockEvictionPolicy(int numPages) {
+        this.slots = new PageId[numPages];
+        this.referenced = new boolean[numPages];
+        this.slotOf = new HashMap<>(numPages * 4 / 3 + 1);
+        this.freeSlots = new ArrayDeque<>(numPages);
+        for (int i = 0; i < numPages; i++) {
+            freeSlots.add(i);
+        }
+        this.hand = 0;
+    }
+
+    public void pageAdmitted(PageId pid) {
+        Integer slot = freeSlots.poll();
+        if (slot == null) {
+            throw new IllegalStateException("clock is full, a page must be removed first");
+        }
+        slots[slot] = pid;
+        referenced[slot] = true;
+        slotOf.put(pid, slot);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Integer slot = slotOf.get(pid);
+        if (slot != null) {
+            referenced[slot] = true;
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer slot = slotOf.remove(pid);
+        if (slot != null) {
+            slots[slot] = null;
+            referenced[slot] = false;
+            freeSlots.add(slot);
+        }
+    }
+
+    public PageId chooseVictim() {
+        if (slotOf.isEmpty()) {
+            return null;
+        }
+        // at most two sweeps: the first one clears every reference bit
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % slots.length;
+            if (slots[slot] == null) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                return slots[slot];
+            }
+        }
+    }
+
+    public String getName() {
+        return "CLOCK";
+    }
+}
@@ -54,6 +54,22 @@ public class Database {
         return _instance._bufferpool;
     }
 
+    /** Method used for testing and benchmarking -- create a new instance
+        of the buffer pool that evicts with the given policy and return it
+    */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy) {
+        _instance._bufferpool = new BufferPool(pages, policy);
+        return _instance._bufferpool;
+    }
+
+    /** Create a new instance of the buffer pool that caches heap file
+        pages in off-heap frames, and return it
+    */
+    public static BufferPool resetBufferPoolOffHeap(int pages) {
+        _instance._bufferpool = new BufferPool(pages, new LruEvictionPolicy(pages), true);
+        return _instance._bufferpool;
+    }
+
     //reset the database, used for unit tests only.
     public static void reset() {
     	_instance = new Database();
@@ -43,18 +43,69 @@ public interface DbFile extends Serializable {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts the specified tuples to the file on behalf of transaction, as
+     * {@link #insertTuple} does for each of them. Implementations should
+     * fill each page they touch with as many of the tuples as fit before
+     * moving on; this default inserts the tuples one at a time.
+     *
+     * @param tid The transaction performing the update
+     * @param tuples The tuples to add, in order.  They should be updated to
+     *          reflect that they are now stored in this file.
+     * @return An ArrayList containing each page that was modified, once
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    public default ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        LinkedHashMap<PageId, Page> modified = new LinkedHashMap<PageId, Page>();
+        for (Tuple t : tuples) {
+            for (Page p : insertTuple(tid, t)) {
+                modified.put(p.getId(), p);
+            }
+        }
+        return new ArrayList<Page>(modified.values());
+    }
+
     /**
      * Removes the specifed tuple from the file on behalf of the specified
      * transaction.
      * This method will acquire a lock on the affected pages of the file, and
      * may block until the lock can be acquired.
      *
+     * @return the page that was modified, or null if no page was, as for a
+     *   file that records deletes elsewhere
      * @throws DbException if the tuple cannot be deleted or is not a member
      *   of the file
      */
     public Page deleteTuple(TransactionId tid, Tuple t)
         throws DbException, TransactionAbortedException;
 
+    /**
+     * Removes the specified tuples from the file on behalf of the specified
+     * transaction, as {@link #deleteTuple} does for each of them. Files whose
+     * deletes may modify more than one page, such as a B+ tree that frees
+     * empty pages, override this to return all of them; this default
+     * deletes the tuples one at a time.
+     *
+     * @param tid The transaction performing the delete
+     * @param tuples The tuples to remove
+     * @return An ArrayList containing each page that was modified, once
+     * @throws DbException if a tuple cannot be deleted or is not a member
+     *   of the file
+     */
+    public default ArrayList<Page> deleteTuples(TransactionId tid, List<Tuple> tuples)
+        throws DbException, TransactionAbortedException {
+        LinkedHashMap<PageId, Page> modified = new LinkedHashMap<PageId, Page>();
+        for (Tuple t : tuples) {
+            Page p = deleteTuple(tid, t);
+            if (p != null) {
+                modified.put(p.getId(), p);
+            }
+        }
+        return new ArrayList<Page>(modified.values());
+    }
+
     /**
      * Returns an iterator over all the tuples stored in this DbFile. The
      * iterator must use {@link BufferPool#getPage}, rather than
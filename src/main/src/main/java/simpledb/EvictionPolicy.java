@@ -0,0 +1,61 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool gives up when it
+ * needs room for a new one. The BufferPool owns the pages themselves; the
+ * policy only sees page ids and is told about every admission, hit and
+ * removal so that it can maintain whatever recency or frequency state it
+ * needs.
+ * <p>
+ * Implementations are not required to be thread safe: the BufferPool only
+ * calls them while holding its own monitor.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy)
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a page becomes resident in the buffer pool.
+     *
+     * @param pid the id of the page that was read into the pool
+     */
+    public void pageAdmitted(PageId pid);
+
+    /**
+     * Called when a resident page is requested again.
+     *
+     * @param pid the id of the page that was hit
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called when a page leaves the buffer pool other than by eviction,
+     * e.g. because it was discarded when its transaction aborted.
+     *
+     * @param pid the id of the page that is no longer resident
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Called when a page leaves the buffer pool because it was evicted. By
+     * default this is the same as {@link #pageRemoved}; policies that
+     * remember evicted pages, such as 2Q, tell the two apart.
+     *
+     * @param pid the id of the evicted page
+     */
+    public default void pageEvicted(PageId pid) {
+        pageRemoved(pid);
+    }
+
+    /**
+     * Choose the page that should be evicted next. The page is not removed
+     * by this call; the BufferPool will call {@link #pageEvicted} once it has
+     * flushed and dropped the page.
+     *
+     * @return the id of the victim page, or null if no page is resident
+     */
+    public PageId chooseVictim();
+
+    /** @return a short human-readable name of this policy, e.g. "LRU" */
+    public String getName();
+}
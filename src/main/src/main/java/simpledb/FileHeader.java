@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * FileHeader describes the header block at the start of a table file,
+ * which records the page size the file was written with and flags for
+ * optional page formats.
+ * <p>
+ * The header takes {@link #SIZE} bytes, so the pages after it stay aligned
+ * to 4 KB blocks, and starts with an 8 byte magic number, a format version,
+ * the page size and the flags. Files written with the legacy page size and
+ * no flags have no header at all, exactly as before headers existed; a
+ * file that does not start with a valid header is read as such a legacy
+ * file.
+ * <p>
+ * With the {@link #CHECKSUMS} flag, the last {@link #CHECKSUM_SIZE} bytes
+ * of every page hold a CRC32C of the rest of the page, so a page that was
+ * corrupted or only partly written is caught when it is read back.
+ *
+ * @see HeapFile
+ * @see BufferPool#getPageSize
+ */
+public class FileHeader {
+
+    /** Bytes taken by the header block at the start of a file that has one */
+    public static final int SIZE = 4096;
+
+    /** Flag: every page ends with a CRC32C of the bytes before it */
+    public static final int CHECKSUMS = 1;
+
+    /** Bytes taken at the end of each page by its checksum */
+    public static final int CHECKSUM_SIZE = 4;
+
+    /** All flags this code understands */
+    private static final int KNOWN_FLAGS = CHECKSUMS;
+
+    /** "SimpleDB" in ASCII */
+    private static final long MAGIC = 0x53696d706c654442L;
+    private static final int VERSION = 1;
+
+    private final int pageSize;
+    private final int flags;
+
+    /**
+     * @param pageSize the page size of the file, in bytes
+     * @param flags flags for optional page formats; 0 for none
+     */
+    public FileHeader(int pageSize, int flags) {
+        BufferPool.checkPageSize(pageSize);
+        this.pageSize = pageSize;
+        this.flags = flags;
+    }
+
+    /** @return the header of a file without one */
+    public static FileHeader legacy() {
+        return new FileHeader(BufferPool.PAGE_SIZE, 0);
+    }
+
+    /**
+     * @return the header of a heap file created now with the given page
+     *     size: with checksums if {@link HeapFile#getChecksumNewFiles} says so
+     */
+    static FileHeader forNewHeapFile(int pageSize) {
+        return new FileHeader(pageSize, HeapFile.getChecksumNewFiles() ? CHECKSUMS : 0);
+    }
+
+    /** @return the page size of the file, in bytes */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the number of bytes of each page that hold page data, i.e. the
+     *     page size less the checksum, if the pages have one
+     */
+    public int getPageDataSize() {
+        return hasFlags(CHECKSUMS) ? pageSize - CHECKSUM_SIZE : pageSize;
+    }
+
+    /**
+     * Put the checksum of the page at the given offset of buf after the data
+     * of the page, if the pages of the file have checksums.
+     */
+    void putChecksum(ByteBuffer buf, int offset) {
+        if (!hasFlags(CHECKSUMS)) {
+            return;
+        }
+        ByteBuffer data = buf.duplicate();
+        data.limit(offset + getPageDataSize()).position(offset);
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        buf.putInt(offset + getPageDataSize(), (int) crc.getValue());
+    }
+
+    /** @return the flags of the file */
+    public int getFlags() {
+        return flags;
+    }
+
+    /** @return true if the file has all of the given flags */
+    public boolean hasFlags(int mask) {
+        return (flags & mask) == mask;
+    }
+
+    /**
+     * @return true if the file needs a header block, i.e. it could not be
+     *     read as a legacy file
+     */
+    public boolean isStored() {
+        return pageSize != BufferPool.PAGE_SIZE || flags != 0;
+    }
+
+    /** @return the offset in the file of the first page */
+    public int getDataOffset() {
+        return isStored() ? SIZE : 0;
+    }
+
+    /** @return the header block of a file with this header */
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(SIZE);
+        buf.putLong(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(pageSize);
+        buf.putInt(flags);
+        return buf.array();
+    }
+
+    /**
+     * Read the header at the start of a file.
+     *
+     * @return the header, or the legacy header if the file does not start
+     *     with a valid one
+     * @throws IOException if the file cannot be read, or has a header of a
+     *     version or with flags this code does not understand
+     */
+    public static FileHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) {
+                return legacy();
+            }
+        }
+        buf.flip();
+        if (buf.getLong() != MAGIC) {
+            return legacy();
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported file format version " + version);
+        }
+        int pageSize = buf.getInt();
+        int flags = buf.getInt();
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("unsupported file flags " + Integer.toHexString(flags));
+        }
+        try {
+            return new FileHeader(pageSize, flags);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupt file header: " + e.getMessage());
+        }
+    }
+
+    /** Write this header at the start of a file, if it needs one. */
+    public void write(FileChannel channel) throws IOException {
+        if (!isStored()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(toBytes());
+        while (buf.hasRemaining()) {
+            channel.write(buf, buf.position());
+        }
+    }
+}
@@ -4,6 +4,10 @@ import java.util.*;
 
 /**
  * Filter is an operator that implements a relational select.
+ * <p>
+ * When the tuples come from a SeqScan, directly or through other Filters,
+ * the predicate is also pushed down to the scan while the Filter is open,
+ * so that the scan can skip pages that cannot hold a matching tuple.
  */
 public class Filter extends Operator {
 
@@ -42,12 +46,29 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
+        SeqScan scan = scanBelow();
+        if (scan != null) {
+            scan.pushDown(predicate);
+        }
         child.open();
     }
 
     public void close() {
         // some code goes here
         child.close();
+        SeqScan scan = scanBelow();
+        if (scan != null) {
+            scan.withdraw(predicate);
+        }
+    }
+
+    /** @return the SeqScan this Filter reads through Filters only, or null */
+    private SeqScan scanBelow() {
+        DbIterator below = child;
+        while (below instanceof Filter) {
+            below = ((Filter) below).child;
+        }
+        return below instanceof SeqScan ? (SeqScan) below : null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * FrameArena carves page-sized frames out of a few large direct ByteBuffers
+ * allocated outside the Java heap. A BufferPool in off-heap mode reads pages
+ * straight into these frames, so the bytes of cached pages are invisible to
+ * the garbage collector and the pool can grow to several gigabytes without
+ * lengthening GC pauses.
+ * <p>
+ * A single direct buffer is limited to 2 GB, so the arena is split into
+ * chunks of at most {@link #CHUNK_BYTES} bytes.
+ */
+public class FrameArena {
+
+    /** Largest direct buffer allocated per chunk. */
+    static final int CHUNK_BYTES = 1 << 30;
+
+    private final int frameSize;
+    private final int numFrames;
+    private final ArrayDeque<ByteBuffer> free;
+
+    /**
+     * @param numFrames the number of frames to allocate
+     * @param frameSize the size of each frame in bytes
+     */
+    public FrameArena(int numFrames, int frameSize) {
+        this.frameSize = frameSize;
+        this.numFrames = numFrames;
+        this.free = new ArrayDeque<>(numFrames);
+        int framesPerChunk = Math.max(1, CHUNK_BYTES / frameSize);
+        int remaining = numFrames;
+        while (remaining > 0) {
+            int n = Math.min(remaining, framesPerChunk);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(n * frameSize);
+            for (int i = 0; i < n; i++) {
+                chunk.limit((i + 1) * frameSize);
+                chunk.position(i * frameSize);
+                free.add(chunk.slice());
+            }
+            remaining -= n;
+        }
+    }
+
+    /** @return the size of each frame in bytes */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /** @return the total number of frames of this arena */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /** @return the number of frames currently not handed out */
+    public synchronized int getFreeFrames() {
+        return free.size();
+    }
+
+    /**
+     * Take a frame out of the arena.
+     *
+     * @return a cleared frame, or null if every frame is in use
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer frame = free.poll();
+        if (frame != null) {
+            frame.clear();
+        }
+        return frame;
+    }
+
+    /**
+     * Return a frame to the arena. Nothing may read or write the frame
+     * afterwards.
+     */
+    public synchronized void release(ByteBuffer frame) {
+        free.add(frame);
+    }
+}
@@ -0,0 +1,148 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records how full each page of a HeapFile is, so that an
+ * insert can go straight to a page with room instead of reading every page
+ * of the file to find one.
+ * <p>
+ * The fill level of a page is kept as one byte: 0 for a full page, and
+ * otherwise the fraction of its slots that are free, in 255ths, rounded up
+ * so that any free slot gives a non-zero level. The map lives in memory,
+ * where inserts and deletes update it as they change pages, and in a
+ * sidecar file next to the table file with one byte per page. A page's
+ * byte in the sidecar is written when the page itself is written, so the
+ * sidecar always describes the pages on disk.
+ * <p>
+ * The map is only a hint: a missing or damaged sidecar is rebuilt from the
+ * table file when the HeapFile is opened, and callers must still check
+ * that the page they were pointed at has room.
+ *
+ * @see HeapFile#insertTuple
+ */
+public class FreeSpaceMap {
+
+    /** The extension of the sidecar file, next to the table file */
+    public static final String EXTENSION = ".fsm";
+
+    private final File file;
+    private final FileChannel channel;
+    private final int slotsPerPage;
+
+    /** fill level of each page */
+    private byte[] levels;
+    private int numPages;
+    /** pages with at least one free slot */
+    private final BitSet withRoom;
+    /** no page below this one has room */
+    private int firstWithRoom;
+
+    /**
+     * Open the free-space map of a heap file, rebuilding its sidecar if it
+     * does not describe numPages pages.
+     *
+     * @param file the sidecar file
+     * @param heapFile the table whose pages the map describes
+     * @param numPages the number of pages in the table file
+     * @param slotsPerPage the number of tuple slots per page
+     */
+    FreeSpaceMap(File file, HeapFile heapFile, int numPages, int slotsPerPage) throws IOException {
+        this.file = file;
+        this.slotsPerPage = slotsPerPage;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.levels = new byte[Math.max(16, numPages)];
+        this.numPages = numPages;
+        this.withRoom = new BitSet(numPages);
+
+        ByteBuffer buf = ByteBuffer.wrap(levels, 0, numPages);
+        if (channel.size() == numPages) {
+            while (buf.hasRemaining() && channel.read(buf, buf.position()) >= 0) {
+            }
+        } else {
+            Debug.log("rebuilding free-space map " + file.getName());
+            for (int i = 0; i < numPages; i++) {
+                levels[i] = level(heapFile.countEmptySlots(i));
+            }
+            channel.truncate(0);
+            while (buf.hasRemaining()) {
+                channel.write(buf, buf.position());
+            }
+        }
+        for (int i = 0; i < numPages; i++) {
+            if (levels[i] != 0) {
+                withRoom.set(i);
+            }
+        }
+        firstWithRoom = 0;
+    }
+
+    /** @return the sidecar file */
+    public File getFile() {
+        return file;
+    }
+
+    private byte level(int emptySlots) {
+        if (emptySlots <= 0) {
+            return 0;
+        }
+        return (byte) Math.max(1, (emptySlots * 255 + slotsPerPage - 1) / slotsPerPage);
+    }
+
+    /**
+     * @return the number of a page that had room the last time the map was
+     *     told about it, or -1 if no page has room
+     */
+    public synchronized int findPageWithRoom() {
+        int page = withRoom.nextSetBit(firstWithRoom);
+        firstWithRoom = page < 0 ? numPages : page;
+        return page;
+    }
+
+    /**
+     * @return the fill level of the given page: 0 if it is full, and up to
+     *     255 if it is empty
+     */
+    public synchronized int getLevel(int page) {
+        return page < numPages ? levels[page] & 0xFF : 255;
+    }
+
+    /**
+     * Record the number of empty slots of a page after it changed in memory.
+     */
+    public synchronized void update(int page, int emptySlots) {
+        if (page >= levels.length) {
+            byte[] grown = new byte[Math.max(page + 1, levels.length * 2)];
+            System.arraycopy(levels, 0, grown, 0, numPages);
+            levels = grown;
+        }
+        numPages = Math.max(numPages, page + 1);
+        levels[page] = level(emptySlots);
+        if (levels[page] != 0) {
+            withRoom.set(page);
+            firstWithRoom = Math.min(firstWithRoom, page);
+        } else {
+            withRoom.clear(page);
+        }
+    }
+
+    /**
+     * Record the number of empty slots of a page as it is written to disk,
+     * both in memory and in the sidecar.
+     */
+    void pageWritten(int page, int emptySlots) throws IOException {
+        byte level;
+        synchronized (this) {
+            update(page, emptySlots);
+            level = levels[page];
+        }
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { level });
+        channel.write(buf, page);
+    }
+}
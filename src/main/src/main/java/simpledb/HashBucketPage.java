@@ -0,0 +1,190 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.NoSuchElementException;
+
+/**
+ * A bucket page of a HashFile. It holds, in no particular order, tuples
+ * whose keys hash to the directory entries that point at the bucket. A
+ * bucket that cannot be split any further, because all of its keys hash
+ * alike, continues on a chain of overflow pages.
+ * <p>
+ * The page starts with three ints: the local depth of the bucket, the
+ * number of tuples, and the page number of the next overflow page, 0 for
+ * none. The tuples follow, packed.
+ */
+public class HashBucketPage implements Page {
+
+    private static final int HEADER_SIZE = 12;
+
+    private final HashPageId pid;
+    private final TupleDesc td;
+    private final int pageSize;
+    private int localDepth;
+    private int numTuples;
+    private int next;
+    private final Tuple[] tuples;
+
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    /**
+     * Create a bucket page from its image, for a hash file registered in the
+     * catalog. Used by the log to rebuild before images.
+     */
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        this(id, data, fileOf(id).getTupleDesc());
+    }
+
+    /**
+     * Create a bucket page from its image.
+     *
+     * @param data the page image, which is as long as a page of the file
+     * @throws IOException if the image is not a valid bucket page
+     */
+    HashBucketPage(HashPageId id, byte[] data, TupleDesc td) throws IOException {
+        this.pid = id;
+        this.td = td;
+        this.pageSize = data.length;
+        this.tuples = new Tuple[maxTuples(data.length, td)];
+        PageReader r = new PageReader(ByteBuffer.wrap(data));
+        localDepth = r.getInt(0);
+        numTuples = r.getInt(4);
+        next = r.getInt(8);
+        if (numTuples < 0 || numTuples > tuples.length) {
+            throw new IOException(id + " has an invalid tuple count " + numTuples);
+        }
+        try {
+            for (int i = 0; i < numTuples; i++) {
+                tuples[i] = r.readTuple(td, HEADER_SIZE + i * td.getSize());
+            }
+        } catch (ParseException e) {
+            throw new IOException(id + " is corrupt: " + e.getMessage());
+        }
+        oldData = data.clone();
+    }
+
+    /** @return the HashFile a page of the given id belongs to, from the catalog */
+    private static HashFile fileOf(HashPageId pid) throws IOException {
+        DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+        if (!(file instanceof HashFile)) {
+            throw new IOException("table " + pid.getTableId() + " is not a hash file");
+        }
+        return (HashFile) file;
+    }
+
+    /** @return the number of tuples a bucket page of the given size holds */
+    static int maxTuples(int pageSize, TupleDesc td) {
+        return (pageSize - HEADER_SIZE) / td.getSize();
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        PageWriter w = new PageWriter(ByteBuffer.allocate(pageSize));
+        w.putInt(0, localDepth);
+        w.putInt(4, numTuples);
+        w.putInt(8, next);
+        for (int i = 0; i < numTuples; i++) {
+            w.writeTuple(tuples[i], td, HEADER_SIZE + i * td.getSize());
+        }
+        return w.getBuffer().array();
+    }
+
+    /** @return the number of low hash bits all keys of the bucket share */
+    public int getLocalDepth() {
+        return localDepth;
+    }
+
+    public void setLocalDepth(int depth) {
+        localDepth = depth;
+    }
+
+    /** @return the id of the next overflow page of the bucket, or null if there is none */
+    public HashPageId getNextId() {
+        return next == 0 ? null : new HashPageId(pid.getTableId(), next, HashPageId.BUCKET);
+    }
+
+    public void setNextId(HashPageId id) {
+        next = id == null ? 0 : id.pageNumber();
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    public boolean isFull() {
+        return numTuples == tuples.length;
+    }
+
+    /** @return the i-th tuple of the page */
+    public Tuple getTuple(int i) {
+        if (i < 0 || i >= numTuples) {
+            throw new NoSuchElementException("no tuple " + i + " on " + pid);
+        }
+        Tuple t = tuples[i];
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    /**
+     * Add a tuple to the page.
+     *
+     * @throws DbException if the page is full or the tuple does not match
+     *     the schema of the file
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        if (isFull()) {
+            throw new DbException(pid + " is full");
+        }
+        tuples[numTuples] = t;
+        t.setRecordId(new RecordId(pid, numTuples));
+        numTuples++;
+    }
+
+    /** Remove the i-th tuple of the page, moving the last tuple into its place. */
+    public void deleteTuple(int i) {
+        if (i < 0 || i >= numTuples) {
+            throw new NoSuchElementException("no tuple " + i + " on " + pid);
+        }
+        tuples[i] = tuples[--numTuples];
+        tuples[numTuples] = null;
+    }
+
+    /** Remove all tuples of the page, keeping its depth and overflow link. */
+    void clear() {
+        for (int i = 0; i < numTuples; i++) {
+            tuples[i] = null;
+        }
+        numTuples = 0;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public HashBucketPage getBeforeImage() {
+        try {
+            return new HashBucketPage(pid, oldData, td);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A page of ints of a HashFile, used for its header page and for the pages
+ * of its directory. The header page, page 0, holds the global depth of the
+ * directory, the number of directory pages and their page numbers; the
+ * directory pages hold, in order, the page number of the bucket for each
+ * value of the low global depth bits of a hash.
+ *
+ * @see HashFile
+ */
+public class HashDirectoryPage implements Page {
+
+    private final HashPageId pid;
+    private final int[] ints;
+
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    /** Create a header or directory page from its image. */
+    public HashDirectoryPage(HashPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.ints = new int[data.length / 4];
+        ByteBuffer.wrap(data).asIntBuffer().get(ints);
+        this.oldData = data.clone();
+    }
+
+    /** @return the number of ints a page of the given size holds */
+    static int capacity(int pageSize) {
+        return pageSize / 4;
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    /** @return the i-th int of the page */
+    public int get(int i) {
+        return ints[i];
+    }
+
+    public void set(int i, int value) {
+        ints[i] = value;
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.allocate(ints.length * 4);
+        buf.asIntBuffer().put(ints);
+        return buf.array();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public HashDirectoryPage getBeforeImage() {
+        try {
+            return new HashDirectoryPage(pid, oldData);
+        } catch (IOException e) {
+            // the image was encoded by this page
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+}
@@ -0,0 +1,589 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * HashFile is a DbFile that stores the tuples of a table in an extendible
+ * hash table on one of its fields, the key. Looking up the tuples with a
+ * given key reads the directory page for the key and the bucket the key
+ * hashes to, whatever the size of the table. Unlike a BTreeFile, it cannot
+ * answer range lookups.
+ * <p>
+ * Page 0 of the file is the header, a {@link HashDirectoryPage} holding the
+ * global depth d of the directory and the page numbers of the directory
+ * pages. The directory has 2^d entries, one for each value of the low d
+ * bits of a hash, each the page number of a {@link HashBucketPage}. A bucket
+ * of local depth l is pointed at by all the 2^(d-l) entries that share its
+ * low l bits.
+ * <p>
+ * A full bucket is split in two on the next bit of the hash, doubling the
+ * directory first if the bucket is as deep as it is. A bucket whose keys
+ * all hash alike, as many copies of a key do, cannot be split and grows a
+ * chain of overflow pages instead. Deletes do not merge buckets. Pages are
+ * read and cached through the BufferPool like those of any other DbFile.
+ *
+ * @see IndexScan
+ * @see Catalog#loadSchema
+ */
+public class HashFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The average fill {@link #bulkLoad} sizes the directory for; below 1 so
+     * that a bucket takes a few inserts before it splits
+     */
+    public static final double BULK_LOAD_FILL = 0.75;
+
+    /** Where the header page keeps the global depth */
+    private static final int GLOBAL_DEPTH = 0;
+    /** Where the header page keeps the number of directory pages */
+    private static final int NUM_DIR_PAGES = 1;
+    /** Where the header page starts listing the directory pages */
+    private static final int FIRST_DIR_PAGE = 2;
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    /** Reads and writes the pages of the file */
+    private final transient PagedFile pages;
+
+    /**
+     * Constructs a hash file backed by the specified file. A new file gets
+     * an empty table: the header page, one directory page and the single
+     * bucket it points at.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples of the file
+     * @param keyField the index of the field the tuples are hashed on
+     */
+    public HashFile(File f, TupleDesc td, int keyField) {
+        this.f = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.pages = new PagedFile(f, HashFile::writeEmptyTable);
+    }
+
+    /** Write the pages of an empty table: a directory of one entry, for one empty bucket. */
+    private static void writeEmptyTable(PagedFile file) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(file.getPageSize());
+        buf.putInt(GLOBAL_DEPTH * 4, 0);
+        buf.putInt(NUM_DIR_PAGES * 4, 1);
+        buf.putInt(FIRST_DIR_PAGE * 4, 1);
+        file.writePageData(0, buf.array());
+        buf = ByteBuffer.allocate(file.getPageSize());
+        buf.putInt(0, 2);
+        file.writePageData(1, buf.array());
+        file.writePageData(2, new byte[file.getPageSize()]);
+    }
+
+    /** @return the size in bytes of the pages of this file */
+    public int getPageSize() {
+        return pages.getPageSize();
+    }
+
+    /** @return the index of the field the tuples are hashed on */
+    public int keyField() {
+        return keyField;
+    }
+
+    /**
+     * Returns the File backing this file on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages in this file, including the header and
+     * directory pages.
+     */
+    public int numPages() {
+        return pages.numPages();
+    }
+
+    /** @return the number of directory entries a directory page holds */
+    private int entriesPerPage() {
+        return HashDirectoryPage.capacity(getPageSize());
+    }
+
+    /**
+     * @return the deepest the directory can get: the header page has room
+     *     for the page numbers of only so many directory pages
+     */
+    int maxDepth() {
+        long entries = (long) (entriesPerPage() - FIRST_DIR_PAGE) * entriesPerPage();
+        int depth = 0;
+        while (depth < 30 && (2L << depth) <= entries) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return the hash of a key, with the bits of Field.hashCode mixed so
+     *     that the low bits the directory uses depend on all of them
+     */
+    static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mask(int depth) {
+        return (1 << depth) - 1;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof HashPageId) || pid.getTableId() != getId()) {
+            return null;
+        }
+        HashPageId id = (HashPageId) pid;
+        return pages.readPage(id.pageNumber(), data -> {
+            switch (id.pgcateg()) {
+            case HashPageId.HEADER:
+            case HashPageId.DIRECTORY:
+                return new HashDirectoryPage(id, data);
+            case HashPageId.BUCKET:
+                return new HashBucketPage(id, data, td);
+            default:
+                throw new IllegalArgumentException("unknown category of " + id);
+            }
+        });
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        pages.writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    /**
+     * Fill this table, which must be new and empty, with the given tuples:
+     * the directory is made deep enough for the buckets to be
+     * {@link #BULK_LOAD_FILL} full on average, and the tuples are written
+     * to their buckets directly instead of being inserted one at a time.
+     * As with {@link BTreeFile#bulkLoad}, the BufferPool is bypassed, so no
+     * page of the table may be in it during the load.
+     *
+     * @throws DbException if the table is not empty or the tuples do not
+     *     match the schema of the table
+     */
+    public synchronized void bulkLoad(Iterator<Tuple> tuples) throws DbException, IOException {
+        HashPageId firstBucket = new HashPageId(getId(), 2, HashPageId.BUCKET);
+        if (numPages() != 3 || ((HashBucketPage) readPage(firstBucket)).getNumTuples() != 0) {
+            throw new DbException("bulk load needs an empty table");
+        }
+        List<Tuple> all = new ArrayList<Tuple>();
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            if (!td.equals(t.getTupleDesc())) {
+                throw new DbException("tupledesc is mismatch");
+            }
+            all.add(t);
+        }
+        int perBucket = HashBucketPage.maxTuples(getPageSize(), td);
+        int depth = 0;
+        while (depth < maxDepth() && (1L << depth) * perBucket * BULK_LOAD_FILL < all.size()) {
+            depth++;
+        }
+        List<List<Tuple>> buckets = new ArrayList<List<Tuple>>(1 << depth);
+        for (int i = 0; i < 1 << depth; i++) {
+            buckets.add(new ArrayList<Tuple>());
+        }
+        for (Tuple t : all) {
+            buckets.get(hash(t.getField(keyField)) & mask(depth)).add(t);
+        }
+
+        int dirPages = Math.max(1, (1 << depth) / entriesPerPage());
+        HashDirectoryPage headerPage = new HashDirectoryPage(headerId(), new byte[getPageSize()]);
+        headerPage.set(GLOBAL_DEPTH, depth);
+        headerPage.set(NUM_DIR_PAGES, dirPages);
+        List<HashDirectoryPage> directory = new ArrayList<HashDirectoryPage>();
+        for (int i = 0; i < dirPages; i++) {
+            headerPage.set(FIRST_DIR_PAGE + i, 1 + i);
+            directory.add(new HashDirectoryPage(
+                    new HashPageId(getId(), 1 + i, HashPageId.DIRECTORY), new byte[getPageSize()]));
+        }
+        int pgNo = 1 + dirPages;
+        for (int i = 0; i < buckets.size(); i++) {
+            directory.get(i / entriesPerPage()).set(i % entriesPerPage(), pgNo);
+            HashBucketPage page = null;
+            Iterator<Tuple> it = buckets.get(i).iterator();
+            do {
+                HashBucketPage next = new HashBucketPage(
+                        new HashPageId(getId(), pgNo++, HashPageId.BUCKET),
+                        new byte[getPageSize()], td);
+                next.setLocalDepth(depth);
+                if (page != null) {
+                    page.setNextId(next.getId());
+                    writePage(page);
+                }
+                page = next;
+                while (it.hasNext() && !page.isFull()) {
+                    page.insertTuple(it.next());
+                }
+            } while (it.hasNext());
+            writePage(page);
+        }
+        for (HashDirectoryPage page : directory) {
+            writePage(page);
+        }
+        writePage(headerPage);
+    }
+
+    /** @return the id of the header page of this file */
+    private HashPageId headerId() {
+        return new HashPageId(getId(), 0, HashPageId.HEADER);
+    }
+
+    private HashDirectoryPage getHeader(TransactionId tid, Map<PageId, Page> dirtypages,
+                                        Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (HashDirectoryPage) PagedFile.getPage(tid, dirtypages, headerId(), perm);
+    }
+
+    /** @return the id of the directory page holding the given entry */
+    private HashPageId directoryPageId(HashDirectoryPage headerPage, int entry) {
+        return new HashPageId(getId(), headerPage.get(FIRST_DIR_PAGE + entry / entriesPerPage()),
+                HashPageId.DIRECTORY);
+    }
+
+    /** @return the id of the bucket the given directory entry points at */
+    private HashPageId getEntry(TransactionId tid, Map<PageId, Page> dirtypages,
+                                HashDirectoryPage headerPage, int entry)
+            throws DbException, TransactionAbortedException {
+        HashDirectoryPage dir = (HashDirectoryPage) PagedFile.getPage(tid, dirtypages,
+                directoryPageId(headerPage, entry), Permissions.READ_ONLY);
+        return new HashPageId(getId(), dir.get(entry % entriesPerPage()), HashPageId.BUCKET);
+    }
+
+    private void setEntry(TransactionId tid, Map<PageId, Page> dirtypages,
+                          HashDirectoryPage headerPage, int entry, HashPageId bucket)
+            throws DbException, TransactionAbortedException {
+        HashDirectoryPage dir = (HashDirectoryPage) PagedFile.getPage(tid, dirtypages,
+                directoryPageId(headerPage, entry), Permissions.READ_WRITE);
+        dir.set(entry % entriesPerPage(), bucket.pageNumber());
+    }
+
+    /** @return the id of the first page of the bucket the given key hashes to */
+    private HashPageId findBucket(TransactionId tid, Map<PageId, Page> dirtypages, Field key)
+            throws DbException, TransactionAbortedException {
+        HashDirectoryPage headerPage = getHeader(tid, dirtypages, Permissions.READ_ONLY);
+        int entry = hash(key) & mask(headerPage.get(GLOBAL_DEPTH));
+        return getEntry(tid, dirtypages, headerPage, entry);
+    }
+
+    /** @return the pages of the bucket starting at the given page, overflow pages last */
+    private List<HashBucketPage> chain(TransactionId tid, Map<PageId, Page> dirtypages,
+                                       HashPageId first, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        List<HashBucketPage> pages = new ArrayList<HashBucketPage>();
+        for (HashPageId id = first; id != null; ) {
+            HashBucketPage page = (HashBucketPage) PagedFile.getPage(tid, dirtypages, id, perm);
+            pages.add(page);
+            id = page.getNextId();
+        }
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        Map<PageId, Page> dirtypages = new LinkedHashMap<PageId, Page>();
+        Field key = t.getField(keyField);
+        int h = hash(key);
+        while (true) {
+            HashPageId bucket = findBucket(tid, dirtypages, key);
+            List<HashBucketPage> pages = chain(tid, dirtypages, bucket, Permissions.READ_ONLY);
+            for (HashBucketPage page : pages) {
+                if (!page.isFull()) {
+                    page = (HashBucketPage) PagedFile.getPage(tid, dirtypages, page.getId(),
+                            Permissions.READ_WRITE);
+                    page.insertTuple(t);
+                    return new ArrayList<Page>(dirtypages.values());
+                }
+            }
+            if (pages.get(0).getLocalDepth() < maxDepth() && splittable(pages, h)) {
+                splitBucket(tid, dirtypages, bucket, h);
+                continue;
+            }
+            // every key of the bucket hashes like this one: chain a page
+            HashBucketPage last = (HashBucketPage) PagedFile.getPage(tid, dirtypages,
+                    pages.get(pages.size() - 1).getId(), Permissions.READ_WRITE);
+            HashBucketPage overflow = newBucketPage(dirtypages, pages.get(0).getLocalDepth());
+            last.setNextId(overflow.getId());
+            overflow.insertTuple(t);
+            return new ArrayList<Page>(dirtypages.values());
+        }
+    }
+
+    /**
+     * @return true if splitting the bucket, as deep as the directory may
+     *     go, would separate some of its keys from the given hash
+     */
+    private boolean splittable(List<HashBucketPage> pages, int h) {
+        int m = mask(maxDepth());
+        for (HashBucketPage page : pages) {
+            for (int i = 0; i < page.getNumTuples(); i++) {
+                if (((hash(page.getTuple(i).getField(keyField)) ^ h) & m) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split a bucket on the next bit of the hash: the tuples with that bit
+     * set move to a new bucket, and the directory entries with that bit set
+     * are pointed at it. The pages of the overflow chain of the bucket are
+     * reused for the two halves before any are appended.
+     *
+     * @param first the first page of the bucket
+     * @param h the hash of a key of the bucket
+     */
+    private void splitBucket(TransactionId tid, Map<PageId, Page> dirtypages, HashPageId first,
+                             int h) throws DbException, IOException, TransactionAbortedException {
+        List<HashBucketPage> pages = chain(tid, dirtypages, first, Permissions.READ_WRITE);
+        int depth = pages.get(0).getLocalDepth();
+        HashDirectoryPage headerPage = getHeader(tid, dirtypages, Permissions.READ_ONLY);
+        if (depth == headerPage.get(GLOBAL_DEPTH)) {
+            headerPage = doubleDirectory(tid, dirtypages);
+        }
+
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        LinkedList<HashBucketPage> spare = new LinkedList<HashBucketPage>();
+        for (HashBucketPage page : pages) {
+            for (int i = 0; i < page.getNumTuples(); i++) {
+                tuples.add(page.getTuple(i));
+            }
+            page.clear();
+            page.setNextId(null);
+            page.setLocalDepth(depth + 1);
+            spare.add(page);
+        }
+        HashBucketPage low = spare.removeFirst();
+        HashBucketPage high = spare.isEmpty() ? newBucketPage(dirtypages, depth + 1)
+                : spare.removeFirst();
+        HashBucketPage lowTail = low;
+        HashBucketPage highTail = high;
+        for (Tuple t : tuples) {
+            boolean toHigh = (hash(t.getField(keyField)) >>> depth & 1) != 0;
+            HashBucketPage tail = toHigh ? highTail : lowTail;
+            if (tail.isFull()) {
+                HashBucketPage next = spare.isEmpty() ? newBucketPage(dirtypages, depth + 1)
+                        : spare.removeFirst();
+                tail.setNextId(next.getId());
+                tail = next;
+                if (toHigh) {
+                    highTail = tail;
+                } else {
+                    lowTail = tail;
+                }
+            }
+            tail.insertTuple(t);
+        }
+        // pages left over stay on the chain, empty, for later inserts
+        for (HashBucketPage page : spare) {
+            lowTail.setNextId(page.getId());
+            lowTail = page;
+        }
+
+        int globalDepth = headerPage.get(GLOBAL_DEPTH);
+        for (int entry = (h & mask(depth)) | 1 << depth; entry < 1 << globalDepth;
+                entry += 2 << depth) {
+            setEntry(tid, dirtypages, headerPage, entry, high.getId());
+        }
+    }
+
+    /**
+     * Double the directory: each new entry points at the bucket of the
+     * entry it differs from in its top bit only. Directory pages are added
+     * as needed.
+     *
+     * @return the header page, for writing
+     */
+    private HashDirectoryPage doubleDirectory(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, IOException, TransactionAbortedException {
+        HashDirectoryPage headerPage = getHeader(tid, dirtypages, Permissions.READ_WRITE);
+        int entries = 1 << headerPage.get(GLOBAL_DEPTH);
+        int dirPages = headerPage.get(NUM_DIR_PAGES);
+        while ((long) dirPages * entriesPerPage() < 2L * entries) {
+            HashPageId pid = new HashPageId(getId(), pages.appendPage(), HashPageId.DIRECTORY);
+            Database.getBufferPool().discardPage(pid);
+            dirtypages.put(pid, new HashDirectoryPage(pid, new byte[getPageSize()]));
+            headerPage.set(FIRST_DIR_PAGE + dirPages++, pid.pageNumber());
+        }
+        headerPage.set(NUM_DIR_PAGES, dirPages);
+        for (int entry = 0; entry < entries; entry++) {
+            setEntry(tid, dirtypages, headerPage, entries + entry,
+                    getEntry(tid, dirtypages, headerPage, entry));
+        }
+        headerPage.set(GLOBAL_DEPTH, headerPage.get(GLOBAL_DEPTH) + 1);
+        return headerPage;
+    }
+
+    /** Append an empty bucket page of the given depth to the file, for the operation. */
+    private HashBucketPage newBucketPage(Map<PageId, Page> dirtypages, int depth)
+            throws IOException {
+        HashPageId pid = new HashPageId(getId(), pages.appendPage(), HashPageId.BUCKET);
+        Database.getBufferPool().discardPage(pid);
+        HashBucketPage page = new HashBucketPage(pid, new byte[getPageSize()], td);
+        page.setLocalDepth(depth);
+        dirtypages.put(pid, page);
+        return page;
+    }
+
+    /**
+     * Removes the specified tuple from its bucket. The tuple is looked up by
+     * its key and fields, so its RecordId only has to name this file.
+     *
+     * @throws DbException if the tuple is not in the table
+     */
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not in this table");
+        }
+        Map<PageId, Page> dirtypages = new LinkedHashMap<PageId, Page>();
+        HashPageId bucket = findBucket(tid, dirtypages, t.getField(keyField));
+        for (HashBucketPage page : chain(tid, dirtypages, bucket, Permissions.READ_ONLY)) {
+            for (int i = 0; i < page.getNumTuples(); i++) {
+                if (PagedFile.sameFields(page.getTuple(i), t)) {
+                    page = (HashBucketPage) PagedFile.getPage(tid, dirtypages, page.getId(),
+                            Permissions.READ_WRITE);
+                    page.deleteTuple(i);
+                    return page;
+                }
+            }
+        }
+        throw new DbException("tuple is not in this table");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the file with the key of the
+     * given predicate. Only the bucket the key hashes to is read.
+     *
+     * @param ipred the predicate on the key field; its operator must be
+     *     EQUALS
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        if (ipred.getOp() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("a hash file cannot answer " + ipred);
+        }
+        return new HashFileIterator(tid, ipred.getField());
+    }
+
+    /**
+     * Walks the pages of the buckets to read: every bucket of the directory
+     * for a full scan, or the one a key hashes to.
+     */
+    private class HashFileIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final Field key;
+        private List<HashPageId> buckets = Collections.emptyList();
+        private int nextBucket;
+        private HashBucketPage page;
+        private int pos;
+        private Tuple next;
+
+        HashFileIterator(TransactionId tid, Field key) {
+            this.tid = tid;
+            this.key = key;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            Map<PageId, Page> none = Collections.emptyMap();
+            if (key != null) {
+                buckets = Collections.singletonList(findBucket(tid, none, key));
+            } else {
+                // a bucket is pointed at by several entries; read it once
+                Set<HashPageId> distinct = new LinkedHashSet<HashPageId>();
+                HashDirectoryPage headerPage = getHeader(tid, none, Permissions.READ_ONLY);
+                for (int entry = 0; entry < 1 << headerPage.get(GLOBAL_DEPTH); entry++) {
+                    distinct.add(getEntry(tid, none, headerPage, entry));
+                }
+                buckets = new ArrayList<HashPageId>(distinct);
+            }
+            nextBucket = 0;
+            page = null;
+            next = null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null) {
+                if (page == null) {
+                    if (nextBucket == buckets.size()) {
+                        return false;
+                    }
+                    page = readBucket(buckets.get(nextBucket++));
+                    pos = 0;
+                } else if (pos == page.getNumTuples()) {
+                    HashPageId overflow = page.getNextId();
+                    page = overflow == null ? null : readBucket(overflow);
+                    pos = 0;
+                } else {
+                    Tuple t = page.getTuple(pos++);
+                    if (key == null || key.equals(t.getField(keyField))) {
+                        next = t;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private HashBucketPage readBucket(HashPageId pid)
+                throws DbException, TransactionAbortedException {
+            return (HashBucketPage) Database.getBufferPool().getPage(tid, pid,
+                    Permissions.READ_ONLY);
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            buckets = Collections.emptyList();
+            page = null;
+            next = null;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
@@ -9,12 +15,64 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * A HeapFile may keep a CRC32C checksum at the end of each page, as recorded
+ * by the {@link FileHeader#CHECKSUMS} flag of its header. writePage then
+ * stamps every page with its checksum, and a page read back whose checksum
+ * does not match, because it was corrupted on disk or only partly written,
+ * is refused with a DbException instead of being handed to the buffer pool.
+ * New files get checksums if {@link #setChecksumNewFiles} says so; files
+ * that already exist keep the format they were written with.
+ * <p>
+ * A table with INT_TYPE columns keeps a {@link ZoneMap} of the values on
+ * each range of its pages, so that scans given predicates on those columns
+ * can skip ranges that hold no matching tuple. A table may also keep
+ * {@link BloomFilters} of some STRING_TYPE columns on each page, so that
+ * scans for tuples equal to a string can skip the pages that cannot hold it.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * Largest file that {@link #HeapFile(File, TupleDesc, boolean)} maps into
+     * memory; a single MappedByteBuffer cannot address more than this.
+     */
+    public static final long DEFAULT_MAP_LIMIT = Integer.MAX_VALUE;
+
+    /** Whether new files are created with page checksums */
+    private static volatile boolean checksumNewFiles = Boolean.getBoolean("simpledb.checksums");
+
+    private File f;;
+    private TupleDesc td;
+    /**
+     * All page I/O uses positional reads and writes on this channel, so it
+     * has no shared file pointer and concurrent readers do not serialise.
+     */
+    private transient FileChannel channel;
+    /** The whole file mapped read-only, or null if the file is not mapped. */
+    private transient MappedByteBuffer mapped;
+    private final boolean readOnly;
+    /** Page size and format of the file, from its header */
+    private FileHeader header;
+    private volatile int numPages;
+    private int tupleCountPage;
+    /** Fill level of each page, opened by the first insert or delete */
+    private transient FreeSpaceMap freeSpace;
+    /** Pages whose checksum was checked and matched */
+    private final AtomicLong verifiedPages = new AtomicLong();
+    /** Pages whose checksum was checked and did not match */
+    private final AtomicLong checksumFailures = new AtomicLong();
+    /** Min and max of the INT_TYPE columns per page range, created on first use */
+    private transient ZoneMap zoneMap;
+    /** Pages scans skipped because the zone map or Bloom filters ruled them out */
+    private final AtomicLong skippedPages = new AtomicLong();
+    /** Bloom filters of some STRING_TYPE columns per page, if the table has them */
+    private transient BloomFilters bloom;
+    /** Whether the Bloom filter sidecar was looked for */
+    private transient boolean bloomOpened;
+
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -22,23 +80,283 @@ public class HeapFile implements DbFile {
      *            the file that stores the on-disk backing store for this heap
      *            file.
      */
-    private File f;;
-    private TupleDesc td;
-    private RandomAccessFile tableAccessFile;
-    private int numPages;
-    private int tupleCountPage;
-
     public HeapFile(File f, TupleDesc td) {
         // some code goes here
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, optionally in
+     * read-only memory-mapped mode.
+     *
+     * @see #HeapFile(File, TupleDesc, boolean, long)
+     */
+    public HeapFile(File f, TupleDesc td, boolean readOnlyMapped) {
+        this(f, td, readOnlyMapped, DEFAULT_MAP_LIMIT);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file. In read-only
+     * mapped mode the file is mapped into memory once and readPage serves
+     * pages as slices of the mapping instead of reading them into freshly
+     * allocated arrays; the pages still live in the BufferPool like any
+     * other page. Files larger than mapLimit are read through the channel
+     * instead. A read-only heap file rejects writes.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *     file.
+     * @param readOnlyMapped true to open the file read-only and map it
+     * @param mapLimit the largest file size, in bytes, that will be mapped
+     */
+    public HeapFile(File f, TupleDesc td, boolean readOnlyMapped, long mapLimit) {
         this.f = f;
         this.td = td;
+        this.readOnly = readOnlyMapped;
+        this.header = FileHeader.legacy();
         try {
-            this.tableAccessFile = new RandomAccessFile(f, "rw");
-            this.numPages = (int) tableAccessFile.length() / BufferPool.PAGE_SIZE;
-        }catch (IOException e) {
+            if (readOnly) {
+                this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            } else {
+                this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            }
+            long size = channel.size();
+            if (size == 0 && !readOnly) {
+                // a new file takes the page size currently configured
+                this.header = FileHeader.forNewHeapFile(BufferPool.getPageSize());
+                header.write(channel);
+                size = channel.size();
+            } else {
+                this.header = FileHeader.read(channel);
+            }
+            this.numPages = (int) (Math.max(0, size - header.getDataOffset()) / header.getPageSize());
+            if (readOnly && size <= Math.min(mapLimit, DEFAULT_MAP_LIMIT)) {
+                this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        } catch (IOException e) {
+            Debug.log("unable to open " + f.getAbsolutePath() + ": " + e.getMessage());
+        }
+        this.tupleCountPage = header.getPageDataSize() * 8 / (td.getSize() * 8 + 1);
+    }
+
+    /** @return the size in bytes of the pages of this file */
+    public int getPageSize() {
+        return header.getPageSize();
+    }
+
+    /**
+     * Set whether heap files created from now on, i.e. opened on an empty
+     * file or written by a {@link BulkLoader} or {@link HeapFileEncoder},
+     * keep a checksum on each page. Off by default, unless the
+     * <tt>simpledb.checksums</tt> system property is true.
+     */
+    public static void setChecksumNewFiles(boolean checksums) {
+        checksumNewFiles = checksums;
+    }
+
+    /** @return true if heap files created from now on keep page checksums */
+    public static boolean getChecksumNewFiles() {
+        return checksumNewFiles;
+    }
+
+    /** @return true if the pages of this file carry checksums */
+    public boolean hasChecksums() {
+        return header.hasFlags(FileHeader.CHECKSUMS);
+    }
+
+    /** @return the number of pages read whose checksum was verified */
+    public long getVerifiedPages() {
+        return verifiedPages.get();
+    }
+
+    /** @return the number of pages read whose checksum did not match */
+    public long getChecksumFailures() {
+        return checksumFailures.get();
+    }
+
+    /** @return the header of this file, giving its page size and format */
+    public FileHeader getHeader() {
+        return header;
+    }
+
+    /** @return the offset in the file of the given page */
+    private long pageOffset(int pageNumber) {
+        return header.getDataOffset() + (long) pageNumber * header.getPageSize();
+    }
+
+    /**
+     * Returns the free-space map of this file, opening it, and rebuilding
+     * it if need be, on first use.
+     */
+    synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (freeSpace == null) {
+            freeSpace = new FreeSpaceMap(Utility.sidecar(f, FreeSpaceMap.EXTENSION), this,
+                    numPages, tupleCountPage);
+        }
+        return freeSpace;
+    }
+
+    /**
+     * Returns the zone map of this file, creating it on first use without
+     * loading it, so that inserts and writes can widen its bounds in memory.
+     *
+     * @return the zone map, or null if the table has no INT_TYPE column
+     */
+    private synchronized ZoneMap zoneMap() {
+        if (zoneMap == null) {
+            for (int i = 0; i < td.numFields(); i++) {
+                if (td.getFieldType(i) == Type.INT_TYPE) {
+                    zoneMap = new ZoneMap(Utility.sidecar(f, ZoneMap.EXTENSION), this,
+                            ZoneMap.DEFAULT_RANGE_PAGES);
+                    break;
+                }
+            }
+        }
+        return zoneMap;
+    }
 
+    /**
+     * Returns the zone map of this file, loading it, and rebuilding it if
+     * need be, the first time a scan needs it.
+     *
+     * @return the zone map, or null if the table has no INT_TYPE column
+     */
+    ZoneMap getZoneMap() throws IOException {
+        ZoneMap zones = zoneMap();
+        if (zones != null) {
+            zones.load();
         }
-        this.tupleCountPage = BufferPool.PAGE_SIZE * 8 / (td.getSize() * 8 + 1);
+        return zones;
+    }
+
+    /**
+     * @return the number of pages scans skipped because the zone map or the
+     *     Bloom filters ruled them out
+     */
+    public long getSkippedPages() {
+        return skippedPages.get();
+    }
+
+    /**
+     * Returns the Bloom filters of this file, opened from the header of the
+     * sidecar on first use but not loaded. Writes go through these: they
+     * must not read the whole sidecar, let alone rebuild it, and a sidecar
+     * that can't be opened is dropped rather than failing them.
+     *
+     * @return the filters, or null if the table has none
+     */
+    private synchronized BloomFilters bloomFilters() {
+        if (!bloomOpened) {
+            File sidecar = Utility.sidecar(f, BloomFilters.EXTENSION);
+            try {
+                bloom = BloomFilters.open(sidecar, this);
+            } catch (IOException e) {
+                Debug.log("unable to open " + sidecar.getName() + ", deleting it: " + e.getMessage());
+                if (!readOnly) {
+                    sidecar.delete();
+                }
+            }
+            bloomOpened = true;
+        }
+        return bloom;
+    }
+
+    /**
+     * Returns the Bloom filters of this file, loading them, and rebuilding
+     * them if need be, the first time a scan needs them.
+     *
+     * @return the filters, or null if the table has none
+     * @see #createBloomFilters
+     */
+    public BloomFilters getBloomFilters() throws IOException {
+        BloomFilters filters = bloomFilters();
+        if (filters != null) {
+            filters.load();
+        }
+        return filters;
+    }
+
+    /**
+     * Build Bloom filters of the given STRING_TYPE columns of every page of
+     * this file, replacing any the table had, and keep them from now on. The
+     * filters are built from the pages on disk, so no page of the table may
+     * be dirty in the buffer pool.
+     *
+     * @param fields the columns to filter
+     * @param fpp the false positive rate to size the filters for, e.g.
+     *     {@link BloomFilters#DEFAULT_FPP}
+     * @return the filters
+     * @throws DbException if a column is not a STRING_TYPE column of the
+     *     table, or a page can't be read
+     */
+    public synchronized BloomFilters createBloomFilters(int[] fields, double fpp)
+            throws DbException, IOException {
+        if (readOnly) {
+            throw new IOException(f.getAbsolutePath() + " is opened read-only");
+        }
+        checkBloomFields(td, fields);
+        BloomFilters filters = new BloomFilters(Utility.sidecar(f, BloomFilters.EXTENSION), fields,
+                tupleCountPage, fpp);
+        for (int pg = 0; pg < numPages; pg++) {
+            filters.addPage(pg, readHeapPage(new HeapPageId(getId(), pg)).iterator());
+        }
+        filters.setNumPages(numPages);
+        filters.save();
+        bloom = filters;
+        bloomOpened = true;
+        return filters;
+    }
+
+    /** @throws DbException unless the fields are distinct STRING_TYPE fields of td */
+    static void checkBloomFields(TupleDesc td, int[] fields) throws DbException {
+        if (fields.length == 0) {
+            throw new DbException("no columns to filter");
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] < 0 || fields[i] >= td.numFields()
+                    || td.getFieldType(fields[i]) != Type.STRING_TYPE) {
+                throw new DbException("column " + fields[i] + " is not a string column");
+            }
+            for (int j = 0; j < i; j++) {
+                if (fields[j] == fields[i]) {
+                    throw new DbException("column " + fields[i] + " is given twice");
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the sidecar files kept next to a table file, so that a table
+     * file written anew does not pick up maps of what it held before.
+     */
+    static void removeSidecars(File tableFile) {
+        Utility.sidecar(tableFile, FreeSpaceMap.EXTENSION).delete();
+        Utility.sidecar(tableFile, ZoneMap.EXTENSION).delete();
+        Utility.sidecar(tableFile, BloomFilters.EXTENSION).delete();
+    }
+
+    /**
+     * Count the empty slots of a page as stored on disk, reading only its
+     * header. Used to rebuild the free-space map.
+     */
+    int countEmptySlots(int pageNumber) throws IOException {
+        ByteBuffer bitmap = ByteBuffer.allocate((tupleCountPage + 7) / 8);
+        readFully(bitmap, pageOffset(pageNumber));
+        int used = 0;
+        for (int i = 0; i < tupleCountPage; i++) {
+            used += bitmap.get(i >>> 3) >>> (i & 7) & 1;
+        }
+        return tupleCountPage - used;
+    }
+
+    /** @return true if this heap file was opened read-only */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /** @return true if pages of this heap file are served from a mapping */
+    public boolean isMapped() {
+        return mapped != null;
     }
 
     /**
@@ -77,29 +395,261 @@ public class HeapFile implements DbFile {
 //        throw new UnsupportedOperationException("implement this");
     }
 
-    // see DbFile.java for javadocs
+    /**
+     * Read the specified page from disk.
+     *
+     * @return the page, or null if it is not a page of this file
+     * @throws IllegalArgumentException if the page can't be read or fails
+     *     its checksum, saying which
+     * @see #readHeapPage
+     */
     public Page readPage(PageId pid) {
         // some code goes here
-        if (pid instanceof HeapPageId && pid.getTableId() == getId()) {
-            HeapPageId heapPageId = (HeapPageId)(pid);
-            int pageOffset = heapPageId.pageNumber() * BufferPool.PAGE_SIZE;
-            byte[] data = new byte[BufferPool.PAGE_SIZE];
-            try {
-                tableAccessFile.seek(pageOffset);
-                tableAccessFile.read(data);
+        try {
+            return readHeapPage(pid);
+        } catch (DbException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the specified page, as {@link #readPage(PageId)} does, raising a
+     * checked exception if the page can't be read or fails its checksum.
+     * Pages past the end of the file read as empty.
+     *
+     * @return the page, or null if it is not a page of this file
+     * @throws DbException if the page can't be read or is corrupt
+     */
+    public HeapPage readHeapPage(PageId pid) throws DbException {
+        if (!(pid instanceof HeapPageId) || pid.getTableId() != getId()) {
+            return null;
+        }
+        HeapPageId heapPageId = (HeapPageId) pid;
+        long pageOffset = pageOffset(heapPageId.pageNumber());
+        int pageSize = getPageSize();
+        try {
+            if (mapped != null && pageOffset + pageSize <= mapped.capacity()) {
+                ByteBuffer slice = mapped.duplicate();
+                slice.position((int) pageOffset);
+                slice.limit((int) pageOffset + pageSize);
+                return new HeapPage(heapPageId, verify(heapPageId, slice.slice()));
+            }
+            byte[] data = new byte[pageSize];
+            int n = readFully(ByteBuffer.wrap(data), pageOffset);
+            if (!hasChecksums()) {
                 return new HeapPage(heapPageId, data);
-            } catch (IOException e) {
-                Debug.log(f.getAbsolutePath() + " offset is invalid:" + pageOffset);
             }
+            if (n == 0) {
+                // a page past the end of the file has never been written
+                return new HeapPage(heapPageId,
+                        ByteBuffer.wrap(data, 0, header.getPageDataSize()).slice());
+            }
+            return new HeapPage(heapPageId, verify(heapPageId, ByteBuffer.wrap(data)));
+        } catch (IOException e) {
+            throw new DbException("unable to read page " + heapPageId.pageNumber()
+                    + " of table " + tableName() + ": " + e.getMessage());
         }
+    }
 
-        return null;
+    /**
+     * Read the specified page into a caller-supplied frame and return a page
+     * backed by it, instead of allocating a new array for the page image.
+     * Used by the buffer pool in off-heap mode.
+     *
+     * @param pid the page to read
+     * @param frame a buffer of exactly {@link #getPageSize} bytes; the page
+     *     image is read into it and the page keeps using it
+     * @return the page, or null if it is not a page of this file
+     * @throws DbException if the page can't be read or is corrupt
+     */
+    public Page readPage(PageId pid, ByteBuffer frame) throws DbException {
+        if (!(pid instanceof HeapPageId) || pid.getTableId() != getId()) {
+            return null;
+        }
+        long pageOffset = pageOffset(pid.pageNumber());
+        try {
+            ByteBuffer target = frame.duplicate();
+            target.clear();
+            int n = readFully(target, pageOffset);
+            // bytes past the end of the file read as zero
+            while (target.hasRemaining()) {
+                target.put((byte) 0);
+            }
+            if (n == 0 && hasChecksums()) {
+                ByteBuffer data = frame.duplicate();
+                data.clear();
+                data.limit(header.getPageDataSize());
+                return new HeapPage((HeapPageId) pid, data.slice());
+            }
+            return new HeapPage((HeapPageId) pid, verify((HeapPageId) pid, frame));
+        } catch (IOException e) {
+            throw new DbException("unable to read page " + pid.pageNumber()
+                    + " of table " + tableName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check the checksum of a page image read from the file, if the file
+     * has checksums.
+     *
+     * @param image the whole page as stored, {@link #getPageSize} bytes
+     * @return the page data of the image, without its checksum
+     * @throws DbException if the checksum does not match
+     */
+    private ByteBuffer verify(HeapPageId pid, ByteBuffer image) throws DbException {
+        if (!hasChecksums()) {
+            return image;
+        }
+        int dataSize = header.getPageDataSize();
+        ByteBuffer data = image.duplicate();
+        data.clear();
+        data.limit(dataSize);
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != image.getInt(dataSize)) {
+            checksumFailures.incrementAndGet();
+            throw new DbException("checksum mismatch on page " + pid.pageNumber()
+                    + " of table " + tableName() + " (" + f.getAbsolutePath()
+                    + "): the page is corrupt or was only partly written");
+        }
+        verifiedPages.incrementAndGet();
+        return data.slice();
+    }
+
+    /** @return the name of this table in the catalog, or its file name if it has none */
+    private String tableName() {
+        try {
+            return Database.getCatalog().getTableName(getId());
+        } catch (NoSuchElementException e) {
+            return f.getName();
+        }
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
-        // not necessary for proj1
+        if (readOnly) {
+            throw new IOException(f.getAbsolutePath() + " is opened read-only");
+        }
+        int pgNo = page.getId().pageNumber();
+        if (hasChecksums()) {
+            PageWriter image = PageWriter.acquire(getPageSize());
+            try {
+                putImage(page, image, 0);
+                ByteBuffer buf = image.getBuffer().duplicate();
+                buf.clear();
+                writeFully(buf, pageOffset(pgNo));
+            } finally {
+                image.release();
+            }
+        } else {
+            writeFully(ByteBuffer.wrap(page.getPageData()), pageOffset(pgNo));
+        }
+        pageWritten(page);
+    }
+
+    /**
+     * Write pages with consecutive page numbers, in order, in a single write
+     * to the file, as {@link #writePage} would write each of them.
+     *
+     * @param run the pages; the first may have any page number, each of the
+     *     others must follow the one before it
+     * @throws IOException if the write fails, or the pages do not follow
+     *     each other
+     */
+    public void writePages(List<? extends Page> run) throws IOException {
+        if (run.size() == 1) {
+            writePage(run.get(0));
+            return;
+        }
+        if (readOnly) {
+            throw new IOException(f.getAbsolutePath() + " is opened read-only");
+        }
+        int first = run.get(0).getId().pageNumber();
+        int pageSize = getPageSize();
+        PageWriter image = new PageWriter(ByteBuffer.allocate(run.size() * pageSize));
+        for (int i = 0; i < run.size(); i++) {
+            Page page = run.get(i);
+            if (page.getId().pageNumber() != first + i) {
+                throw new IOException("page " + page.getId().pageNumber()
+                        + " does not follow page " + (first + i - 1));
+            }
+            putImage(page, image, i * pageSize);
+        }
+        writeFully(image.getBuffer(), pageOffset(first));
+        for (Page page : run) {
+            pageWritten(page);
+        }
+    }
+
+    /**
+     * Put the image of a page as stored in this file, i.e. its data followed
+     * by its checksum if the file has them, at the given offset.
+     */
+    private void putImage(Page page, PageWriter out, int offset) throws IOException {
+        byte[] data = page.getPageData();
+        if (!hasChecksums()) {
+            out.put(offset, data, 0, data.length);
+            return;
+        }
+        if (data.length != header.getPageDataSize()) {
+            throw new IOException("page " + page.getId().pageNumber() + " has " + data.length
+                    + " bytes of data, not " + header.getPageDataSize());
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length);
+        out.put(offset, data, 0, data.length);
+        out.putInt(offset + data.length, (int) crc.getValue());
+    }
+
+    /** Account for a page that was written to the file. */
+    private void pageWritten(Page page) throws IOException {
+        int pgNo = page.getId().pageNumber();
+        FreeSpaceMap fsm;
+        synchronized (this) {
+            if (pgNo >= numPages) {
+                numPages = pgNo + 1;
+            }
+            fsm = freeSpace;
+        }
+        if (fsm != null) {
+            fsm.pageWritten(pgNo, ((HeapPage) page).getNumEmptySlots());
+        }
+        // unlike the free-space map, the zone map must take in every page
+        // written, or scans could skip tuples the page holds
+        ZoneMap zones = zoneMap();
+        if (zones != null) {
+            zones.pageWritten((HeapPage) page);
+        }
+        BloomFilters filters = bloomFilters();
+        if (filters != null) {
+            filters.pageWritten((HeapPage) page);
+        }
+    }
+
+    /**
+     * Fill buf from the file starting at the given offset. Bytes past the
+     * end of the file are left as they are, i.e. zero for a fresh buffer.
+     *
+     * @return the number of bytes read from the file
+     */
+    private int readFully(ByteBuffer buf, long offset) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, offset + buf.position() - start);
+            if (n < 0) {
+                break;
+            }
+        }
+        return buf.position() - start;
+    }
+
+    /** Write all remaining bytes of buf to the file at the given offset. */
+    private void writeFully(ByteBuffer buf, long offset) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf, offset + buf.position() - start);
+        }
     }
 
     /**
@@ -114,27 +664,139 @@ public class HeapFile implements DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        return null;
-        // not necessary for proj1
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(1);
+        tuples.add(t);
+        return insertTuples(tid, tuples);
+    }
+
+    /**
+     * Inserts the tuples a page at a time: each page with room, found
+     * through the free-space map, is filled with as many of the tuples as
+     * fit before the next one is looked up, and new pages are appended once
+     * no page has room.
+     *
+     * @see DbFile#insertTuples
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        for (Tuple t : tuples) {
+            if (!td.equals(t.getTupleDesc())) {
+                throw new DbException("tupledesc is mismatch");
+            }
+        }
+        if (tupleCountPage == 0) {
+            throw new DbException("tuples do not fit on a page");
+        }
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        ZoneMap zones = zoneMap();
+        BloomFilters filters = bloomFilters();
+        BufferPool bufferPool = Database.getBufferPool();
+        ArrayList<Page> modified = new ArrayList<Page>();
+        int inserted = 0;
+        while (inserted < tuples.size()) {
+            int pgNo = fsm.findPageWithRoom();
+            if (pgNo < 0) {
+                // no page has room, so append an empty one and fill it through the pool
+                synchronized (this) {
+                    pgNo = numPages;
+                    writePage(new HeapPage(new HeapPageId(getId(), pgNo),
+                            HeapPage.createEmptyPageData(header.getPageDataSize())));
+                }
+            }
+            HeapPage page = (HeapPage) bufferPool.getPage(tid, new HeapPageId(getId(), pgNo),
+                    Permissions.READ_WRITE);
+            int n = page.insertTuples(tuples, inserted);
+            // a page the map thought had room but did not gets corrected here
+            fsm.update(pgNo, page.getNumEmptySlots());
+            if (n > 0) {
+                if (zones != null) {
+                    zones.inserted(pgNo, tuples, inserted, inserted + n);
+                }
+                if (filters != null) {
+                    filters.inserted(pgNo, tuples, inserted, inserted + n);
+                }
+                inserted += n;
+                modified.add(page);
+            }
+        }
+        return modified;
     }
 
     // see DbFile.java for javadocs
     public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
-        return null;
-        // not necessary for proj1
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not in this table");
+        }
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        try {
+            getFreeSpaceMap().update(page.getId().pageNumber(), page.getNumEmptySlots());
+        } catch (IOException e) {
+            throw new DbException("unable to open free-space map: " + e.getMessage());
+        }
+        return page;
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
+        return iterator(tid, false);
+    }
+
+    /**
+     * Returns an iterator over all the tuples stored in this HeapFile.
+     *
+     * @param tid the transaction the scan runs in
+     * @param allowScanRing if true and the buffer pool considers this file
+     *     large enough, the iterator reads its pages through a
+     *     {@link BufferRing} so that the scan does not flush the pool.
+     * @see BufferPool#useScanRing
+     */
+    public DbFileIterator iterator(TransactionId tid, boolean allowScanRing) {
+        return iterator(tid, allowScanRing, Collections.<Predicate>emptyList());
+    }
+
+    /**
+     * Returns an iterator over the tuples stored in this HeapFile that skips
+     * the ranges of pages the zone map says hold no tuple satisfying all of
+     * the given predicates, and the pages the Bloom filters say do, without
+     * reading them. Tuples of the pages it does read are all returned, so
+     * the caller must still apply the predicates.
+     *
+     * @param tid the transaction the scan runs in
+     * @param allowScanRing as for {@link #iterator(TransactionId, boolean)}
+     * @param predicates predicates on the fields of this table; the list is
+     *     read each time the iterator is opened
+     * @see ZoneMap#mightMatch
+     * @see BloomFilters#mightMatch
+     */
+    public DbFileIterator iterator(TransactionId tid, boolean allowScanRing,
+                                   List<Predicate> predicates) {
         class TableIterator implements DbFileIterator {
             private int pageCount;
             private TransactionId tid;
             private Iterator<Tuple> tupleInterator;
-            private BufferPool bufferPool = Database.getBufferPool();
+            private BufferPool bufferPool;
+            private BufferRing ring;
             private int tableId;
+            /** The zone map to skip pages with, or null to read them all */
+            private ZoneMap zones;
+            /** The Bloom filters to skip pages with, or null */
+            private BloomFilters filters;
+            /** The predicates the Bloom filters answer */
+            private List<Predicate> filtered;
+            /**
+             * Whether the page being read was let through by the Bloom
+             * filters and none of its tuples returned so far satisfied the
+             * predicates they answer
+             */
+            private boolean unmatched;
 
             private final Iterator<Tuple> emptyIterator = new Iterator<Tuple>() {
                 @Override
@@ -156,36 +818,111 @@ public class HeapFile implements DbFile {
 
             @Override
             public void open() throws DbException, TransactionAbortedException {
-                pageCount = 0;
+                close();
+                bufferPool = Database.getBufferPool();
+                if (allowScanRing && bufferPool.useScanRing(numPages)) {
+                    ring = bufferPool.newScanRing();
+                }
+                zones = null;
+                filters = null;
+                if (!predicates.isEmpty()) {
+                    try {
+                        zones = getZoneMap();
+                    } catch (IOException e) {
+                        throw new DbException("unable to open zone map: " + e.getMessage());
+                    }
+                    try {
+                        filters = getBloomFilters();
+                    } catch (IOException e) {
+                        throw new DbException("unable to open Bloom filters: " + e.getMessage());
+                    }
+                }
+                if (filters != null) {
+                    filtered = new ArrayList<Predicate>();
+                    for (Predicate p : predicates) {
+                        if (filters.filterOf(p) >= 0) {
+                            filtered.add(p);
+                        }
+                    }
+                    if (filtered.isEmpty()) {
+                        filters = null;
+                    }
+                }
+                pageCount = firstPageToRead(0);
                 if (pageCount < numPages) {
-                    HeapPage hp = (HeapPage)(bufferPool.getPage(tid, new HeapPageId(tableId, pageCount), Permissions.READ_ONLY));
+                    HeapPage hp = (HeapPage)(bufferPool.getPage(tid, new HeapPageId(tableId, pageCount), Permissions.READ_ONLY, ring));
                     tupleInterator = hp.iterator();
+                    unmatched = filters != null;
                 }
             }
 
             @Override
             public boolean hasNext() throws DbException, TransactionAbortedException {
+                if (bufferPool == null) {
+                    return false;
+                }
                 while (!tupleInterator.hasNext()) {
-                        pageCount++;
+                        if (unmatched) {
+                            // the whole page was read for nothing
+                            filters.falsePositive();
+                            unmatched = false;
+                        }
+                        pageCount = firstPageToRead(pageCount + 1);
                         if (pageCount >= numPages) {
                             return false;
                         }
 
-                        HeapPage hp = (HeapPage)(bufferPool.getPage(tid, new HeapPageId(tableId, pageCount), Permissions.READ_ONLY));
+                        HeapPage hp = (HeapPage)(bufferPool.getPage(tid, new HeapPageId(tableId, pageCount), Permissions.READ_ONLY, ring));
                         tupleInterator = hp.iterator();
+                        unmatched = filters != null;
                 }
                 return tupleInterator.hasNext();
             }
 
+            /**
+             * @return the given page, or if it starts a range the zone map
+             *     rules out or the Bloom filters rule it out, the first page
+             *     after it that neither rules out
+             */
+            private int firstPageToRead(int page) {
+                while (page < numPages) {
+                    if (zones != null && page % zones.getRangePages() == 0
+                            && !zones.mightMatch(page / zones.getRangePages(), predicates)) {
+                        int end = Math.min(numPages, page + zones.getRangePages());
+                        skippedPages.addAndGet(end - page);
+                        page = end;
+                    } else if (filters != null && !filters.mightMatch(page, filtered)) {
+                        skippedPages.incrementAndGet();
+                        page++;
+                    } else {
+                        break;
+                    }
+                }
+                return page;
+            }
+
             @Override
             public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
                 var tuple = tupleInterator.next();
                 if (tuple == null){
                     throw new NoSuchElementException();
                 }
+                if (unmatched && matches(tuple)) {
+                    unmatched = false;
+                }
                 return tuple;
             }
 
+            /** @return true if the tuple satisfies the predicates the Bloom filters answer */
+            private boolean matches(Tuple tuple) {
+                for (Predicate p : filtered) {
+                    if (!p.filter(tuple)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
             @Override
             public void rewind() throws DbException, TransactionAbortedException {
                 open();
@@ -195,6 +932,11 @@ public class HeapFile implements DbFile {
             public void close() {
                 pageCount = numPages;
                 tupleInterator = emptyIterator;
+                unmatched = false;
+                if (ring != null) {
+                    bufferPool.releaseScanRing(ring);
+                    ring = null;
+                }
             }
         }
 
@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 /**
@@ -17,7 +20,9 @@ public class HeapFileEncoder {
    * page file. <br>
    *
    * The format of the output file will be as specified in HeapPage and
-   * HeapFile.
+   * HeapFile, with page checksums if HeapFile.getChecksumNewFiles() says
+   * so. Sidecar files kept next to an existing output file, such as its
+   * zone map, are deleted.
    *
    * @see HeapPage
    * @see HeapFile
@@ -26,29 +31,59 @@ public class HeapFileEncoder {
    * @param outFile The output file to write data to
    * @param npagebytes The number of bytes per page in the output file
    * @param numFields the number of fields in each input tuple
-   * @throws IOException if the temporary/output file can't be opened
+   * @throws IOException if the output file can't be written
    */
   public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields) throws IOException {
-      File tempInput = File.createTempFile("tempTable", ".txt");
-      tempInput.deleteOnExit();
-      BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
-      for (ArrayList<Integer> tuple : tuples) {
-          int writtenFields = 0;
-          for (Integer field : tuple) {
-              writtenFields++;
-              if (writtenFields > numFields) {
-                  throw new RuntimeException("Tuple has more than " + numFields + " fields: (" +
+      FileHeader fileHeader = FileHeader.forNewHeapFile(npagebytes);
+      int nrecbytes = numFields * Type.INT_TYPE.getLen();
+      int nrecords = (fileHeader.getPageDataSize() * 8) / (nrecbytes * 8 + 1);
+      int nheaderbytes = (nrecords + 7) / 8;
+
+      HeapFile.removeSidecars(outFile);
+      // pages are encoded in place in one reused buffer
+      PageWriter page = PageWriter.acquire(npagebytes);
+      try (FileChannel os = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+          if (fileHeader.isStored()) {
+              fileHeader.write(os);
+              os.position(fileHeader.getDataOffset());
+          }
+          int recordcount = 0;
+          int npages = 0;
+          for (ArrayList<Integer> tuple : tuples) {
+              if (tuple.size() != numFields) {
+                  throw new RuntimeException("Tuple does not have " + numFields + " fields: (" +
                           Utility.listToString(tuple) + ")");
               }
-              bw.write(String.valueOf(field));
-              if (writtenFields < numFields) {
-                  bw.write(',');
+              int offset = nheaderbytes + recordcount * nrecbytes;
+              for (int i = 0; i < numFields; i++) {
+                  page.putInt(offset + i * 4, tuple.get(i));
+              }
+              page.setBit(0, recordcount++);
+              if (recordcount == nrecords) {
+                  writePage(os, page, fileHeader);
+                  recordcount = 0;
+                  npages++;
               }
           }
-          bw.write('\n');
+          // write the last partial page, or one empty page for an empty file
+          if (recordcount > 0 || npages == 0) {
+              writePage(os, page, fileHeader);
+          }
+      } finally {
+          page.release();
+      }
+  }
+
+  private static void writePage(FileChannel os, PageWriter page, FileHeader fileHeader)
+          throws IOException {
+      fileHeader.putChecksum(page.getBuffer(), 0);
+      ByteBuffer buf = page.getBuffer().duplicate();
+      buf.clear();
+      while (buf.hasRemaining()) {
+          os.write(buf);
       }
-      bw.close();
-      convert(tempInput, outFile, npagebytes, numFields);
+      page.clear();
   }
 
       public static void convert(File inFile, File outFile, int npagebytes,
@@ -82,7 +117,9 @@ public class HeapFileEncoder {
     * @see HeapFile
     * @param inFile The input file to read data from
     * @param outFile The output file to write data to
-    * @param npagebytes The number of bytes per page in the output file
+    * @param npagebytes The number of bytes per page in the output file; a
+    *   page size other than BufferPool.PAGE_SIZE is recorded in a
+    *   FileHeader at the start of the file
     * @param numFields the number of fields in each input line/output tuple
     * @throws IOException if the input/output file can't be opened or a
     *   malformed input line is encountered
@@ -90,137 +127,21 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator,
+              BulkLoader.defaultThreads());
+  }
 
-      int nrecbytes = 0;
-      for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
-      }
-      int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
-      
-    //  per record, we need one bit; there are nrecords per page, so we need
-    // nrecords bits, i.e., ((nrecords/32)+1) integers.
-    int nheaderbytes = (nrecords / 8);
-    if (nheaderbytes * 8 < nrecords)
-        nheaderbytes++;  //ceiling
-    int nheaderbits = nheaderbytes * 8;
-
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
-
-    // our numbers probably won't be much larger than 1024 digits
-    char buf[] = new char[1024];
-
-    int curpos = 0;
-    int recordcount = 0;
-    int npages = 0;
-    int fieldNo = 0;
-
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-        // Ignore Windows/Notepad special line endings
-        if (c == '\r')
-            continue;
-
-        if (c == '\n') {
-            if (first)
-                continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == fieldSeparator || c == '\n' || c == '\r') {
-            String s = new String(buf, 0, curpos);
-            if (typeAr[fieldNo] == Type.INT_TYPE) {
-                try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
-                } catch (NumberFormatException e) {
-                    System.out.println ("BAD LINE : " + s);
-                }
-            }
-            else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
-                s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
-                if (overflow < 0) {
-                    String news = s.substring(0,Type.STRING_LEN);
-                    s  = news;
-                }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
-            }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
-                fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
-        }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-            byte headerbyte = 0;
-            
-            for (i=0; i<nheaderbits; i++) {
-                if (i < recordcount)
-                    headerbyte |= (1 << (i % 8));
-                
-                if (((i+1) % 8) == 0) {
-                    headerStream.writeByte(headerbyte);
-                    headerbyte = 0;
-                }
-            }
-            
-            if (i % 8 > 0)
-                headerStream.writeByte(headerbyte);
-            
-            // pad the rest of the page with zeroes
-            
-            for (i=0; i<(npagebytes - (recordcount * nrecbytes + nheaderbytes)); i++)
-                pageStream.writeByte(0);
-            
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
-        }
-    }
-    br.close();
-    os.close();
+  /** Convert the specified input text file into a binary page file, as
+   * {@link #convert(File, File, int, int, Type[], char)} does, parsing the
+   * input on the given number of threads.
+   *
+   * @see BulkLoader
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, int threads)
+      throws IOException {
+      if (typeAr.length != numFields)
+          throw new IllegalArgumentException("expected " + numFields + " types, got " + typeAr.length);
+      new BulkLoader(typeAr, fieldSeparator, npagebytes, threads).load(inFile, outFile);
   }
 }
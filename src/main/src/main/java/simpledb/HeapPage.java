@@ -2,6 +2,8 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -15,56 +17,182 @@ public class HeapPage implements Page {
 
     HeapPageId pid;
     TupleDesc td;
-    byte header[];
-    Tuple tuples[];
+    /** Bytes in this page, which is the length of its image */
+    int pageSize;
+    int headerSize;
+
+    /**
+     * The header bitmap, 64 slots to a word: slot i is in use if bit
+     * (i % 64) of header[i / 64] is set. Walking it a word at a time finds
+     * the next used slot without testing every bit.
+     */
+    long header[];
     int numSlots;
     int countEmptySolts;
 
-    byte[] oldData;
+    /**
+     * The page image, which is authoritative: inserts and deletes update it
+     * in place. Tuples are not decoded up front; iterating over the page
+     * hands out tuples that decode each of their fields from this buffer
+     * when it is first asked for, so a cached page costs no Java heap beyond
+     * its header.
+     */
+    ByteBuffer data;
+
+    /**
+     * Whether data may be written to. A page made over an array or a
+     * read-only buffer copies its image on the first write.
+     */
+    boolean ownsData;
+
+    /**
+     * The image the tuples handed out since the last write read from, or
+     * null if none were. The page does not write to an image while tuples
+     * read from it; the next write copies it first, so those tuples keep
+     * the values they were read with.
+     */
+    private Image handedOut;
+
+    /** A page image, as held by the tuples handed out over it. */
+    static final class Image {
+        ByteBuffer data;
+
+        Image(ByteBuffer data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * The image of this page as of the last {@link #setBeforeImage}, or null
+     * if the page has not been modified since; it is captured by the first
+     * write after that call.
+     */
+    ByteBuffer oldData;
+
+    TransactionId dirtier;
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The page size is the length of the array, normally
+     * {@link BufferPool#getPageSize} or the page size of the file.
+     * The array is kept as the page image, not copied, so the caller must
+     * not modify it afterwards. The page itself never writes to it; the
+     * image is copied on the first insert or delete.
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#PAGE_SIZE
+     * @see BufferPool#getPageSize
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), ByteBuffer.wrap(data), false);
+    }
+
+    /**
+     * Create a HeapPage over a buffer holding the page image, in the format
+     * described in {@link #HeapPage(HeapPageId, byte[])}. The buffer is kept
+     * and tuples are decoded from it as they are used, so a slice of a
+     * mapped file or of an off-heap buffer pool frame can back the page
+     * directly.
+     * <p>
+     * The caller must keep the buffer's contents intact while the page is
+     * in use, or call {@link #detach} before reusing it. Inserts and deletes
+     * write to the buffer, unless it is read-only, in which case the image
+     * is copied on the first write.
+     *
+     * @param data the page image; the page starts at index 0 of the buffer
+     *     and its size is the capacity of the buffer
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+    }
+
+    /**
+     * Create a HeapPage over a buffer, like
+     * {@link #HeapPage(HeapPageId, ByteBuffer)}, for a table with the given
+     * schema, which need not be in the catalog yet.
+     */
+    HeapPage(HeapPageId id, TupleDesc td, ByteBuffer data) throws IOException {
+        this(id, td, data, !data.isReadOnly());
+    }
+
+    private HeapPage(HeapPageId id, TupleDesc td, ByteBuffer data, boolean ownsData)
+            throws IOException {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.td = td;
+        this.pageSize = data.capacity();
         this.numSlots = getNumTuples();
         this.countEmptySolts = 0;
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
+        this.ownsData = ownsData;
+
+        // allocate and read the header slots of this page; header byte i
+        // holds slots 8i to 8i+7, so the bytes pack into little-endian words
+        headerSize = getHeaderSize();
+        header = new long[(numSlots + 63) >>> 6];
+        for (int i=0; i<headerSize; i++) {
+            header[i >>> 3] |= (data.get(i) & 0xFFL) << ((i & 7) * 8);
+        }
+        if ((numSlots & 63) != 0) {
+            // ignore any bits set past the last slot
+            header[header.length - 1] &= -1L >>> (64 - (numSlots & 63));
+        }
+        for (long word : header) {
+            countEmptySolts += Long.bitCount(word);
+        }
+        countEmptySolts = numSlots - countEmptySolts;
+
+        setBeforeImage();
+    }
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++) {
-            header[i] = dis.readByte();
+    /**
+     * Copy the page image into a private heap buffer, so that the buffer
+     * this page was created over can be reused.
+     */
+    public void detach() {
+        data = ByteBuffer.wrap(getPageData());
+        ownsData = true;
+        if (handedOut != null) {
+            // the tuples read from the copy too, which stays unwritten
+            handedOut.data = data;
         }
+    }
 
-        try{
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-                if (tuples[i] == null)
-                    countEmptySolts++;
-            }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+    /**
+     * Prepare the page image for an update: capture the before image if
+     * this is the first change since {@link #setBeforeImage}, and move the
+     * image to a private buffer if the page may not write to its own or
+     * tuples were handed out over it.
+     */
+    private void prepareWrite() {
+        if (oldData == null) {
+            // a buffer the page does not write to can serve as the before
+            // image as it is
+            oldData = ownsData ? ByteBuffer.wrap(getPageData()) : data;
+        }
+        if (!ownsData || handedOut != null) {
+            data = ByteBuffer.wrap(getPageData());
+            ownsData = true;
+            handedOut = null;
         }
-        dis.close();
+    }
 
-        setBeforeImage();
+    /** @return the current image, for a tuple about to be handed out over it */
+    private Image handOut() {
+        Image image = handedOut;
+        if (image == null) {
+            image = new Image(data);
+            handedOut = image;
+        }
+        return image;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -73,7 +201,7 @@ public class HeapPage implements Page {
     private int getNumTuples() {        
         // some code goes here
         int tupleSize = td.getSize();
-        return BufferPool.PAGE_SIZE * 8 / (tupleSize * 8 + 1);
+        return pageSize * 8 / (tupleSize * 8 + 1);
     }
 
     /**
@@ -89,7 +217,8 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            return new HeapPage(pid,oldData);
+            // a null before image means the page is unchanged since then
+            return new HeapPage(pid, oldData != null ? copyOf(oldData) : getPageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -99,7 +228,9 @@ public class HeapPage implements Page {
     }
     
     public void setBeforeImage() {
-        oldData = getPageData().clone();
+        // the current image is the before image until the next write, which
+        // copies it; until then nothing need be copied
+        oldData = null;
     }
 
     /**
@@ -111,37 +242,22 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Decode field i of the tuple stored in the given slot, which must be
+     * in use.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    public Field readField(int slotId, int i) throws NoSuchElementException {
+        return readField(data, slotId, i);
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+    /** Decode field i of the tuple in the given slot of an image of this page. */
+    Field readField(ByteBuffer image, int slotId, int i) throws NoSuchElementException {
+        int offset = headerSize + slotId * td.getSize() + td.getFieldOffset(i);
         try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
+            return new PageReader(image).readField(td.getFieldType(i), offset);
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
-
-        return t;
     }
 
     /**
@@ -156,64 +272,15 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return copyOf(data);
+    }
 
-        return baos.toByteArray();
+    private static byte[] copyOf(ByteBuffer image) {
+        byte[] copy = new byte[image.capacity()];
+        ByteBuffer src = image.duplicate();
+        src.clear();
+        src.get(copy);
+        return copy;
     }
 
     /**
@@ -223,11 +290,18 @@ public class HeapPage implements Page {
      * this method to the HeapPage constructor will create a HeapPage with
      * no valid tuples in it.
      *
-     * @return The returned ByteArray.
+     * @return The returned ByteArray, of {@link BufferPool#getPageSize} bytes.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return a byte array corresponding to an empty HeapPage of the given
+     *     page size, such as the page size of an existing file.
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -239,7 +313,22 @@ public class HeapPage implements Page {
      */
     public void deleteTuple(Tuple t) throws DbException {
         // some code goes here
-        // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple is not on this page");
+        }
+        int slot = rid.tupleno();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("tuple slot is already empty");
+        }
+        prepareWrite();
+        markSlotUsed(slot, false);
+        int offset = headerSize + slot * td.getSize();
+        for (int i = 0; i < td.getSize(); i++) {
+            data.put(offset + i, (byte) 0);
+        }
+        countEmptySolts++;
+        t.setRecordId(null);
     }
 
     /**
@@ -251,7 +340,55 @@ public class HeapPage implements Page {
      */
     public void insertTuple(Tuple t) throws DbException {
         // some code goes here
-        // not necessary for lab1
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        int slot = nextEmptySlot(0);
+        if (slot >= numSlots) {
+            throw new DbException("page is full");
+        }
+
+        prepareWrite();
+        writeTuple(slot, t);
+        countEmptySolts--;
+    }
+
+    /**
+     * Adds tuples from the given list to the page, starting at index from,
+     * until the page is full or the list is exhausted. Each tuple added is
+     * updated to reflect that it is now stored on this page.
+     * @throws DbException if the tupledesc of a tuple to add is mismatch;
+     *         no tuple is added then.
+     * @param tuples The tuples to add.
+     * @param from The index in tuples of the first tuple to add.
+     * @return The number of tuples added, which is 0 if the page is full.
+     */
+    public int insertTuples(List<Tuple> tuples, int from) throws DbException {
+        int n = Math.min(countEmptySolts, tuples.size() - from);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int k = from; k < from + n; k++) {
+            if (!td.equals(tuples.get(k).getTupleDesc())) {
+                throw new DbException("tupledesc is mismatch");
+            }
+        }
+
+        prepareWrite();
+        int slot = nextEmptySlot(0);
+        for (int k = from; k < from + n; k++) {
+            writeTuple(slot, tuples.get(k));
+            slot = nextEmptySlot(slot + 1);
+        }
+        countEmptySolts -= n;
+        return n;
+    }
+
+    /** Store t in the given empty slot; the page must be ready for writing. */
+    private void writeTuple(int slot, Tuple t) {
+        new PageWriter(data).writeTuple(t, td, headerSize + slot * td.getSize());
+        markSlotUsed(slot, true);
+        t.setRecordId(new RecordId(pid, slot));
     }
 
     /**
@@ -260,7 +397,7 @@ public class HeapPage implements Page {
      */
     public void markDirty(boolean dirty, TransactionId tid) {
         // some code goes here
-	// not necessary for lab1
+        dirtier = dirty ? tid : null;
     }
 
     /**
@@ -268,8 +405,7 @@ public class HeapPage implements Page {
      */
     public TransactionId isDirty() {
         // some code goes here
-	// Not necessary for lab1
-        return null;      
+        return dirtier;
     }
 
     /**
@@ -285,10 +421,19 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        int index = i / 8;
-        int bitLoc = i % 8;
+        return (header[i >>> 6] >>> i & 1) != 0;
+    }
 
-        return (header[index] >> bitLoc & 1) == 1;
+    /**
+     * @return the tuple stored in the given slot, as an index finds it by
+     *     its RecordId
+     * @throws NoSuchElementException if the slot is not in use
+     */
+    public Tuple getTuple(int slot) throws NoSuchElementException {
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new NoSuchElementException("no tuple in slot " + slot);
+        }
+        return new LazyTuple(this, handOut(), slot);
     }
 
     /**
@@ -296,7 +441,13 @@ public class HeapPage implements Page {
      */
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
-        // not necessary for lab1
+        if (value) {
+            header[i >>> 6] |= 1L << i;
+        } else {
+            header[i >>> 6] &= ~(1L << i);
+        }
+        // write back the header byte holding the slot
+        data.put(i >>> 3, (byte) (header[i >>> 6] >>> (i & 0x38)));
     }
 
     /**
@@ -305,17 +456,69 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        int len = numSlots - countEmptySolts;
-        Tuple[] ans = new Tuple[len];
+        return new Iterator<Tuple>() {
+            private int slot = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return slot < numSlots;
+            }
+
+            public Tuple next() {
+                if (slot >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new LazyTuple(HeapPage.this, handOut(), slot);
+                slot = nextUsedSlot(slot + 1);
+                return t;
+            }
+        };
+    }
 
-        int count = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if(isSlotUsed(i)) {
-                ans[count++] = tuples[i];
+    /**
+     * Calls action with the number of each used slot on this page, in
+     * increasing order. Operators that only need a few fields of each tuple
+     * can read them through {@link #readField} without creating tuples.
+     */
+    public void forEachUsedSlot(IntConsumer action) {
+        for (int w = 0; w < header.length; w++) {
+            long word = header[w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
             }
         }
-        return Arrays.asList(ans).iterator();
     }
 
-}
+    /** @return the first empty slot at or after from, or numSlots if none */
+    private int nextEmptySlot(int from) {
+        int w = from >>> 6;
+        if (w >= header.length) {
+            return numSlots;
+        }
+        long free = ~header[w] & (-1L << from);
+        while (free == 0) {
+            if (++w == header.length) {
+                return numSlots;
+            }
+            free = ~header[w];
+        }
+        return Math.min((w << 6) + Long.numberOfTrailingZeros(free), numSlots);
+    }
 
+    /** @return the first used slot at or after from, or numSlots if none */
+    private int nextUsedSlot(int from) {
+        int w = from >>> 6;
+        if (w >= header.length) {
+            return numSlots;
+        }
+        long word = header[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == header.length) {
+                return numSlots;
+            }
+            word = header[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+}
@@ -0,0 +1,76 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * IndexPredicate compares the key field of an index with a constant, for
+ * an index to look up the tuples that satisfy it instead of scanning.
+ *
+ * @see BTreeFile#indexIterator
+ */
+public class IndexPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate.Op op;
+    private final Field fieldvalue;
+
+    /**
+     * Constructor.
+     *
+     * @param op
+     *            operation to compare the key of each tuple with
+     * @param fvalue
+     *            value to compare the key with; it is the right-hand side
+     *            of the comparison
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldvalue = fvalue;
+    }
+
+    /**
+     * @return the value the key is compared with
+     */
+    public Field getField() {
+        return fieldvalue;
+    }
+
+    /**
+     * @return the operator
+     */
+    public Predicate.Op getOp() {
+        return op;
+    }
+
+    /**
+     * @return true if an index on a key ordered by Field.compare can answer
+     *     the given operator with a range of keys
+     */
+    public static boolean isRangeOp(Predicate.Op op) {
+        return op != Predicate.Op.LIKE && op != Predicate.Op.NOT_EQUALS;
+    }
+
+    /**
+     * @return true if a tuple with the given key satisfies this predicate
+     */
+    public boolean matches(Field key) {
+        return key.compare(op, fieldvalue);
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexPredicate)) {
+            return false;
+        }
+        IndexPredicate other = (IndexPredicate) o;
+        return op == other.op && fieldvalue.equals(other.fieldvalue);
+    }
+
+    public int hashCode() {
+        return 31 * op.hashCode() + fieldvalue.hashCode();
+    }
+
+    public String toString() {
+        return "key " + op + " " + fieldvalue;
+    }
+}
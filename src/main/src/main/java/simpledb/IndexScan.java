@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table whose
+ * keys satisfy an IndexPredicate, reading only the pages that may hold them
+ * instead of the whole table. The key is the field a BTreeFile table is
+ * ordered by, in which case the tuples come in key order, the field a
+ * HashFile table is hashed on, or the field a SecondaryIndex of the table is
+ * on. Hashed keys can only be looked up with EQUALS.
+ *
+ * @see SeqScan
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final int tableId;
+    private final String tableAlias;
+    private final IndexPredicate ipred;
+    private final TupleDesc tupleDesc;
+    private final DbFileIterator dbFileIterator;
+
+    /**
+     * Creates an index scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan; it must be stored in a BTreeFile or a
+     *            HashFile.
+     * @param tableAlias
+     *            the alias of this table, which prefixes the field names of
+     *            the returned tupleDesc as in SeqScan
+     * @param ipred
+     *            the predicate on the key field of the table the tuples
+     *            must satisfy
+     * @throws IllegalArgumentException if the table is not a B+ tree or a
+     *     hash file, or cannot answer the predicate
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred) {
+        this.tid = tid;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.ipred = ipred;
+        DbFile table = Database.getCatalog().getDbFile(tableid);
+        if (table instanceof BTreeFile) {
+            this.dbFileIterator = ((BTreeFile) table).indexIterator(tid, ipred);
+        } else if (table instanceof HashFile) {
+            this.dbFileIterator = ((HashFile) table).indexIterator(tid, ipred);
+        } else {
+            throw new IllegalArgumentException("table " + tableid + " is not a B+ tree or a hash file");
+        }
+        this.tupleDesc = table.getTupleDesc().copyTupleDescAlias(tableAlias);
+    }
+
+    /**
+     * Creates a scan of a table through one of its secondary indexes.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to look the tuples up in
+     * @param tableAlias
+     *            the alias of the table of the index
+     * @param ipred
+     *            the predicate on the indexed field the tuples must satisfy
+     * @throws IllegalArgumentException if the index cannot answer the predicate
+     */
+    public IndexScan(TransactionId tid, SecondaryIndex index, String tableAlias,
+                     IndexPredicate ipred) {
+        this.tid = tid;
+        this.tableId = index.getTableId();
+        this.tableAlias = tableAlias;
+        this.ipred = ipred;
+        this.tupleDesc = Database.getCatalog().getTupleDesc(tableId).copyTupleDescAlias(tableAlias);
+        this.dbFileIterator = index.iterator(tid, ipred);
+    }
+
+    /**
+     * @return
+     *       return the table name of the table the operator scans. This should
+     *       be the actual name of the table in the catalog of the database
+     * */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableId);
+    }
+
+    /**
+     * @return Return the alias of the table this operator scans.
+     * */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    /**
+     * @return the predicate on the key field the scan answers
+     */
+    public IndexPredicate getIndexPredicate() {
+        return ipred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        dbFileIterator.open();
+    }
+
+    /**
+     * Returns the TupleDesc with field names from the underlying file,
+     * prefixed with the tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return dbFileIterator.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        return dbFileIterator.next();
+    }
+
+    public void close() {
+        dbFileIterator.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        dbFileIterator.rewind();
+    }
+}
@@ -0,0 +1,384 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Ingest loads a CSV or TSV file into a new HeapFile and registers it in a
+ * catalog file, without being told the column types.
+ * <p>
+ * The first lines of the input are sampled to infer the schema: the number
+ * of columns is the most common number of fields per line, and a column is
+ * INT_TYPE if all but a small fraction of its sampled values parse as ints,
+ * and STRING_TYPE otherwise, so that a few bad values do not turn a column
+ * of ints into strings. A first line holding names where the rest of the sample holds
+ * ints is taken to be a header and names the columns. The whole file is
+ * then loaded in one pass by a {@link BulkLoader}. Lines that do not fit
+ * the schema are written, as they were, to a rejects file next to the table
+ * instead of failing the load, and the number of rows loaded per second is
+ * reported as the load goes.
+ * <p>
+ * The table file is written as <tt>name.dat</tt> in the directory of the
+ * catalog file, and the catalog gets a line <tt>name (column type, ...)</tt>
+ * in the format read by {@link Catalog#loadSchema}, replacing any earlier
+ * line for the same table.
+ */
+public class Ingest {
+
+    /** Default number of lines sampled to infer the schema */
+    public static final int DEFAULT_SAMPLE_LINES = 1000;
+
+    /** Largest fraction of sampled values of an INT_TYPE column that may not be ints */
+    public static final double NON_INT_TOLERANCE = 0.01;
+
+    /** Least time between two progress reports, in milliseconds */
+    private static final long REPORT_INTERVAL = 1000;
+
+    private final File inFile;
+    private char separator;
+    private String tableName;
+    private File catalogFile;
+    private int sampleLines = DEFAULT_SAMPLE_LINES;
+    /** null to detect a header line from the sample */
+    private Boolean header;
+    private int threads = BulkLoader.defaultThreads();
+    private PrintStream progress = System.err;
+
+    /**
+     * Create an ingest of the given file. Fields are separated by tabs if
+     * the file name ends in .tsv, and by commas otherwise; the table is
+     * named after the file and registered in catalog.txt next to it.
+     */
+    public Ingest(File inFile) {
+        this.inFile = inFile;
+        String base = inFile.getName();
+        if (base.indexOf('.') > 0) {
+            base = base.substring(0, base.lastIndexOf('.'));
+        }
+        this.separator = inFile.getName().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        this.tableName = identifier(base, "t");
+        this.catalogFile = new File(inFile.getAbsoluteFile().getParentFile(), "catalog.txt");
+    }
+
+    public Ingest setSeparator(char separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    public Ingest setTableName(String tableName) {
+        this.tableName = identifier(tableName, "t");
+        return this;
+    }
+
+    public Ingest setCatalogFile(File catalogFile) {
+        this.catalogFile = catalogFile;
+        return this;
+    }
+
+    public Ingest setSampleLines(int sampleLines) {
+        this.sampleLines = sampleLines;
+        return this;
+    }
+
+    /** Say whether the first line is a header, rather than detecting it. */
+    public Ingest setHeader(boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    public Ingest setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /** Report progress to the given stream, or nowhere if it is null. */
+    public Ingest setProgress(PrintStream progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /** @return the file the table is written to */
+    public File getDataFile() {
+        return new File(catalogFile.getAbsoluteFile().getParentFile(), tableName + ".dat");
+    }
+
+    /** @return the file rejected lines are written to */
+    public File getRejectsFile() {
+        return new File(catalogFile.getAbsoluteFile().getParentFile(), tableName + ".rejects");
+    }
+
+    /** The schema inferred from a sample of the input */
+    public static class Schema {
+        public final TupleDesc td;
+        /** whether the first line of the input is a header */
+        public final boolean header;
+        /** the number of bytes of the header line, with its terminator */
+        final long headerBytes;
+
+        Schema(TupleDesc td, boolean header, long headerBytes) {
+            this.td = td;
+            this.header = header;
+            this.headerBytes = headerBytes;
+        }
+    }
+
+    /** The outcome of an ingest */
+    public static class Result {
+        public final Schema schema;
+        public final long rows;
+        public final long rejected;
+        public final double seconds;
+
+        Result(Schema schema, long rows, long rejected, double seconds) {
+            this.schema = schema;
+            this.rows = rows;
+            this.rejected = rejected;
+            this.seconds = seconds;
+        }
+
+        public double rowsPerSecond() {
+            return seconds > 0 ? rows / seconds : rows;
+        }
+    }
+
+    /**
+     * Sample the input and infer its schema.
+     *
+     * @throws IOException if the input can't be read or has no lines
+     */
+    public Schema inferSchema() throws IOException {
+        List<String[]> sample = new ArrayList<String[]>();
+        // single-byte decoding keeps string lengths equal to byte counts
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inFile), StandardCharsets.ISO_8859_1))) {
+            String line;
+            while (sample.size() < sampleLines + 1 && (line = br.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    sample.add(split(line));
+                }
+            }
+        }
+        if (sample.isEmpty()) {
+            throw new IOException("no lines to sample in " + inFile);
+        }
+
+        // the most common number of fields decides the number of columns
+        Map<Integer, Integer> widths = new HashMap<Integer, Integer>();
+        for (String[] fields : sample.subList(Math.min(1, sample.size() - 1), sample.size())) {
+            widths.merge(fields.length, 1, Integer::sum);
+        }
+        int numColumns = Collections.max(widths.entrySet(), Map.Entry.comparingByValue()).getKey();
+
+        String[] first = sample.get(0);
+        List<String[]> body = sample.size() > 1 ? sample.subList(1, sample.size()) : sample;
+        Type[] types = inferTypes(body, numColumns);
+
+        boolean hasHeader;
+        if (header != null) {
+            hasHeader = header;
+        } else {
+            // a first line that breaks an int column it otherwise matches
+            hasHeader = false;
+            if (first.length == numColumns && sample.size() > 1) {
+                for (int i = 0; i < numColumns; i++) {
+                    if (types[i] == Type.INT_TYPE && !isInt(first[i])) {
+                        hasHeader = true;
+                    }
+                }
+            }
+        }
+        if (!hasHeader && body != sample) {
+            // the first line is data, so it has a say in the types too
+            types = inferTypes(sample.subList(0, Math.min(sample.size(), sampleLines)), numColumns);
+        }
+
+        String[] names = new String[numColumns];
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < numColumns; i++) {
+            String name = hasHeader && i < first.length ? identifier(first[i], "f" + i) : "f" + i;
+            while (!used.add(name.toLowerCase())) {
+                name = name + "_" + i;
+            }
+            names[i] = name;
+        }
+        return new Schema(new TupleDesc(types, names), hasHeader, hasHeader ? headerLength() : 0);
+    }
+
+    private Type[] inferTypes(List<String[]> lines, int numColumns) {
+        int[] nonInts = new int[numColumns];
+        int n = 0;
+        for (String[] fields : lines) {
+            if (fields.length != numColumns) {
+                continue;
+            }
+            n++;
+            for (int i = 0; i < numColumns; i++) {
+                if (!isInt(fields[i])) {
+                    nonInts[i]++;
+                }
+            }
+        }
+        Type[] types = new Type[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            types[i] = nonInts[i] <= n * NON_INT_TOLERANCE ? Type.INT_TYPE : Type.STRING_TYPE;
+        }
+        return types;
+    }
+
+    private String[] split(String line) {
+        return line.split(Pattern.quote(String.valueOf(separator)), -1);
+    }
+
+    private static boolean isInt(String s) {
+        try {
+            Integer.parseInt(s.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the input up to the end of its first
+     *     non-blank line, the header, with its terminator
+     */
+    private long headerLength() throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(inFile))) {
+            long n = 0;
+            boolean blank = true;
+            int c;
+            while ((c = in.read()) >= 0) {
+                n++;
+                if (c == '\n') {
+                    if (!blank) {
+                        break;
+                    }
+                } else if (c > ' ') {
+                    blank = false;
+                }
+            }
+            return n;
+        }
+    }
+
+    /** @return s made into a name the catalog and parser accept */
+    private static String identifier(String s, String fallback) {
+        String name = s.trim().replaceAll("[^A-Za-z0-9_]", "_");
+        if (name.isEmpty() || name.replace("_", "").isEmpty()) {
+            return fallback;
+        }
+        if (Character.isDigit(name.charAt(0))) {
+            name = "_" + name;
+        }
+        return name;
+    }
+
+    /**
+     * Infer the schema of the input, load it into the table file, and
+     * register the table in the catalog file.
+     *
+     * @throws IOException if a file can't be read or written
+     */
+    public Result run() throws IOException {
+        Schema schema = inferSchema();
+        TupleDesc td = schema.td;
+        Type[] types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+        }
+
+        File rejectsFile = getRejectsFile();
+        Files.deleteIfExists(rejectsFile.toPath());
+        long start = System.nanoTime();
+        long[] lastReport = { start };
+        BulkLoader loader = new BulkLoader(types, separator, BufferPool.getPageSize(), threads);
+        loader.setSkipBytes(schema.headerBytes);
+        loader.setProgress(rows -> {
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport[0] >= REPORT_INTERVAL * 1000000L) {
+                lastReport[0] = now;
+                progress.printf("%s: %d rows, %.0f rows/sec%n", tableName, rows,
+                        rows / ((now - start) / 1e9));
+            }
+        });
+        long rows;
+        long rejected;
+        try (RejectsWriter rejects = new RejectsWriter(rejectsFile)) {
+            loader.setRejectHandler(rejects);
+            rows = loader.load(inFile, getDataFile());
+            rejected = rejects.count;
+        }
+        Result result = new Result(schema, rows, rejected, (System.nanoTime() - start) / 1e9);
+        register(td);
+        if (progress != null) {
+            progress.printf("%s: loaded %d rows in %.2f s, %.0f rows/sec", tableName, rows,
+                    result.seconds, result.rowsPerSecond());
+            if (rejected > 0) {
+                progress.printf(", %d rejected rows in %s", rejected, rejectsFile);
+            }
+            progress.println();
+        }
+        return result;
+    }
+
+    /** Writes rejected lines to the rejects file, creating it on the first one. */
+    private static class RejectsWriter implements BulkLoader.RejectHandler, Closeable {
+        private final File file;
+        private Writer out;
+        long count;
+
+        RejectsWriter(File file) {
+            this.file = file;
+        }
+
+        public void reject(String line) throws IOException {
+            if (out == null) {
+                out = new BufferedWriter(new FileWriter(file));
+            }
+            out.write(line);
+            out.write('\n');
+            count++;
+        }
+
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /** Add or replace the catalog line of the table. */
+    private void register(TupleDesc td) throws IOException {
+        StringBuilder entry = new StringBuilder(tableName).append(" (");
+        for (int i = 0; i < td.numFields(); i++) {
+            if (i > 0) {
+                entry.append(", ");
+            }
+            entry.append(td.getFieldName(i)).append(' ')
+                    .append(td.getFieldType(i) == Type.INT_TYPE ? "int" : "string");
+        }
+        entry.append(')');
+
+        List<String> lines = new ArrayList<String>();
+        if (catalogFile.exists()) {
+            for (String line : Files.readAllLines(catalogFile.toPath())) {
+                int paren = line.indexOf('(');
+                if (paren < 0 || !line.substring(0, paren).trim().equals(tableName)) {
+                    lines.add(line);
+                }
+            }
+        }
+        lines.add(entry.toString());
+        File tmp = new File(catalogFile.getAbsolutePath() + ".tmp");
+        Files.write(tmp.toPath(), lines);
+        Files.move(tmp.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
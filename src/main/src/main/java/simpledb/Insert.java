@@ -1,5 +1,8 @@
 package simpledb;
 
+import java.io.IOException;
+import java.util.ArrayList;
+
 /**
  * Inserts tuples read from the child operator into the tableid specified in the
  * constructor
@@ -8,6 +11,15 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** Number of tuples read from the child and passed to the buffer pool at once */
+    public static final int BATCH_SIZE = 1024;
+
+    private TransactionId tid;
+    private DbIterator child;
+    private int tableId;
+    private TupleDesc countDesc;
+    private boolean done;
+
     /**
      * Constructor.
      * 
@@ -24,23 +36,37 @@ public class Insert extends Operator {
     public Insert(TransactionId t,DbIterator child, int tableid)
             throws DbException {
         // some code goes here
+        if (!child.getTupleDesc().equals(Database.getCatalog().getTupleDesc(tableid))) {
+            throw new DbException("tupledesc of child differs from table " + tableid);
+        }
+        this.tid = t;
+        this.child = child;
+        this.tableId = tableid;
+        this.countDesc = new TupleDesc(new Type[] { Type.INT_TYPE });
     }
 
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return null;
+        return countDesc;
     }
 
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
+        child.open();
+        done = false;
+        super.open();
     }
 
     public void close() {
         // some code goes here
+        super.close();
+        child.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
+        child.rewind();
+        done = false;
     }
 
     /**
@@ -50,25 +76,62 @@ public class Insert extends Operator {
      * instances of BufferPool is available via Database.getBufferPool(). Note
      * that insert DOES NOT need check to see if a particular tuple is a
      * duplicate before inserting it.
+     * <p>
+     * Tuples are read from the child in batches of BATCH_SIZE and each batch
+     * is inserted with {@link BufferPool#insertTuples}, so that every page
+     * receives as many tuples as fit at once.
      * 
      * @return A 1-field tuple containing the number of inserted records, or
      *         null if called more than once.
      * @see Database#getBufferPool
-     * @see BufferPool#insertTuple
+     * @see BufferPool#insertTuples
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        return null;
+        if (done) {
+            return null;
+        }
+        done = true;
+
+        int count = 0;
+        ArrayList<Tuple> batch = new ArrayList<Tuple>(BATCH_SIZE);
+        while (child.hasNext()) {
+            batch.add(child.next());
+            if (batch.size() == BATCH_SIZE) {
+                count += insertBatch(batch);
+            }
+        }
+        count += insertBatch(batch);
+
+        Tuple result = new Tuple(countDesc);
+        result.setField(0, new IntField(count));
+        return result;
+    }
+
+    /** Insert the tuples of batch and empty it; @return the number inserted */
+    private int insertBatch(ArrayList<Tuple> batch)
+            throws TransactionAbortedException, DbException {
+        int n = batch.size();
+        if (n > 0) {
+            try {
+                Database.getBufferPool().insertTuples(tid, tableId, batch);
+            } catch (IOException e) {
+                throw new DbException("insert failed: " + e.getMessage());
+            }
+            batch.clear();
+        }
+        return n;
     }
 
     @Override
     public DbIterator[] getChildren() {
         // some code goes here
-        return null;
+        return new DbIterator[] { child };
     }
 
     @Override
     public void setChildren(DbIterator[] children) {
         // some code goes here
+        child = children[0];
     }
 }
@@ -4,6 +4,12 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * An equality join whose right child is the plain scan of a table that can
+ * look up the right join field by value, as a B+ tree or hash file keyed on
+ * it or through a secondary index on it, is run as an index nested-loop
+ * join: for each left tuple, the matching right tuples are looked up instead
+ * of the right table being scanned again.
  */
 public class Join extends Operator {
 
@@ -25,6 +31,10 @@ public class Join extends Operator {
     private DbIterator child2;
     private Tuple nextTuple;
     private Tuple leftTuple;
+    /** Whether this run looks the right tuples up rather than scanning child2 */
+    private boolean probing;
+    /** The lookup of the right tuples matching leftTuple, when probing */
+    private DbFileIterator probe;
 
     public Join(JoinPredicate p, DbIterator child1, DbIterator child2) {
         // some code goes here
@@ -71,27 +81,83 @@ public class Join extends Operator {
             TransactionAbortedException {
         // some code goes here
         child1.open();
-        child2.open();
+        probing = canProbe();
+        if (!probing) {
+            child2.open();
+        }
 
         leftTuple = null;
+        probe = null;
         nextTuple = findNext();
     }
 
     public void close() {
         // some code goes here
         child1.close();
-        child2.close();
+        if (probing) {
+            closeProbe();
+        } else {
+            child2.close();
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         child1.rewind();
-        child2.rewind();
+        if (probing) {
+            closeProbe();
+        } else {
+            child2.rewind();
+        }
 
         leftTuple = null;
         nextTuple = findNext();
     }
 
+    /**
+     * @return true if the right tuples matching a left tuple can be looked
+     *     up by the value of its join field rather than found by a scan
+     */
+    private boolean canProbe() {
+        if (p.getOperator() != Predicate.Op.EQUALS || !(child2 instanceof SeqScan)
+                || child1.getTupleDesc().getFieldType(p.getField1())
+                        != child2.getTupleDesc().getFieldType(p.getField2())) {
+            return false;
+        }
+        int tableId = ((SeqScan) child2).getTableId();
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        if (file instanceof HashFile) {
+            return ((HashFile) file).keyField() == p.getField2();
+        }
+        if (file instanceof BTreeFile) {
+            return ((BTreeFile) file).keyField() == p.getField2();
+        }
+        return Database.getCatalog().getIndex(tableId, p.getField2(), Predicate.Op.EQUALS) != null;
+    }
+
+    /** @return a lookup of the right tuples whose join field equals the given key */
+    private DbFileIterator lookup(Field key) {
+        SeqScan scan = (SeqScan) child2;
+        TransactionId tid = scan.getTransactionId();
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS, key);
+        DbFile file = Database.getCatalog().getDbFile(scan.getTableId());
+        if (file instanceof HashFile) {
+            return ((HashFile) file).indexIterator(tid, ipred);
+        }
+        if (file instanceof BTreeFile) {
+            return ((BTreeFile) file).indexIterator(tid, ipred);
+        }
+        return Database.getCatalog().getIndex(scan.getTableId(), p.getField2(),
+                Predicate.Op.EQUALS).iterator(tid, ipred);
+    }
+
+    private void closeProbe() {
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+    }
+
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -150,6 +216,9 @@ public class Join extends Operator {
     }
 
     private Tuple findNext() throws DbException, TransactionAbortedException {
+        if (probing) {
+            return findNextByLookup();
+        }
         if (leftTuple == null && child1.hasNext()) {
             leftTuple = child1.next();
         }
@@ -158,22 +227,7 @@ public class Join extends Operator {
             while (child2.hasNext()) {
                 var rightTuple = child2.next();
                 if (p.filter(leftTuple, rightTuple)) {
-                    var next = new Tuple(getTupleDesc());
-                    var count = 0;
-
-                    var leftTupleIter = leftTuple.fields();
-                    while(leftTupleIter.hasNext()) {
-                        var field = leftTupleIter.next();
-                        next.setField(count++, field);
-                    }
-
-                    var rightTupleIter = rightTuple.fields();
-                    while(rightTupleIter.hasNext()) {
-                        var field = rightTupleIter.next();
-                        next.setField(count++, field);
-                    }
-
-                    return next;
+                    return merge(leftTuple, rightTuple);
                 }
             }
 
@@ -187,4 +241,44 @@ public class Join extends Operator {
 
         return null;
     }
+
+    private Tuple findNextByLookup() throws DbException, TransactionAbortedException {
+        while (true) {
+            if (probe == null) {
+                if (!child1.hasNext()) {
+                    return null;
+                }
+                leftTuple = child1.next();
+                probe = lookup(leftTuple.getField(p.getField1()));
+                probe.open();
+            }
+            while (probe.hasNext()) {
+                var rightTuple = probe.next();
+                if (p.filter(leftTuple, rightTuple)) {
+                    return merge(leftTuple, rightTuple);
+                }
+            }
+            closeProbe();
+        }
+    }
+
+    /** @return the concatenation of the fields of a left and a right tuple */
+    private Tuple merge(Tuple leftTuple, Tuple rightTuple) {
+        var next = new Tuple(getTupleDesc());
+        var count = 0;
+
+        var leftTupleIter = leftTuple.fields();
+        while(leftTupleIter.hasNext()) {
+            var field = leftTupleIter.next();
+            next.setField(count++, field);
+        }
+
+        var rightTupleIter = rightTuple.fields();
+        while(rightTupleIter.hasNext()) {
+            var field = rightTupleIter.next();
+            next.setField(count++, field);
+        }
+
+        return next;
+    }
 }
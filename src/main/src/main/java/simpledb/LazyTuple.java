@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A tuple stored in a slot of a HeapPage that has not been decoded yet.
+ * Each field is decoded from the page image the first time it is asked
+ * for, so operators that look at only some of the columns of a tuple, or
+ * reject it after looking at one, never pay for the others.
+ * <p>
+ * The tuple reads from the page image it was handed out over. The page
+ * copies that image before it next changes, so the tuple keeps its values
+ * when its slot is cleared or reused, and it follows the image when the
+ * page is detached from a buffer pool frame. Setting a field decodes the
+ * remaining ones and cuts the tuple loose from the page.
+ */
+class LazyTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the page holding this tuple, or null once every field is decoded */
+    private transient HeapPage page;
+    /** the image of the page the tuple was read from */
+    private transient HeapPage.Image image;
+    private final int slot;
+    private Field[] decoded;
+
+    LazyTuple(HeapPage page, HeapPage.Image image, int slot) {
+        super(page.td, new RecordId(page.pid, slot));
+        this.page = page;
+        this.image = image;
+        this.slot = slot;
+    }
+
+    public Field getField(int i) {
+        if (decoded == null) {
+            decoded = new Field[getTupleDesc().numFields()];
+        }
+        Field f = decoded[i];
+        if (f == null && page != null) {
+            f = page.readField(image.data, slot, i);
+            decoded[i] = f;
+        }
+        return f;
+    }
+
+    public void setField(int i, Field f) {
+        materialize();
+        decoded[i] = f;
+    }
+
+    public Iterator<Field> fields() {
+        materialize();
+        return Arrays.asList(decoded).iterator();
+    }
+
+    /**
+     * Decode every field not decoded yet and drop the references to the
+     * page and its image.
+     */
+    void materialize() {
+        if (page == null) {
+            return;
+        }
+        for (int i = 0; i < getTupleDesc().numFields(); i++) {
+            getField(i);
+        }
+        page = null;
+        image = null;
+    }
+
+    /** Serialize as a plain Tuple, since the page is not serializable. */
+    private Object writeReplace() {
+        Tuple t = new Tuple(getTupleDesc());
+        t.setRecordId(getRecordId());
+        for (int i = 0; i < getTupleDesc().numFields(); i++) {
+            t.setField(i, getField(i));
+        }
+        return t;
+    }
+}
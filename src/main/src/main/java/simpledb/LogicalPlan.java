@@ -271,6 +271,32 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * Plan a filter over a subplan: as an IndexScan when the subplan is still
+     * the plain scan of the table and the table is a B+ tree on the filtered
+     * field, a hash file on it and the filter is an equality, or has a
+     * secondary index that can answer the filter, or else as a Filter.
+     */
+    private static DbIterator indexScanOrFilter(TransactionId t, int tableId, String alias,
+                                                Predicate p, DbIterator subplan) {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        if (subplan instanceof SeqScan && file instanceof BTreeFile
+                && ((BTreeFile) file).keyField() == p.getField()
+                && IndexPredicate.isRangeOp(p.getOp())) {
+            return new IndexScan(t, tableId, alias, new IndexPredicate(p.getOp(), p.getOperand()));
+        }
+        if (subplan instanceof SeqScan && file instanceof HashFile
+                && ((HashFile) file).keyField() == p.getField()
+                && p.getOp() == Predicate.Op.EQUALS) {
+            return new IndexScan(t, tableId, alias, new IndexPredicate(p.getOp(), p.getOperand()));
+        }
+        SecondaryIndex index = Database.getCatalog().getIndex(tableId, p.getField(), p.getOp());
+        if (subplan instanceof SeqScan && index != null) {
+            return new IndexScan(t, index, alias, new IndexPredicate(p.getOp(), p.getOperand()));
+        }
+        return new Filter(p, subplan);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -334,7 +360,8 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            subplanMap.put(lf.tableAlias, indexScanOrFilter(t,
+                    this.getTableId(lf.tableAlias), lf.tableAlias, p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
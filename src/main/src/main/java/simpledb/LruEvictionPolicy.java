@@ -0,0 +1,43 @@
+package simpledb;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Classic least-recently-used eviction. Resident pages are kept in an
+ * access-ordered LinkedHashMap, whose intrusive list makes admission, hits
+ * and victim selection constant time.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private final LinkedHashMap<PageId, Boolean> pages;
+
+    /**
+     * @param numPages the capacity of the buffer pool using this policy
+     */
+    public LruEvictionPolicy(int numPages) {
+        this.pages = new LinkedHashMap<>(numPages * 4 / 3 + 1, 0.75f, true);
+    }
+
+    public void pageAdmitted(PageId pid) {
+        pages.put(pid, Boolean.TRUE);
+    }
+
+    public void pageAccessed(PageId pid) {
+        pages.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        pages.remove(pid);
+    }
+
+    public PageId chooseVictim() {
+        if (pages.isEmpty()) {
+            return null;
+        }
+        return pages.keySet().iterator().next();
+    }
+
+    public String getName() {
+        return "LRU";
+    }
+}
@@ -0,0 +1,125 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * LRU-K eviction (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent reference lies furthest in the past; pages that have been
+ * referenced fewer than K times have an infinite backward distance and go
+ * first, oldest last reference first. A page read once by a large sequential
+ * scan therefore never displaces pages that are referenced repeatedly.
+ * <p>
+ * Reference history is retained for a bounded number of recently evicted
+ * pages so that a page that is re-read soon after eviction is not treated
+ * as cold again.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    /** Reference history of a single page. */
+    private static class History {
+        final PageId pid;
+        /** The last K reference times, most recent at index 0. */
+        final long[] times;
+
+        History(PageId pid, int k) {
+            this.pid = pid;
+            this.times = new long[k];
+        }
+
+        void reference(long now) {
+            System.arraycopy(times, 0, times, 1, times.length - 1);
+            times[0] = now;
+        }
+
+        /** @return the K-th most recent reference time, 0 if there is none */
+        long kth() {
+            return times[times.length - 1];
+        }
+
+        long last() {
+            return times[0];
+        }
+    }
+
+    private final int k;
+    private final Map<PageId, History> resident;
+    private final LinkedHashMap<PageId, History> retained;
+    private final TreeSet<History> order;
+    private long clock;
+
+    /**
+     * Creates an LRU-2 policy.
+     *
+     * @param numPages the capacity of the buffer pool using this policy
+     */
+    public LruKEvictionPolicy(int numPages) {
+        this(numPages, 2);
+    }
+
+    /**
+     * @param numPages the capacity of the buffer pool using this policy
+     * @param k the number of references tracked per page; must be at least 1
+     */
+    public LruKEvictionPolicy(final int numPages, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.k = k;
+        this.resident = new HashMap<>(numPages * 4 / 3 + 1);
+        this.retained = new LinkedHashMap<PageId, History>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, History> eldest) {
+                return size() > numPages;
+            }
+        };
+        this.order = new TreeSet<>((a, b) -> {
+            int c = Long.compare(a.kth(), b.kth());
+            if (c == 0) {
+                c = Long.compare(a.last(), b.last());
+            }
+            return c;
+        });
+        this.clock = 0;
+    }
+
+    public void pageAdmitted(PageId pid) {
+        History h = retained.remove(pid);
+        if (h == null) {
+            h = new History(pid, k);
+        }
+        h.reference(++clock);
+        resident.put(pid, h);
+        order.add(h);
+    }
+
+    public void pageAccessed(PageId pid) {
+        History h = resident.get(pid);
+        if (h == null) {
+            return;
+        }
+        order.remove(h);
+        h.reference(++clock);
+        order.add(h);
+    }
+
+    public void pageRemoved(PageId pid) {
+        History h = resident.remove(pid);
+        if (h != null) {
+            order.remove(h);
+            retained.put(pid, h);
+        }
+    }
+
+    public PageId chooseVictim() {
+        return order.isEmpty() ? null : order.first().pid;
+    }
+
+    public String getName() {
+        return "LRU-" + k;
+    }
+}
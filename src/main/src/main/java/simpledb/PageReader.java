@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * PageReader decodes fields and tuples from the image of a page, in the
+ * formats written by {@link PageWriter}. All reads are at absolute offsets
+ * and a reader keeps no cursor, so one reader may be shared by threads
+ * reading the same page. Strings are copied out of heap buffers with one
+ * array copy rather than a get per byte.
+ *
+ * @see PageWriter
+ * @see Type#parse(ByteBuffer, int)
+ */
+public class PageReader {
+
+    private final ByteBuffer buf;
+    /** the backing array of buf, if it may be read directly */
+    private final byte[] array;
+    private final int arrayOffset;
+
+    /**
+     * Create a reader for the given page image.
+     */
+    public PageReader(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.hasArray()) {
+            this.array = buf.array();
+            this.arrayOffset = buf.arrayOffset();
+        } else {
+            this.array = null;
+            this.arrayOffset = 0;
+        }
+    }
+
+    public int getInt(int offset) {
+        return buf.getInt(offset);
+    }
+
+    /** @return the 16 bits at offset, as written by {@link PageWriter#putUnsignedShort} */
+    public int getUnsignedShort(int offset) {
+        return buf.getShort(offset) & 0xFFFF;
+    }
+
+    /** Copy len bytes of the page, starting at offset, to dst at dstOffset. */
+    public void get(int offset, byte[] dst, int dstOffset, int len) {
+        if (array != null) {
+            System.arraycopy(array, arrayOffset + offset, dst, dstOffset, len);
+        } else {
+            ByteBuffer src = buf.duplicate();
+            src.position(offset);
+            src.get(dst, dstOffset, len);
+        }
+    }
+
+    /**
+     * @return bit (index % 8) of the byte at offset + index / 8, as in the
+     *     header of a HeapPage
+     */
+    public boolean isBitSet(int offset, int index) {
+        return (buf.get(offset + index / 8) & (1 << (index % 8))) != 0;
+    }
+
+    /** @return the string stored in the len bytes at offset, one byte per char */
+    public String getString(int offset, int len) {
+        byte bs[] = new byte[len];
+        get(offset, bs, 0, len);
+        return new String(bs);
+    }
+
+    /**
+     * Decode a field stored in the fixed-length format of the given type.
+     *
+     * @throws ParseException if the bytes at offset are not a valid field of
+     *   this type
+     */
+    public Field readField(Type type, int offset) throws ParseException {
+        switch (type) {
+        case INT_TYPE:
+            return new IntField(buf.getInt(offset));
+        case STRING_TYPE:
+            int strLen = buf.getInt(offset);
+            if (strLen < 0 || strLen > Type.STRING_LEN) {
+                throw new ParseException("invalid string length " + strLen, offset);
+            }
+            return new StringField(getString(offset + 4, strLen), Type.STRING_LEN);
+        default:
+            throw new IllegalArgumentException("unknown type " + type);
+        }
+    }
+
+    /**
+     * Decode a tuple stored in the fixed-length format of a HeapPage record
+     * at offset.
+     *
+     * @throws ParseException if a field is not valid
+     */
+    public Tuple readTuple(TupleDesc td, int offset) throws ParseException {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            t.setField(i, readField(td.getFieldType(i), offset + td.getFieldOffset(i)));
+        }
+        return t;
+    }
+}
@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * PageWriter encodes fields and tuples straight into the image of a page,
+ * in the formats read by {@link PageReader}. All writes are at absolute
+ * offsets and leave the position of the buffer alone, so one writer can
+ * fill any part of a page in any order. Heap buffers are written through
+ * their backing arrays; others, such as the off-heap frames of the
+ * BufferPool, with absolute puts.
+ * <p>
+ * Encoders that write many pages in turn can take a zeroed buffer from a
+ * small pool with {@link #acquire} and give it back with {@link #release}
+ * once the page has been written out, rather than allocating every page.
+ *
+ * @see PageReader
+ * @see Type#serialize
+ */
+public class PageWriter {
+
+    /** The most buffers kept in the pool at once */
+    private static final int POOL_SIZE = 32;
+    private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final byte[] ZEROES = new byte[4096];
+
+    private final ByteBuffer buf;
+    /** the backing array of buf, if it may be written directly */
+    private final byte[] array;
+    private final int arrayOffset;
+
+    /**
+     * Create a writer for the given page image.
+     */
+    public PageWriter(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.hasArray()) {
+            this.array = buf.array();
+            this.arrayOffset = buf.arrayOffset();
+        } else {
+            this.array = null;
+            this.arrayOffset = 0;
+        }
+    }
+
+    /**
+     * @return a writer over a zeroed heap buffer of the given size, taken
+     *     from the pool if one is free
+     */
+    public static PageWriter acquire(int size) {
+        ByteBuffer buf;
+        while ((buf = pool.poll()) != null) {
+            if (buf.capacity() == size) {
+                return new PageWriter(buf);
+            }
+        }
+        return new PageWriter(ByteBuffer.allocate(size));
+    }
+
+    /**
+     * Zero the buffer of this writer and return it to the pool. Neither the
+     * writer nor its buffer may be used afterwards.
+     */
+    public void release() {
+        clear();
+        if (array != null && pool.size() < POOL_SIZE) {
+            pool.offer(buf);
+        }
+    }
+
+    /** @return the page image this writer writes to */
+    public ByteBuffer getBuffer() {
+        return buf;
+    }
+
+    /** Set every byte of the page image to zero. */
+    public void clear() {
+        zero(0, buf.capacity());
+    }
+
+    /** Set len bytes starting at offset to zero. */
+    public void zero(int offset, int len) {
+        if (array != null) {
+            Arrays.fill(array, arrayOffset + offset, arrayOffset + offset + len, (byte) 0);
+        } else {
+            ByteBuffer dst = buf.duplicate();
+            dst.clear();
+            dst.position(offset);
+            dst.limit(offset + len);
+            while (dst.hasRemaining()) {
+                dst.put(ZEROES, 0, Math.min(ZEROES.length, dst.remaining()));
+            }
+        }
+    }
+
+    public void putInt(int offset, int value) {
+        buf.putInt(offset, value);
+    }
+
+    /** Write the low 16 bits of value, to be read back with {@link PageReader#getUnsignedShort}. */
+    public void putUnsignedShort(int offset, int value) {
+        buf.putShort(offset, (short) value);
+    }
+
+    /** Copy len bytes of src, starting at srcOffset, to the page at offset. */
+    public void put(int offset, byte[] src, int srcOffset, int len) {
+        if (array != null) {
+            System.arraycopy(src, srcOffset, array, arrayOffset + offset, len);
+        } else {
+            ByteBuffer dst = buf.duplicate();
+            dst.position(offset);
+            dst.put(src, srcOffset, len);
+        }
+    }
+
+    /**
+     * Set bit (index % 8) of the byte at offset + index / 8, as in the
+     * header of a HeapPage.
+     */
+    public void setBit(int offset, int index) {
+        int b = offset + index / 8;
+        buf.put(b, (byte) (buf.get(b) | (1 << (index % 8))));
+    }
+
+    /**
+     * Write at most maxLen characters of s at offset, one byte per char as
+     * DataOutputStream.writeBytes does.
+     *
+     * @return the number of bytes written
+     */
+    public int putString(int offset, String s, int maxLen) {
+        int len = Math.min(s.length(), maxLen);
+        if (array != null) {
+            int a = arrayOffset + offset;
+            for (int i = 0; i < len; i++) {
+                array[a + i] = (byte) s.charAt(i);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                buf.put(offset + i, (byte) s.charAt(i));
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Write a field in the fixed-length format of its type, always
+     * {@link Type#getLen} bytes, as {@link Field#serialize} does.
+     */
+    public void writeField(Field f, int offset) {
+        switch (f.getType()) {
+        case INT_TYPE:
+            buf.putInt(offset, ((IntField) f).getValue());
+            break;
+        case STRING_TYPE:
+            int len = putString(offset + 4, ((StringField) f).getValue(), Type.STRING_LEN);
+            buf.putInt(offset, len);
+            zero(offset + 4 + len, Type.STRING_LEN - len);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown type " + f.getType());
+        }
+    }
+
+    /**
+     * Write the fields of t one after another, in the fixed-length format
+     * of a HeapPage record, starting at offset.
+     */
+    public void writeTuple(Tuple t, TupleDesc td, int offset) {
+        for (int i = 0; i < td.numFields(); i++) {
+            writeField(t.getField(i), offset + td.getFieldOffset(i));
+        }
+    }
+}
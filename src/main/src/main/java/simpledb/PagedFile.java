@@ -0,0 +1,153 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * PagedFile does the page I/O of the index files, {@link BTreeFile} and
+ * {@link HashFile}: their files are a {@link FileHeader} followed by pages
+ * of the size it names, read and written with positional I/O on a single
+ * channel. What the pages hold is up to the file using it.
+ * <p>
+ * It also has the helpers the inserts and deletes of both files share.
+ */
+class PagedFile {
+
+    /** Writes the first pages of a file that was just created. */
+    interface Initializer {
+        void writeEmpty(PagedFile file) throws IOException;
+    }
+
+    /** Builds a page of the file from the bytes read for it. */
+    interface PageParser {
+        Page parse(byte[] data) throws IOException;
+    }
+
+    private final File f;
+    /** All page I/O uses positional reads and writes on this channel */
+    private FileChannel channel;
+    /** Page size and format of the file, from its header */
+    private FileHeader header;
+    private volatile int numPages;
+
+    /**
+     * Opens the given file, creating it if it does not exist. A new file
+     * gets a header for the current page size, then init writes its pages.
+     */
+    PagedFile(File f, Initializer init) {
+        this.f = f;
+        this.header = FileHeader.legacy();
+        try {
+            this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            long size = channel.size();
+            if (size == 0) {
+                this.header = new FileHeader(BufferPool.getPageSize(), 0);
+                header.write(channel);
+                init.writeEmpty(this);
+                size = channel.size();
+            } else {
+                this.header = FileHeader.read(channel);
+            }
+            this.numPages = (int) (Math.max(0, size - header.getDataOffset()) / header.getPageSize());
+        } catch (IOException e) {
+            Debug.log("unable to open " + f.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /** @return the size in bytes of the pages of the file */
+    int getPageSize() {
+        return header.getPageSize();
+    }
+
+    /** @return the number of pages in the file */
+    int numPages() {
+        return numPages;
+    }
+
+    /** @return the offset in the file of the given page */
+    private long pageOffset(int pageNumber) {
+        return header.getDataOffset() + (long) pageNumber * header.getPageSize();
+    }
+
+    /**
+     * Read the given page; past the end of the file its bytes are zero.
+     *
+     * @param parser builds the page from its bytes
+     * @throws IllegalArgumentException if the page cannot be read or parsed
+     */
+    Page readPage(int pgNo, PageParser parser) {
+        long pageOffset = pageOffset(pgNo);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(getPageSize());
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, pageOffset + buf.position()) < 0) {
+                    break;
+                }
+            }
+            return parser.parse(buf.array());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to read page " + pgNo
+                    + " of " + f.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Write the bytes of the given page, growing the file if it is past the end. */
+    void writePageData(int pgNo, byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            channel.write(buf, pageOffset(pgNo) + buf.position());
+        }
+        synchronized (this) {
+            if (pgNo >= numPages) {
+                numPages = pgNo + 1;
+            }
+        }
+    }
+
+    /** Append an empty page to the file. @return its page number */
+    synchronized int appendPage() throws IOException {
+        int pgNo = numPages;
+        writePageData(pgNo, new byte[getPageSize()]);
+        return pgNo;
+    }
+
+    /**
+     * Get a page on behalf of an insert or delete. Pages the operation has
+     * asked for with READ_WRITE are kept in the given map, which is what
+     * it returns as the pages it dirtied, and are looked up there first: a
+     * page it has modified may have been evicted from the BufferPool since,
+     * and reading it back would lose the changes.
+     *
+     * @param dirtypages the pages the operation has asked to modify so far
+     */
+    static Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, PageId pid,
+                        Permissions perm) throws DbException, TransactionAbortedException {
+        Page page = dirtypages.get(pid);
+        if (page != null) {
+            return page;
+        }
+        page = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, page);
+        }
+        return page;
+    }
+
+    /**
+     * @return true if the two tuples have equal fields, which is how a
+     *     delete finds the tuple it was given among those with its key
+     */
+    static boolean sameFields(Tuple a, Tuple b) {
+        for (int i = 0; i < a.getTupleDesc().numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -501,9 +503,48 @@ public class Parser {
         }
     }
 
+    /** CREATE INDEX name ON table (field) [USING kind], which Zql does not parse */
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "\\s*create\\s+index\\s+(\\w+)\\s+on\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s*\\)"
+                    + "(?:\\s+using\\s+(\\w+))?\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Build a secondary index on a field of a table with a bulk load and
+     * add it to the catalog, as part of the current user transaction, if
+     * there is one.
+     *
+     * @param kind the structure of the index, or null for a B+ tree
+     */
+    public void handleCreateIndexStatement(String name, String table, String field, String kind)
+            throws IOException {
+        Transaction t = inUserTrans ? curtrans : new Transaction();
+        if (!inUserTrans)
+            t.start();
+        try {
+            SecondaryIndex index = Database.getCatalog().createIndex(t.getId(), name, table,
+                    field, kind == null ? SecondaryIndex.Kind.BTREE : SecondaryIndex.Kind.parse(kind));
+            if (!inUserTrans)
+                t.commit();
+            System.out.println("Created index " + index);
+        } catch (NoSuchElementException | DbException | TransactionAbortedException e) {
+            if (!inUserTrans)
+                t.abort();
+            System.out.println("Unable to create index " + name + ": " + e.getMessage());
+        }
+    }
+
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            byte[] statement = is.readAllBytes();
+            Matcher createIndex = CREATE_INDEX.matcher(
+                    new String(statement, "UTF-8"));
+            if (createIndex.matches()) {
+                handleCreateIndexStatement(createIndex.group(1), createIndex.group(2),
+                        createIndex.group(3), createIndex.group(4));
+                return;
+            }
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(statement));
             ZStatement s = p.readStatement();
 
             Query query = null;
@@ -581,7 +622,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "create index", "on", "using" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -0,0 +1,219 @@
+package simpledb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReadAhead detects sequential page access per transaction and table and
+ * reads the following pages into the BufferPool on background threads, so
+ * that a scan finds its next pages already resident instead of waiting for
+ * a synchronous read after each page is exhausted.
+ * <p>
+ * Each (transaction, table) pair is tracked as a stream. Once a stream has
+ * touched two consecutive pages, ReadAhead issues reads for the next
+ * <i>window</i> pages; every further sequential access doubles the window
+ * up to a maximum, and a non-sequential access, or a prefetched page that is
+ * evicted before anyone used it, shrinks it again.
+ * <p>
+ * Attach an instance to a pool with {@link BufferPool#setReadAhead}.
+ */
+public class ReadAhead {
+
+    /** Default number of background reader threads. */
+    public static final int DEFAULT_THREADS = 2;
+    /** Default upper bound on the read-ahead window, in pages. */
+    public static final int DEFAULT_MAX_WINDOW = 32;
+    /** Number of streams tracked at once; older streams are forgotten. */
+    private static final int MAX_STREAMS = 64;
+    private static final int MIN_WINDOW = 2;
+
+    /** Identifies a stream: a transaction reading a table. */
+    private static class StreamKey {
+        final TransactionId tid;
+        final int tableId;
+
+        StreamKey(TransactionId tid, int tableId) {
+            this.tid = tid;
+            this.tableId = tableId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StreamKey)) {
+                return false;
+            }
+            StreamKey k = (StreamKey) o;
+            return tableId == k.tableId && Objects.equals(tid, k.tid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(tid) + tableId;
+        }
+    }
+
+    /** Access state of a stream. */
+    private static class Stream {
+        /** Last page requested; never one below a real page number at first. */
+        int lastPage = -2;
+        int window = MIN_WINDOW;
+        /** Highest page number already handed to the readers. */
+        int issuedUpTo = -1;
+    }
+
+    private final BufferPool pool;
+    private final int maxWindow;
+    private final ExecutorService readers;
+    private final LinkedHashMap<StreamKey, Stream> streams;
+
+    private long issued;
+    private long completed;
+    private long hits;
+    private long wasted;
+
+    /**
+     * Creates a read-ahead with {@link #DEFAULT_THREADS} readers and a
+     * window of at most {@link #DEFAULT_MAX_WINDOW} pages.
+     *
+     * @param pool the buffer pool to read pages into
+     */
+    public ReadAhead(BufferPool pool) {
+        this(pool, DEFAULT_THREADS, DEFAULT_MAX_WINDOW);
+    }
+
+    /**
+     * @param pool the buffer pool to read pages into
+     * @param threads the number of background reader threads
+     * @param maxWindow the maximum number of pages read ahead of a stream;
+     *     it is capped at a quarter of the pool so that read-ahead can never
+     *     evict the pages a scan is about to use
+     */
+    public ReadAhead(BufferPool pool, int threads, int maxWindow) {
+        this.pool = pool;
+        this.maxWindow = Math.max(1, Math.min(maxWindow, pool.getNumPages() / 4));
+        this.readers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "simpledb-readahead-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.streams = new LinkedHashMap<StreamKey, Stream>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StreamKey, Stream> eldest) {
+                return size() > MAX_STREAMS;
+            }
+        };
+    }
+
+    /**
+     * Called by the buffer pool for every page request; issues background
+     * reads when the request continues a sequential stream.
+     *
+     * @param tid the transaction requesting the page; may be null
+     * @param pid the requested page
+     */
+    synchronized void recordAccess(TransactionId tid, PageId pid) {
+        StreamKey key = new StreamKey(tid, pid.getTableId());
+        Stream s = streams.get(key);
+        if (s == null) {
+            s = new Stream();
+            streams.put(key, s);
+        }
+        int pgNo = pid.pageNumber();
+        if (pgNo == s.lastPage) {
+            return;
+        }
+        boolean sequential = pgNo == s.lastPage + 1;
+        s.lastPage = pgNo;
+        if (!sequential) {
+            s.window = MIN_WINDOW;
+            s.issuedUpTo = pgNo;
+            return;
+        }
+
+        DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+        if (!(file instanceof HeapFile)) {
+            return;
+        }
+        int last = Math.min(pgNo + s.window, ((HeapFile) file).numPages() - 1);
+        for (int p = Math.max(s.issuedUpTo + 1, pgNo + 1); p <= last; p++) {
+            final PageId next = new HeapPageId(pid.getTableId(), p);
+            issued++;
+            readers.execute(() -> {
+                try {
+                    if (pool.prefetchPage(next)) {
+                        synchronized (ReadAhead.this) {
+                            completed++;
+                        }
+                    }
+                } catch (DbException e) {
+                    Debug.log("read-ahead of page %d of table %d failed: %s",
+                            next.pageNumber(), next.getTableId(), e.getMessage());
+                }
+            });
+        }
+        s.issuedUpTo = Math.max(s.issuedUpTo, last);
+        s.window = Math.min(s.window * 2, maxWindow);
+    }
+
+    /** Called by the buffer pool when a prefetched page is requested. */
+    synchronized void prefetchHit() {
+        hits++;
+    }
+
+    /** Called by the buffer pool when a prefetched page is evicted unused. */
+    synchronized void prefetchWasted(PageId pid) {
+        wasted++;
+        for (Map.Entry<StreamKey, Stream> e : streams.entrySet()) {
+            if (e.getKey().tableId == pid.getTableId()) {
+                Stream s = e.getValue();
+                s.window = Math.max(MIN_WINDOW, s.window / 2);
+            }
+        }
+    }
+
+    /** @return the number of page reads handed to the background readers */
+    public synchronized long getIssuedCount() {
+        return issued;
+    }
+
+    /** @return the number of background reads that brought a page in */
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    /** @return the number of prefetched pages that were later requested */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** @return the number of prefetched pages evicted without being used */
+    public synchronized long getWastedCount() {
+        return wasted;
+    }
+
+    /** @return the fraction of completed prefetches that were used */
+    public synchronized double getHitRate() {
+        return completed == 0 ? 0.0 : (double) hits / completed;
+    }
+
+    /** Stop the background readers, waiting briefly for pending reads. */
+    public void shutdown() {
+        readers.shutdownNow();
+        try {
+            readers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A secondary index on one field of a table, kept in its own file and
+ * registered with the Catalog. The index holds an entry for each tuple of
+ * the table: the value of the indexed field, the key, and the RecordId of
+ * the tuple as its page number and slot. Lookups find the entries of a key
+ * and read only the pages of the table that hold the matching tuples.
+ * <p>
+ * BufferPool adds and removes entries as tuples are inserted into and
+ * deleted from the table, so only tables whose tuples keep their RecordId
+ * for as long as they exist can be indexed: those in a HeapFile or a
+ * SlottedHeapFile.
+ *
+ * @see Catalog#addIndex
+ * @see BufferPool#insertTuple
+ */
+public class SecondaryIndex {
+
+    /** The structures an index can be kept in */
+    public enum Kind {
+        /** A BTreeFile ordered by key, for equality and range lookups */
+        BTREE,
+        /** A HashFile on the key, for equality lookups only */
+        HASH;
+
+        /** @return the kind with the given name, ignoring case */
+        public static Kind parse(String name) throws NoSuchElementException {
+            for (Kind k : values()) {
+                if (k.name().equalsIgnoreCase(name)) {
+                    return k;
+                }
+            }
+            throw new NoSuchElementException("unknown index kind " + name);
+        }
+    }
+
+    private final String name;
+    private final int tableId;
+    private final int keyField;
+    private final Kind kind;
+    private final DbFile file;
+
+    /**
+     * Open an index stored in the given file, which is created empty if it
+     * does not exist yet.
+     *
+     * @param name the name of the index
+     * @param tableId the table the index is on
+     * @param keyField the indexed field of the table
+     * @param kind the structure of the index
+     * @param f the file holding the index
+     */
+    public SecondaryIndex(String name, int tableId, int keyField, Kind kind, File f) {
+        this.name = name;
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.kind = kind;
+        TupleDesc entryDesc = entryDesc(Database.getCatalog().getTupleDesc(tableId)
+                .getFieldType(keyField));
+        this.file = kind == Kind.HASH ? new HashFile(f, entryDesc, 0)
+                : new BTreeFile(f, entryDesc, 0);
+    }
+
+    /**
+     * Build an index over the current contents of a table: the entries are
+     * collected with a scan of the table and bulk loaded into a new index
+     * file, sorted for a B+ tree, rather than inserted one at a time.
+     *
+     * @param tid the transaction to scan the table as
+     * @param f the file to hold the index; anything in it is replaced
+     * @throws DbException if the table cannot be indexed
+     * @see BTreeFile#bulkLoad
+     * @see HashFile#bulkLoad
+     */
+    public static SecondaryIndex build(TransactionId tid, String name, int tableId, int keyField,
+                                       Kind kind, File f)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFile table = Database.getCatalog().getDbFile(tableId);
+        if (!(table instanceof HeapFile) && !(table instanceof SlottedHeapFile)) {
+            throw new DbException("cannot index table " + Database.getCatalog().getTableName(tableId)
+                    + ": its tuples do not keep their RecordIds");
+        }
+        if (keyField < 0 || keyField >= table.getTupleDesc().numFields()) {
+            throw new DbException("no field " + keyField + " to index");
+        }
+        if (f.exists() && !f.delete()) {
+            throw new IOException("unable to replace " + f.getAbsolutePath());
+        }
+        SecondaryIndex index = new SecondaryIndex(name, tableId, keyField, kind, f);
+
+        List<Tuple> entries = new ArrayList<Tuple>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            entries.add(index.entry(t, t.getRecordId()));
+        }
+        it.close();
+        if (kind == Kind.HASH) {
+            ((HashFile) index.file).bulkLoad(entries.iterator());
+        } else {
+            entries.sort(ENTRY_ORDER);
+            ((BTreeFile) index.file).bulkLoad(entries.iterator());
+        }
+        return index;
+    }
+
+    /** Orders entries by key, then by RecordId, as a scan of the index returns them */
+    private static final Comparator<Tuple> ENTRY_ORDER = (a, b) -> {
+        for (int i = 0; i < 3; i++) {
+            Field x = a.getField(i);
+            Field y = b.getField(i);
+            if (x.compare(Predicate.Op.LESS_THAN, y)) {
+                return -1;
+            }
+            if (x.compare(Predicate.Op.GREATER_THAN, y)) {
+                return 1;
+            }
+        }
+        return 0;
+    };
+
+    /** @return the schema of the entries of an index on a field of the given type */
+    static TupleDesc entryDesc(Type keyType) {
+        return new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "key", "page", "slot" });
+    }
+
+    /** @return the entry of a tuple stored at the given RecordId */
+    private Tuple entry(Tuple t, RecordId rid) {
+        Tuple e = new Tuple(file.getTupleDesc());
+        e.setField(0, t.getField(keyField));
+        e.setField(1, new IntField(rid.getPageId().pageNumber()));
+        e.setField(2, new IntField(rid.tupleno()));
+        return e;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** @return the id of the table the index is on */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the indexed field of the table */
+    public int getKeyField() {
+        return keyField;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /** @return the file holding the entries of the index */
+    public DbFile getFile() {
+        return file;
+    }
+
+    /** @return true if the index can find the tuples satisfying a predicate with this operator */
+    public boolean supports(Predicate.Op op) {
+        if (kind == Kind.HASH) {
+            return op == Predicate.Op.EQUALS;
+        }
+        return IndexPredicate.isRangeOp(op);
+    }
+
+    /**
+     * Add the entry of a tuple that was just inserted into the table.
+     *
+     * @param t the tuple, with the RecordId it was stored at
+     */
+    public void insertEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Database.getBufferPool().insertTuple(tid, file.getId(), entry(t, t.getRecordId()));
+    }
+
+    /**
+     * Remove the entry of a tuple that was just deleted from the table.
+     *
+     * @param t the tuple
+     * @param rid the RecordId the tuple was stored at
+     * @throws DbException if the index has no entry for the tuple
+     */
+    public void deleteEntry(TransactionId tid, Tuple t, RecordId rid)
+            throws DbException, TransactionAbortedException {
+        Tuple wanted = entry(t, rid);
+        DbFileIterator it = entries(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, wanted.getField(0)));
+        it.open();
+        try {
+            while (it.hasNext()) {
+                Tuple e = it.next();
+                if (e.getField(1).equals(wanted.getField(1))
+                        && e.getField(2).equals(wanted.getField(2))) {
+                    Database.getBufferPool().deleteTuple(tid, e);
+                    return;
+                }
+            }
+        } finally {
+            it.close();
+        }
+        throw new DbException("index " + name + " has no entry for " + rid);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table whose indexed field
+     * satisfies the given predicate, in the order of the index.
+     *
+     * @throws IllegalArgumentException if the index does not support the
+     *     operator of the predicate
+     */
+    public DbFileIterator iterator(TransactionId tid, IndexPredicate ipred) {
+        if (!supports(ipred.getOp())) {
+            throw new IllegalArgumentException("index " + name + " cannot answer " + ipred);
+        }
+        DbFileIterator entries = entries(tid, ipred);
+        return new DbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                entries.open();
+            }
+
+            public boolean hasNext() throws DbException, TransactionAbortedException {
+                return entries.hasNext();
+            }
+
+            public Tuple next() throws DbException, TransactionAbortedException {
+                Tuple e = entries.next();
+                HeapPageId pid = new HeapPageId(tableId, ((IntField) e.getField(1)).getValue());
+                int slot = ((IntField) e.getField(2)).getValue();
+                Page page = Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                if (page instanceof HeapPage) {
+                    return ((HeapPage) page).getTuple(slot);
+                }
+                return ((SlottedPage) page).getTuple(slot);
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                entries.rewind();
+            }
+
+            public void close() {
+                entries.close();
+            }
+        };
+    }
+
+    /** @return an iterator over the entries whose key satisfies the given predicate */
+    private DbFileIterator entries(TransactionId tid, IndexPredicate ipred) {
+        if (file instanceof HashFile) {
+            return ((HashFile) file).indexIterator(tid, ipred);
+        }
+        return ((BTreeFile) file).indexIterator(tid, ipred);
+    }
+
+    public String toString() {
+        return name + " on " + Database.getCatalog().getTableName(tableId) + " ("
+                + Database.getCatalog().getTupleDesc(tableId).getFieldName(keyField) + ") "
+                + kind.name().toLowerCase();
+    }
+}
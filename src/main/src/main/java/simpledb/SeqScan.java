@@ -33,6 +33,8 @@ public class SeqScan implements DbIterator {
     private String tableAlias;
     private TupleDesc tupleDesc;
     private DbFileIterator dbFileIterator;
+    /** Predicates of the operators above that the scan may skip pages by */
+    private final List<Predicate> pushedDown = new ArrayList<Predicate>();
 
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         // some code goes here
@@ -59,6 +61,16 @@ public class SeqScan implements DbIterator {
         return tableAlias;
     }
 
+    /** @return the id of the table this operator scans */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the transaction this operator scans the table as */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -75,7 +87,31 @@ public class SeqScan implements DbIterator {
         // some code goes here
         this.table = Database.getCatalog().getDbFile(tableId);
         this.tupleDesc = table.getTupleDesc().copyTupleDescAlias(tableAlias);
-        this.dbFileIterator = table.iterator(tid);
+        // large heap file scans read through a buffer ring so that they do
+        // not flush the rest of the buffer pool
+        if (table instanceof HeapFile)
+            this.dbFileIterator = ((HeapFile) table).iterator(tid, true, pushedDown);
+        else if (table instanceof SlottedHeapFile)
+            this.dbFileIterator = ((SlottedHeapFile) table).iterator(tid, true);
+        else
+            this.dbFileIterator = table.iterator(tid);
+    }
+
+    /**
+     * Let the scan skip the pages that hold no tuple satisfying the given
+     * predicate, as far as the zone map of the table can tell, from the next
+     * time it is opened. The scan still returns every tuple of the pages it
+     * reads, so the operator above must apply the predicate itself.
+     *
+     * @see HeapFile#iterator(TransactionId, boolean, List)
+     */
+    public void pushDown(Predicate p) {
+        pushedDown.add(p);
+    }
+
+    /** Stop skipping pages by a predicate given to {@link #pushDown}. */
+    public void withdraw(Predicate p) {
+        pushedDown.remove(p);
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -8,6 +8,20 @@ public class SimpleDb {
         // convert a file
         if(args[0].equals("convert")) {
         try {
+            // --slotted writes SlottedPages instead of HeapPages, and
+            // --threads n parses the input on n threads
+            boolean slotted = false;
+            int threads = BulkLoader.defaultThreads();
+            ArrayList<String> positional = new ArrayList<String>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--slotted"))
+                    slotted = true;
+                else if (args[i].equals("--threads") && i + 1 < args.length)
+                    threads = Integer.parseInt(args[++i]);
+                else
+                    positional.add(args[i]);
+            }
+            args = positional.toArray(new String[0]);
             if (args.length<3 || args.length>5){
                 System.err.println("Unexpected number of arguments to convert ");
                 return;
@@ -44,12 +58,49 @@ public class SimpleDb {
                     fieldSeparator=args[4].charAt(0);
             }
 
-            HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
-                        BufferPool.PAGE_SIZE,numOfAttributes,ts,fieldSeparator);
+            if (slotted)
+                SlottedFileEncoder.convert(sourceTxtFile,targetDatFile,ts,fieldSeparator);
+            else
+                HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator,threads);
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
         }
+        } else if (args[0].equals("ingest")) {
+            // ingest file [--name table] [--catalog file] [--sep c]
+            //   [--header | --no-header] [--sample lines] [--threads n]
+            if (args.length < 2) {
+                System.err.println("Usage: ingest file [--name table] [--catalog file] [--sep c]"
+                        + " [--header | --no-header] [--sample lines] [--threads n]");
+                return;
+            }
+            Ingest ingest = new Ingest(new File(args[1]));
+            for (int i = 2; i < args.length; i++) {
+                String opt = args[i];
+                if (opt.equals("--header"))
+                    ingest.setHeader(true);
+                else if (opt.equals("--no-header"))
+                    ingest.setHeader(false);
+                else if (i + 1 >= args.length) {
+                    System.err.println("Unknown option " + opt);
+                    return;
+                } else if (opt.equals("--name"))
+                    ingest.setTableName(args[++i]);
+                else if (opt.equals("--catalog"))
+                    ingest.setCatalogFile(new File(args[++i]));
+                else if (opt.equals("--sep"))
+                    ingest.setSeparator(args[++i].equals("\\t") ? '\t' : args[i].charAt(0));
+                else if (opt.equals("--sample"))
+                    ingest.setSampleLines(Integer.parseInt(args[++i]));
+                else if (opt.equals("--threads"))
+                    ingest.setThreads(Integer.parseInt(args[++i]));
+                else {
+                    System.err.println("Unknown option " + opt);
+                    return;
+                }
+            }
+            ingest.run();
         } else if (args[0].equals("print")) {
             File tableFile = new File(args[1]);
             int columns = Integer.parseInt(args[2]);
@@ -0,0 +1,136 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * SlottedFileEncoder reads a delimited text file, in the format accepted by
+ * HeapFileEncoder, or accepts an array of tuples, and converts it to a file
+ * of SlottedPages for a SlottedHeapFile. Pages are
+ * {@link BufferPool#getPageSize} bytes long.
+ *
+ * @see HeapFileEncoder
+ * @see SlottedPage
+ */
+public class SlottedFileEncoder {
+
+    /**
+     * Convert the specified tuple list (with only integer fields) into a
+     * slotted page file.
+     *
+     * @param tuples the tuples, each represented by a list of integers
+     * @param outFile The output file to write data to
+     * @param numFields the number of fields in each input tuple
+     * @throws IOException if the output file can't be written
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int numFields)
+            throws IOException {
+        TupleDesc td = Utility.getTupleDesc(numFields);
+        try (Writer writer = new Writer(outFile, td)) {
+            for (ArrayList<Integer> tuple : tuples) {
+                if (tuple.size() != numFields) {
+                    throw new RuntimeException("Tuple does not have " + numFields + " fields: ("
+                            + Utility.listToString(tuple) + ")");
+                }
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < numFields; i++) {
+                    t.setField(i, new IntField(tuple.get(i)));
+                }
+                writer.add(t);
+            }
+        }
+    }
+
+    /**
+     * Convert the specified input text file into a slotted page file. Each
+     * line of the input is a tuple whose fields are separated by
+     * fieldSeparator; blank lines are skipped.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The output file to write data to
+     * @param typeAr the types of the fields of each line
+     * @param fieldSeparator the character separating fields
+     * @throws IOException if the input/output file can't be opened or a
+     *   line has the wrong number of fields
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        TupleDesc td = new TupleDesc(typeAr);
+        try (BufferedReader br = new BufferedReader(new FileReader(inFile));
+             Writer writer = new Writer(outFile, td)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+                if (fields.length != typeAr.length) {
+                    throw new IOException("BAD LINE : " + line);
+                }
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < typeAr.length; i++) {
+                    String s = fields[i].trim();
+                    if (typeAr[i] == Type.INT_TYPE) {
+                        try {
+                            t.setField(i, new IntField(Integer.parseInt(s)));
+                        } catch (NumberFormatException e) {
+                            throw new IOException("BAD LINE : " + line);
+                        }
+                    } else {
+                        t.setField(i, new StringField(s, Type.STRING_LEN));
+                    }
+                }
+                writer.add(t);
+            }
+        }
+    }
+
+    /**
+     * Packs tuples into SlottedPages and appends each page to the output
+     * file once the next tuple no longer fits. An empty input still
+     * produces one empty page.
+     */
+    private static class Writer implements Closeable {
+        private final OutputStream os;
+        private final TupleDesc td;
+        private SlottedPage page;
+        private int npages;
+
+        Writer(File outFile, TupleDesc td) throws IOException {
+            this.os = new BufferedOutputStream(new FileOutputStream(outFile));
+            this.td = td;
+            FileHeader header = new FileHeader(BufferPool.getPageSize(), 0);
+            if (header.isStored()) {
+                os.write(header.toBytes());
+            }
+            this.page = newPage();
+        }
+
+        private SlottedPage newPage() throws IOException {
+            return new SlottedPage(new HeapPageId(0, npages), td, SlottedPage.createEmptyPageData());
+        }
+
+        void add(Tuple t) throws IOException {
+            if (SlottedPage.getRecordSize(t) > page.getFreeSpace()) {
+                if (page.getNumTuples() == 0) {
+                    throw new IOException("tuple does not fit on a page: " + t);
+                }
+                os.write(page.getPageData());
+                npages++;
+                page = newPage();
+            }
+            try {
+                page.insertTuple(t);
+            } catch (DbException e) {
+                throw new IOException(e);
+            }
+        }
+
+        public void close() throws IOException {
+            if (page.getNumTuples() > 0 || npages == 0) {
+                os.write(page.getPageData());
+            }
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * SlottedHeapFile is a DbFile that, like HeapFile, stores a collection of
+ * tuples in no particular order on fixed-size pages, but lays the pages out
+ * as SlottedPages of variable-length records. Tables whose strings are much
+ * shorter than Type.STRING_LEN take correspondingly fewer pages, so scans
+ * read less.
+ * <p>
+ * Pages are identified by HeapPageIds, as in a HeapFile.
+ *
+ * @see SlottedPage
+ * @see Catalog#loadSchema
+ */
+public class SlottedHeapFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File f;
+    private final TupleDesc td;
+    /** All page I/O uses positional reads and writes on this channel */
+    private transient FileChannel channel;
+    /** Page size and format of the file, from its header */
+    private FileHeader header;
+    private volatile int numPages;
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.header = FileHeader.legacy();
+        try {
+            this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            long size = channel.size();
+            if (size == 0) {
+                this.header = new FileHeader(BufferPool.getPageSize(), 0);
+                header.write(channel);
+                size = channel.size();
+            } else {
+                this.header = FileHeader.read(channel);
+            }
+            this.numPages = (int) (Math.max(0, size - header.getDataOffset()) / header.getPageSize());
+        } catch (IOException e) {
+            Debug.log("unable to open " + f.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /** @return the size in bytes of the pages of this file */
+    public int getPageSize() {
+        return header.getPageSize();
+    }
+
+    /** @return the offset in the file of the given page */
+    private long pageOffset(int pageNumber) {
+        return header.getDataOffset() + (long) pageNumber * header.getPageSize();
+    }
+
+    /**
+     * Returns the File backing this file on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the number of pages in this file.
+     */
+    public int numPages() {
+        return numPages;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (pid instanceof HeapPageId && pid.getTableId() == getId()) {
+            long pageOffset = pageOffset(pid.pageNumber());
+            try {
+                ByteBuffer buf = ByteBuffer.allocate(getPageSize());
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, pageOffset + buf.position()) < 0) {
+                        break;
+                    }
+                }
+                return new SlottedPage((HeapPageId) pid, td, buf.array());
+            } catch (IOException e) {
+                Debug.log(f.getAbsolutePath() + " offset is invalid:" + pageOffset);
+            }
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int pgNo = page.getId().pageNumber();
+        ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+        while (buf.hasRemaining()) {
+            channel.write(buf, pageOffset(pgNo) + buf.position());
+        }
+        synchronized (this) {
+            if (pgNo >= numPages) {
+                numPages = pgNo + 1;
+            }
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        int needed = SlottedPage.getRecordSize(t);
+        if (needed > getPageSize() - SlottedPage.HEADER_SIZE) {
+            throw new DbException("tuple does not fit on a page");
+        }
+        BufferPool bufferPool = Database.getBufferPool();
+        ArrayList<Page> modified = new ArrayList<Page>();
+        for (int i = 0; i < numPages; i++) {
+            SlottedPage page = (SlottedPage) bufferPool.getPage(tid,
+                    new HeapPageId(getId(), i), Permissions.READ_WRITE);
+            if (page.getFreeSpace() >= needed) {
+                page.insertTuple(t);
+                modified.add(page);
+                return modified;
+            }
+        }
+
+        // no page has room, so append an empty one and fill it through the pool
+        synchronized (this) {
+            writePage(new SlottedPage(new HeapPageId(getId(), numPages), td,
+                    SlottedPage.createEmptyPageData(getPageSize())));
+        }
+        SlottedPage page = (SlottedPage) bufferPool.getPage(tid,
+                new HeapPageId(getId(), numPages - 1), Permissions.READ_WRITE);
+        page.insertTuple(t);
+        modified.add(page);
+        return modified;
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple is not in this table");
+        }
+        SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+                rid.getPageId(), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, false);
+    }
+
+    /**
+     * Returns an iterator over all the tuples stored in this file.
+     *
+     * @see HeapFile#iterator(TransactionId, boolean)
+     */
+    public DbFileIterator iterator(TransactionId tid, boolean allowScanRing) {
+        return new DbFileIterator() {
+            private BufferPool bufferPool;
+            private BufferRing ring;
+            private int pageNo;
+            private Iterator<Tuple> tuples = Collections.emptyIterator();
+
+            public void open() throws DbException, TransactionAbortedException {
+                close();
+                bufferPool = Database.getBufferPool();
+                if (allowScanRing && bufferPool.useScanRing(numPages)) {
+                    ring = bufferPool.newScanRing();
+                }
+                pageNo = -1;
+            }
+
+            public boolean hasNext() throws DbException, TransactionAbortedException {
+                if (bufferPool == null) {
+                    return false;
+                }
+                while (!tuples.hasNext()) {
+                    if (++pageNo >= numPages) {
+                        return false;
+                    }
+                    SlottedPage page = (SlottedPage) bufferPool.getPage(tid,
+                            new HeapPageId(getId(), pageNo), Permissions.READ_ONLY, ring);
+                    tuples = page.iterator();
+                }
+                return true;
+            }
+
+            public Tuple next() throws DbException, TransactionAbortedException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return tuples.next();
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                open();
+            }
+
+            public void close() {
+                tuples = Collections.emptyIterator();
+                if (ring != null) {
+                    bufferPool.releaseScanRing(ring);
+                    ring = null;
+                }
+                bufferPool = null;
+            }
+        };
+    }
+}
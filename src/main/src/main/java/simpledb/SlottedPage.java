@@ -0,0 +1,412 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Each instance of SlottedPage stores data for one page of a
+ * SlottedHeapFile. Unlike a HeapPage, whose slots all have the width of
+ * the widest possible tuple, a slotted page stores each tuple as a
+ * variable-length record, so a string takes only as many bytes as it has
+ * characters.
+ * <p>
+ * The page starts with a 4 byte header: the number of entries in the slot
+ * directory and the offset at which the record area starts (0 meaning the
+ * end of the page, so that an all-zero page is a valid empty page). The
+ * slot directory follows, one entry per slot holding the offset and length
+ * of its record; a length of 0 marks an empty slot. Records are packed
+ * from the end of the page towards the directory. All these numbers are
+ * unsigned 2 byte values, which is enough for pages of up to 64 KB.
+ * <p>
+ * In a record, an int field takes 4 bytes and a string field takes a 2
+ * byte length followed by one byte per character.
+ * <p>
+ * A tuple keeps its slot number for as long as it is on the page, so
+ * RecordIds stay valid. Deleting a tuple leaves a hole in the record area,
+ * which is reclaimed by compacting the page when an insert needs the
+ * space.
+ *
+ * @see SlottedHeapFile
+ * @see BufferPool
+ */
+public class SlottedPage implements Page {
+
+    /** Bytes of page header: slot count and start of the record area */
+    static final int HEADER_SIZE = 4;
+    /** Bytes per slot directory entry: record offset and length */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int pageSize;
+
+    /** The page image, which inserts and deletes update in place */
+    private ByteBuffer data;
+    /** Whether data may be written to; see {@link HeapPage#ownsData} */
+    private boolean ownsData;
+    /** The before image, or null if the page is unchanged since it was set */
+    private byte[] oldData;
+    private TransactionId dirtier;
+
+    private int numSlots;
+    private int numRecords;
+    /** Bytes taken by the records in use, not counting holes */
+    private int usedBytes;
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk, in
+     * the format described above. The TupleDesc is looked up in the catalog.
+     * The array is kept as the page image, not copied; the page never
+     * writes to it but copies it on the first insert or delete.
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+    }
+
+    /**
+     * Create a SlottedPage holding tuples of the given TupleDesc, for use
+     * before the table is in the catalog.
+     */
+    public SlottedPage(HeapPageId id, TupleDesc td, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = td;
+        this.pageSize = data.length;
+        this.data = ByteBuffer.wrap(data);
+        this.ownsData = false;
+
+        numSlots = getUnsigned(0);
+        if (HEADER_SIZE + numSlots * SLOT_SIZE > recordStart()) {
+            throw new IOException("corrupt slotted page " + id.pageNumber()
+                    + ": " + numSlots + " slots");
+        }
+        for (int i = 0; i < numSlots; i++) {
+            int len = slotLength(i);
+            if (len > 0) {
+                numRecords++;
+                usedBytes += len;
+            }
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return The number of bytes needed to store t on a slotted page,
+     *     including its slot directory entry
+     */
+    public static int getRecordSize(Tuple t) {
+        return recordSize(t) + SLOT_SIZE;
+    }
+
+    private static int recordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                size += 2 + Math.min(((StringField) t.getField(i)).getValue().length(), Type.STRING_LEN);
+            } else {
+                size += td.getFieldType(i).getLen();
+            }
+        }
+        return size;
+    }
+
+    private int getUnsigned(int offset) {
+        return data.getShort(offset) & 0xFFFF;
+    }
+
+    private void putUnsigned(int offset, int value) {
+        data.putShort(offset, (short) value);
+    }
+
+    /** @return the offset at which the record area starts */
+    private int recordStart() {
+        int start = getUnsigned(2);
+        return start == 0 ? pageSize : start;
+    }
+
+    private int slotOffset(int slot) {
+        return getUnsigned(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int slotLength(int slot) {
+        return getUnsigned(HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        putUnsigned(HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putUnsigned(HEADER_SIZE + slot * SLOT_SIZE + 2, length);
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * @return A copy of the page image, which can be passed to the
+     *     SlottedPage constructor to produce an identical page.
+     */
+    public byte[] getPageData() {
+        byte[] copy = new byte[pageSize];
+        ByteBuffer src = data.duplicate();
+        src.clear();
+        src.get(copy);
+        return copy;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedPage getBeforeImage() {
+        try {
+            return new SlottedPage(pid, td, oldData != null ? oldData.clone() : getPageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        // the current image is the before image until the next write
+        oldData = null;
+    }
+
+    /** Capture the before image and take a private copy of the image if needed. */
+    private void prepareWrite() {
+        if (oldData == null) {
+            oldData = ownsData ? getPageData() : data.array();
+        }
+        if (!ownsData) {
+            data = ByteBuffer.wrap(getPageData());
+            ownsData = true;
+        }
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        return numRecords;
+    }
+
+    /**
+     * @return the number of bytes available for new records, counting the
+     *     holes left by deleted records; a tuple fits on the page if
+     *     {@link #getRecordSize} of it is at most this
+     */
+    public int getFreeSpace() {
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - usedBytes;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots && slotLength(i) > 0;
+    }
+
+    /**
+     * @return the tuple stored in the given slot, as an index finds it by
+     *     its RecordId
+     * @throws NoSuchElementException if the slot is not in use
+     */
+    public Tuple getTuple(int slot) throws NoSuchElementException {
+        if (!isSlotUsed(slot)) {
+            throw new NoSuchElementException("no tuple in slot " + slot);
+        }
+        return readTuple(slot);
+    }
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     *  that it is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         tupledesc is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        int size = recordSize(t);
+        int slot = 0;
+        while (slot < numSlots && slotLength(slot) > 0) {
+            slot++;
+        }
+        int directoryEnd = HEADER_SIZE + Math.max(numSlots, slot + 1) * SLOT_SIZE;
+        if (directoryEnd + usedBytes + size > pageSize) {
+            throw new DbException("page is full");
+        }
+
+        prepareWrite();
+        if (directoryEnd + size > recordStart()) {
+            compact();
+        }
+        int offset = recordStart() - size;
+        writeRecord(t, offset);
+        putUnsigned(2, offset);
+        if (slot == numSlots) {
+            numSlots++;
+            putUnsigned(0, numSlots);
+        }
+        setSlot(slot, offset, size);
+        numRecords++;
+        usedBytes += size;
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page;  the tuple should be updated to reflect
+     *   that it is no longer stored on any page.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple is not on this page");
+        }
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot)) {
+            throw new DbException("tuple slot is already empty");
+        }
+
+        prepareWrite();
+        int offset = slotOffset(slot);
+        int length = slotLength(slot);
+        setSlot(slot, 0, 0);
+        if (offset == recordStart()) {
+            // the record is at the edge of the free space, so it need not
+            // wait for compaction
+            putUnsigned(2, offset + length == pageSize ? 0 : offset + length);
+        }
+        // trailing empty slots can go, as no RecordId refers to them
+        while (numSlots > 0 && slotLength(numSlots - 1) == 0) {
+            numSlots--;
+        }
+        putUnsigned(0, numSlots);
+        numRecords--;
+        usedBytes -= length;
+        t.setRecordId(null);
+    }
+
+    /** Move all records to the end of the page, closing the holes between them. */
+    private void compact() {
+        byte[] image = getPageData();
+        int end = pageSize;
+        for (int i = 0; i < numSlots; i++) {
+            int length = slotLength(i);
+            if (length > 0) {
+                end -= length;
+                data.position(end);
+                data.put(image, slotOffset(i), length);
+                setSlot(i, end, length);
+            }
+        }
+        data.clear();
+        putUnsigned(2, end == pageSize ? 0 : end);
+    }
+
+    private void writeRecord(Tuple t, int offset) {
+        PageWriter writer = new PageWriter(data);
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = writer.putString(offset + 2, ((StringField) f).getValue(), Type.STRING_LEN);
+                writer.putUnsignedShort(offset, len);
+                offset += 2 + len;
+            } else {
+                writer.writeField(f, offset);
+                offset += td.getFieldType(i).getLen();
+            }
+        }
+    }
+
+    /** Decode the tuple stored in the given slot, which must be in use. */
+    private Tuple readTuple(int slot) {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        int offset = slotOffset(slot);
+        PageReader reader = new PageReader(data);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = reader.getUnsignedShort(offset);
+                t.setField(i, new StringField(reader.getString(offset + 2, len), Type.STRING_LEN));
+                offset += 2 + len;
+            } else {
+                try {
+                    t.setField(i, reader.readField(td.getFieldType(i), offset));
+                } catch (java.text.ParseException e) {
+                    throw new NoSuchElementException("parsing error!");
+                }
+                offset += td.getFieldType(i).getLen();
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on
+     *     this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int slot = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return slot < numSlots;
+            }
+
+            public Tuple next() {
+                if (slot >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readTuple(slot);
+                slot = nextUsedSlot(slot + 1);
+                return t;
+            }
+        };
+    }
+
+    private int nextUsedSlot(int from) {
+        while (from < numSlots && slotLength(from) == 0) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedPage of {@link BufferPool#getPageSize} bytes.
+     */
+    public static byte[] createEmptyPageData() {
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return a byte array corresponding to an empty SlottedPage of the
+     *     given page size
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize];
+    }
+}
@@ -34,6 +34,15 @@ public class Tuple implements Serializable {
         }
     }
 
+    /**
+     * Create a tuple whose fields are held by a subclass, which must then
+     * override {@link #getField}, {@link #setField} and {@link #fields}.
+     */
+    Tuple(TupleDesc td, RecordId rid) {
+        this.td = td;
+        this.recordId = rid;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -97,8 +106,8 @@ public class Tuple implements Serializable {
     public String toString() {
         // some code goes here
         StringBuilder str = new StringBuilder("");
-        for(var filed:fields) {
-            str.append(filed.toString() + "\t");
+        for (int i = 0; i < td.numFields(); i++) {
+            str.append(getField(i).toString() + "\t");
         }
         return str.substring(0, str.length() - 1) + "\n";
     }
@@ -36,6 +36,9 @@ public class TupleDesc implements Serializable {
     }
 
     private List<TDItem> fieldList;
+
+    /** Byte offset of each field within a serialized tuple, computed on first use */
+    private transient int[] offsets;
     /**
      * @return
      *        An iterator which iterates over all the field TDItems
@@ -154,6 +157,32 @@ public class TupleDesc implements Serializable {
         return fieldList.stream().mapToInt(item->item.fieldType.getLen()).sum();
     }
 
+    /**
+     * Gets the offset of the ith field within a serialized tuple of this
+     * TupleDesc, i.e. the sum of the lengths of the fields before it.
+     *
+     * @param i
+     *            The index of the field. It must be a valid index.
+     * @return the offset (in bytes) of the ith field
+     * @throws NoSuchElementException
+     *             if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i >= fieldList.size() || i < 0)
+            throw new NoSuchElementException("index " + i + " is invalid.");
+        int[] offs = offsets;
+        if (offs == null) {
+            offs = new int[fieldList.size()];
+            int offset = 0;
+            for (int j = 0; j < offs.length; j++) {
+                offs[j] = offset;
+                offset += fieldList.get(j).fieldType.getLen();
+            }
+            offsets = offs;
+        }
+        return offs[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,91 @@
+package simpledb;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Full 2Q eviction (Johnson and Shasha). Newly admitted pages enter the FIFO
+ * queue A1in; only pages that are read again after falling out of A1in,
+ * which is detected through the ghost queue A1out of recently evicted ids,
+ * are promoted to the main LRU queue Am. A single sequential scan thus only
+ * ever cycles through A1in and leaves the hot pages in Am alone.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    private final int kin;
+    private final int kout;
+    private final LinkedHashSet<PageId> a1in;
+    private final LinkedHashSet<PageId> a1out;
+    private final LinkedHashMap<PageId, Boolean> am;
+
+    /**
+     * Creates a 2Q policy with the tuning recommended in the paper: A1in
+     * holds a quarter of the pool and A1out remembers half a pool of ids.
+     *
+     * @param numPages the capacity of the buffer pool using this policy
+     */
+    public TwoQueueEvictionPolicy(int numPages) {
+        this(numPages, Math.max(1, numPages / 4), Math.max(1, numPages / 2));
+    }
+
+    /**
+     * @param numPages the capacity of the buffer pool using this policy
+     * @param kin the target size of the A1in queue
+     * @param kout the number of evicted page ids remembered in A1out
+     */
+    public TwoQueueEvictionPolicy(int numPages, int kin, int kout) {
+        this.kin = kin;
+        this.kout = kout;
+        this.a1in = new LinkedHashSet<>();
+        this.a1out = new LinkedHashSet<>();
+        this.am = new LinkedHashMap<>(numPages * 4 / 3 + 1, 0.75f, true);
+    }
+
+    public void pageAdmitted(PageId pid) {
+        if (a1out.remove(pid)) {
+            am.put(pid, Boolean.TRUE);
+        } else {
+            a1in.add(pid);
+        }
+    }
+
+    public void pageAccessed(PageId pid) {
+        // hits in A1in are deliberately ignored: they are usually correlated
+        // references from the same scan
+        am.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        // a discarded page was not pushed out by lack of room, so it is
+        // forgotten rather than remembered in A1out
+        if (!a1in.remove(pid)) {
+            am.remove(pid);
+        }
+    }
+
+    public void pageEvicted(PageId pid) {
+        if (a1in.remove(pid)) {
+            a1out.add(pid);
+            if (a1out.size() > kout) {
+                a1out.remove(a1out.iterator().next());
+            }
+        } else {
+            am.remove(pid);
+        }
+    }
+
+    public PageId chooseVictim() {
+        if (!a1in.isEmpty() && (a1in.size() > kin || am.isEmpty())) {
+            return a1in.iterator().next();
+        }
+        if (!am.isEmpty()) {
+            return am.keySet().iterator().next();
+        }
+        return null;
+    }
+
+    public String getName() {
+        return "2Q";
+    }
+}
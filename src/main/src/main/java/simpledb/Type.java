@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -60,4 +61,28 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer, without moving its position.
+   * @param buf The buffer to read from
+   * @param offset The absolute index in buf at which the field starts
+   * @throws ParseException if the bytes at offset are not a valid field of
+   *   this type.
+   */
+    public Field parse(ByteBuffer buf, int offset) throws ParseException {
+        return new PageReader(buf).readField(this, offset);
+    }
+
+  /**
+   * Write a field of this type into the specified buffer, in the format
+   * written by {@link Field#serialize}, without moving its position.
+   * Always writes {@link #getLen} bytes.
+   * @param f The field to write; it must be of this type
+   * @param buf The buffer to write to
+   * @param offset The absolute index in buf at which the field starts
+   */
+    public void serialize(Field f, ByteBuffer buf, int offset) {
+        new PageWriter(buf).writeField(f, offset);
+    }
+
 }
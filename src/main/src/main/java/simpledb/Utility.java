@@ -123,6 +123,22 @@ public class Utility {
         return hf;
     }
 
+    /**
+     * Returns the sidecar file with the given extension kept next to a table
+     * file: the table file's name without its ".dat" suffix, followed by the
+     * extension, in the same directory.
+     *
+     * @param tableFile the table file
+     * @param ext the extension of the sidecar, with its leading dot
+     */
+    public static File sidecar(File tableFile, String ext) {
+        String name = tableFile.getName();
+        if (name.endsWith(".dat")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return new File(tableFile.getParentFile(), name + ext);
+    }
+
     /** Opens a HeapFile and adds it to the catalog.
      *
      * @param cols number of columns in the table.
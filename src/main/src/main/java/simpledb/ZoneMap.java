@@ -0,0 +1,331 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ZoneMap keeps, for each range of consecutive pages of a HeapFile and
+ * each INT_TYPE column of the table, the smallest and largest value any
+ * tuple on those pages has had. A scan with a predicate comparing such a
+ * column to a constant can then skip the ranges whose values cannot
+ * satisfy it without reading their pages. Tables loaded in roughly sorted
+ * order by a column get narrow, mostly disjoint ranges on that column.
+ * <p>
+ * The bounds only ever widen: inserts widen them in memory as tuples are
+ * placed on a page, and a page written to disk widens them with its
+ * contents before its range is written to the sidecar file next to the
+ * table file. Deleted values are not forgotten, so the map may let a scan
+ * read a range it could have skipped, but never the reverse.
+ * <p>
+ * The sidecar starts with three ints: the pages per range, the number of
+ * INT_TYPE columns, and the number of pages of the table it describes.
+ * Then, for each range in order, comes a (min, max) pair of ints for each
+ * INT_TYPE column; a range without tuples has min greater than max.
+ * <p>
+ * The map is loaded from its sidecar, or rebuilt from the table file if the
+ * sidecar is missing or does not describe the table file, only once a scan
+ * first needs it, see {@link #load}. Until then, inserts and written pages
+ * only widen the bounds in memory, and the first page written deletes the
+ * sidecar, which no longer describes the table; loading merges these
+ * bounds with those read or rebuilt.
+ *
+ * @see HeapFile#iterator(TransactionId, boolean, List)
+ * @see SeqScan#pushDown
+ */
+public class ZoneMap {
+
+    /** The extension of the sidecar file, next to the table file */
+    public static final String EXTENSION = ".zm";
+
+    /** How many pages a range spans, unless the sidecar says otherwise */
+    public static final int DEFAULT_RANGE_PAGES = 8;
+
+    private static final int HEADER_SIZE = 12;
+
+    private final File file;
+    private final HeapFile heapFile;
+    /** null until the map is loaded, and for a read-only table without a sidecar */
+    private FileChannel channel;
+    private final int rangePages;
+    /** for each field of the table, its INT_TYPE column number, or -1 */
+    private final int[] column;
+    private final int numColumns;
+    private int numPages;
+    /** min and max of each column of each range, range by range */
+    private int[] bounds;
+    /** whether the map was loaded, and pages written go to the sidecar */
+    private volatile boolean loaded;
+    /** whether the sidecar was deleted as stale by a write before loading */
+    private boolean staleDeleted;
+    /** held while loading, so that only one thread reads the table */
+    private final Object loadLock = new Object();
+
+    /**
+     * Create the zone map of a heap file, with empty bounds in memory and
+     * without reading its sidecar or the table yet.
+     *
+     * @param file the sidecar file
+     * @param heapFile the table whose pages the map describes
+     * @param rangePages the number of pages per range
+     */
+    ZoneMap(File file, HeapFile heapFile, int rangePages) {
+        this.file = file;
+        this.heapFile = heapFile;
+        this.rangePages = rangePages;
+        TupleDesc td = heapFile.getTupleDesc();
+        this.column = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < column.length; i++) {
+            column[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        }
+        this.numColumns = n;
+        this.bounds = new int[numColumns * 2];
+    }
+
+    /**
+     * Load the map from its sidecar, rebuilding it from the table file if
+     * the sidecar does not describe the table, unless it is loaded already.
+     * The table is read without holding the monitor of the map, so pages
+     * written meanwhile are not held up.
+     */
+    void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            int pages = heapFile.numPages();
+            FileChannel ch;
+            if (heapFile.isReadOnly()) {
+                ch = file.exists() ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+            } else {
+                ch = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            }
+            int ranges = (pages + rangePages - 1) / rangePages;
+            int[] stored = ch == null ? null : readSidecar(ch, pages, ranges);
+            if (stored == null) {
+                Debug.log("rebuilding zone map " + file.getName());
+                stored = rebuild(pages, ranges);
+            }
+
+            synchronized (this) {
+                if (pages > 0) {
+                    cover(pages - 1);
+                }
+                for (int i = 0; i < ranges * numColumns; i++) {
+                    bounds[2 * i] = Math.min(bounds[2 * i], stored[2 * i]);
+                    bounds[2 * i + 1] = Math.max(bounds[2 * i + 1], stored[2 * i + 1]);
+                }
+                if (ch != null && !heapFile.isReadOnly()) {
+                    ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE
+                            + numRanges() * numColumns * 8);
+                    buf.putInt(rangePages).putInt(numColumns).putInt(numPages);
+                    buf.asIntBuffer().put(bounds, 0, numRanges() * numColumns * 2);
+                    buf.clear();
+                    ch.truncate(0);
+                    while (buf.hasRemaining()) {
+                        ch.write(buf, buf.position());
+                    }
+                }
+                channel = ch;
+                loaded = true;
+            }
+        }
+    }
+
+    /**
+     * @return the bounds stored in the sidecar, if it describes the given
+     *     number of pages with this map's ranges and columns, or null
+     */
+    private int[] readSidecar(FileChannel ch, int pages, int ranges) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+        while (head.hasRemaining() && ch.read(head, head.position()) >= 0) {
+        }
+        if (head.hasRemaining() || head.getInt(0) != rangePages || head.getInt(4) != numColumns
+                || head.getInt(8) != pages
+                || ch.size() != HEADER_SIZE + (long) ranges * numColumns * 8) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(ranges * numColumns * 8);
+        while (buf.hasRemaining() && ch.read(buf, HEADER_SIZE + buf.position()) >= 0) {
+        }
+        buf.flip();
+        int[] stored = new int[ranges * numColumns * 2];
+        buf.asIntBuffer().get(stored);
+        return stored;
+    }
+
+    /** @return the bounds of the given pages as they are in the table file */
+    private int[] rebuild(int pages, int ranges) throws IOException {
+        int[] rebuilt = new int[ranges * numColumns * 2];
+        for (int i = 0; i < ranges * numColumns; i++) {
+            rebuilt[2 * i] = Integer.MAX_VALUE;
+            rebuilt[2 * i + 1] = Integer.MIN_VALUE;
+        }
+        for (int pg = 0; pg < pages; pg++) {
+            Iterator<Tuple> tuples;
+            try {
+                tuples = heapFile.readHeapPage(new HeapPageId(heapFile.getId(), pg)).iterator();
+            } catch (DbException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            widen(rebuilt, pg, tuples);
+        }
+        return rebuilt;
+    }
+
+    /** @return the sidecar file */
+    public File getFile() {
+        return file;
+    }
+
+    /** @return the number of pages each range spans */
+    public int getRangePages() {
+        return rangePages;
+    }
+
+    private int numRanges() {
+        return (numPages + rangePages - 1) / rangePages;
+    }
+
+    /** Mark the given entries, (min, max) pairs, as having seen no values. */
+    private void clear(int fromPair, int toPair) {
+        for (int i = fromPair; i < toPair; i++) {
+            bounds[2 * i] = Integer.MAX_VALUE;
+            bounds[2 * i + 1] = Integer.MIN_VALUE;
+        }
+    }
+
+    /** Make room for the given page, growing the table by a range if need be. */
+    private void cover(int page) {
+        if (page < numPages) {
+            return;
+        }
+        int ranges = numRanges();
+        numPages = page + 1;
+        int needed = numRanges() * numColumns * 2;
+        if (needed > bounds.length) {
+            bounds = Arrays.copyOf(bounds, Math.max(needed, bounds.length * 2));
+        }
+        clear(ranges * numColumns, numRanges() * numColumns);
+    }
+
+    /** Widen the bounds of the range of a page to take in the given tuples. */
+    private void widen(int page, Iterator<Tuple> tuples) {
+        cover(page);
+        widen(bounds, page, tuples);
+    }
+
+    private void widen(int[] bounds, int page, Iterator<Tuple> tuples) {
+        int base = page / rangePages * numColumns * 2;
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            for (int i = 0; i < column.length; i++) {
+                if (column[i] >= 0) {
+                    int v = ((IntField) t.getField(i)).getValue();
+                    int at = base + 2 * column[i];
+                    bounds[at] = Math.min(bounds[at], v);
+                    bounds[at + 1] = Math.max(bounds[at + 1], v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record tuples placed on a page in memory.
+     *
+     * @param tuples the tuples, from first to last
+     */
+    public synchronized void inserted(int page, List<Tuple> tuples, int first, int last) {
+        widen(page, tuples.subList(first, last).iterator());
+    }
+
+    /**
+     * Record the contents of a page as it is written to disk, both in memory
+     * and in the sidecar.
+     */
+    void pageWritten(HeapPage page) throws IOException {
+        int pgNo = page.getId().pageNumber();
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer range = ByteBuffer.allocate(numColumns * 8);
+        synchronized (this) {
+            widen(pgNo, page.iterator());
+            if (!loaded) {
+                // the sidecar no longer describes the table; the bounds
+                // in memory are merged into what loading reads
+                if (!staleDeleted && !heapFile.isReadOnly()) {
+                    file.delete();
+                    staleDeleted = true;
+                }
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            head.putInt(rangePages).putInt(numColumns).putInt(numPages).flip();
+            range.asIntBuffer().put(bounds, pgNo / rangePages * numColumns * 2, numColumns * 2);
+            long offset = HEADER_SIZE + (long) (pgNo / rangePages) * numColumns * 8;
+            while (range.hasRemaining()) {
+                channel.write(range, offset + range.position());
+            }
+            while (head.hasRemaining()) {
+                channel.write(head, head.position());
+            }
+        }
+    }
+
+    /**
+     * @return false if no tuple on the pages of the given range can satisfy
+     *     all of the given predicates; predicates on other than INT_TYPE
+     *     columns, or with other operators than comparisons and EQUALS, are
+     *     assumed to be satisfiable
+     */
+    public synchronized boolean mightMatch(int range, List<Predicate> predicates) {
+        if (range >= numRanges()) {
+            return true;
+        }
+        for (Predicate p : predicates) {
+            if (p.getField() >= column.length || column[p.getField()] < 0
+                    || !(p.getOperand() instanceof IntField)) {
+                continue;
+            }
+            int at = (range * numColumns + column[p.getField()]) * 2;
+            int min = bounds[at];
+            int max = bounds[at + 1];
+            int v = ((IntField) p.getOperand()).getValue();
+            boolean possible;
+            switch (p.getOp()) {
+            case EQUALS:
+                possible = min <= v && v <= max;
+                break;
+            case LESS_THAN:
+                possible = min < v;
+                break;
+            case LESS_THAN_OR_EQ:
+                possible = min <= v;
+                break;
+            case GREATER_THAN:
+                possible = max > v;
+                break;
+            case GREATER_THAN_OR_EQ:
+                possible = max >= v;
+                break;
+            default:
+                possible = true;
+            }
+            if (!possible) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+public class BulkLoaderTest extends SimpleDbTestBase {
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+    private static File writeText(String text) throws IOException {
+        File txt = File.createTempFile("bulk", ".txt");
+        txt.deleteOnExit();
+        try (FileWriter w = new FileWriter(txt)) {
+            w.write(text);
+        }
+        return txt;
+    }
+
+    private static File tempDat() throws IOException {
+        return TestUtil.createTempTableFile("bulk");
+    }
+
+    private static List<Tuple> scan(File dat) throws Exception {
+        HeapFile f = new HeapFile(dat, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(f, "bulk" + dat.getName());
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        DbFileIterator it = f.iterator(new TransactionId());
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    /**
+     * Unit test for BulkLoader.load() with many small chunks parsed on
+     * several threads
+     */
+    @Test public void chunksKeepInputOrder() throws Exception {
+        StringBuilder text = new StringBuilder();
+        int rows = 3000;
+        for (int i = 0; i < rows; i++) {
+            text.append(i).append(",row").append(i).append(',').append(-i).append('\n');
+        }
+        File txt = writeText(text.toString());
+
+        File serial = tempDat();
+        BulkLoader one = new BulkLoader(TYPES, ',', BufferPool.PAGE_SIZE, 1);
+        one.setChunkSize(1000);
+        assertEquals(rows, one.load(txt, serial));
+
+        File parallel = tempDat();
+        BulkLoader four = new BulkLoader(TYPES, ',', BufferPool.PAGE_SIZE, 4);
+        four.setChunkSize(1000);
+        assertEquals(rows, four.load(txt, parallel));
+        assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel.toPath()));
+
+        List<Tuple> tuples = scan(parallel);
+        assertEquals(rows, tuples.size());
+        for (int i = 0; i < rows; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("row" + i, ((StringField) t.getField(1)).getValue());
+            assertEquals(new IntField(-i), t.getField(2));
+        }
+    }
+
+    /**
+     * Unit test for BulkLoader.load() on a line longer than a chunk, a blank
+     * line, Windows line endings and a last line without a newline
+     */
+    @Test public void lineEndings() throws Exception {
+        String longString = new String(new char[200]).replace('\0', 'x');
+        File txt = writeText("1, a ,2\r\n\n3," + longString + ",4\n5,,6");
+        BulkLoader loader = new BulkLoader(TYPES, ',', BufferPool.PAGE_SIZE, 2);
+        loader.setChunkSize(16);
+        File dat = tempDat();
+        assertEquals(3, loader.load(txt, dat));
+
+        List<Tuple> tuples = scan(dat);
+        assertEquals(3, tuples.size());
+        assertEquals("a", ((StringField) tuples.get(0).getField(1)).getValue());
+        assertEquals(longString.substring(0, Type.STRING_LEN),
+                ((StringField) tuples.get(1).getField(1)).getValue());
+        assertEquals(new IntField(6), tuples.get(2).getField(2));
+    }
+
+    /**
+     * Unit test for BulkLoader.load() on malformed lines
+     */
+    @Test public void badLines() throws Exception {
+        for (String bad : new String[] { "1,a", "1,a,2,3", "x,a,2", "1,a,99999999999" }) {
+            File txt = writeText("7,ok,8\n" + bad + "\n");
+            try {
+                new BulkLoader(TYPES, ',', BufferPool.PAGE_SIZE, 2).load(txt, tempDat());
+                fail("loaded " + bad);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(bad));
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkLoaderTest.class);
+    }
+}
@@ -0,0 +1,138 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class EvictionPolicyTest {
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    /**
+     * Drives a policy like the BufferPool does: hits are reported as
+     * accesses, misses evict a victim when the pool is full.
+     *
+     * @return the set of page ids resident at the end
+     */
+    private static Set<PageId> replay(EvictionPolicy policy, int capacity, int[] refs) {
+        Set<PageId> resident = new HashSet<PageId>();
+        for (int ref : refs) {
+            PageId p = pid(ref);
+            if (resident.contains(p)) {
+                policy.pageAccessed(p);
+                continue;
+            }
+            if (resident.size() >= capacity) {
+                PageId victim = policy.chooseVictim();
+                resident.remove(victim);
+                policy.pageEvicted(victim);
+            }
+            resident.add(p);
+            policy.pageAdmitted(p);
+        }
+        return resident;
+    }
+
+    /** A hot set of pages 0-1 referenced twice, then a scan of pages 100-119. */
+    private static int[] hotSetThenScan() {
+        int[] refs = new int[24];
+        refs[0] = 0; refs[1] = 1; refs[2] = 0; refs[3] = 1;
+        for (int i = 0; i < 20; i++)
+            refs[4 + i] = 100 + i;
+        return refs;
+    }
+
+    @Test public void emptyPolicyHasNoVictim() {
+        assertNull(new LruEvictionPolicy(4).chooseVictim());
+        assertNull(new ClockEvictionPolicy(4).chooseVictim());
+        assertNull(new LruKEvictionPolicy(4).chooseVictim());
+        assertNull(new TwoQueueEvictionPolicy(4).chooseVictim());
+    }
+
+    @Test public void lruEvictsLeastRecentlyUsed() {
+        EvictionPolicy lru = new LruEvictionPolicy(3);
+        replay(lru, 3, new int[] { 1, 2, 3, 1 });
+        assertEquals(pid(2), lru.chooseVictim());
+    }
+
+    @Test public void clockGivesSecondChance() {
+        EvictionPolicy clock = new ClockEvictionPolicy(3);
+        replay(clock, 3, new int[] { 1, 2, 3 });
+        // every page is referenced, so the first sweep clears all bits
+        assertEquals(pid(1), clock.chooseVictim());
+        clock.pageRemoved(pid(1));
+        clock.pageAdmitted(pid(4));
+        clock.pageAccessed(pid(2));
+        assertEquals(pid(3), clock.chooseVictim());
+    }
+
+    @Test public void lruKPrefersPagesWithShortHistory() {
+        EvictionPolicy lru2 = new LruKEvictionPolicy(3);
+        replay(lru2, 3, new int[] { 1, 1, 2, 2, 3 });
+        assertEquals(pid(3), lru2.chooseVictim());
+    }
+
+    @Test public void lruKIsScanResistant() {
+        Set<PageId> resident = replay(new LruKEvictionPolicy(4), 4, hotSetThenScan());
+        assertEquals(true, resident.contains(pid(0)));
+        assertEquals(true, resident.contains(pid(1)));
+    }
+
+    @Test public void twoQueueIsScanResistant() {
+        // pages only reach Am once they are re-read after leaving A1in
+        int[] warmup = { 0, 1, 2, 3, 4, 5, 6, 7, 0, 1 };
+        EvictionPolicy twoQ = new TwoQueueEvictionPolicy(4, 1, 8);
+        Set<PageId> resident = replay(twoQ, 4, warmup);
+        assertEquals(true, resident.contains(pid(0)));
+        int[] scan = new int[20];
+        for (int i = 0; i < scan.length; i++)
+            scan[i] = 100 + i;
+        for (int ref : scan) {
+            PageId victim = twoQ.chooseVictim();
+            resident.remove(victim);
+            twoQ.pageEvicted(victim);
+            resident.add(pid(ref));
+            twoQ.pageAdmitted(pid(ref));
+        }
+        assertEquals(true, resident.contains(pid(0)));
+        assertEquals(true, resident.contains(pid(1)));
+    }
+
+    @Test public void twoQueueRemembersOnlyEvictedPages() {
+        // page 0 leaves A1in, comes back, and is followed by pages 1 and 2
+        EvictionPolicy evicted = new TwoQueueEvictionPolicy(4, 1, 8);
+        evicted.pageAdmitted(pid(0));
+        evicted.pageEvicted(pid(0));
+        EvictionPolicy discarded = new TwoQueueEvictionPolicy(4, 1, 8);
+        discarded.pageAdmitted(pid(0));
+        discarded.pageRemoved(pid(0));
+        for (EvictionPolicy twoQ : new EvictionPolicy[] { evicted, discarded }) {
+            for (int pgNo = 0; pgNo < 3; pgNo++)
+                twoQ.pageAdmitted(pid(pgNo));
+        }
+        // a page re-read after eviction is promoted to Am, so A1in gives up
+        // page 1; a discarded page is forgotten and starts over in A1in
+        assertEquals(pid(1), evicted.chooseVictim());
+        assertEquals(pid(0), discarded.chooseVictim());
+    }
+
+    @Test public void lruIsNotScanResistant() {
+        Set<PageId> resident = replay(new LruEvictionPolicy(4), 4, hotSetThenScan());
+        assertEquals(false, resident.contains(pid(0)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
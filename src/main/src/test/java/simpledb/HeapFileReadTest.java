@@ -121,6 +121,76 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for concurrent HeapFile.readPage() calls on the same file:
+     * every thread must see the contents of the page it asked for.
+     */
+    @Test
+    public void concurrentReadPage() throws Exception {
+        final int pages = 8;
+        final HeapFile multi = SystemTestUtil.createRandomHeapFile(2, 504 * pages,
+                null, null);
+        final byte[][] expected = new byte[pages][];
+        for (int i = 0; i < pages; i++) {
+            expected[i] = multi.readPage(new HeapPageId(multi.getId(), i)).getPageData();
+        }
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            final int offset = t;
+            readers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int round = 0; round < 50; round++) {
+                            int pg = (round + offset) % pages;
+                            Page p = multi.readPage(new HeapPageId(multi.getId(), pg));
+                            assertTrue(Arrays.equals(expected[pg], p.getPageData()));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() in read-only mapped mode: pages are
+     * identical to those read through the channel, writes are rejected and
+     * files above the mapping limit fall back to channel reads.
+     */
+    @Test
+    public void mappedReadPage() throws Exception {
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        HeapFile mapped = new HeapFile(source.getFile(), td, true);
+        HeapFile unmapped = new HeapFile(source.getFile(), td, true, BufferPool.PAGE_SIZE);
+        assertTrue(mapped.isMapped());
+        assertFalse(unmapped.isMapped());
+        assertEquals(source.numPages(), mapped.numPages());
+
+        for (int i = 0; i < source.numPages(); i++) {
+            byte[] expected = source.readPage(new HeapPageId(source.getId(), i)).getPageData();
+            // both handles share the table id of the underlying file
+            assertTrue(Arrays.equals(expected,
+                    mapped.readPage(new HeapPageId(mapped.getId(), i)).getPageData()));
+            assertTrue(Arrays.equals(expected,
+                    unmapped.readPage(new HeapPageId(unmapped.getId(), i)).getPageData()));
+        }
+
+        try {
+            mapped.writePage(mapped.readPage(new HeapPageId(mapped.getId(), 0)));
+            fail("expected IOException");
+        } catch (java.io.IOException e) {
+            // expected: the file is read-only
+        }
+    }
+
     /**
      * JUnit suite target
      */
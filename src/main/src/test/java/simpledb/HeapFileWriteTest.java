@@ -43,6 +43,24 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.insertTuples()
+     */
+    @Test public void addTuples() throws Exception {
+        java.util.List<Tuple> tuples = new java.util.ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 2 + 1; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+
+        // each page is modified once and filled before the next is used
+        java.util.List<Page> pages = empty.insertTuples(tid, tuples);
+        assertEquals(3, pages.size());
+        assertEquals(3, empty.numPages());
+        for (int i = 0; i < tuples.size(); ++i)
+            assertEquals(i / 504, tuples.get(i).getRecordId().getPageId().pageNumber());
+        assertEquals(0, ((HeapPage) pages.get(0)).getNumEmptySlots());
+        assertEquals(503, ((HeapPage) pages.get(2)).getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
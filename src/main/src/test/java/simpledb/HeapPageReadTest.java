@@ -99,6 +99,32 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for the tuples handed out by HeapPage.iterator(): fields are
+     * decoded on demand, out of order, and survive detaching the page.
+     */
+    @Test public void lazyTuples() throws Exception {
+        HeapPage page = new HeapPage(pid, java.nio.ByteBuffer.wrap(EXAMPLE_DATA.clone()));
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next());
+
+        page.detach();
+        for (int row = 0; row < tuples.size(); row++) {
+            Tuple tup = tuples.get(row);
+            assertEquals(new RecordId(pid, row), tup.getRecordId());
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) tup.getField(1)).getValue());
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) tup.getField(0)).getValue());
+        }
+
+        // setting a field leaves the others intact
+        Tuple tup = tuples.get(0);
+        tup.setField(1, new IntField(-1));
+        assertEquals(EXAMPLE_VALUES[0][0], ((IntField) tup.getField(0)).getValue());
+        assertEquals(-1, ((IntField) tup.getField(1)).getValue());
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
@@ -120,6 +146,21 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.forEachUsedSlot()
+     */
+    @Test public void forEachUsedSlot() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        List<Integer> slots = new ArrayList<Integer>();
+        page.forEachUsedSlot(slots::add);
+
+        assertEquals(20, slots.size());
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(i, (int) slots.get(i));
+            assertEquals(EXAMPLE_VALUES[i][0], ((IntField) page.readField(i, 0)).getValue());
+        }
+    }
+
     /**
      * JUnit suite target
      */
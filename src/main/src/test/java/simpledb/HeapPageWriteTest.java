@@ -1,9 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -85,6 +87,27 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.insertTuples()
+     */
+    @Test public void addTuples() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        page.deleteTuple(page.iterator().next());
+        int free = page.getNumEmptySlots();
+
+        LinkedList<Tuple> tuples = new LinkedList<Tuple>();
+        for (int i = 0; i < free + 10; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+
+        // the page takes what fits, starting at the given index
+        assertEquals(free, page.insertTuples(tuples, 5));
+        assertEquals(0, page.getNumEmptySlots());
+        assertFalse(pid.equals(tuples.get(4).getRecordId().getPageId()));
+        assertEquals(0, tuples.get(5).getRecordId().tupleno());
+        assertEquals(20, tuples.get(6).getRecordId().tupleno());
+        assertEquals(0, page.insertTuples(tuples, free + 5));
+    }
+
     /**
      * Unit test for HeapPage.deleteTuple() with false tuples
      */
@@ -126,6 +149,70 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() and HeapPage.getPageData()
+     * after changes to the page
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] original = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        page.insertTuple(Utility.getHeapTuple(42, 2));
+        Iterator<Tuple> it = page.iterator();
+        page.deleteTuple(it.next());
+
+        // the array the page was made from is left alone
+        assertTrue(Arrays.equals(original, HeapPageReadTest.EXAMPLE_DATA));
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+
+        // the page image round-trips
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        assertEquals(free, copy.getNumEmptySlots());
+        assertFalse(copy.isSlotUsed(0));
+        it = copy.iterator();
+        int count = 0;
+        boolean found = false;
+        while (it.hasNext()) {
+            found |= TestUtil.compareTuples(Utility.getHeapTuple(42, 2), it.next());
+            count++;
+        }
+        assertTrue(found);
+        assertEquals(20, count);
+
+        page.setBeforeImage();
+        assertTrue(Arrays.equals(page.getPageData(), page.getBeforeImage().getPageData()));
+    }
+
+    /**
+     * Unit test for tuples read from a page that is then written: a tuple
+     * held across the delete of its slot and an insert reusing the slot
+     * keeps the values it was read with.
+     */
+    @Test public void heldTupleSurvivesSlotReuse() throws Exception {
+        HeapPage page = new HeapPage(pid,
+                java.nio.ByteBuffer.wrap(HeapPageReadTest.EXAMPLE_DATA.clone()));
+        Tuple held = page.iterator().next();
+        Tuple deleted = page.iterator().next();
+        assertEquals(held.getRecordId(), deleted.getRecordId());
+        int[] values = HeapPageReadTest.EXAMPLE_VALUES[0];
+
+        page.deleteTuple(deleted);
+        assertFalse(page.isSlotUsed(0));
+        assertEquals(values[0], ((IntField) held.getField(0)).getValue());
+
+        Tuple added = Utility.getHeapTuple(99, 2);
+        page.insertTuple(added);
+        assertEquals(new RecordId(pid, 0), added.getRecordId());
+        assertEquals(values[0], ((IntField) held.getField(0)).getValue());
+        assertEquals(values[1], ((IntField) held.getField(1)).getValue());
+        assertTrue(TestUtil.compareTuples(added, page.iterator().next()));
+
+        // a tuple read after the writes sees them, and the held one is unmoved
+        page.detach();
+        assertEquals(99, ((IntField) page.getTuple(0).getField(1)).getValue());
+        assertEquals(values[1], ((IntField) held.getField(1)).getValue());
+    }
+
     /**
      * JUnit suite target
      */
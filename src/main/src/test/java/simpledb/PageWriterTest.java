@@ -0,0 +1,111 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageWriterTest {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+
+    private static Tuple tuple(int a, String s, int b) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(a));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        t.setField(2, new IntField(b));
+        return t;
+    }
+
+    /**
+     * Unit test for PageWriter.writeTuple() writing the same bytes as
+     * Field.serialize(), into heap and direct buffers
+     */
+    @Test public void sameBytesAsFieldSerialize() throws Exception {
+        Tuple t = tuple(-7, "hello", 1 << 30);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (int i = 0; i < TD.numFields(); i++) {
+            t.getField(i).serialize(dos);
+        }
+        dos.flush();
+        byte[] expected = baos.toByteArray();
+
+        for (ByteBuffer buf : new ByteBuffer[] {
+                ByteBuffer.allocate(expected.length + 10),
+                ByteBuffer.allocateDirect(expected.length + 10) }) {
+            // leave garbage where the string padding goes
+            for (int i = 0; i < buf.capacity(); i++) {
+                buf.put(i, (byte) 0x5A);
+            }
+            new PageWriter(buf).writeTuple(t, TD, 10);
+            byte[] actual = new byte[expected.length];
+            buf.position(10);
+            buf.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Unit test for PageReader.readTuple() decoding what PageWriter wrote
+     */
+    @Test public void roundTrip() throws Exception {
+        for (ByteBuffer buf : new ByteBuffer[] {
+                ByteBuffer.allocate(TD.getSize() * 2),
+                ByteBuffer.allocateDirect(TD.getSize() * 2) }) {
+            PageWriter writer = new PageWriter(buf);
+            writer.writeTuple(tuple(1, "one", 2), TD, 0);
+            writer.writeTuple(tuple(3, "", 4), TD, TD.getSize());
+
+            PageReader reader = new PageReader(buf.asReadOnlyBuffer());
+            Tuple t = reader.readTuple(TD, TD.getSize());
+            assertEquals(new IntField(3), t.getField(0));
+            assertEquals("", ((StringField) t.getField(1)).getValue());
+            assertEquals(new IntField(4), t.getField(2));
+            assertEquals(new StringField("one", Type.STRING_LEN), reader.readField(Type.STRING_TYPE, 4));
+            assertEquals(0, buf.position());
+        }
+    }
+
+    /**
+     * Unit test for PageWriter.setBit() and PageReader.isBitSet()
+     */
+    @Test public void bits() {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        PageWriter writer = new PageWriter(buf);
+        writer.setBit(2, 0);
+        writer.setBit(2, 9);
+        assertEquals(1, buf.get(2));
+        assertEquals(2, buf.get(3));
+        PageReader reader = new PageReader(buf);
+        assertTrue(reader.isBitSet(2, 9));
+        assertFalse(reader.isBitSet(2, 8));
+    }
+
+    /**
+     * Unit test for PageWriter.acquire() handing out zeroed buffers
+     */
+    @Test public void acquireZeroed() {
+        PageWriter writer = PageWriter.acquire(64);
+        writer.putInt(60, -1);
+        writer.release();
+        for (int i = 0; i < 4; i++) {
+            PageWriter again = PageWriter.acquire(64);
+            assertEquals(64, again.getBuffer().capacity());
+            assertEquals(0, again.getBuffer().getInt(60));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageWriterTest.class);
+    }
+}
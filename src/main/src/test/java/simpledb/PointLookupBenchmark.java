@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times equality lookups on the key of a table of (int, string) rows, once
+ * through a {@link HashFile} and once with a SeqScan and a Filter over the
+ * same rows in a {@link HeapFile}, each from a cold buffer pool, and prints
+ * the time per lookup and the page misses of each.
+ * <p>
+ * Usage: java simpledb.PointLookupBenchmark [rows [lookups [poolPages]]],
+ * by default 50000 rows, 200 lookups and a 50-page pool.
+ */
+public class PointLookupBenchmark {
+
+    public static void main(String[] argv) throws Exception {
+        int rows = argv.length > 0 ? Integer.parseInt(argv[0]) : 50000;
+        int lookups = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+        int poolPages = argv.length > 2 ? Integer.parseInt(argv[2]) : 50;
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        TupleDesc td = new TupleDesc(types);
+
+        File txt = File.createTempFile("lookup", ".txt");
+        txt.deleteOnExit();
+        try (Writer w = new FileWriter(txt)) {
+            for (int i = 0; i < rows; i++) {
+                w.write(i + ",row" + i + "\n");
+            }
+        }
+        File heapDat = File.createTempFile("lookup", ".dat");
+        heapDat.deleteOnExit();
+        new BulkLoader(types, ',', BufferPool.getPageSize(), 1).load(txt, heapDat);
+        HeapFile heap = new HeapFile(heapDat, td);
+        Database.getCatalog().addTable(heap, "heap");
+
+        File hashDat = File.createTempFile("lookup", ".hash");
+        hashDat.delete();
+        hashDat.deleteOnExit();
+        HashFile hash = new HashFile(hashDat, td, 0);
+        Database.getCatalog().addTable(hash, "hash");
+        TransactionId loader = new TransactionId();
+        List<Tuple> all = new ArrayList<Tuple>();
+        DbFileIterator it = heap.iterator(loader);
+        it.open();
+        while (it.hasNext()) {
+            all.add(it.next());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(loader);
+        hash.bulkLoad(all.iterator());
+
+        int[] keys = new int[lookups];
+        Random r = new Random(42);
+        for (int i = 0; i < lookups; i++) {
+            keys[i] = r.nextInt(rows);
+        }
+
+        Database.resetBufferPool(poolPages);
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        for (int key : keys) {
+            run(new IndexScan(tid, hash.getId(), "t",
+                    new IndexPredicate(Predicate.Op.EQUALS, new IntField(key))), key);
+        }
+        report("hash file", start, lookups, Database.getBufferPool().getMissCount());
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(poolPages);
+        tid = new TransactionId();
+        start = System.nanoTime();
+        for (int key : keys) {
+            run(new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)),
+                    new SeqScan(tid, heap.getId(), "t")), key);
+        }
+        report("SeqScan+Filter", start, lookups, Database.getBufferPool().getMissCount());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Run a lookup, which must find exactly the row with the given key. */
+    private static void run(DbIterator it, int key) throws Exception {
+        int found = 0;
+        it.open();
+        while (it.hasNext()) {
+            if (((IntField) it.next().getField(0)).getValue() != key) {
+                throw new IllegalStateException("lookup of " + key + " returned another key");
+            }
+            found++;
+        }
+        it.close();
+        if (found != 1) {
+            throw new IllegalStateException("lookup of " + key + " found " + found + " rows");
+        }
+    }
+
+    private static void report(String what, long start, int lookups, long misses) {
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-15s %8.3f ms/lookup, %d page misses%n", what, ms / lookups, misses);
+    }
+}
@@ -0,0 +1,147 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+    private static final TupleDesc TD =
+            new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+    private HeapPageId pid;
+
+    @Before public void setUp() {
+        this.pid = new HeapPageId(-1, 0);
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> tuples(SlottedPage page) {
+        List<Tuple> result = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            result.add(it.next());
+        return result;
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple() and the page image round trip
+     */
+    @Test public void insertTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, TD, SlottedPage.createEmptyPageData());
+        Tuple t = tuple(7, "seven");
+        int free = page.getFreeSpace();
+        page.insertTuple(t);
+
+        // 4 + 2 + 5 bytes of record, plus the slot entry
+        assertEquals(free - 15, page.getFreeSpace());
+        assertEquals(new RecordId(pid, 0), t.getRecordId());
+
+        SlottedPage copy = new SlottedPage(pid, TD, page.getPageData());
+        List<Tuple> read = tuples(copy);
+        assertEquals(1, read.size());
+        assertTrue(TestUtil.compareTuples(t, read.get(0)));
+        assertEquals(t.getRecordId(), read.get(0).getRecordId());
+    }
+
+    /**
+     * Short strings take far fewer bytes than on a HeapPage
+     */
+    @Test public void fillPage() throws Exception {
+        SlottedPage page = new SlottedPage(pid, TD, SlottedPage.createEmptyPageData());
+        int n = 0;
+        while (page.getFreeSpace() >= SlottedPage.getRecordSize(tuple(n, "name" + n)))
+            page.insertTuple(tuple(n, "name" + n++));
+
+        assertEquals(n, page.getNumTuples());
+        assertTrue(n > 5 * (BufferPool.PAGE_SIZE * 8 / (TD.getSize() * 8 + 1)));
+        try {
+            page.insertTuple(tuple(0, "a string too long for what is left of the page"));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.deleteTuple(): slots keep their numbers and
+     * the space of deleted tuples is reused
+     */
+    @Test public void deleteTuple() throws Exception {
+        SlottedPage page = new SlottedPage(pid, TD, SlottedPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<Tuple>();
+        while (page.getFreeSpace() >= SlottedPage.getRecordSize(tuple(0, "xxxxxxxx"))) {
+            Tuple t = tuple(inserted.size(), "xxxxxxxx");
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+
+        // delete every other tuple, leaving holes all over the page
+        for (int i = 0; i < inserted.size(); i += 2)
+            page.deleteTuple(inserted.get(i));
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        List<Tuple> read = tuples(page);
+        assertEquals(inserted.size() / 2, read.size());
+        assertEquals(new RecordId(pid, 1), read.get(0).getRecordId());
+        assertEquals(1, ((IntField) read.get(0).getField(0)).getValue());
+
+        // longer tuples need the holes to be compacted
+        int added = 0;
+        while (page.getFreeSpace() >= SlottedPage.getRecordSize(tuple(0, "yyyyyyyyyyyy"))) {
+            page.insertTuple(tuple(-1, "yyyyyyyyyyyy"));
+            added++;
+        }
+        assertTrue(added > 0);
+        assertEquals(inserted.size() / 2 + added, tuples(page).size());
+        for (Tuple t : tuples(page)) {
+            int v = ((IntField) t.getField(0)).getValue();
+            String s = ((StringField) t.getField(1)).getValue();
+            assertEquals(v < 0 ? "yyyyyyyyyyyy" : "xxxxxxxx", s);
+        }
+
+        try {
+            page.deleteTuple(inserted.get(0));
+            throw new Exception("tuple was deleted; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.getBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] empty = SlottedPage.createEmptyPageData();
+        SlottedPage page = new SlottedPage(pid, TD, empty);
+        page.insertTuple(tuple(1, "one"));
+        assertEquals(0, page.getBeforeImage().getNumTuples());
+        assertTrue(java.util.Arrays.equals(new byte[empty.length], empty));
+
+        page.setBeforeImage();
+        assertEquals(1, page.getBeforeImage().getNumTuples());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
@@ -166,6 +166,28 @@ public class TestUtil {
         }
     }
 
+    /**
+     * Create an empty temporary table file that is deleted on exit, along
+     * with any sidecar files a table keeps next to it.
+     */
+    public static File createTempTableFile(String prefix) throws IOException {
+        File f = File.createTempFile(prefix, ".dat");
+        deleteOnExit(f);
+        return f;
+    }
+
+    /**
+     * Delete a table file on exit, along with any sidecar files a table
+     * keeps next to it.
+     */
+    public static void deleteOnExit(File tableFile) {
+        tableFile.deleteOnExit();
+        for (String ext : new String[] { FreeSpaceMap.EXTENSION, ZoneMap.EXTENSION,
+                BloomFilters.EXTENSION, AppendOnlyFile.DELETES_EXTENSION }) {
+            Utility.sidecar(tableFile, ext).deleteOnExit();
+        }
+    }
+
     /**
      * @return a byte array containing the contents of the file 'path'
      */
@@ -374,11 +396,10 @@ public class TestUtil {
     public static abstract class CreateHeapFile {
         protected CreateHeapFile() {
             try{
-                emptyFile = File.createTempFile("empty", ".dat");
+                emptyFile = createTempTableFile("empty");
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            emptyFile.deleteOnExit();
         }
 
         protected void setUp() throws Exception {
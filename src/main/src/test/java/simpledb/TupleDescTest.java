@@ -80,6 +80,23 @@ public class TupleDescTest extends SimpleDbTestBase {
         }
     }
     
+    /**
+     * Unit test for TupleDesc.getFieldOffset()
+     */
+    @Test public void getFieldOffset() {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+        assertEquals(0, td.getFieldOffset(0));
+        assertEquals(Type.INT_TYPE.getLen(), td.getFieldOffset(1));
+        assertEquals(Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen(), td.getFieldOffset(2));
+
+        try {
+            td.getFieldOffset(3);
+            Assert.fail("expected exception");
+        } catch (NoSuchElementException e) {
+            // expected to get here
+        }
+    }
+
     /**
      * Unit test for TupleDesc.nameToId()
      */
@@ -0,0 +1,132 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Appends to an AppendOnlyFile through the BufferPool, deletes from it and
+ * compacts it, checking that scans see the live tuples throughout and that
+ * the tail page and deletes survive reopening the file.
+ */
+public class AppendOnlyFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+
+    private static AppendOnlyFile open(File dat) {
+        AppendOnlyFile f = new AppendOnlyFile(dat, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private static File newFile() throws Exception {
+        File dat = TestUtil.createTempTableFile("events");
+        dat.delete();
+        return dat;
+    }
+
+    private static ArrayList<ArrayList<Integer>> append(AppendOnlyFile f, int from, int to)
+            throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = from; i < to; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { i, -i }));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(-i);
+            expected.add(row);
+        }
+        Database.getBufferPool().insertTuples(new TransactionId(), f.getId(), tuples);
+        return expected;
+    }
+
+    /** Delete every tuple whose first field is divisible by n. */
+    private static void deleteMultiplesOf(AppendOnlyFile f, int n,
+            ArrayList<ArrayList<Integer>> expected) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<Tuple> victims = new ArrayList<Tuple>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % n == 0) {
+                victims.add(t);
+            }
+        }
+        it.close();
+        for (Tuple t : victims) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        for (Iterator<ArrayList<Integer>> rows = expected.iterator(); rows.hasNext();) {
+            if (rows.next().get(0) % n == 0) {
+                rows.remove();
+            }
+        }
+    }
+
+    @Test public void testAppendAndReopen() throws Exception {
+        File dat = newFile();
+        AppendOnlyFile f = open(dat);
+        ArrayList<ArrayList<Integer>> expected = append(f, 0, ROWS);
+        expected.addAll(append(f, ROWS, ROWS + 10));
+
+        // full pages are on disk, the tail page is only in memory
+        int slots = (BufferPool.getPageSize() * 8) / (8 * 8 + 1);
+        assertEquals((ROWS + 10) / slots, (int) ((dat.length() / BufferPool.getPageSize())));
+        assertEquals(ROWS + 10, f.numTuples());
+        SystemTestUtil.matchTuples(f, expected);
+
+        Database.getBufferPool().flushAllPages();
+        SystemTestUtil.matchTuples(open(dat), expected);
+    }
+
+    @Test public void testDeleteAndCompact() throws Exception {
+        File dat = newFile();
+        AppendOnlyFile f = open(dat);
+        f.setCompactThreshold(1.0);
+        ArrayList<ArrayList<Integer>> expected = append(f, 0, ROWS);
+        deleteMultiplesOf(f, 3, expected);
+        assertEquals(expected.size(), f.numTuples());
+        assertEquals(ROWS - expected.size(), f.numDeleted());
+        SystemTestUtil.matchTuples(f, expected);
+
+        // deletes survive reopening once flushed
+        Database.getBufferPool().flushAllPages();
+        long before = dat.length();
+        f = open(dat);
+        assertEquals(ROWS - expected.size(), f.numDeleted());
+        SystemTestUtil.matchTuples(f, expected);
+
+        assertEquals(ROWS - expected.size(), f.compact());
+        assertEquals(0, f.numDeleted());
+        assertTrue(dat.length() < before);
+        SystemTestUtil.matchTuples(f, expected);
+
+        // appends carry on after the compacted tuples
+        expected.addAll(append(f, ROWS, ROWS + 100));
+        SystemTestUtil.matchTuples(f, expected);
+    }
+
+    @Test public void testBackgroundCompaction() throws Exception {
+        AppendOnlyFile f = open(newFile());
+        f.setCompactThreshold(0.2);
+        ArrayList<ArrayList<Integer>> expected = append(f, 0, ROWS);
+        deleteMultiplesOf(f, 2, expected);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (f.numDeleted() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, f.numDeleted());
+        assertFalse(expected.isEmpty());
+        SystemTestUtil.matchTuples(f, expected);
+    }
+}
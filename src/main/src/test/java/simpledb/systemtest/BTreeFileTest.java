@@ -0,0 +1,162 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Fills a B+ tree with wide tuples, so that it grows several levels, and
+ * checks that scans return the tuples in key order, that index scans
+ * return exactly the matching tuples, and that deletes free pages for
+ * later inserts.
+ */
+public class BTreeFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+    private static final int KEYS = 2000;
+
+    private final TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+    private BTreeFile createTree() throws Exception {
+        File dat = File.createTempFile("btree", ".dat");
+        dat.delete();
+        dat.deleteOnExit();
+        BTreeFile f = new BTreeFile(dat, td, 0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    /** @return the keys of the given rows, in key order */
+    private static ArrayList<Integer> fill(BTreeFile f, TransactionId tid) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        Random r = new Random(42);
+        for (int i = 0; i < ROWS; i++) {
+            int key = r.nextInt(KEYS);
+            Tuple t = new Tuple(f.getTupleDesc());
+            t.setField(0, new IntField(key));
+            t.setField(1, new StringField("row" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, f.getId(), t);
+            keys.add(key);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static ArrayList<Integer> keys(DbIterator it) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        return keys;
+    }
+
+    private static ArrayList<Integer> indexKeys(BTreeFile f, TransactionId tid,
+                                                Predicate.Op op, int key) throws Exception {
+        return keys(new IndexScan(tid, f.getId(), "t", new IndexPredicate(op, new IntField(key))));
+    }
+
+    private static ArrayList<Integer> filtered(ArrayList<Integer> keys, Predicate.Op op, int key) {
+        ArrayList<Integer> matches = new ArrayList<Integer>();
+        for (int k : keys)
+            if (new IntField(k).compare(op, new IntField(key)))
+                matches.add(k);
+        return matches;
+    }
+
+    @Test public void testInsertAndScan() throws Exception {
+        BTreeFile f = createTree();
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> keys = fill(f, tid);
+
+        assertEquals(keys, keys(new SeqScan(tid, f.getId(), "t")));
+        Database.getBufferPool().flushAllPages();
+        // the tree has grown past a single internal level
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) f.readPage(BTreeRootPtrPage.getId(f.getId()));
+        BTreeInternalPage root = (BTreeInternalPage) f.readPage(rootPtr.getRootId());
+        assertEquals(BTreePageId.INTERNAL, root.getChildCategory());
+
+        Database.reset();
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        assertEquals(keys, keys(new SeqScan(tid, f.getId(), "t")));
+    }
+
+    @Test public void testIndexScan() throws Exception {
+        BTreeFile f = createTree();
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> keys = fill(f, tid);
+
+        for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ }) {
+            for (int key : new int[] { -1, 0, 77, KEYS / 2, KEYS - 1, KEYS }) {
+                assertEquals(op + " " + key, filtered(keys, op, key), indexKeys(f, tid, op, key));
+            }
+        }
+    }
+
+    @Test public void testPointLookupReadsFewPages() throws Exception {
+        BTreeFile f = createTree();
+        TransactionId tid = new TransactionId();
+        fill(f, tid);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        ArrayList<Integer> matches = indexKeys(f, tid, Predicate.Op.EQUALS, 1234);
+        assertTrue(matches.size() > 0);
+        // the root pointer, one page per level and the leaves of the key
+        assertTrue(Database.getBufferPool().getMissCount() < 10);
+    }
+
+    @Test public void testDeleteFreesPages() throws Exception {
+        BTreeFile f = createTree();
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> keys = fill(f, tid);
+
+        // delete the lower half of the keys, emptying most of the leaves
+        ArrayList<Tuple> victims = tuples(f.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(KEYS / 2))));
+        for (Tuple t : victims)
+            Database.getBufferPool().deleteTuple(tid, t);
+        ArrayList<Integer> remaining = filtered(keys, Predicate.Op.GREATER_THAN_OR_EQ, KEYS / 2);
+        assertEquals(remaining, keys(new SeqScan(tid, f.getId(), "t")));
+
+        // the freed pages take the same keys again, inserted in random
+        // order as before so that the leaves fill up as much
+        int pages = f.numPages();
+        Collections.shuffle(victims, new Random(7));
+        for (Tuple t : victims)
+            Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        assertEquals(keys, keys(new SeqScan(tid, f.getId(), "t")));
+        assertTrue(f.numPages() <= pages + pages / 10);
+
+        // emptying the tree leaves a single empty leaf as the root
+        for (Tuple t : tuples(f.iterator(tid)))
+            Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(0, keys(new SeqScan(tid, f.getId(), "t")).size());
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+                BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
+        assertEquals(BTreePageId.LEAF, rootPtr.getRootId().pgcateg());
+    }
+
+    private static ArrayList<Tuple> tuples(DbFileIterator it) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
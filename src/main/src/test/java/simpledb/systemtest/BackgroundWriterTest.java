@@ -0,0 +1,258 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Inserts into a table larger than the buffer pool with and without a
+ * background writer, and checks that the writer logs and writes dirty pages
+ * ahead of eviction, in runs, without losing any update.
+ */
+public class BackgroundWriterTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 50;
+    private static final int ROWS = 504 * 150;
+    private static final int CHUNK = 100;
+
+    private BufferPool pool;
+
+    @After public void tearDown() {
+        if (pool != null)
+            pool.setBackgroundWriter(null);
+    }
+
+    /** Something a FailingHeapFile does just before a write of it fails. */
+    private interface BeforeFailure {
+        void run() throws Exception;
+    }
+
+    /**
+     * A heap file whose runs of pages cannot be written. Before such a write
+     * fails it runs its hook, which can push the pages under way out of the
+     * pool. Once failFlushes is set, single pages, as eviction writes them,
+     * cannot be written either.
+     */
+    private static class FailingHeapFile extends HeapFile {
+        private static final long serialVersionUID = 1L;
+
+        BeforeFailure beforeFailure;
+        volatile boolean failFlushes;
+
+        FailingHeapFile(File f) {
+            super(f, Utility.getTupleDesc(2));
+        }
+
+        @Override public void writePages(List<? extends Page> run) throws IOException {
+            try {
+                if (beforeFailure != null)
+                    beforeFailure.run();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            throw new IOException("no space left on device");
+        }
+
+        @Override public void writePage(Page page) throws IOException {
+            if (failFlushes)
+                throw new IOException("no space left on device");
+            super.writePage(page);
+        }
+    }
+
+    private static HeapFile emptyTable() throws Exception {
+        File dat = TestUtil.createTempTableFile("bgwriter");
+        dat.delete();
+        return addTable(new HeapFile(dat, Utility.getTupleDesc(2)));
+    }
+
+    private static FailingHeapFile failingTable() throws Exception {
+        File dat = TestUtil.createTempTableFile("bgwriter");
+        dat.delete();
+        return addTable(new FailingHeapFile(dat));
+    }
+
+    private static <F extends HeapFile> F addTable(F f) {
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    /** Read every page of a table through the pool. */
+    private static void scan(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < f.numPages(); i++) {
+            PageId pid = new HeapPageId(f.getId(), i);
+            Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            Database.getBufferPool().releasePage(tid, pid);
+        }
+    }
+
+    /** @return tuples (i, i) for i in [from, to), which are also added to expected */
+    private static List<Tuple> rows(int from, int to, ArrayList<ArrayList<Integer>> expected) {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = from; i < to; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { i, i }));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i);
+            expected.add(row);
+        }
+        return tuples;
+    }
+
+    /** Insert ROWS tuples a chunk at a time, running the writer after each chunk if there is one. */
+    private ArrayList<ArrayList<Integer>> insert(HeapFile f, BackgroundWriter writer)
+            throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        for (int from = 0; from < ROWS; from += CHUNK) {
+            List<Tuple> tuples = new ArrayList<Tuple>();
+            for (int i = from; i < from + CHUNK; i++) {
+                tuples.add(Utility.getHeapTuple(new int[] { i, -i }));
+                ArrayList<Integer> row = new ArrayList<Integer>();
+                row.add(i);
+                row.add(-i);
+                expected.add(row);
+            }
+            pool.insertTuples(tid, f.getId(), tuples);
+            if (writer != null) {
+                writer.writeDirtyPages();
+                assertTrue(pool.getDirtyPageCount() <= writer.getTargetPages());
+            }
+        }
+        return expected;
+    }
+
+    @Test public void testEvictionFindsCleanPages() throws Exception {
+        pool = Database.resetBufferPool(BUFFER_PAGES);
+        HeapFile plain = emptyTable();
+        insert(plain, null);
+        long withoutWriter = pool.getDirtyEvictionCount();
+        assertTrue(withoutWriter > 0);
+
+        pool = Database.resetBufferPool(BUFFER_PAGES);
+        BackgroundWriter writer = new BackgroundWriter(pool);
+        pool.setBackgroundWriter(writer);
+        int records = Database.getLogFile().getTotalRecords();
+        HeapFile f = emptyTable();
+        ArrayList<ArrayList<Integer>> expected = insert(f, writer);
+        assertTrue(pool.getDirtyEvictionCount() * 2 < withoutWriter);
+        assertTrue(writer.getPagesWritten() > 0);
+        assertEquals(0, writer.getFailureCount());
+        // each page is logged before it is written
+        assertTrue(Database.getLogFile().getTotalRecords() - records >= writer.getPagesWritten());
+
+        pool.flushAllPages();
+        pool.setBackgroundWriter(null);
+        Database.resetBufferPool(BUFFER_PAGES);
+        SystemTestUtil.matchTuples(f, expected);
+    }
+
+    @Test public void testAdjacentPagesCoalesced() throws Exception {
+        pool = Database.resetBufferPool(BUFFER_PAGES * 4);
+        HeapFile f = emptyTable();
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 40; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { i, i }));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i);
+            expected.add(row);
+        }
+        pool.insertTuples(new TransactionId(), f.getId(), tuples);
+        assertEquals(40, pool.getDirtyPageCount());
+
+        BackgroundWriter writer = new BackgroundWriter(pool);
+        pool.setBackgroundWriter(writer);
+        // down to half the target
+        int expectWritten = 40 - writer.getTargetPages() / 2;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getPagesWritten() < expectWritten && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expectWritten, writer.getPagesWritten());
+        assertEquals(40 - expectWritten, pool.getDirtyPageCount());
+        // the oldest dirty pages are adjacent, so they go out in few writes
+        assertTrue(writer.getWriteCount() * 4 <= writer.getPagesWritten());
+
+        // what the writer wrote is on disk without any flush
+        pool.setBackgroundWriter(null);
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        int onDisk = (int) writer.getPagesWritten();
+        Database.resetBufferPool(BUFFER_PAGES);
+        SystemTestUtil.matchTuples(reopened, expected.subList(0, 504 * onDisk));
+    }
+
+    @Test public void testFailedWriteInFullClockPool() throws Exception {
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 504 * BUFFER_PAGES, null, null);
+        pool = Database.resetBufferPool(BUFFER_PAGES, new ClockEvictionPolicy(BUFFER_PAGES));
+        FailingHeapFile f = failingTable();
+        f.beforeFailure = () -> scan(other);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        pool.insertTuples(new TransactionId(), f.getId(), rows(0, 504 * 20, expected));
+        assertEquals(20, pool.getDirtyPageCount());
+
+        // not attached to the pool, and the thread never wakes on its own
+        BackgroundWriter writer = new BackgroundWriter(pool,
+                BackgroundWriter.DEFAULT_DIRTY_TARGET, Long.MAX_VALUE, 64);
+        try {
+            // the pages taken are evicted while they are written, and the
+            // write fails, so they come back into a full pool
+            assertEquals(0, writer.writeDirtyPages());
+            assertEquals(1, writer.getFailureCount());
+            assertEquals(20 - writer.getTargetPages() / 2, pool.getDirtyPageCount());
+        } finally {
+            writer.shutdown();
+        }
+
+        // nothing is left in flight and the pages taken back were not lost
+        pool.flushAllPages();
+        Database.resetBufferPool(BUFFER_PAGES);
+        SystemTestUtil.matchTuples(f, expected);
+    }
+
+    @Test public void testFailedWriteWhenNothingCanBeEvicted() throws Exception {
+        pool = Database.resetBufferPool(BUFFER_PAGES, new ClockEvictionPolicy(BUFFER_PAGES));
+        FailingHeapFile f = failingTable();
+        TransactionId tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        pool.insertTuples(tid, f.getId(), rows(0, 504 * 20, expected));
+        // while the write is under way, newer dirty pages of the table push
+        // the pages under way out of the pool, then the disk fills up
+        f.beforeFailure = () -> {
+            pool.insertTuples(tid, f.getId(),
+                    rows(504 * 20, 504 * (20 + BUFFER_PAGES), expected));
+            f.failFlushes = true;
+        };
+
+        BackgroundWriter writer = new BackgroundWriter(pool,
+                BackgroundWriter.DEFAULT_DIRTY_TARGET, Long.MAX_VALUE, 64);
+        try {
+            writer.writeDirtyPages();
+            fail("pages of the failed write were dropped or kept without a word");
+        } catch (DbException e) {
+            // expected: eviction could not make room for them either
+        } finally {
+            writer.shutdown();
+        }
+        assertEquals(1, writer.getFailureCount());
+
+        // once the disk has room again, nothing written by tid is missing
+        f.beforeFailure = null;
+        f.failFlushes = false;
+        pool.flushAllPages();
+        Database.resetBufferPool(BUFFER_PAGES);
+        SystemTestUtil.matchTuples(f, expected);
+    }
+}
@@ -0,0 +1,212 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads a table of (int, string) rows and checks that scans for a string
+ * skip the pages the Bloom filters rule out, that the counters add up, and
+ * that the filters keep up with inserts, whether the loader or the table
+ * built them, and whether or not a scan loaded them first.
+ */
+public class BloomFilterTest extends SimpleDbTestBase {
+    private static final int ROWS = 1200;
+
+    private final TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+    private File dat;
+
+    /** Load ROWS rows (i, "name" + i), building filters of the names if asked. */
+    private HeapFile load(boolean filters) throws Exception {
+        File txt = File.createTempFile("bloom", ".txt");
+        txt.deleteOnExit();
+        try (Writer w = new FileWriter(txt)) {
+            for (int i = 0; i < ROWS; i++)
+                w.write(i + ",name" + i + "\n");
+        }
+        if (dat == null) {
+            dat = TestUtil.createTempTableFile("bloom");
+        }
+        BulkLoader loader = new BulkLoader(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, ',',
+                BufferPool.getPageSize(), 2);
+        if (filters)
+            loader.setBloomFilters(new int[] { 1 }, BloomFilters.DEFAULT_FPP);
+        loader.load(txt, dat);
+        return open();
+    }
+
+    private HeapFile open() {
+        HeapFile f = new HeapFile(dat, td);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private File sidecar() {
+        return Utility.sidecar(dat, BloomFilters.EXTENSION);
+    }
+
+    /** @return the first column of the rows whose second column is name */
+    private static List<Integer> lookup(HeapFile f, TransactionId tid, String name)
+            throws Exception {
+        DbIterator it = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField(name, Type.STRING_LEN)), new SeqScan(tid, f.getId(), "t"));
+        List<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Test public void testLoaderBuildsFilters() throws Exception {
+        HeapFile f = load(true);
+        TransactionId tid = new TransactionId();
+        BloomFilters filters = f.getBloomFilters();
+        assertNotNull(filters);
+        assertTrue(Arrays.equals(new int[] { 1 }, filters.getFields()));
+        int pages = f.numPages();
+        assertTrue(pages > 20);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(Collections.singletonList(777), lookup(f, tid, "name777"));
+        assertEquals(pages, filters.getProbedPages());
+        // every page but the one holding the row was skipped or read in vain
+        assertEquals(pages - 1, filters.getSkippedPages() + filters.getFalsePositives());
+        assertEquals(filters.getSkippedPages(), f.getSkippedPages());
+        assertTrue(filters.getSkippedPages() >= pages - 3);
+        assertTrue(Database.getBufferPool().getMissCount() <= 3);
+
+        assertEquals(Collections.emptyList(), lookup(f, tid, "nobody"));
+        assertEquals(2 * pages, filters.getProbedPages());
+        assertEquals(2 * pages - 1, filters.getSkippedPages() + filters.getFalsePositives());
+
+        // predicates the filters cannot answer read every page
+        long probed = filters.getProbedPages();
+        DbIterator all = new Filter(new Predicate(1, Predicate.Op.NOT_EQUALS,
+                new StringField("name1", Type.STRING_LEN)), new SeqScan(tid, f.getId(), "t"));
+        all.open();
+        int rows = 0;
+        while (all.hasNext()) {
+            all.next();
+            rows++;
+        }
+        all.close();
+        assertEquals(ROWS - 1, rows);
+        assertEquals(probed, filters.getProbedPages());
+    }
+
+    @Test public void testInsertsAddToFilters() throws Exception {
+        HeapFile f = load(true);
+        TransactionId tid = new TransactionId();
+        assertEquals(Collections.emptyList(), lookup(f, tid, "newcomer"));
+
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("newcomer", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        assertEquals(Collections.singletonList(-1), lookup(f, tid, "newcomer"));
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        TransactionId reader = new TransactionId();
+        assertEquals(Collections.singletonList(-1), lookup(reopened, reader, "newcomer"));
+        assertEquals(Collections.singletonList(5), lookup(reopened, reader, "name5"));
+        assertTrue(reopened.getBloomFilters().getSkippedPages() > 0);
+    }
+
+    /** Insert a row (key, name) and write it to disk. */
+    private void insertAndFlush(HeapFile f, int key, String name) throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(key));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testWritesBeforeLoadingMarkSidecarStale() throws Exception {
+        load(true);
+        HeapFile f = open();
+        insertAndFlush(f, -1, "newcomer");
+        // the write did not load the filters, but told the sidecar it is stale
+        try (RandomAccessFile raf = new RandomAccessFile(sidecar(), "r")) {
+            raf.seek(16);
+            assertEquals(-1, raf.readInt());
+        }
+
+        TransactionId tid = new TransactionId();
+        assertEquals(Collections.singletonList(-1), lookup(f, tid, "newcomer"));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        assertEquals(Collections.singletonList(-1), lookup(reopened, tid, "newcomer"));
+        assertEquals(Collections.singletonList(5), lookup(reopened, tid, "name5"));
+        assertTrue(reopened.getBloomFilters().getSkippedPages() > 0);
+    }
+
+    @Test public void testCorruptSidecarDoesNotFailWrites() throws Exception {
+        load(true);
+        try (RandomAccessFile raf = new RandomAccessFile(sidecar(), "rw")) {
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        HeapFile f = open();
+        insertAndFlush(f, -1, "newcomer");
+        assertFalse(sidecar().exists());
+        assertNull(f.getBloomFilters());
+        TransactionId tid = new TransactionId();
+        assertEquals(Collections.singletonList(-1), lookup(f, tid, "newcomer"));
+    }
+
+    @Test public void testCreateForExistingTable() throws Exception {
+        HeapFile f = load(false);
+        assertNull(f.getBloomFilters());
+        assertFalse(sidecar().exists());
+        try {
+            f.createBloomFilters(new int[] { 0 }, BloomFilters.DEFAULT_FPP);
+            fail("filtered an int column");
+        } catch (DbException e) {
+            // expected
+        }
+
+        BloomFilters filters = f.createBloomFilters(new int[] { 1 }, 0.001);
+        assertTrue(sidecar().exists());
+        TransactionId tid = new TransactionId();
+        assertEquals(Collections.singletonList(1001), lookup(f, tid, "name1001"));
+        assertTrue(filters.getSkippedPages() >= f.numPages() - 2);
+
+        HeapFile reopened = open();
+        BloomFilters stored = reopened.getBloomFilters();
+        assertNotNull(stored);
+        assertEquals(filters.getBitsPerFilter(), stored.getBitsPerFilter());
+        assertEquals(filters.getNumHashes(), stored.getNumHashes());
+        assertEquals(Collections.singletonList(3), lookup(reopened, tid, "name3"));
+
+        // loading the table anew drops filters of what it held before
+        load(false);
+        assertFalse(sidecar().exists());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BloomFilterTest.class);
+    }
+}
@@ -0,0 +1,170 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Writes a HeapFile with page checksums, through the buffer pool or a
+ * loader, reads it back, and checks that a page damaged on disk is refused
+ * with an exception naming the table and the page.
+ */
+public class ChecksumTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+
+    @After public void checksumsOff() {
+        HeapFile.setChecksumNewFiles(false);
+    }
+
+    private static HeapFile createChecksummed(String name, ArrayList<ArrayList<Integer>> expected)
+            throws Exception {
+        File dat = TestUtil.createTempTableFile(name);
+        dat.delete();
+        HeapFile.setChecksumNewFiles(true);
+        HeapFile f = new HeapFile(dat, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, name);
+
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < ROWS; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { i, i * 7 }));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(i * 7);
+            expected.add(row);
+        }
+        Database.getBufferPool().insertTuples(new TransactionId(), f.getId(), tuples);
+        Database.getBufferPool().flushAllPages();
+        return f;
+    }
+
+    @Test public void testChecksummedRoundTrip() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = createChecksummed("orders", expected);
+        assertTrue(f.hasChecksums());
+        assertTrue(f.getHeader().isStored());
+        // the checksum takes room from the tuples of each page
+        int slots = ((BufferPool.getPageSize() - FileHeader.CHECKSUM_SIZE) * 8) / (8 * 8 + 1);
+        int pages = (ROWS + slots - 1) / slots;
+        assertEquals(pages, f.numPages());
+        assertEquals(FileHeader.SIZE + (long) pages * BufferPool.getPageSize(),
+                f.getFile().length());
+
+        // reopening the file keeps its format, whatever new files get
+        HeapFile.setChecksumNewFiles(false);
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, "orders");
+        assertTrue(reopened.hasChecksums());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(reopened, expected);
+        assertEquals(pages, reopened.getVerifiedPages());
+        assertEquals(0, reopened.getChecksumFailures());
+    }
+
+    /** Check that a file written by a loader has checksums that match. */
+    private static void checkLoaded(File dat, ArrayList<ArrayList<Integer>> expected)
+            throws Exception {
+        HeapFile f = new HeapFile(dat, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        assertTrue(f.hasChecksums());
+        int slots = ((BufferPool.getPageSize() - FileHeader.CHECKSUM_SIZE) * 8) / (8 * 8 + 1);
+        assertEquals((ROWS + slots - 1) / slots, f.numPages());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, expected);
+        assertEquals(f.numPages(), f.getVerifiedPages());
+        assertEquals(0, f.getChecksumFailures());
+    }
+
+    @Test public void testLoadedFilesGetChecksums() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        File txt = File.createTempFile("checksums", ".txt");
+        txt.deleteOnExit();
+        try (Writer w = new FileWriter(txt)) {
+            for (int i = 0; i < ROWS; i++) {
+                w.write(i + "," + i * 7 + "\n");
+                ArrayList<Integer> row = new ArrayList<Integer>();
+                row.add(i);
+                row.add(i * 7);
+                expected.add(row);
+            }
+        }
+        HeapFile.setChecksumNewFiles(true);
+
+        File loaded = TestUtil.createTempTableFile("loaded");
+        HeapFileEncoder.convert(txt, loaded, BufferPool.getPageSize(), 2);
+        checkLoaded(loaded, expected);
+
+        File encoded = TestUtil.createTempTableFile("encoded");
+        HeapFileEncoder.convert(expected, encoded, BufferPool.getPageSize(), 2);
+        checkLoaded(encoded, expected);
+    }
+
+    @Test public void testCorruptPageDetected() throws Exception {
+        HeapFile f = createChecksummed("lineitem", new ArrayList<ArrayList<Integer>>());
+        int damaged = 1;
+        try (RandomAccessFile raf = new RandomAccessFile(f.getFile(), "rw")) {
+            long offset = FileHeader.SIZE + (long) damaged * BufferPool.getPageSize() + 100;
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x10);
+        }
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        TransactionId tid = new TransactionId();
+        long verified = f.getVerifiedPages();
+        Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        try {
+            Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), damaged),
+                    Permissions.READ_ONLY);
+            fail("expected a checksum mismatch");
+        } catch (DbException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("page " + damaged));
+            assertTrue(e.getMessage(), e.getMessage().contains("lineitem"));
+        }
+        assertEquals(verified + 1, f.getVerifiedPages());
+        assertEquals(1, f.getChecksumFailures());
+        try {
+            f.readPage(new HeapPageId(f.getId(), damaged));
+            fail("expected a checksum mismatch");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+        }
+    }
+
+    @Test public void testTornWriteDetectedOffHeap() throws Exception {
+        HeapFile f = createChecksummed("torn", new ArrayList<ArrayList<Integer>>());
+        // only the first half of the last page reached the disk
+        int last = f.numPages() - 1;
+        try (RandomAccessFile raf = new RandomAccessFile(f.getFile(), "rw")) {
+            long start = FileHeader.SIZE + (long) last * BufferPool.getPageSize();
+            raf.seek(start + BufferPool.getPageSize() / 2);
+            raf.write(new byte[BufferPool.getPageSize() / 2]);
+        }
+        Database.resetBufferPoolOffHeap(BufferPool.DEFAULT_PAGES);
+        DbFileIterator it = f.iterator(new TransactionId());
+        it.open();
+        try {
+            while (it.hasNext()) {
+                it.next();
+            }
+            fail("expected a checksum mismatch");
+        } catch (DbException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("page " + last));
+        }
+        it.close();
+        assertFalse(f.getVerifiedPages() == 0);
+    }
+}
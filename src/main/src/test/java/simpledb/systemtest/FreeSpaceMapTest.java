@@ -0,0 +1,90 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Checks that inserts find a page with room through the free-space map
+ * rather than by reading the table, and that the map survives reopening
+ * the table or losing its sidecar file.
+ */
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 40;
+
+    private static HeapFile reopen(HeapFile f) {
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        return reopened;
+    }
+
+    @Test public void testInsertIntoHole() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+
+        // free a slot on a page in the middle of the table
+        HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(f.getId(), PAGES / 2),
+                Permissions.READ_WRITE);
+        Tuple victim = page.iterator().next();
+        pool.deleteTuple(tid, victim);
+        pool.flushAllPages();
+
+        // the insert goes straight to that page without reading the others
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool = Database.getBufferPool();
+        Tuple t = Utility.getHeapTuple(new int[] { -1, -1 });
+        pool.insertTuple(tid, f.getId(), t);
+        assertEquals(PAGES / 2, t.getRecordId().getPageId().pageNumber());
+        assertTrue(pool.getMissCount() <= 1);
+
+        // the table is full again, so the next insert appends a page
+        pool.insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { -2, -2 }));
+        assertEquals(PAGES + 1, f.numPages());
+        assertTrue(sidecar(f).exists());
+        sidecar(f).delete();
+    }
+
+    private static File sidecar(HeapFile f) {
+        return Utility.sidecar(f.getFile(), FreeSpaceMap.EXTENSION);
+    }
+
+    @Test public void testReopen() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool pool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) pool.getPage(tid, new HeapPageId(f.getId(), 3),
+                Permissions.READ_WRITE);
+        pool.deleteTuple(tid, page.iterator().next());
+        pool.flushAllPages();
+        File sidecar = sidecar(f);
+        assertEquals(PAGES, sidecar.length());
+
+        for (boolean lose : new boolean[] { false, true }) {
+            if (lose) {
+                // a lost sidecar is rebuilt from the table
+                assertTrue(sidecar.delete());
+            }
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            HeapFile reopened = reopen(f);
+            Tuple t = Utility.getHeapTuple(new int[] { 1, 1 });
+            Database.getBufferPool().insertTuple(tid, reopened.getId(), t);
+            assertEquals(3, t.getRecordId().getPageId().pageNumber());
+            // leave the hole for the next round
+            Database.getBufferPool().discardPage(t.getRecordId().getPageId());
+        }
+        sidecar.delete();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
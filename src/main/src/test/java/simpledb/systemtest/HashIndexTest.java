@@ -0,0 +1,187 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Fills hash files with wide tuples, so that their directory spans several
+ * pages and some buckets overflow, and checks that scans and equality
+ * lookups return exactly the stored tuples, that deletes remove them, and
+ * that joins probing a hash file match the nested-loop join.
+ */
+public class HashIndexTest extends SimpleDbTestBase {
+    private static final int ROWS = 40000;
+    private static final int KEYS = 20000;
+
+    private final TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+    private HashFile createHashFile() throws Exception {
+        File dat = File.createTempFile("hash", ".dat");
+        dat.delete();
+        dat.deleteOnExit();
+        HashFile f = new HashFile(dat, td, 0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private static Tuple row(HashFile f, int key, int i) {
+        Tuple t = new Tuple(f.getTupleDesc());
+        t.setField(0, new IntField(key));
+        t.setField(1, new StringField("row" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    /** @return the keys of the inserted rows, sorted */
+    private static ArrayList<Integer> fill(HashFile f, TransactionId tid) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        Random r = new Random(42);
+        for (int i = 0; i < ROWS; i++) {
+            int key = r.nextInt(KEYS);
+            Database.getBufferPool().insertTuple(tid, f.getId(), row(f, key, i));
+            keys.add(key);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /** @return the keys of the tuples of the given iterator, sorted */
+    private static ArrayList<Integer> keys(DbIterator it) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static ArrayList<Integer> lookup(HashFile f, TransactionId tid, int key)
+            throws Exception {
+        return keys(new IndexScan(tid, f.getId(), "t",
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(key))));
+    }
+
+    @Test public void testInsertAndLookup() throws Exception {
+        HashFile f = createHashFile();
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> keys = fill(f, tid);
+
+        assertEquals(keys, keys(new SeqScan(tid, f.getId(), "t")));
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(tid);
+        // directory entries no longer fit on one page
+        int entriesPerPage = BufferPool.getPageSize() / 4;
+        int perBucket = (BufferPool.getPageSize() - 12) / td.getSize();
+        assertTrue(ROWS / perBucket > entriesPerPage);
+
+        TransactionId reader = new TransactionId();
+        assertEquals(keys, keys(new SeqScan(reader, f.getId(), "t")));
+        for (int key : new int[] { 0, 1, 777, KEYS / 2, KEYS - 1, KEYS }) {
+            ArrayList<Integer> expected = new ArrayList<Integer>();
+            for (int k : keys)
+                if (k == key)
+                    expected.add(k);
+            assertEquals("key " + key, expected, lookup(f, reader, key));
+        }
+    }
+
+    @Test public void testDuplicatesOverflow() throws Exception {
+        HashFile f = createHashFile();
+        TransactionId tid = new TransactionId();
+        int perBucket = (BufferPool.getPageSize() - 12) / td.getSize();
+        int copies = perBucket * 5 + 3;
+        for (int i = 0; i < copies; i++)
+            Database.getBufferPool().insertTuple(tid, f.getId(), row(f, 7, i));
+        for (int i = 0; i < 100; i++)
+            Database.getBufferPool().insertTuple(tid, f.getId(), row(f, 1000 + i, i));
+
+        assertEquals(copies, lookup(f, tid, 7).size());
+        assertEquals(Collections.singletonList(1050), lookup(f, tid, 1050));
+        assertEquals(copies + 100, keys(new SeqScan(tid, f.getId(), "t")).size());
+        // the copies went on overflow pages rather than deepening the
+        // directory as far as it goes
+        assertTrue(f.numPages() < 30);
+    }
+
+    @Test public void testDelete() throws Exception {
+        HashFile f = createHashFile();
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> keys = fill(f, tid);
+
+        List<Tuple> victims = new ArrayList<Tuple>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 2 == 0)
+                victims.add(t);
+        }
+        it.close();
+        for (Tuple t : victims)
+            Database.getBufferPool().deleteTuple(tid, t);
+
+        ArrayList<Integer> odd = new ArrayList<Integer>();
+        for (int k : keys)
+            if (k % 2 != 0)
+                odd.add(k);
+        assertEquals(odd, keys(new SeqScan(tid, f.getId(), "t")));
+        assertEquals(Collections.emptyList(), lookup(f, tid, 778));
+    }
+
+    @Test public void testIndexNestedLoopJoin() throws Exception {
+        HashFile f = createHashFile();
+        TransactionId tid = new TransactionId();
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int k : fill(f, tid))
+            counts.merge(k, 1, Integer::sum);
+
+        ArrayList<ArrayList<Integer>> outer = new ArrayList<ArrayList<Integer>>();
+        HeapFile left = SystemTestUtil.createRandomHeapFile(1, 500, KEYS + 10, null, outer);
+        int expected = 0;
+        for (ArrayList<Integer> row : outer)
+            expected += counts.getOrDefault(row.get(0), 0);
+
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Join join = new Join(p, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, f.getId(), "r"));
+        int rows = 0;
+        join.open();
+        while (join.hasNext()) {
+            Tuple t = join.next();
+            assertEquals(t.getField(0), t.getField(1));
+            rows++;
+        }
+        assertEquals(expected, rows);
+        join.rewind();
+        while (join.hasNext()) {
+            join.next();
+            rows--;
+        }
+        join.close();
+        assertEquals(0, rows);
+
+        // the same join scanning the right side, which it cannot probe
+        // through a Filter, returns as many rows
+        Join scanned = new Join(p, new SeqScan(tid, left.getId(), "l"),
+                new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)),
+                        new SeqScan(tid, f.getId(), "r")));
+        assertEquals(expected, keys(scanned).size());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashIndexTest.class);
+    }
+}
@@ -0,0 +1,114 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Ingests CSV and TSV files without a schema and checks the inferred
+ * types, the rejected lines and the catalog entry.
+ */
+public class IngestTest extends SimpleDbTestBase {
+    private File dir;
+
+    @Before public void setUpDir() throws IOException {
+        dir = Files.createTempDirectory("ingest").toFile();
+        dir.deleteOnExit();
+    }
+
+    private File write(String name, String text) throws IOException {
+        File f = new File(dir, name);
+        f.deleteOnExit();
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(text);
+        }
+        return f;
+    }
+
+    private static List<Tuple> scan(String table) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        SeqScan scan = new SeqScan(new TransactionId(),
+                Database.getCatalog().getTableId(table), table);
+        scan.open();
+        while (scan.hasNext()) {
+            tuples.add(scan.next());
+        }
+        scan.close();
+        return tuples;
+    }
+
+    @Test public void csvWithHeaderAndRejects() throws Exception {
+        StringBuilder text = new StringBuilder("id,player name,score\n");
+        List<String> bad = Arrays.asList("x1,nobody,3", "7,too few", "8,too,many,fields");
+        for (int i = 0; i < 300; i++) {
+            text.append(i).append(",player ").append(i).append(',').append(i * 10).append('\n');
+            if (i % 100 == 50) {
+                text.append(bad.get(i / 100)).append('\n');
+            }
+        }
+        File csv = write("scores.csv", text.toString());
+
+        Ingest ingest = new Ingest(csv).setProgress(null).setThreads(2);
+        Ingest.Result result = ingest.run();
+        assertTrue(result.schema.header);
+        TupleDesc td = result.schema.td;
+        assertEquals(Type.INT_TYPE, td.getFieldType(0));
+        assertEquals(Type.STRING_TYPE, td.getFieldType(1));
+        assertEquals(Type.INT_TYPE, td.getFieldType(2));
+        assertEquals("player_name", td.getFieldName(1));
+        assertEquals(300, result.rows);
+        assertEquals(3, result.rejected);
+        assertEquals(bad, Files.readAllLines(ingest.getRejectsFile().toPath()));
+        ingest.getRejectsFile().deleteOnExit();
+        TestUtil.deleteOnExit(ingest.getDataFile());
+
+        File catalog = new File(dir, "catalog.txt");
+        catalog.deleteOnExit();
+        assertEquals(Arrays.asList("scores (id int, player_name string, score int)"),
+                Files.readAllLines(catalog.toPath()));
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        List<Tuple> tuples = scan("scores");
+        assertEquals(300, tuples.size());
+        for (int i = 0; i < 300; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("player " + i, ((StringField) t.getField(1)).getValue());
+            assertEquals(new IntField(i * 10), t.getField(2));
+        }
+    }
+
+    @Test public void tsvWithoutHeader() throws Exception {
+        File tsv = write("pairs.tsv", "1\t2\n3\t4\n5\tfive\n");
+        File catalog = new File(dir, "other.txt");
+        catalog.deleteOnExit();
+        try (FileWriter w = new FileWriter(catalog)) {
+            w.write("pairs (a int)\nkeep (a int)\n");
+        }
+
+        Ingest ingest = new Ingest(tsv).setProgress(null).setCatalogFile(catalog);
+        Ingest.Result result = ingest.run();
+        TestUtil.deleteOnExit(ingest.getDataFile());
+        assertFalse(result.schema.header);
+        assertEquals(Type.INT_TYPE, result.schema.td.getFieldType(0));
+        assertEquals(Type.STRING_TYPE, result.schema.td.getFieldType(1));
+        assertEquals(3, result.rows);
+        assertEquals(0, result.rejected);
+        assertFalse(ingest.getRejectsFile().exists());
+        // the old entry for the table is replaced
+        assertEquals(Arrays.asList("keep (a int)", "pairs (f0 int, f1 string)"),
+                Files.readAllLines(catalog.toPath()));
+    }
+}
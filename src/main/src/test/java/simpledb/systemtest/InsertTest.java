@@ -68,6 +68,24 @@ public class InsertTest extends SimpleDbTestBase {
         validateInsert(1, 1, 1);
     }
 
+    @Test public void testOneLogRecordPerPage() throws Exception {
+        // fits in one batch of the Insert operator but spans several pages
+        final int rows = 1000;
+        HeapFile source = SystemTestUtil.createRandomHeapFile(3, rows, null, null);
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(3, 0, null, null);
+
+        TransactionId tid = new TransactionId();
+        int records = Database.getLogFile().getTotalRecords();
+        Insert insOp = new Insert(tid, new SeqScan(tid, source.getId(), ""), destination.getId());
+        insOp.open();
+        assertEquals(rows, ((IntField) insOp.next().getField(0)).getValue());
+        insOp.close();
+
+        assertTrue(destination.numPages() > 1);
+        assertEquals(destination.numPages(), Database.getLogFile().getTotalRecords() - records);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(InsertTest.class);
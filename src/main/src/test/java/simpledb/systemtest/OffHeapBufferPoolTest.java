@@ -0,0 +1,60 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Scans through a buffer pool that caches pages in off-heap frames.
+ */
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 8;
+
+    @Test public void testScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 30, null, tuples);
+        BufferPool pool = Database.resetBufferPoolOffHeap(BUFFER_PAGES);
+        assertTrue(pool.isOffHeap());
+
+        SystemTestUtil.matchTuples(f, tuples);
+        assertEquals(30, pool.getMissCount());
+    }
+
+    /**
+     * An iterator positioned on a page must keep returning that page's
+     * tuples after the page is evicted and its frame reused.
+     */
+    @Test public void testIteratorSurvivesEviction() throws Exception {
+        ArrayList<ArrayList<Integer>> outerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, outerTuples);
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, null);
+        Database.resetBufferPoolOffHeap(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+
+        ArrayList<ArrayList<Integer>> seen = new ArrayList<ArrayList<Integer>>();
+        DbFileIterator it = outer.iterator(tid);
+        it.open();
+        for (int i = 0; i < 100; i++)
+            seen.add(SystemTestUtil.tupleToList(it.next()));
+
+        // reuses every frame of the pool, including the one of the outer page
+        for (int i = 0; i < other.numPages(); i++)
+            Database.getBufferPool().getPage(tid, new HeapPageId(other.getId(), i),
+                    Permissions.READ_ONLY);
+
+        while (it.hasNext())
+            seen.add(SystemTestUtil.tupleToList(it.next()));
+        it.close();
+        assertEquals(outerTuples, seen);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+    }
+}
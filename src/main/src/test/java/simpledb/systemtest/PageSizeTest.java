@@ -0,0 +1,80 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Creates and scans tables with page sizes other than the default, and
+ * checks that files written with the default page size stay readable.
+ */
+public class PageSizeTest extends SimpleDbTestBase {
+
+    @After public void resetPageSize() {
+        BufferPool.resetPageSize();
+    }
+
+    private static void checkPageSize(int pageSize) throws Exception {
+        BufferPool.setPageSize(pageSize);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, null, tuples);
+
+        int slots = pageSize * 8 / (2 * Type.INT_TYPE.getLen() * 8 + 1);
+        assertEquals(pageSize, f.getPageSize());
+        assertEquals((20000 + slots - 1) / slots, f.numPages());
+        assertEquals(FileHeader.SIZE + (long) f.numPages() * pageSize, f.getFile().length());
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testLargePages() throws Exception {
+        checkPageSize(16384);
+        checkPageSize(BufferPool.MAX_PAGE_SIZE);
+    }
+
+    @Test public void testLegacyFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile legacy = SystemTestUtil.createRandomHeapFile(2, 2000, null, tuples);
+        assertEquals(2000 / 504 + 1, legacy.numPages());
+        assertEquals((long) legacy.numPages() * BufferPool.PAGE_SIZE, legacy.getFile().length());
+
+        // the file keeps its page size when the database's changes
+        BufferPool.setPageSize(32768);
+        Database.resetBufferPoolOffHeap(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = new HeapFile(legacy.getFile(), legacy.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(BufferPool.PAGE_SIZE, reopened.getPageSize());
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    @Test public void testOffHeapFrames() throws Exception {
+        BufferPool.setPageSize(8192);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 5000, null, tuples);
+        Database.resetBufferPoolOffHeap(4);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testInvalidPageSize() {
+        for (int size : new int[] { 1024, 6000, 2 * BufferPool.MAX_PAGE_SIZE }) {
+            try {
+                BufferPool.setPageSize(size);
+                throw new RuntimeException("expected IllegalArgumentException for " + size);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertTrue(BufferPool.getPageSize() == BufferPool.PAGE_SIZE);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
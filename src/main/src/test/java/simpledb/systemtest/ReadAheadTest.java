@@ -0,0 +1,68 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Verifies that the read-ahead recognises a sequential stream and that the
+ * pages it brings in are served as buffer pool hits.
+ */
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 64;
+
+    private BufferPool pool;
+
+    @After public void tearDown() {
+        if (pool != null)
+            pool.setReadAhead(null);
+    }
+
+    private static void awaitCompleted(ReadAhead ra, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ra.getCompletedCount() < expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+    }
+
+    @Test public void testSequentialAccessIsPrefetched() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, null);
+        pool = Database.resetBufferPool(BUFFER_PAGES);
+        ReadAhead ra = new ReadAhead(pool);
+        pool.setReadAhead(ra);
+        TransactionId tid = new TransactionId();
+
+        pool.getPage(tid, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        pool.getPage(tid, new HeapPageId(f.getId(), 1), Permissions.READ_ONLY);
+        // the second consecutive page starts a stream of two pages
+        assertEquals(2, ra.getIssuedCount());
+        awaitCompleted(ra, 2);
+        assertEquals(2, ra.getCompletedCount());
+
+        pool.resetStatistics();
+        pool.getPage(tid, new HeapPageId(f.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(0, pool.getMissCount());
+        assertEquals(1, ra.getHitCount());
+    }
+
+    @Test public void testScanWithReadAhead() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, tuples);
+        pool = Database.resetBufferPool(BUFFER_PAGES);
+        ReadAhead ra = new ReadAhead(pool);
+        pool.setReadAhead(ra);
+
+        SystemTestUtil.matchTuples(f, tuples);
+        assertTrue(ra.getIssuedCount() > 0);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,64 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Verifies that a sequential scan of a table larger than the buffer pool
+ * reads through a scan ring and leaves the rest of the pool alone.
+ */
+public class ScanRingTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = 32;
+
+    private static void readAllPages(HeapFile f, TransactionId tid)
+            throws DbException, TransactionAbortedException {
+        for (int i = 0; i < f.numPages(); ++i) {
+            Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), i),
+                    Permissions.READ_ONLY);
+        }
+    }
+
+    @Test public void testLargeScanKeepsHotPages()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * 4, null, null);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 100, null, tuples);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+
+        readAllPages(hot, tid);
+        assertEquals(hot.numPages(), pool.getMissCount());
+
+        // the scan still returns every tuple of the big table
+        SystemTestUtil.matchTuples(big, tid, tuples);
+
+        pool.resetStatistics();
+        readAllPages(hot, tid);
+        assertEquals(0, pool.getMissCount());
+        assertEquals(hot.numPages(), pool.getHitCount());
+    }
+
+    @Test public void testSmallScanUsesPool()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, 504 * 10, null, tuples);
+        BufferPool pool = Database.resetBufferPool(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+
+        SystemTestUtil.matchTuples(small, tid, tuples);
+        pool.resetStatistics();
+        SystemTestUtil.matchTuples(small, tid, tuples);
+        assertEquals(0, pool.getMissCount());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
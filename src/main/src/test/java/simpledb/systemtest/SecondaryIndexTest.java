@@ -0,0 +1,166 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Creates a secondary index on a heap table with a CREATE INDEX statement
+ * and checks that lookups through it match a filtered scan, that it follows
+ * inserts and deletes, and that it is loaded again with the schema.
+ */
+public class SecondaryIndexTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+    private static final int MAX_VALUE = 500;
+
+    private File schema;
+    private String table;
+
+    /** Write a table of (id, v) rows and a schema file listing it, and load it. */
+    private void loadTable() throws Exception {
+        File dir = Files.createTempDirectory("index").toFile();
+        dir.deleteOnExit();
+        // the indexes the tests create are written next to the table
+        for (String index : new String[] { "v_idx", "v_btree", "v_hash" })
+            new File(dir, index + ".idx").deleteOnExit();
+        table = "t" + SystemTestUtil.getUUID().replace("-", "");
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, MAX_VALUE, null, rows);
+        File dat = new File(dir, table + ".dat");
+        TestUtil.deleteOnExit(dat);
+        HeapFileEncoder.convert(rows, dat, BufferPool.getPageSize(), 2);
+        schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(table + " (id int, v int)\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+    }
+
+    /** @return the values of the v field of the given tuples, sorted */
+    private static List<Integer> values(DbIterator it) throws Exception {
+        List<Integer> values = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            values.add(((IntField) it.next().getField(1)).getValue());
+        it.close();
+        Collections.sort(values);
+        return values;
+    }
+
+    private void checkLookups(TransactionId tid, SecondaryIndex index) throws Exception {
+        int tableId = Database.getCatalog().getTableId(table);
+        for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS,
+                Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ }) {
+            for (int v : new int[] { 0, 17, MAX_VALUE / 2, MAX_VALUE }) {
+                IntField operand = new IntField(v);
+                List<Integer> expected = values(new Filter(new Predicate(1, op, operand),
+                        new SeqScan(tid, tableId, "t")));
+                assertEquals(op + " " + v, expected,
+                        values(new IndexScan(tid, index, "t", new IndexPredicate(op, operand))));
+            }
+        }
+    }
+
+    @Test public void testCreateIndexStatement() throws Exception {
+        loadTable();
+        new Parser().processNextStatement("create index v_idx on " + table + " (v);");
+
+        int tableId = Database.getCatalog().getTableId(table);
+        SecondaryIndex index = Database.getCatalog().getIndex(tableId, 1, Predicate.Op.EQUALS);
+        assertNotNull(index);
+        assertEquals("v_idx", index.getName());
+        assertEquals(SecondaryIndex.Kind.BTREE, index.getKind());
+        // the entries were packed by the bulk load rather than split into
+        // half-full pages by inserts
+        int perLeaf = (BufferPool.getPageSize() - 16) / 12;
+        assertTrue(((BTreeFile) index.getFile()).numPages() < 1.2 * ROWS / perLeaf + 5);
+        checkLookups(new TransactionId(), index);
+
+        // the index is recorded with the schema and comes back with it
+        assertTrue(new String(Files.readAllBytes(schema.toPath())).contains("index v_idx on "));
+        Database.reset();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        index = Database.getCatalog().getIndex(Database.getCatalog().getTableId(table), 1,
+                Predicate.Op.LESS_THAN);
+        assertNotNull(index);
+        checkLookups(new TransactionId(), index);
+    }
+
+    @Test public void testMaintainedOnInsertAndDelete() throws Exception {
+        loadTable();
+        TransactionId tid = new TransactionId();
+        int tableId = Database.getCatalog().getTableId(table);
+        SecondaryIndex index = Database.getCatalog().createIndex(tid, "v_idx", table, "v",
+                SecondaryIndex.Kind.BTREE);
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(ROWS + i));
+            t.setField(1, new IntField(i % MAX_VALUE));
+            Database.getBufferPool().insertTuple(tid, tableId, t);
+        }
+        List<Tuple> victims = new ArrayList<Tuple>();
+        DbFileIterator it = index.iterator(tid,
+                new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 4)));
+        it.open();
+        while (it.hasNext())
+            victims.add(it.next());
+        it.close();
+        for (Tuple t : victims)
+            Database.getBufferPool().deleteTuple(tid, t);
+
+        assertEquals(Collections.emptyList(), values(new IndexScan(tid, index, "t",
+                new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 4)))));
+        checkLookups(tid, index);
+    }
+
+    @Test public void testHashIndex() throws Exception {
+        loadTable();
+        TransactionId tid = new TransactionId();
+        int tableId = Database.getCatalog().getTableId(table);
+        SecondaryIndex btree = Database.getCatalog().createIndex(tid, "v_btree", table, "v",
+                SecondaryIndex.Kind.BTREE);
+        SecondaryIndex hash = Database.getCatalog().createIndex(tid, "v_hash", table, "v",
+                SecondaryIndex.Kind.HASH);
+
+        // equality lookups go to the hash index, others to the B+ tree
+        assertEquals(hash, Database.getCatalog().getIndex(tableId, 1, Predicate.Op.EQUALS));
+        assertEquals(btree, Database.getCatalog().getIndex(tableId, 1, Predicate.Op.LESS_THAN));
+        for (int v : new int[] { 0, 17, MAX_VALUE / 2, MAX_VALUE }) {
+            IntField operand = new IntField(v);
+            assertEquals(values(new Filter(new Predicate(1, Predicate.Op.EQUALS, operand),
+                    new SeqScan(tid, tableId, "t"))),
+                    values(new IndexScan(tid, hash, "t",
+                            new IndexPredicate(Predicate.Op.EQUALS, operand))));
+        }
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new IntField(MAX_VALUE + 1));
+        Database.getBufferPool().insertTuple(tid, tableId, t);
+        IndexPredicate added = new IndexPredicate(Predicate.Op.EQUALS, new IntField(MAX_VALUE + 1));
+        assertEquals(Collections.singletonList(MAX_VALUE + 1),
+                values(new IndexScan(tid, hash, "t", added)));
+        Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(Collections.emptyList(), values(new IndexScan(tid, hash, "t", added)));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SecondaryIndexTest.class);
+    }
+}
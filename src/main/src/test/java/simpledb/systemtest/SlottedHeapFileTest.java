@@ -0,0 +1,104 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads a table of short strings in the slotted page format and checks it
+ * scans, takes fewer pages than the heap format, and accepts updates.
+ */
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private static File writeTextTable() throws IOException {
+        File txt = File.createTempFile("names", ".txt");
+        txt.deleteOnExit();
+        try (FileWriter w = new FileWriter(txt)) {
+            for (int i = 0; i < ROWS; i++)
+                w.write(i + ",name" + i + "\n");
+        }
+        return txt;
+    }
+
+    private static ArrayList<ArrayList<Integer>> scanIds(DbFile f, TransactionId tid)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> ids = new ArrayList<ArrayList<Integer>>();
+        SeqScan scan = new SeqScan(tid, f.getId(), "t");
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            ArrayList<Integer> id = new ArrayList<Integer>();
+            id.add(((IntField) t.getField(0)).getValue());
+            assertEquals("name" + id.get(0), ((StringField) t.getField(1)).getValue());
+            ids.add(id);
+        }
+        scan.close();
+        return ids;
+    }
+
+    @Test public void testLoadAndScan() throws Exception {
+        File txt = writeTextTable();
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        File heapDat = TestUtil.createTempTableFile("names");
+        HeapFileEncoder.convert(txt, heapDat, BufferPool.PAGE_SIZE, 2, types);
+
+        // load the slotted table through the catalog
+        File dir = txt.getParentFile();
+        String name = "slotted" + SystemTestUtil.getUUID().replace("-", "");
+        File slottedDat = new File(dir, name + ".dat");
+        TestUtil.deleteOnExit(slottedDat);
+        SlottedFileEncoder.convert(txt, slottedDat, types, ',');
+        File schema = File.createTempFile("catalog", ".txt", dir);
+        schema.deleteOnExit();
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(name + " (id int, name string) slotted\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        DbFile slotted = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+        assertTrue(slotted instanceof SlottedHeapFile);
+
+        HeapFile heap = new HeapFile(heapDat, new TupleDesc(types));
+        int heapPages = heap.numPages();
+        int slottedPages = ((SlottedHeapFile) slotted).numPages();
+        assertTrue(slottedPages * 5 < heapPages);
+
+        ArrayList<ArrayList<Integer>> ids = scanIds(slotted, new TransactionId());
+        assertEquals(ROWS, ids.size());
+        for (int i = 0; i < ROWS; i++)
+            assertEquals(i, (int) ids.get(i).get(0));
+    }
+
+    @Test public void testInsertDelete() throws Exception {
+        File dat = TestUtil.createTempTableFile("slotted");
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        SlottedFileEncoder.convert(writeTextTable(), dat, new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, ',');
+        SlottedHeapFile f = new SlottedHeapFile(dat, td);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+
+        int pages = f.numPages();
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(ROWS));
+        t.setField(1, new StringField("name" + ROWS, Type.STRING_LEN));
+        f.insertTuple(tid, t);
+        assertTrue(f.numPages() <= pages + 1);
+        assertEquals(ROWS + 1, scanIds(f, tid).size());
+
+        f.deleteTuple(tid, t);
+        assertEquals(ROWS, scanIds(f, tid).size());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,196 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads a table sorted on its first column and checks that filtered scans
+ * skip the page ranges the zone map rules out, without reading them,
+ * yet return the same tuples as a full scan, also after inserts and after
+ * the sidecar is lost.
+ */
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 40;
+    private static final int ROWS = 504 * PAGES;
+
+    private File dat;
+
+    /** Write a table of (i, random) rows in order of i, and open it. */
+    private HeapFile loadSorted() throws Exception {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, 1000, null, rows);
+        for (int i = 0; i < ROWS; i++)
+            rows.get(i).set(0, i);
+        dat = TestUtil.createTempTableFile("zonemap");
+        HeapFileEncoder.convert(rows, dat, BufferPool.getPageSize(), 2);
+        return open();
+    }
+
+    private HeapFile open() {
+        HeapFile f = new HeapFile(dat, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    private static File sidecar(HeapFile f) {
+        return Utility.sidecar(f.getFile(), ZoneMap.EXTENSION);
+    }
+
+    /** @return the first column of the tuples of the scan, sorted */
+    private static List<Integer> keys(DbIterator it) throws Exception {
+        List<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static List<Integer> filtered(HeapFile f, TransactionId tid, Predicate.Op op, int v)
+            throws Exception {
+        return keys(new Filter(new Predicate(0, op, new IntField(v)),
+                new SeqScan(tid, f.getId(), "t")));
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = from; i < to; i++)
+            keys.add(i);
+        return keys;
+    }
+
+    @Test public void testSkipsRanges() throws Exception {
+        HeapFile f = loadSorted();
+        TransactionId tid = new TransactionId();
+        int rangeRows = 504 * ZoneMap.DEFAULT_RANGE_PAGES;
+
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(range(0, 100), filtered(f, tid, Predicate.Op.LESS_THAN, 100));
+        // only the first range is read
+        assertEquals(PAGES - ZoneMap.DEFAULT_RANGE_PAGES, f.getSkippedPages());
+        assertTrue(pool.getMissCount() <= ZoneMap.DEFAULT_RANGE_PAGES);
+
+        long skipped = f.getSkippedPages();
+        assertEquals(Collections.singletonList(rangeRows + 7),
+                filtered(f, tid, Predicate.Op.EQUALS, rangeRows + 7));
+        assertEquals(PAGES - ZoneMap.DEFAULT_RANGE_PAGES, f.getSkippedPages() - skipped);
+        assertEquals(range(ROWS - 10, ROWS),
+                filtered(f, tid, Predicate.Op.GREATER_THAN_OR_EQ, ROWS - 10));
+        assertEquals(Collections.emptyList(), filtered(f, tid, Predicate.Op.GREATER_THAN, ROWS));
+
+        // predicates the map cannot answer read every page
+        skipped = f.getSkippedPages();
+        assertEquals(ROWS - 1, filtered(f, tid, Predicate.Op.NOT_EQUALS, 3).size());
+        assertEquals(skipped, f.getSkippedPages());
+        sidecar(f).delete();
+    }
+
+    @Test public void testInsertsWidenRanges() throws Exception {
+        HeapFile f = loadSorted();
+        TransactionId tid = new TransactionId();
+        assertEquals(range(0, 5), filtered(f, tid, Predicate.Op.LESS_THAN, 5));
+
+        // the table is full, so these go on a new page, in the last range
+        Database.getBufferPool().insertTuple(tid, f.getId(),
+                Utility.getHeapTuple(new int[] { -1, 0 }));
+        List<Integer> expected = range(0, 5);
+        expected.add(0, -1);
+        assertEquals(expected, filtered(f, tid, Predicate.Op.LESS_THAN, 5));
+
+        // a page written outside an insert, as recovery does, also widens
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(f.getId(), PAGES - 1), Permissions.READ_WRITE);
+        Tuple t = Utility.getHeapTuple(new int[] { 1, 2 });
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(t);
+        f.writePage(page);
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        expected.add(2, 1);
+        assertEquals(expected, filtered(reopened, new TransactionId(), Predicate.Op.LESS_THAN, 5));
+        sidecar(f).delete();
+    }
+
+    @Test public void testRebuildsLostSidecar() throws Exception {
+        HeapFile f = loadSorted();
+        TransactionId tid = new TransactionId();
+        assertEquals(range(0, 3), filtered(f, tid, Predicate.Op.LESS_THAN_OR_EQ, 2));
+        assertTrue(sidecar(f).delete());
+
+        HeapFile reopened = open();
+        assertEquals(range(0, 3), filtered(reopened, tid, Predicate.Op.LESS_THAN_OR_EQ, 2));
+        assertEquals(PAGES - ZoneMap.DEFAULT_RANGE_PAGES, reopened.getSkippedPages());
+        assertTrue(sidecar(f).exists());
+        sidecar(f).delete();
+    }
+
+    @Test public void testRewrittenTableDropsSidecar() throws Exception {
+        HeapFile f = loadSorted();
+        TransactionId tid = new TransactionId();
+        assertEquals(range(0, 100), filtered(f, tid, Predicate.Op.LESS_THAN, 100));
+        assertTrue(sidecar(f).exists());
+
+        // the same number of pages, in reverse order, so the small keys are
+        // now in the ranges the old map ruled out
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++)
+            rows.add(new ArrayList<Integer>(Arrays.asList(ROWS - 1 - i, i)));
+        HeapFileEncoder.convert(rows, dat, BufferPool.getPageSize(), 2);
+        assertFalse(sidecar(f).exists());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        assertEquals(PAGES, reopened.numPages());
+        assertEquals(range(0, 100), filtered(reopened, new TransactionId(), Predicate.Op.LESS_THAN, 100));
+        sidecar(f).delete();
+    }
+
+    @Test public void testWritesOnlyMarkSidecarStale() throws Exception {
+        HeapFile f = loadSorted();
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, f.getId(),
+                Utility.getHeapTuple(new int[] { -1, 0 }));
+        Database.getBufferPool().flushAllPages();
+        // inserts and writes alone neither read the table nor make a sidecar
+        assertFalse(sidecar(f).exists());
+        assertEquals(Arrays.asList(-1, 0, 1), filtered(f, tid, Predicate.Op.LESS_THAN, 2));
+        assertTrue(sidecar(f).exists());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // a page written before a reopened table loads its map makes the
+        // sidecar stale, so loading rebuilds it
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        TransactionId writer = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(writer,
+                new HeapPageId(reopened.getId(), PAGES - 2), Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] { -5, 0 }));
+        reopened.writePage(page);
+        assertFalse(sidecar(f).exists());
+        Database.getBufferPool().transactionComplete(writer);
+        assertEquals(Arrays.asList(-5, -1, 0, 1),
+                filtered(reopened, new TransactionId(), Predicate.Op.LESS_THAN, 2));
+        sidecar(f).delete();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}